@@ -0,0 +1,33 @@
+package com.github.bluestring_digital.fingerprint.benchmarks;
+
+import com.github.bluestring_digital.fingerprint.backend.AlgorithmHandlePool;
+import com.github.bluestring_digital.fingerprint.backend.FrameBufferPool;
+import com.github.bluestring_digital.fingerprint.backend.ScannerBackend;
+import com.github.bluestring_digital.fingerprint.service.DeviceCommandExecutor;
+import com.github.bluestring_digital.fingerprint.service.FingerSplitter;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService;
+import com.github.bluestring_digital.fingerprint.service.QualityScorer;
+import com.github.bluestring_digital.fingerprint.service.TemplateExtractor;
+import com.github.bluestring_digital.fingerprint.service.WsqService;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
+
+/**
+ * Wires the services the way Spring does with the default properties, so constructor changes
+ * are fixed here once instead of in every benchmark.
+ */
+final class BenchmarkServices {
+
+    private BenchmarkServices() {
+    }
+
+    static FingerprintScannerService scannerService(ScannerBackend backend) {
+        DeviceCommandExecutor device = new DeviceCommandExecutor(32, 10_000);
+        AlgorithmHandlePool handles = new AlgorithmHandlePool(backend, 0, 5000);
+        return new FingerprintScannerService(backend, new FrameBufferPool(4), device,
+                new TemplateExtractor(backend, handles, 4),
+                new WsqService(backend, handles, 0.75f),
+                new TemplateMatcher(backend, handles, TemplateMatcher.ENGINE_NATIVE),
+                new FingerSplitter(backend, device, FingerSplitter.ENGINE_NATIVE, 4, false),
+                new QualityScorer(backend, device, QualityScorer.ENGINE_NATIVE, 4, 6));
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.bluestring_digital.fingerprint.benchmarks;
+
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame image conversion: RAW -> BMP -> Base64, plus the template pre-processing mirror.
+ * Run with {@code -prof gc} to get the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageConversionBenchmark {
+
+    /** Slap preview window and split single finger */
+    @Param({"1600x1500", "300x400"})
+    public String size;
+
+    private FingerprintScannerService service;
+    private int width;
+    private int height;
+    private byte[] raw;
+    private byte[] bmp;
+
+    @Setup
+    public void setUp() {
+        String[] parts = size.split("x");
+        width = Integer.parseInt(parts[0]);
+        height = Integer.parseInt(parts[1]);
+
+        SimulatedScannerBackend backend = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+        service = BenchmarkServices.scannerService(backend);
+        raw = new byte[width * height];
+        // Skip the settle frames so the benchmark sees a plateau-quality finger
+        for (int i = 0; i < 5; i++) {
+            backend.captureRaw(width, height, raw);
+        }
+        bmp = service.rawToBmp(raw, width, height);
+    }
+
+    @Benchmark
+    public byte[] rawToBmp() {
+        return service.rawToBmp(raw, width, height);
+    }
+
+    @Benchmark
+    public byte[] createBmpHeader() {
+        return service.createBmpHeader(width, height);
+    }
+
+    @Benchmark
+    public String bmpToBase64() {
+        return service.bmpToBase64(bmp);
+    }
+
+    /** Same mirrored copy {@code TemplateExtractor.extract} makes before every template */
+    @Benchmark
+    public byte[] mirroredCopy() {
+        return FingerprintScannerService.mirroredCopy(raw);
+    }
+}
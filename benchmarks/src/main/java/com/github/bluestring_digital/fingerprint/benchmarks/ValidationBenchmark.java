@@ -0,0 +1,65 @@
+package com.github.bluestring_digital.fingerprint.benchmarks;
+
+import com.github.bluestring_digital.fingerprint.service.CaptureValidator;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import com.github.bluestring_digital.fingerprint.service.HandDetectionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame buffer validation and per-capture hand detection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidationBenchmark {
+
+    @Param({"1600x1500", "300x400"})
+    public String size;
+
+    /** 2 = thumbs, 4 = slap without thumb, 5 = full hand */
+    @Param({"2", "4", "5"})
+    public int fingerCount;
+
+    private final CaptureValidator validator = new CaptureValidator();
+    private final HandDetectionService handDetectionService = new HandDetectionService();
+    private byte[] buffer;
+    private List<FingerSplitResult> fingers;
+
+    @Setup
+    public void setUp() {
+        String[] parts = size.split("x");
+        buffer = new byte[Integer.parseInt(parts[0]) * Integer.parseInt(parts[1])];
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = (byte) (i * 31);
+        }
+
+        fingers = new ArrayList<>();
+        for (int i = 0; i < fingerCount; i++) {
+            FingerSplitResult finger = new FingerSplitResult();
+            finger.setWidth(300);
+            finger.setHeight(400);
+            finger.setX(250 + i * 300 + (i == fingerCount - 1 ? 200 : 0));
+            finger.setY(600);
+            finger.setAngle(fingerCount == 2 ? (i == 0 ? 30 : -30) : 8);
+            finger.setQuality(70);
+            fingers.add(finger);
+        }
+    }
+
+    @Benchmark
+    public boolean hasValidData() {
+        return validator.hasValidData(buffer);
+    }
+
+    @Benchmark
+    public HandDetectionService.HandDetectionResult detectHand() {
+        return handDetectionService.detectHand(fingers);
+    }
+}
@@ -0,0 +1,276 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Bounded set of template algorithm handles ({@link ScannerBackend#openAlgorithm()}) shared by
+ * extraction, 1:1 comparison and gallery search. Handles are opened lazily and leased to one
+ * thread at a time, so concurrent requests run on separate native contexts instead of sharing one.
+ * <p>
+ * A lease waits at most {@code fingerprint.algorithm.lease-timeout-ms} for a handle. A handle whose
+ * call throws is considered broken: it is closed instead of returned, and a fresh one is opened on
+ * demand. Lease waits, timeouts and per-operation run times are reported by {@link #getStats()}
+ * and as {@code fingerprint.algorithm.*} meters.
+ */
+@Slf4j
+@Component
+public class AlgorithmHandlePool implements MeterBinder {
+
+    private static final long RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final ScannerBackend backend;
+    private final int maxHandles;
+    private final long leaseTimeoutMs;
+    private final BlockingQueue<Integer> idle;
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger leased = new AtomicInteger();
+
+    private final LongAdder leases = new LongAdder();
+    private final LongAdder waitedLeases = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+    private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    public AlgorithmHandlePool(ScannerBackend backend,
+                               @Value("${fingerprint.algorithm.pool-size:0}") int maxHandles,
+                               @Value("${fingerprint.algorithm.lease-timeout-ms:5000}") long leaseTimeoutMs) {
+        this.backend = backend;
+        this.maxHandles = maxHandles > 0 ? maxHandles : Runtime.getRuntime().availableProcessors();
+        this.leaseTimeoutMs = leaseTimeoutMs;
+        this.idle = new ArrayBlockingQueue<>(this.maxHandles);
+    }
+
+    /**
+     * Runs {@code task} with a leased handle on the calling thread. The handle is returned to the
+     * pool afterwards, or closed if the task threw.
+     */
+    public <T> T call(String operation, IntFunction<T> task) {
+        OperationStats stats = operations.computeIfAbsent(operation, this::newOperationStats);
+        int handle = lease();
+        long started = System.nanoTime();
+        try {
+            T result = task.apply(handle);
+            release(handle);
+            return result;
+        } catch (RuntimeException | Error e) {
+            stats.failures.increment();
+            invalidate(handle);
+            throw e;
+        } finally {
+            stats.runNanos.add(System.nanoTime() - started);
+            stats.count.increment();
+        }
+    }
+
+    /**
+     * Takes an idle handle, opening a new one while fewer than the pool size exist, otherwise
+     * waits up to the lease timeout for one to be released
+     */
+    public int lease() {
+        leases.increment();
+        Integer handle = idle.poll();
+        if (handle == null && open.incrementAndGet() <= maxHandles) {
+            handle = openHandle();
+        } else if (handle == null) {
+            open.decrementAndGet();
+            handle = awaitHandle();
+        }
+        leased.incrementAndGet();
+        return handle;
+    }
+
+    public void release(int handle) {
+        leased.decrementAndGet();
+        idle.offer(handle);
+    }
+
+    /**
+     * Closes a handle that misbehaved instead of returning it; its slot is reopened on demand
+     */
+    public void invalidate(int handle) {
+        leased.decrementAndGet();
+        open.decrementAndGet();
+        invalidated.increment();
+        log.warn("Handle de algoritmo {} descartado após falha", handle);
+        try {
+            backend.closeAlgorithm(handle);
+        } catch (RuntimeException e) {
+            log.warn("Falha ao fechar handle de algoritmo {}: {}", handle, e.getMessage());
+        }
+    }
+
+    /**
+     * Handles opened so far (idle or leased)
+     */
+    public int getOpenHandles() {
+        return open.get();
+    }
+
+    public int getMaxHandles() {
+        return maxHandles;
+    }
+
+    /**
+     * Pool occupancy, lease wait times and timeouts, and per-operation counts and run times in ms
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long leaseCount = leases.sum();
+        long waited = waitedLeases.sum();
+        result.put("size", maxHandles);
+        result.put("open", open.get());
+        result.put("leased", leased.get());
+        result.put("idle", idle.size());
+        result.put("leases", leaseCount);
+        result.put("waitedLeases", waited);
+        result.put("avgWaitMs", waited > 0 ? waitNanos.sum() / waited / 1_000_000.0 : 0.0);
+        result.put("maxWaitMs", maxWaitNanos.get() / 1_000_000.0);
+        result.put("timeouts", timeouts.sum());
+        result.put("invalidated", invalidated.sum());
+
+        Map<String, Object> byOperation = new LinkedHashMap<>();
+        operations.forEach((operation, s) -> {
+            long count = s.count.sum();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("count", count);
+            entry.put("avgRunMs", count > 0 ? s.runNanos.sum() / count / 1_000_000.0 : 0.0);
+            entry.put("failures", s.failures.sum());
+            byOperation.put(operation, entry);
+        });
+        result.put("operations", byOperation);
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+        Gauge.builder("fingerprint.algorithm.handles", open, AtomicInteger::get)
+                .description("Algorithm handles opened (idle or leased)")
+                .tag("state", "open")
+                .register(registry);
+        Gauge.builder("fingerprint.algorithm.handles", leased, AtomicInteger::get)
+                .description("Algorithm handles opened (idle or leased)")
+                .tag("state", "leased")
+                .register(registry);
+        FunctionTimer.builder("fingerprint.algorithm.lease.wait", this, p -> p.waitedLeases.sum(),
+                        p -> p.waitNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Time leases waited for a handle, when none was idle")
+                .register(registry);
+        FunctionCounter.builder("fingerprint.algorithm.lease.timeouts", timeouts, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("fingerprint.algorithm.invalidated", invalidated, LongAdder::sum)
+                .register(registry);
+        operations.forEach((operation, stats) -> bind(registry, operation, stats));
+    }
+
+    /**
+     * Closes the idle handles; handles still leased are closed by the backend on shutdown
+     */
+    @PreDestroy
+    public void close() {
+        Integer handle;
+        while ((handle = idle.poll()) != null) {
+            backend.closeAlgorithm(handle);
+            open.decrementAndGet();
+        }
+    }
+
+    private int openHandle() {
+        int opened;
+        try {
+            opened = backend.openAlgorithm();
+        } catch (RuntimeException | Error e) {
+            open.decrementAndGet();
+            throw e;
+        }
+        if (opened == 0) {
+            open.decrementAndGet();
+            throw new IllegalStateException("Falha ao abrir algoritmo de template");
+        }
+        return opened;
+    }
+
+    /**
+     * Waits for a released handle, re-checking for a free slot left by an invalidated handle
+     */
+    private int awaitHandle() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(leaseTimeoutMs);
+        Integer handle = null;
+        try {
+            while (handle == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                handle = idle.poll(Math.min(remaining, RECHECK_NANOS), TimeUnit.NANOSECONDS);
+                if (handle == null && open.incrementAndGet() <= maxHandles) {
+                    handle = openHandle();
+                } else if (handle == null) {
+                    open.decrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeviceBusyException("Interrupted while waiting for an algorithm handle");
+        } finally {
+            long waited = System.nanoTime() - start;
+            waitedLeases.increment();
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+        if (handle == null) {
+            timeouts.increment();
+            throw new DeviceBusyException("No algorithm handle available after " + leaseTimeoutMs + "ms");
+        }
+        return handle;
+    }
+
+    private OperationStats newOperationStats(String operation) {
+        OperationStats stats = new OperationStats();
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            bind(registry, operation, stats);
+        }
+        return stats;
+    }
+
+    private static void bind(MeterRegistry registry, String operation, OperationStats s) {
+        FunctionTimer.builder("fingerprint.algorithm.call", s, o -> o.count.sum(), o -> o.runNanos.sum(),
+                        TimeUnit.NANOSECONDS)
+                .description("Time operations held an algorithm handle")
+                .tag("operation", operation)
+                .register(registry);
+        FunctionCounter.builder("fingerprint.algorithm.failures", s, o -> o.failures.sum())
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    private static class OperationStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder runNanos = new LongAdder();
+        final LongAdder failures = new LongAdder();
+    }
+}
@@ -0,0 +1,12 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+/**
+ * The device or the algorithm handles stayed busy: the command queue was full, a command or a
+ * handle lease timed out, or the caller was interrupted while waiting. Retrying later may succeed.
+ */
+public class DeviceBusyException extends IllegalStateException {
+
+    public DeviceBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+/**
+ * A capture was requested while the device is not open
+ */
+public class DeviceNotOpenException extends IllegalStateException {
+
+    public DeviceNotOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reusable native frame buffer. The DLLs read and write it through {@link #pointer()},
+ * Java code through the direct {@link #data()} view, so frames move through the pipeline
+ * by reference without JNA marshalling copies.
+ * <p>
+ * Buffers are reference counted: {@link #retain()} when handing a frame to another stage,
+ * {@link #close()} when done. The last release returns the buffer to its pool.
+ */
+public final class FrameBuffer implements AutoCloseable {
+
+    private final Memory memory;
+    private final ByteBuffer view;
+    private final FrameBufferPool pool;
+    private final AtomicInteger references = new AtomicInteger();
+
+    private int width;
+    private int height;
+    private long timestamp;
+
+    FrameBuffer(long capacity, FrameBufferPool pool) {
+        this.memory = new Memory(capacity);
+        this.view = memory.getByteBuffer(0, capacity);
+        this.pool = pool;
+    }
+
+    /**
+     * Prepares a pooled buffer for a new frame with a single owner
+     */
+    FrameBuffer reset(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.timestamp = System.currentTimeMillis();
+        references.set(1);
+        return this;
+    }
+
+    public Pointer pointer() {
+        return memory;
+    }
+
+    /**
+     * Read view over the frame pixels (position 0, limit width*height)
+     */
+    public ByteBuffer data() {
+        return view.duplicate().limit(size());
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int size() { return width * height; }
+    public long capacity() { return memory.size(); }
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+
+    /**
+     * Copies the pixels into {@code target} (at least {@link #size()} bytes)
+     */
+    public void copyTo(byte[] target) {
+        memory.read(0, target, 0, size());
+    }
+
+    /**
+     * Copies the pixels from {@code source}, used by backends that produce heap frames
+     */
+    public void copyFrom(byte[] source) {
+        memory.write(0, source, 0, Math.min(source.length, size()));
+    }
+
+    /**
+     * Heap copy of the pixels, for code paths that still need a byte[]
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[size()];
+        copyTo(copy);
+        return copy;
+    }
+
+    public FrameBuffer retain() {
+        if (references.getAndIncrement() <= 0) {
+            references.decrementAndGet();
+            throw new IllegalStateException("Frame buffer already released");
+        }
+        return this;
+    }
+
+    @Override
+    public void close() {
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            pool.recycle(this);
+        } else if (remaining < 0) {
+            references.incrementAndGet();
+            throw new IllegalStateException("Frame buffer released twice");
+        }
+    }
+
+    void free() {
+        memory.close();
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of native {@link FrameBuffer}s. A steady preview reuses the same few buffers instead of
+ * allocating a 2.4 MB array per frame; when the pool is empty a new buffer is allocated and
+ * kept on release up to {@code fingerprint.capture.buffer-pool-size} idle buffers.
+ */
+@Slf4j
+@Component
+public class FrameBufferPool {
+
+    private final int maxIdle;
+    private final ConcurrentLinkedDeque<FrameBuffer> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger liveCount = new AtomicInteger();
+    private final AtomicLong allocations = new AtomicLong();
+
+    public FrameBufferPool(@Value("${fingerprint.capture.buffer-pool-size:4}") int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns a buffer of at least width*height bytes owned by the caller
+     */
+    public FrameBuffer acquire(int width, int height) {
+        long size = (long) width * height;
+        FrameBuffer buffer = idle.pollFirst();
+        if (buffer != null) {
+            idleCount.decrementAndGet();
+            if (buffer.capacity() >= size) {
+                return buffer.reset(width, height);
+            }
+            // Capture window grew: drop the small buffer
+            liveCount.decrementAndGet();
+            buffer.free();
+        }
+
+        allocations.incrementAndGet();
+        liveCount.incrementAndGet();
+        log.debug("Allocating native frame buffer of {} bytes ({} live)", size, liveCount.get());
+        return new FrameBuffer(size, this).reset(width, height);
+    }
+
+    void recycle(FrameBuffer buffer) {
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offerFirst(buffer);
+        } else {
+            idleCount.decrementAndGet();
+            liveCount.decrementAndGet();
+            buffer.free();
+        }
+    }
+
+    public int getIdleCount() { return idleCount.get(); }
+    public int getLiveCount() { return liveCount.get(); }
+    public long getAllocations() { return allocations.get(); }
+}
@@ -0,0 +1,54 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps a JNA library interface so that every native function is timed as
+ * {@code fingerprint.native.call{library, function}}. Overloads (byte[] and Pointer variants)
+ * share one timer per function name.
+ */
+public final class NativeCallMetrics {
+
+    public static final String METER_NAME = "fingerprint.native.call";
+
+    private NativeCallMetrics() {
+    }
+
+    public static <T> T instrument(Class<T> type, T library, MeterRegistry registry) {
+        String libraryName = type.getSimpleName();
+        Map<Method, Timer> timers = new ConcurrentHashMap<>();
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (target, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return invoke(library, method, args);
+            }
+            Timer timer = timers.computeIfAbsent(method, key -> Timer.builder(METER_NAME)
+                    .description("Time spent in vendor DLL functions")
+                    .tag("library", libraryName)
+                    .tag("function", key.getName())
+                    .register(registry));
+            long start = System.nanoTime();
+            try {
+                return invoke(library, method, args);
+            } finally {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        });
+        return type.cast(proxy);
+    }
+
+    private static Object invoke(Object library, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(library, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
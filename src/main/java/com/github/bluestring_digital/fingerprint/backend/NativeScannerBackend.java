@@ -0,0 +1,316 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import com.github.bluestring_digital.fingerprint.lib.FingerprintDeviceInterface.*;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Backend bound to the vendor DLLs in {@code lib/}. Only available on Windows.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "fingerprint.backend", havingValue = "native", matchIfMissing = true)
+public class NativeScannerBackend implements ScannerBackend {
+
+    private static final int MAX_FINGERS = 10;
+    /** Image size FpStdLib assumes for templates and WSQ (the split finger size) */
+    private static final int WSQ_WIDTH = 300;
+    private static final int WSQ_HEIGHT = 400;
+
+    private final LiveScan liveScan;
+    private final Mosaic mosaic;
+    private final FpSplit fpSplit;
+    private final FpStdLib fpStdLib;
+    private final Fione fione;
+
+    /** FpSplit keeps global state in the DLL, so splits are serialized */
+    private final Object splitLock = new Object();
+    private SplitSession splitSession;
+
+    /**
+     * Every DLL function is timed ({@link NativeCallMetrics})
+     */
+    public NativeScannerBackend(MeterRegistry meterRegistry) {
+        this.liveScan = NativeCallMetrics.instrument(LiveScan.class, LiveScan.INSTANCE, meterRegistry);
+        this.mosaic = NativeCallMetrics.instrument(Mosaic.class, Mosaic.INSTANCE, meterRegistry);
+        this.fpSplit = NativeCallMetrics.instrument(FpSplit.class, FpSplit.INSTANCE, meterRegistry);
+        this.fpStdLib = NativeCallMetrics.instrument(FpStdLib.class, FpStdLib.INSTANCE, meterRegistry);
+        this.fione = NativeCallMetrics.instrument(Fione.class, Fione.INSTANCE, meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return "native";
+    }
+
+    @Override
+    public int open() {
+        int result = liveScan.LIVESCAN_Init();
+        if (result == 1) {
+            mosaic.MOSAIC_Init();
+        }
+        return result;
+    }
+
+    @Override
+    public int close() {
+        releaseSplitSession();
+        int result = liveScan.LIVESCAN_Close();
+        if (result == 1) {
+            mosaic.MOSAIC_Close();
+        }
+        return result;
+    }
+
+    @Override
+    public int setFingerDryWet(int level) {
+        return liveScan.LIVESCAN_SetFingerDryWet(level);
+    }
+
+    @Override
+    public int captureRaw(int width, int height, byte[] rawData) {
+        // Define a janela de captura (área do sensor)
+        liveScan.LIVESCAN_SetCaptWindow(0, 0, 0, width, height);
+        return liveScan.LIVESCAN_GetFPRawData(0, rawData);
+    }
+
+    @Override
+    public int captureRaw(FrameBuffer frame) {
+        liveScan.LIVESCAN_SetCaptWindow(0, 0, 0, frame.getWidth(), frame.getHeight());
+        return liveScan.LIVESCAN_GetFPRawData(0, frame.pointer());
+    }
+
+    @Override
+    public int fingerQuality(FrameBuffer frame, int width, int height) {
+        return mosaic.MOSAIC_FingerQuality(frame.pointer(), width, height);
+    }
+
+    @Override
+    public boolean isFinger(FrameBuffer frame) {
+        return mosaic.MOSAIC_IsFinger(frame.pointer(), frame.getWidth(), frame.getHeight()) > 0;
+    }
+
+    @Override
+    public int fakeScore(FrameBuffer frame) {
+        return fione.GetFingerFake(frame.pointer(), frame.getWidth(), frame.getHeight());
+    }
+
+    @Override
+    public int fingerQuality(byte[] image, int width, int height) {
+        return mosaic.MOSAIC_FingerQuality(image, width, height);
+    }
+
+    @Override
+    public boolean isFinger(byte[] image, int width, int height) {
+        return mosaic.MOSAIC_IsFinger(image, width, height) > 0;
+    }
+
+    @Override
+    public List<FingerSplitResult> splitFingers(byte[] image, int width, int height,
+                                                int splitWidth, int splitHeight) {
+        return doSplit(image, null, width, height, splitWidth, splitHeight);
+    }
+
+    @Override
+    public List<FingerSplitResult> splitFingers(FrameBuffer frame, int splitWidth, int splitHeight) {
+        return doSplit(null, frame.pointer(), frame.getWidth(), frame.getHeight(), splitWidth, splitHeight);
+    }
+
+    /**
+     * Runs FPSPLIT_DoSplit on either a heap image or a native frame buffer
+     */
+    private List<FingerSplitResult> doSplit(byte[] image, Pointer imagePointer, int width, int height,
+                                            int splitWidth, int splitHeight) {
+        synchronized (splitLock) {
+            SplitSession session = splitSession(width, height, splitWidth, splitHeight);
+            session.fingerNum.setValue(0);
+            session.bindOutputBuffers();
+
+            // Executa a separação
+            int result = imagePointer != null
+                    ? fpSplit.FPSPLIT_DoSplit(imagePointer, width, height, 1,
+                            splitWidth, splitHeight, session.fingerNum, session.infoArray)
+                    : fpSplit.FPSPLIT_DoSplit(image, width, height, 1,
+                            splitWidth, splitHeight, session.fingerNum, session.infoArray);
+
+            List<FingerSplitResult> fingers = new ArrayList<>();
+            int count = session.fingerNum.getValue();
+
+            log.debug("Separação de dedos: resultado={}, quantidade={}", result, count);
+
+            // Lê as informações de cada dedo detectado
+            for (int i = 0; i < count && i < MAX_FINGERS; i++) {
+                // Cria estrutura apontando para o offset correto
+                FpSplit.FPSPLIT_INFO info = new FpSplit.FPSPLIT_INFO(
+                        session.infoArray.share((long) i * session.structSize)
+                );
+
+                // Lê os dados da imagem
+                byte[] fingerData = info.getImageData(splitWidth, splitHeight);
+
+                FingerSplitResult finger = new FingerSplitResult();
+                finger.setImageData(fingerData);
+                finger.setWidth(splitWidth);
+                finger.setHeight(splitHeight);
+                finger.setX(info.x);
+                finger.setY(info.y);
+                finger.setTop(info.top);
+                finger.setLeft(info.left);
+                finger.setAngle(info.angle);
+                finger.setQuality(info.quality);
+
+                fingers.add(finger);
+
+                log.debug("Dedo {}: x={}, y={}, angle={}, quality={}", i, info.x, info.y, info.angle, info.quality);
+            }
+            return fingers;
+        }
+    }
+
+    /**
+     * Returns the split session for these dimensions, re-initializing FpSplit only when they change
+     */
+    private SplitSession splitSession(int width, int height, int splitWidth, int splitHeight) {
+        if (splitSession != null && splitSession.matches(width, height, splitWidth, splitHeight)) {
+            return splitSession;
+        }
+        releaseSplitSession();
+
+        log.info("Inicializando FpSplit para {}x{} (dedos {}x{})", width, height, splitWidth, splitHeight);
+        fpSplit.FPSPLIT_Init(width, height, 1);
+        splitSession = new SplitSession(width, height, splitWidth, splitHeight);
+        return splitSession;
+    }
+
+    /**
+     * Releases the native split state (FPSPLIT_Uninit) and its output buffers
+     */
+    @PreDestroy
+    public void releaseSplitSession() {
+        synchronized (splitLock) {
+            if (splitSession == null) {
+                return;
+            }
+            fpSplit.FPSPLIT_Uninit();
+            splitSession.free();
+            splitSession = null;
+        }
+    }
+
+    @Override
+    public int openAlgorithm() {
+        return fpStdLib.ZAZ_FpStdLib_OpenDevice();
+    }
+
+    @Override
+    public void closeAlgorithm(int handle) {
+        fpStdLib.ZAZ_FpStdLib_CloseDevice(handle);
+    }
+
+    @Override
+    public int createIsoTemplate(int handle, byte[] image, byte[] template) {
+        return fpStdLib.ZAZ_FpStdLib_CreateISOTemplate(handle, image, template);
+    }
+
+    @Override
+    public int compareTemplates(int handle, byte[] template1, byte[] template2) {
+        return fpStdLib.ZAZ_FpStdLib_CompareTemplates(handle, template1, template2);
+    }
+
+    /**
+     * FpStdLib works on single-finger images of its own size
+     */
+    @Override
+    public boolean supportsWsq(int width, int height) {
+        return width == WSQ_WIDTH && height == WSQ_HEIGHT;
+    }
+
+    /**
+     * Other sizes return 0 so that the caller falls back to the Java codec
+     */
+    @Override
+    public int compressWsq(int handle, byte[] image, int width, int height, byte[] wsq) {
+        if (!supportsWsq(width, height)) {
+            return 0;
+        }
+        return Math.max(0, fpStdLib.ZAZ_FpStdLib_CompressToWSQImage(handle, image, wsq));
+    }
+
+    @Override
+    public int decompressWsq(int handle, byte[] wsq, int length, byte[] image) {
+        if (image.length < WSQ_WIDTH * WSQ_HEIGHT) {
+            return 0;
+        }
+        return fpStdLib.ZAZ_FpStdLib_UnCompressFromWSQImage(handle, wsq, length, image);
+    }
+
+    @Override
+    public int fakeScore(byte[] image, int width, int height) {
+        return fione.GetFingerFake(image, width, height);
+    }
+
+    @Override
+    public int beep(int times) {
+        return liveScan.LIVESCAN_Beep(times);
+    }
+
+    /**
+     * FpSplit state that lives across captures: the info array and one output buffer per finger,
+     * sized for a given input window and finger size.
+     */
+    private static class SplitSession {
+        final int width;
+        final int height;
+        final int splitWidth;
+        final int splitHeight;
+        final int structSize;
+        final Memory infoArray;
+        final Memory[] fingerBuffers = new Memory[MAX_FINGERS];
+        final IntByReference fingerNum = new IntByReference(0);
+
+        SplitSession(int width, int height, int splitWidth, int splitHeight) {
+            this.width = width;
+            this.height = height;
+            this.splitWidth = splitWidth;
+            this.splitHeight = splitHeight;
+            // Calcula o tamanho da estrutura
+            this.structSize = new FpSplit.FPSPLIT_INFO().size();
+            // Aloca memória para array de 10 estruturas
+            this.infoArray = new Memory((long) structSize * MAX_FINGERS);
+            for (int i = 0; i < MAX_FINGERS; i++) {
+                fingerBuffers[i] = new Memory((long) splitWidth * splitHeight);
+            }
+        }
+
+        boolean matches(int width, int height, int splitWidth, int splitHeight) {
+            return this.width == width && this.height == height
+                    && this.splitWidth == splitWidth && this.splitHeight == splitHeight;
+        }
+
+        /**
+         * Writes each output buffer pointer at offset 24 of its structure before every split
+         */
+        void bindOutputBuffers() {
+            for (int i = 0; i < MAX_FINGERS; i++) {
+                infoArray.setPointer((long) i * structSize + 24, fingerBuffers[i]);
+            }
+        }
+
+        void free() {
+            for (Memory buffer : fingerBuffers) {
+                buffer.close();
+            }
+            infoArray.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+
+import java.util.List;
+
+/**
+ * Device backend used by {@code FingerprintScannerService}.
+ * Return codes follow the vendor DLL convention (1 = success) so that callers
+ * can keep logging the same codes regardless of the active implementation.
+ */
+public interface ScannerBackend {
+
+    /**
+     * Short name shown in logs and status responses
+     */
+    String getName();
+
+    /**
+     * Opens the sensor and the image processing library (LIVESCAN_Init + MOSAIC_Init)
+     */
+    int open();
+
+    /**
+     * Closes the sensor and the image processing library
+     */
+    int close();
+
+    /**
+     * Sets the dry/wet sensitivity level
+     */
+    int setFingerDryWet(int level);
+
+    /**
+     * Sets the capture window and reads one raw 8-bit frame into {@code rawData}
+     */
+    int captureRaw(int width, int height, byte[] rawData);
+
+    /**
+     * Fingerprint quality in the range [0, 100]
+     */
+    int fingerQuality(byte[] image, int width, int height);
+
+    /**
+     * Checks if there is a finger on the image
+     */
+    boolean isFinger(byte[] image, int width, int height);
+
+    /**
+     * Splits a slap image into individual fingers of {@code splitWidth x splitHeight}
+     */
+    List<FingerSplitResult> splitFingers(byte[] image, int width, int height, int splitWidth, int splitHeight);
+
+    // ========== Frame buffer variants ==========
+    // Backends that can work on native memory override these; the defaults copy to the heap.
+
+    /**
+     * Reads one raw frame of {@code frame.getWidth() x frame.getHeight()} into the frame buffer
+     */
+    default int captureRaw(FrameBuffer frame) {
+        byte[] rawData = new byte[frame.size()];
+        int result = captureRaw(frame.getWidth(), frame.getHeight(), rawData);
+        frame.copyFrom(rawData);
+        return result;
+    }
+
+    default int fingerQuality(FrameBuffer frame, int width, int height) {
+        return fingerQuality(frame.toByteArray(), width, height);
+    }
+
+    default boolean isFinger(FrameBuffer frame) {
+        return isFinger(frame.toByteArray(), frame.getWidth(), frame.getHeight());
+    }
+
+    default List<FingerSplitResult> splitFingers(FrameBuffer frame, int splitWidth, int splitHeight) {
+        return splitFingers(frame.toByteArray(), frame.getWidth(), frame.getHeight(), splitWidth, splitHeight);
+    }
+
+    default int fakeScore(FrameBuffer frame) {
+        return fakeScore(frame.toByteArray(), frame.getWidth(), frame.getHeight());
+    }
+
+    /**
+     * Opens a template algorithm handle (0 on failure)
+     */
+    int openAlgorithm();
+
+    /**
+     * Releases a handle returned by {@link #openAlgorithm()}
+     */
+    void closeAlgorithm(int handle);
+
+    /**
+     * Creates an ISO 19794-2 template from a single finger image
+     */
+    int createIsoTemplate(int handle, byte[] image, byte[] template);
+
+    /**
+     * Compares two templates, returning the matcher score
+     */
+    int compareTemplates(int handle, byte[] template1, byte[] template2);
+
+    /**
+     * Whether the vendor WSQ codec handles images of this size, so callers only lease an algorithm
+     * handle for the images it can compress
+     */
+    default boolean supportsWsq(int width, int height) {
+        return false;
+    }
+
+    /**
+     * Compresses a raw image to WSQ with the vendor codec, writing into {@code wsq}.
+     * Returns the WSQ length, or 0 when the backend has no codec for this image.
+     */
+    default int compressWsq(int handle, byte[] image, int width, int height, byte[] wsq) {
+        return 0;
+    }
+
+    /**
+     * Decompresses a vendor WSQ image into {@code image}; returns 0 on failure or without a codec
+     */
+    default int decompressWsq(int handle, byte[] wsq, int length, byte[] image) {
+        return 0;
+    }
+
+    /**
+     * Liveness score (higher means more likely a live finger)
+     */
+    int fakeScore(byte[] image, int width, int height);
+
+    /**
+     * Emits a device beep
+     */
+    int beep(int times);
+}
@@ -0,0 +1,300 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import com.github.bluestring_digital.fingerprint.image.SlapSegmenter;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import com.github.bluestring_digital.fingerprint.template.IsoTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Pure-Java backend for profiling and load testing without the scanner.
+ * Frames are replayed from {@code fingerprint.simulated.frames-dir} (raw 8-bit files whose
+ * size equals width*height) or synthesized, and delivered at a configurable frame rate,
+ * latency and jitter.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "fingerprint.backend", havingValue = "simulated")
+public class SimulatedScannerBackend implements ScannerBackend {
+
+    /** Frames with increasing ridge contrast while the finger settles on the glass */
+    private static final double[] SETTLE_AMPLITUDES = {0.25, 0.45, 0.65, 0.85};
+    private static final int PLATEAU_FRAMES = 8;
+
+    private final double frameRate;
+    private final long latencyMs;
+    private final long jitterMs;
+    private final int fingerOnFrames;
+    private final int fingerOffFrames;
+    private final String framesDir;
+    private final long seed;
+
+    private final Map<Long, FrameSet> frameSets = new ConcurrentHashMap<>();
+    private final AtomicLong frameCounter = new AtomicLong();
+    private final AtomicInteger algorithmHandles = new AtomicInteger();
+    private final Object pacingLock = new Object();
+    /** Same segmentation as the Java split engine; runs on the device thread like FpSplit */
+    private final SlapSegmenter segmenter = new SlapSegmenter(null);
+    private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[0]);
+    private long nextFrameNanos = 0;
+
+    public SimulatedScannerBackend(
+            @Value("${fingerprint.simulated.frame-rate:10}") double frameRate,
+            @Value("${fingerprint.simulated.latency-ms:30}") long latencyMs,
+            @Value("${fingerprint.simulated.jitter-ms:10}") long jitterMs,
+            @Value("${fingerprint.simulated.finger-on-frames:0}") int fingerOnFrames,
+            @Value("${fingerprint.simulated.finger-off-frames:0}") int fingerOffFrames,
+            @Value("${fingerprint.simulated.frames-dir:}") String framesDir,
+            @Value("${fingerprint.simulated.seed:42}") long seed) {
+        this.frameRate = frameRate;
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.fingerOnFrames = fingerOnFrames;
+        this.fingerOffFrames = fingerOffFrames;
+        this.framesDir = framesDir;
+        this.seed = seed;
+        log.info("Simulated scanner backend: {} FPS, latency {}ms +/- {}ms, frames {}",
+                frameRate, latencyMs, jitterMs, framesDir.isEmpty() ? "synthetic" : framesDir);
+    }
+
+    @Override
+    public String getName() {
+        return "simulated";
+    }
+
+    @Override
+    public int open() {
+        frameCounter.set(0);
+        return 1;
+    }
+
+    @Override
+    public int close() {
+        return 1;
+    }
+
+    @Override
+    public int setFingerDryWet(int level) {
+        return 1;
+    }
+
+    @Override
+    public int captureRaw(int width, int height, byte[] rawData) {
+        if (!pace()) {
+            return 0;
+        }
+        byte[] frame = nextFrame(width, height);
+        System.arraycopy(frame, 0, rawData, 0, Math.min(frame.length, rawData.length));
+        return 1;
+    }
+
+    @Override
+    public int captureRaw(FrameBuffer frame) {
+        if (!pace()) {
+            return 0;
+        }
+        frame.copyFrom(nextFrame(frame.getWidth(), frame.getHeight()));
+        return 1;
+    }
+
+    @Override
+    public int fingerQuality(FrameBuffer frame, int width, int height) {
+        return SyntheticImages.quality(scratch(frame), width, height);
+    }
+
+    @Override
+    public boolean isFinger(FrameBuffer frame) {
+        return SyntheticImages.isFinger(scratch(frame), frame.getWidth(), frame.getHeight());
+    }
+
+    @Override
+    public List<FingerSplitResult> splitFingers(FrameBuffer frame, int splitWidth, int splitHeight) {
+        return segmenter.split(scratch(frame), frame.getWidth(), frame.getHeight(), splitWidth, splitHeight);
+    }
+
+    @Override
+    public int fakeScore(FrameBuffer frame) {
+        return isFinger(frame) ? 150 : 0;
+    }
+
+    @Override
+    public int fingerQuality(byte[] image, int width, int height) {
+        return SyntheticImages.quality(image, width, height);
+    }
+
+    @Override
+    public boolean isFinger(byte[] image, int width, int height) {
+        return SyntheticImages.isFinger(image, width, height);
+    }
+
+    @Override
+    public List<FingerSplitResult> splitFingers(byte[] image, int width, int height,
+                                                int splitWidth, int splitHeight) {
+        return segmenter.split(image, width, height, splitWidth, splitHeight);
+    }
+
+    @Override
+    public int openAlgorithm() {
+        return algorithmHandles.incrementAndGet();
+    }
+
+    @Override
+    public void closeAlgorithm(int handle) {
+    }
+
+    @Override
+    public int createIsoTemplate(int handle, byte[] image, byte[] template) {
+        int width = 300;
+        int height = image.length / width;
+        byte[] encoded = SyntheticImages.extractTemplate(image, width, height).encode();
+        if (encoded.length > template.length) {
+            return 0;
+        }
+        System.arraycopy(encoded, 0, template, 0, encoded.length);
+        return 1;
+    }
+
+    @Override
+    public int compareTemplates(int handle, byte[] template1, byte[] template2) {
+        try {
+            return SyntheticImages.compare(IsoTemplate.parse(template1), IsoTemplate.parse(template2));
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid template in simulated comparison: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public int fakeScore(byte[] image, int width, int height) {
+        return SyntheticImages.isFinger(image, width, height) ? 150 : 0;
+    }
+
+    @Override
+    public int beep(int times) {
+        log.debug("Simulated beep x{}", times);
+        return 1;
+    }
+
+    /**
+     * Copies the frame into a per-thread array so the pure-Java algorithms run without allocating
+     */
+    private byte[] scratch(FrameBuffer frame) {
+        byte[] buffer = scratch.get();
+        if (buffer.length != frame.size()) {
+            buffer = new byte[frame.size()];
+            scratch.set(buffer);
+        }
+        frame.copyTo(buffer);
+        return buffer;
+    }
+
+    /**
+     * Waits for the next frame slot plus latency and jitter. Returns false if interrupted.
+     */
+    private boolean pace() {
+        try {
+            long waitNanos;
+            synchronized (pacingLock) {
+                long now = System.nanoTime();
+                long interval = frameRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / frameRate) : 0;
+                long slot = Math.max(now, nextFrameNanos);
+                nextFrameNanos = slot + interval;
+                waitNanos = slot - now;
+            }
+            long jitter = jitterMs > 0 ? ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1) : 0;
+            long delayNanos = waitNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, latencyMs + jitter));
+            if (delayNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private byte[] nextFrame(int width, int height) {
+        FrameSet set = frameSets.computeIfAbsent(((long) width << 32) | height,
+                key -> loadFrames(width, height));
+        long n = frameCounter.getAndIncrement();
+
+        if (set.recorded != null) {
+            return set.recorded.get((int) (n % set.recorded.size()));
+        }
+        long index = n;
+        if (fingerOnFrames > 0) {
+            long position = n % (fingerOnFrames + fingerOffFrames);
+            if (position < fingerOffFrames) {
+                return set.empty;
+            }
+            index = position - fingerOffFrames;
+        }
+        if (index < set.settle.length) {
+            return set.settle[(int) index];
+        }
+        return set.plateau[(int) ((index - set.settle.length) % set.plateau.length)];
+    }
+
+    private FrameSet loadFrames(int width, int height) {
+        FrameSet set = new FrameSet();
+        if (!framesDir.isEmpty()) {
+            set.recorded = readRecordedFrames(width * height);
+            if (!set.recorded.isEmpty()) {
+                log.info("Replaying {} recorded frames for {}x{}", set.recorded.size(), width, height);
+                return set;
+            }
+            log.warn("No recorded frames of {} bytes in {}, synthesizing", width * height, framesDir);
+            set.recorded = null;
+        }
+
+        long start = System.nanoTime();
+        set.empty = SyntheticImages.synthesize(width, height, 0, seed, false);
+        set.settle = new byte[SETTLE_AMPLITUDES.length][];
+        for (int i = 0; i < SETTLE_AMPLITUDES.length; i++) {
+            set.settle[i] = SyntheticImages.synthesize(width, height, SETTLE_AMPLITUDES[i], seed + i + 1, true);
+        }
+        set.plateau = new byte[PLATEAU_FRAMES][];
+        for (int i = 0; i < PLATEAU_FRAMES; i++) {
+            set.plateau[i] = SyntheticImages.synthesize(width, height, 1.0, seed + 100 + i, true);
+        }
+        log.info("Synthesized frames for {}x{} in {}ms", width, height,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return set;
+    }
+
+    private List<byte[]> readRecordedFrames(int frameSize) {
+        List<byte[]> frames = new ArrayList<>();
+        try (Stream<Path> files = Files.list(Path.of(framesDir))) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                if (Files.size(file) == frameSize) {
+                    frames.add(Files.readAllBytes(file));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read recorded frames from {}: {}", framesDir, e.getMessage());
+        }
+        return frames;
+    }
+
+    private static class FrameSet {
+        List<byte[]> recorded;
+        byte[] empty;
+        byte[][] settle;
+        byte[][] plateau;
+    }
+}
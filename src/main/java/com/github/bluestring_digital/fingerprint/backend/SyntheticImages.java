@@ -0,0 +1,226 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import com.github.bluestring_digital.fingerprint.template.IsoTemplate;
+
+import java.util.Random;
+
+/**
+ * Pure-Java image helpers for the simulated backend: ridge pattern synthesis and
+ * cheap stand-ins for the vendor quality and template algorithms.
+ * The results are deterministic for a given input so load tests are repeatable.
+ */
+final class SyntheticImages {
+
+    static final int BACKGROUND = 232;
+    private static final int BLOCK = 16;
+    private static final int FOREGROUND_STD = 18;
+    private static final int MINUTIA_STEP = 20;
+    private static final int RIDGE_LEVEL = 70;
+
+    private SyntheticImages() {
+    }
+
+    /**
+     * Synthesizes a frame with elliptical fingers filled with loop-shaped ridges.
+     * Slap-sized windows (width >= 1000) get four fingers, smaller windows a single one.
+     */
+    static byte[] synthesize(int width, int height, double amplitude, long seed, boolean finger) {
+        byte[] image = new byte[width * height];
+        Random random = new Random(seed);
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) (BACKGROUND + random.nextInt(13) - 6);
+        }
+        if (!finger) {
+            return image;
+        }
+
+        if (width >= 1000) {
+            double[] stagger = {0.04, 0.0, -0.02, 0.05};
+            for (int f = 0; f < 4; f++) {
+                drawFinger(image, width, height,
+                        width * (0.2 + 0.2 * f), height * (0.42 + stagger[f]),
+                        width * 0.075, height * 0.2, 9 + f, amplitude, random);
+            }
+        } else {
+            drawFinger(image, width, height, width / 2.0, height / 2.0,
+                    width * 0.38, height * 0.42, 9, amplitude, random);
+        }
+        return image;
+    }
+
+    private static void drawFinger(byte[] image, int width, int height, double cx, double cy,
+                                   double ax, double ay, double period, double amplitude, Random random) {
+        double coreY = cy - ay * 0.2;
+        int x0 = Math.max(0, (int) (cx - ax));
+        int x1 = Math.min(width - 1, (int) (cx + ax));
+        int y0 = Math.max(0, (int) (cy - ay));
+        int y1 = Math.min(height - 1, (int) (cy + ay));
+
+        for (int y = y0; y <= y1; y++) {
+            double ny = (y - cy) / ay;
+            for (int x = x0; x <= x1; x++) {
+                double nx = (x - cx) / ax;
+                if (nx * nx + ny * ny > 1.0) continue;
+
+                double dx = x - cx;
+                double dy = (y - coreY) * 1.3;
+                double r = Math.sqrt(dx * dx + dy * dy);
+                int value = (int) (128 - amplitude * 100 * Math.cos(2 * Math.PI * r / period))
+                        + random.nextInt(13) - 6;
+                image[y * width + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+    }
+
+    /**
+     * Quality in [0, 100] from block contrast and foreground coverage.
+     * The number of rows is taken from the buffer length so that callers passing a
+     * smaller nominal size (e.g. 800x750 for a 1600x1500 frame) still cover the whole buffer.
+     */
+    static int quality(byte[] image, int width, int height) {
+        int rows = width > 0 ? image.length / width : 0;
+        BlockStats stats = blockStats(image, width, rows);
+        if (stats.foreground == 0) {
+            return 0;
+        }
+        double coverage = Math.min(1.0, (double) stats.foreground / stats.total / 0.12);
+        return (int) Math.round(Math.min(100.0, stats.meanForegroundStd * 1.15 * coverage));
+    }
+
+    /**
+     * Checks for at least 3% foreground blocks
+     */
+    static boolean isFinger(byte[] image, int width, int height) {
+        int rows = width > 0 ? image.length / width : 0;
+        BlockStats stats = blockStats(image, width, rows);
+        return stats.total > 0 && stats.foreground >= stats.total * 0.03;
+    }
+
+    /**
+     * Extracts pseudo-minutiae: foreground grid points that fall on a ridge,
+     * with the local ridge orientation from averaged squared gradients.
+     */
+    static IsoTemplate extractTemplate(byte[] image, int width, int height) {
+        int capacity = Math.min(IsoTemplate.MAX_MINUTIAE, 60);
+        int[] xs = new int[capacity];
+        int[] ys = new int[capacity];
+        int[] angles = new int[capacity];
+        int[] types = new int[capacity];
+        int[] qualities = new int[capacity];
+        int n = 0;
+
+        for (int gy = MINUTIA_STEP; gy < height - MINUTIA_STEP && n < capacity; gy += MINUTIA_STEP) {
+            for (int gx = MINUTIA_STEP; gx < width - MINUTIA_STEP && n < capacity; gx += MINUTIA_STEP) {
+                int std = (int) blockStd(image, width, gx - BLOCK / 2, gy - BLOCK / 2);
+                if (std <= FOREGROUND_STD) continue;
+
+                // Keep only grid points lying on a ridge, so the selection follows the ridge layout
+                int sum = 0;
+                for (int y = gy - 1; y <= gy + 1; y++) {
+                    for (int x = gx - 1; x <= gx + 1; x++) {
+                        sum += image[y * width + x] & 0xFF;
+                    }
+                }
+                if (sum / 9 >= RIDGE_LEVEL) continue;
+
+                double gxx = 0;
+                double gyy = 0;
+                double gxy = 0;
+                for (int y = gy - 4; y <= gy + 4; y++) {
+                    for (int x = gx - 4; x <= gx + 4; x++) {
+                        int dx = (image[y * width + x + 1] & 0xFF) - (image[y * width + x - 1] & 0xFF);
+                        int dy = (image[(y + 1) * width + x] & 0xFF) - (image[(y - 1) * width + x] & 0xFF);
+                        gxx += dx * dx;
+                        gyy += dy * dy;
+                        gxy += dx * dy;
+                    }
+                }
+                double orientation = 0.5 * Math.atan2(2 * gxy, gxx - gyy) + Math.PI / 2;
+                int degrees = (int) Math.round(Math.toDegrees(orientation));
+                degrees = ((degrees % 360) + 360) % 360;
+
+                xs[n] = gx;
+                ys[n] = gy;
+                angles[n] = degrees * 256 / 360;
+                types[n] = ((gx + gy) / MINUTIA_STEP) % 2 == 0 ? IsoTemplate.TYPE_ENDING : IsoTemplate.TYPE_BIFURCATION;
+                qualities[n] = Math.min(100, std);
+                n++;
+            }
+        }
+
+        return new IsoTemplate(width, height, 0, quality(image, width, height),
+                copy(xs, n), copy(ys, n), copy(angles, n), copy(types, n), copy(qualities, n));
+    }
+
+    /**
+     * Fraction of minutiae paired within 10 px and ~34 degrees, scaled to [0, 100].
+     */
+    static int compare(IsoTemplate a, IsoTemplate b) {
+        if (a.getCount() == 0 || b.getCount() == 0) {
+            return 0;
+        }
+        boolean[] used = new boolean[b.getCount()];
+        int matched = 0;
+        for (int i = 0; i < a.getCount(); i++) {
+            for (int j = 0; j < b.getCount(); j++) {
+                if (used[j]) continue;
+                int dx = a.getX()[i] - b.getX()[j];
+                int dy = a.getY()[i] - b.getY()[j];
+                int da = Math.abs(a.getAngle()[i] - b.getAngle()[j]);
+                da = Math.min(da, 256 - da);
+                if (dx * dx + dy * dy <= 100 && da <= 24) {
+                    used[j] = true;
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return matched * 200 / (a.getCount() + b.getCount());
+    }
+
+    private static int[] copy(int[] values, int n) {
+        int[] result = new int[n];
+        System.arraycopy(values, 0, result, 0, n);
+        return result;
+    }
+
+    private static double blockStd(byte[] image, int width, int left, int top) {
+        long sum = 0;
+        long sumSq = 0;
+        int n = 0;
+        for (int y = top; y < top + BLOCK; y += 2) {
+            int row = y * width;
+            for (int x = left; x < left + BLOCK; x += 2) {
+                int v = image[row + x] & 0xFF;
+                sum += v;
+                sumSq += (long) v * v;
+                n++;
+            }
+        }
+        double mean = (double) sum / n;
+        return Math.sqrt(Math.max(0, (double) sumSq / n - mean * mean));
+    }
+
+    private static BlockStats blockStats(byte[] image, int width, int rows) {
+        BlockStats stats = new BlockStats();
+        double stdSum = 0;
+        for (int top = 0; top + BLOCK <= rows; top += BLOCK) {
+            for (int left = 0; left + BLOCK <= width; left += BLOCK) {
+                double std = blockStd(image, width, left, top);
+                stats.total++;
+                if (std > FOREGROUND_STD) {
+                    stats.foreground++;
+                    stdSum += std;
+                }
+            }
+        }
+        stats.meanForegroundStd = stats.foreground > 0 ? stdSum / stats.foreground : 0;
+        return stats;
+    }
+
+    private static class BlockStats {
+        int total;
+        int foreground;
+        double meanForegroundStd;
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+/**
+ * Paces the acquire stage of the preview pipeline:
+ * <ul>
+ *   <li>idle interval while no finger is on the glass (after a few consecutive empty frames),</li>
+ *   <li>active interval (0 = sensor speed) as soon as a finger is detected,</li>
+ *   <li>exponential back-off while the clients' WebSocket outbound buffers fill up.</li>
+ * </ul>
+ * Updated from the analyze and publish stages, read by the acquire stage.
+ */
+public final class AdaptiveFrameRate {
+
+    private static final long BACKOFF_STEP_MS = 100;
+    private static final int MAX_BACKOFF_LEVEL = 5;
+
+    private final long idleIntervalMs;
+    private final long activeIntervalMs;
+    private final long maxIntervalMs;
+    private final int idleAfterFrames;
+    private final double backoffThreshold;
+
+    private boolean active;
+    private int emptyFrames;
+    private int backoffLevel;
+
+    public AdaptiveFrameRate(long idleIntervalMs, long activeIntervalMs, long maxIntervalMs,
+                             int idleAfterFrames, double backoffThreshold) {
+        this.idleIntervalMs = idleIntervalMs;
+        this.activeIntervalMs = activeIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.idleAfterFrames = idleAfterFrames;
+        this.backoffThreshold = backoffThreshold;
+    }
+
+    /**
+     * Switches to the active rate on the first finger frame and back to idle after
+     * {@code idleAfterFrames} consecutive empty frames
+     */
+    public synchronized void onFrameAnalyzed(boolean finger) {
+        if (finger) {
+            active = true;
+            emptyFrames = 0;
+        } else if (active && ++emptyFrames >= idleAfterFrames) {
+            active = false;
+        }
+    }
+
+    /**
+     * Backs off while the fullest client buffer is above the threshold (fraction of its limit)
+     * and recovers one step at a time once it drains below half of it
+     */
+    public synchronized void onBacklog(double bufferRatio) {
+        if (bufferRatio > backoffThreshold) {
+            backoffLevel = Math.min(MAX_BACKOFF_LEVEL, backoffLevel + 1);
+        } else if (bufferRatio < backoffThreshold / 2 && backoffLevel > 0) {
+            backoffLevel--;
+        }
+    }
+
+    /**
+     * Target time between two capture starts
+     */
+    public synchronized long intervalMs() {
+        long interval = active ? activeIntervalMs : idleIntervalMs;
+        if (backoffLevel > 0) {
+            interval = Math.max(interval, BACKOFF_STEP_MS << (backoffLevel - 1));
+        }
+        return Math.min(interval, maxIntervalMs);
+    }
+
+    /**
+     * How long to wait before the next capture, given the time the last one took
+     */
+    public long delayMs(long elapsedMs) {
+        return Math.max(0, intervalMs() - elapsedMs);
+    }
+
+    public synchronized boolean isActive() {
+        return active;
+    }
+
+    public synchronized int getBackoffLevel() {
+        return backoffLevel;
+    }
+
+    synchronized void reset() {
+        active = false;
+        emptyFrames = 0;
+        backoffLevel = 0;
+    }
+}
@@ -0,0 +1,224 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.image.ImageFormat;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Captures automatically during live preview. The analyze stage reports every frame; the best
+ * frame of the current placement is kept (retained, not copied) and, once quality plateaus above
+ * the threshold, it is split and templated directly instead of acquiring a new frame.
+ * The result goes to {@code /topic/fingerprint/capture}. The next capture is armed when the
+ * fingers are lifted.
+ */
+@Slf4j
+@Component
+public class AutoCapture {
+
+    private static final int MIN_TEMPLATE_QUALITY = 20;
+
+    private final FingerprintScannerService scannerService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final boolean enabled;
+    private final ImageFormat imageFormat;
+    private final QualityPlateau plateau;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> Thread.ofPlatform().daemon().name("auto-capture").unstarted(runnable));
+
+    private final AtomicLong captures = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private FrameBuffer best;
+    private int bestQuality = -1;
+    private boolean armed = true;
+    private volatile Map<String, Object> lastResult;
+
+    public AutoCapture(FingerprintScannerService scannerService,
+                       SimpMessagingTemplate messagingTemplate,
+                       @Value("${fingerprint.auto-capture.enabled:true}") boolean enabled,
+                       @Value("${fingerprint.auto-capture.window:4}") int window,
+                       @Value("${fingerprint.auto-capture.min-quality:60}") int minQuality,
+                       @Value("${fingerprint.auto-capture.tolerance:8}") int tolerance,
+                       @Value("${fingerprint.auto-capture.image-format:bmp}") String imageFormat) {
+        this.scannerService = scannerService;
+        this.messagingTemplate = messagingTemplate;
+        this.enabled = enabled;
+        this.imageFormat = ImageFormat.parse(imageFormat);
+        this.plateau = new QualityPlateau(window, minQuality, tolerance);
+    }
+
+    /**
+     * Called by the analyze stage for every frame, in capture order
+     */
+    public synchronized void onFrame(FrameBuffer frame, int quality, boolean finger) {
+        if (!enabled) {
+            return;
+        }
+        if (!finger) {
+            // Fingers lifted: forget this placement and arm the next capture
+            clear();
+            armed = true;
+            return;
+        }
+        if (!armed) {
+            return;
+        }
+
+        if (quality > bestQuality) {
+            releaseBest();
+            best = frame.retain();
+            bestQuality = quality;
+        }
+
+        if (plateau.offer(quality)) {
+            armed = false;
+            FrameBuffer promoted = best;
+            int promotedQuality = bestQuality;
+            best = null;
+            bestQuality = -1;
+            plateau.reset();
+            log.info("Qualidade estável em {}, captura automática", promotedQuality);
+            try {
+                executor.execute(new Promotion(promoted, promotedQuality));
+            } catch (RejectedExecutionException e) {
+                // Já desligado: o frame retido não chega a ser processado
+                promoted.close();
+            }
+        }
+    }
+
+    /**
+     * Drops the tracked frame and re-arms, e.g. when the preview restarts
+     */
+    public synchronized void reset() {
+        clear();
+        armed = true;
+    }
+
+    public Map<String, Object> getLastResult() {
+        return lastResult;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (this) {
+            stats.put("armed", armed);
+            stats.put("bestQuality", bestQuality);
+        }
+        stats.put("captures", captures.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Queued promotions never run, so their retained frames are released here
+        for (Runnable pending : executor.shutdownNow()) {
+            if (pending instanceof Promotion promotion) {
+                promotion.frame.close();
+            }
+        }
+        reset();
+    }
+
+    /**
+     * Splits the promoted frame and creates one template per usable finger
+     */
+    private void process(FrameBuffer frame, int quality) {
+        Map<String, Object> result = new HashMap<>();
+        long timestamp = frame.getTimestamp();
+        try {
+            List<FingerSplitResult> fingers;
+            try (frame) {
+                fingers = scannerService.splitFingers(frame);
+            }
+
+            List<FingerSplitResult> usable = fingers.stream()
+                    .filter(finger -> finger.getQuality() >= MIN_TEMPLATE_QUALITY)
+                    .toList();
+            List<byte[]> templates = scannerService.createISOTemplates(
+                    usable.stream().map(FingerSplitResult::getImageData).toList());
+
+            List<Map<String, Object>> fingersList = new ArrayList<>();
+            for (FingerSplitResult finger : fingers) {
+                Map<String, Object> fingerData = new HashMap<>();
+                fingerData.put("image", scannerService.encodeImage(finger.getImageData(), finger.getWidth(),
+                        finger.getHeight(), imageFormat));
+                fingerData.put("quality", finger.getQuality());
+                fingerData.put("angle", finger.getAngle());
+                fingerData.put("x", finger.getX());
+                fingerData.put("y", finger.getY());
+                int templateIndex = usable.indexOf(finger);
+                if (templateIndex >= 0) {
+                    fingerData.put("template", Base64.getEncoder().encodeToString(templates.get(templateIndex)));
+                }
+                fingersList.add(fingerData);
+            }
+
+            scannerService.beep(1);
+            captures.incrementAndGet();
+
+            result.put("success", true);
+            result.put("fingers", fingersList);
+            result.put("format", imageFormat.name().toLowerCase());
+            result.put("count", fingersList.size());
+            result.put("quality", quality);
+            result.put("timestamp", timestamp);
+        } catch (Exception e) {
+            log.error("Auto-capture failed", e);
+            failures.incrementAndGet();
+            result.put("success", false);
+            result.put("message", "Error: " + e.getMessage());
+        }
+        lastResult = result;
+        messagingTemplate.convertAndSend("/topic/fingerprint/capture", result);
+    }
+
+    /**
+     * A promoted frame waiting to be processed; owns its reference to the frame
+     */
+    private final class Promotion implements Runnable {
+        private final FrameBuffer frame;
+        private final int quality;
+
+        Promotion(FrameBuffer frame, int quality) {
+            this.frame = frame;
+            this.quality = quality;
+        }
+
+        @Override
+        public void run() {
+            process(frame, quality);
+        }
+    }
+
+    private void clear() {
+        releaseBest();
+        bestQuality = -1;
+        plateau.reset();
+    }
+
+    private void releaseBest() {
+        if (best != null) {
+            best.close();
+            best = null;
+        }
+    }
+}
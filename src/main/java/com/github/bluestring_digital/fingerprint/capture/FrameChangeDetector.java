@@ -0,0 +1,140 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Detects preview frames that show nothing new, so the pipeline can skip analyzing, encoding
+ * and sending them. Every {@code sampleStep}-th pixel of every {@code sampleStep}-th row is
+ * compared with the last frame that went downstream; the frame is unchanged when no block of
+ * {@code blockSize x blockSize} pixels moved by more than {@code threshold} gray levels on average.
+ * Comparing per block keeps a small local change (a finger shifting at one edge) from being
+ * averaged away by the rest of the frame.
+ * <p>
+ * At most {@code keyframeInterval} unchanged frames are reported in a row, so clients joining a
+ * still preview get a full frame and slow drift is eventually picked up.
+ * Used by the acquire stage only; not thread-safe.
+ */
+public final class FrameChangeDetector {
+
+    private final double threshold;
+    private final int sampleStep;
+    private final int blockSize;
+    private final int keyframeInterval;
+
+    private int width;
+    private int height;
+    private byte[] reference;
+    private byte[] current;
+    private long[] blockDifference;
+    private int[] blockSamples;
+    private int unchangedInRow;
+    private long frames;
+    private long unchangedFrames;
+
+    public FrameChangeDetector(double threshold, int sampleStep, int blockSize, int keyframeInterval) {
+        if (sampleStep < 1 || blockSize < sampleStep) {
+            throw new IllegalArgumentException("Invalid sampling: step " + sampleStep + ", block " + blockSize);
+        }
+        this.threshold = threshold;
+        this.sampleStep = sampleStep;
+        this.blockSize = blockSize;
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    public boolean isUnchanged(FrameBuffer frame) {
+        return isUnchanged(frame.data(), frame.getWidth(), frame.getHeight());
+    }
+
+    /**
+     * Compares a frame with the last changed one; a changed frame becomes the new reference
+     */
+    public boolean isUnchanged(ByteBuffer pixels, int width, int height) {
+        frames++;
+        if (reference == null || this.width != width || this.height != height) {
+            resize(width, height);
+            sample(pixels, reference);
+            return false;
+        }
+
+        sample(pixels, current);
+        Arrays.fill(blockDifference, 0);
+        int columns = (width - sampleStep / 2 + sampleStep - 1) / sampleStep;
+        int blockColumns = (width + blockSize - 1) / blockSize;
+        int index = 0;
+        for (int y = sampleStep / 2; y < height; y += sampleStep) {
+            int blockRow = (y / blockSize) * blockColumns;
+            for (int column = 0; column < columns; column++, index++) {
+                int x = sampleStep / 2 + column * sampleStep;
+                int difference = (current[index] & 0xFF) - (reference[index] & 0xFF);
+                blockDifference[blockRow + x / blockSize] += Math.abs(difference);
+            }
+        }
+
+        boolean changed = unchangedInRow >= keyframeInterval;
+        for (int block = 0; block < blockDifference.length && !changed; block++) {
+            changed = blockSamples[block] > 0 && blockDifference[block] > threshold * blockSamples[block];
+        }
+        if (changed) {
+            byte[] previous = reference;
+            reference = current;
+            current = previous;
+            unchangedInRow = 0;
+            return false;
+        }
+        unchangedInRow++;
+        unchangedFrames++;
+        return true;
+    }
+
+    /**
+     * Forgets the reference, so the next frame is reported as changed
+     */
+    public void reset() {
+        reference = null;
+        unchangedInRow = 0;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getUnchangedFrames() {
+        return unchangedFrames;
+    }
+
+    private void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int columns = (width - sampleStep / 2 + sampleStep - 1) / sampleStep;
+        int rows = (height - sampleStep / 2 + sampleStep - 1) / sampleStep;
+        reference = new byte[columns * rows];
+        current = new byte[columns * rows];
+        int blockColumns = (width + blockSize - 1) / blockSize;
+        int blockRows = (height + blockSize - 1) / blockSize;
+        blockDifference = new long[blockColumns * blockRows];
+        blockSamples = new int[blockColumns * blockRows];
+        for (int y = sampleStep / 2; y < height; y += sampleStep) {
+            for (int x = sampleStep / 2; x < width; x += sampleStep) {
+                blockSamples[(y / blockSize) * blockColumns + x / blockSize]++;
+            }
+        }
+        unchangedInRow = 0;
+    }
+
+    /**
+     * Reads the sampled pixels with absolute gets, so native frames are never copied whole
+     */
+    private void sample(ByteBuffer pixels, byte[] target) {
+        int base = pixels.position();
+        int index = 0;
+        for (int y = sampleStep / 2; y < height; y += sampleStep) {
+            int row = base + y * width;
+            for (int x = sampleStep / 2; x < width; x += sampleStep) {
+                target[index++] = pixels.get(row + x);
+            }
+        }
+    }
+}
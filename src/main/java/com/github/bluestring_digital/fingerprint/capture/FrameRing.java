@@ -0,0 +1,139 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer between two pipeline stages. When full, {@link #offer} evicts and closes
+ * the oldest element instead of blocking, so a slow consumer never stalls its producer and
+ * always sees the most recent frames.
+ */
+public final class FrameRing<T extends AutoCloseable> {
+
+    private final Object[] slots;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int head;
+    private int count;
+    private long offered;
+    private long dropped;
+
+    public FrameRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.slots = new Object[capacity];
+    }
+
+    /**
+     * Appends an element, closing the oldest one if the ring is full. Returns true if one was dropped.
+     */
+    public boolean offer(T element) {
+        T evicted = null;
+        lock.lock();
+        try {
+            offered++;
+            if (count == slots.length) {
+                evicted = removeFirst();
+                dropped++;
+            }
+            slots[(head + count) % slots.length] = element;
+            count++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(evicted);
+        return evicted != null;
+    }
+
+    /**
+     * Removes the oldest element, waiting up to {@code timeout} for one to arrive (null on timeout)
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return removeFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes and removes every pending element
+     */
+    public void clear() {
+        while (true) {
+            T element;
+            lock.lock();
+            try {
+                if (count == 0) {
+                    return;
+                }
+                element = removeFirst();
+            } finally {
+                lock.unlock();
+            }
+            closeQuietly(element);
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public long getOffered() {
+        lock.lock();
+        try {
+            return offered;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T removeFirst() {
+        T element = (T) slots[head];
+        slots[head] = null;
+        head = (head + 1) % slots.length;
+        count--;
+        return element;
+    }
+
+    private static void closeQuietly(AutoCloseable element) {
+        if (element == null) {
+            return;
+        }
+        try {
+            element.close();
+        } catch (Exception ignored) {
+            // Dropped frames only release pooled buffers
+        }
+    }
+}
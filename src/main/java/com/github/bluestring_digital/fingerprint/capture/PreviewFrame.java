@@ -0,0 +1,54 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.websocket.PreviewSettings;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * A frame travelling through the preview pipeline. Each stage fills in its result;
+ * the native buffer is released by the encode stage or when the frame is dropped.
+ */
+final class PreviewFrame implements AutoCloseable {
+
+    private FrameBuffer buffer;
+    final int width;
+    final int height;
+    final long timestamp;
+    final long capturedNanos;
+
+    /** Same picture as the last frame sent: analyze reuses its results and encode sends no pixels */
+    boolean unchanged;
+    int quality = -1;
+    boolean finger;
+    Map<PreviewSettings, ByteBuffer> encoded;
+    Map<String, Object> stompPayload;
+
+    PreviewFrame(FrameBuffer buffer) {
+        this.buffer = buffer;
+        this.width = buffer.getWidth();
+        this.height = buffer.getHeight();
+        this.timestamp = buffer.getTimestamp();
+        this.capturedNanos = System.nanoTime();
+    }
+
+    FrameBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the native buffer to the pool once the pixels are no longer needed
+     */
+    void releaseBuffer() {
+        if (buffer != null) {
+            buffer.close();
+            buffer = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        releaseBuffer();
+    }
+}
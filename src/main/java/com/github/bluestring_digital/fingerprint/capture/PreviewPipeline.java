@@ -0,0 +1,469 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService;
+import com.github.bluestring_digital.fingerprint.service.QualityScorer;
+import com.github.bluestring_digital.fingerprint.websocket.PreviewWebSocketHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live preview as four stages on their own threads, connected by drop-oldest {@link FrameRing}s:
+ * <pre>
+ * acquire -> analyze (quality, isFinger) -> encode -> publish
+ * </pre>
+ * The sensor is re-armed as soon as a frame is handed off, so the preview runs at the sensor's
+ * frame rate instead of the sum of all stage times. Stages that fall behind drop their oldest
+ * pending frame rather than blocking the stage before them.
+ * <p>
+ * The acquire rate is paced by {@link AdaptiveFrameRate}: slow while the glass is empty,
+ * full speed with a finger on it, and backing off when clients cannot keep up.
+ * Frames that show nothing new ({@link FrameChangeDetector}) are flagged right after capture:
+ * they keep the previous quality and are sent as a header-only "unchanged" message.
+ * Analyzed frames are also fed to {@link AutoCapture}. Quality is scored with a
+ * {@link QualityScorer.Tracker} per run, so the Java engine only rescores tiles that changed.
+ * <p>
+ * Stage times ({@code fingerprint.preview.stage}), frames dropped by each ring
+ * ({@code fingerprint.preview.dropped}) and capture-to-publish latency
+ * ({@code fingerprint.preview.latency}) are published as meters.
+ */
+@Slf4j
+@Component
+public class PreviewPipeline {
+
+    private static final long POLL_MS = 100;
+    /** Waited on top of the device command timeout for the acquire stage to finish its capture */
+    private static final long STOP_MARGIN_MS = 1000;
+
+    private final FingerprintScannerService scannerService;
+    private final QualityScorer qualityScorer;
+    private final PreviewWebSocketHandler previewHandler;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final AutoCapture autoCapture;
+    private final int ringCapacity;
+    private final boolean sendBinary;
+    private final boolean sendStomp;
+    private final AdaptiveFrameRate frameRate;
+    private final FrameChangeDetector changeDetector;
+    private final long stopTimeoutMs;
+
+    private final Object lifecycleLock = new Object();
+    private volatile boolean running;
+    /** Stop token of the current run; stage threads of an earlier run never resume */
+    private Run run;
+    private List<Thread> workers = List.of();
+    private FrameRing<PreviewFrame> analyzeRing;
+    private FrameRing<PreviewFrame> encodeRing;
+    private FrameRing<PreviewFrame> publishRing;
+    private volatile QualityScorer.Tracker qualityTracker;
+    /** Results of the last changed frame, reused for unchanged ones (analyze thread only) */
+    private boolean lastFinger;
+    private int lastQuality;
+    /** A frame was dropped or a client needs a full frame: the next capture is sent whole */
+    private volatile boolean resyncPreview;
+    private long clientSettingsVersion;
+
+    private final Map<String, StageStats> stageStats = new LinkedHashMap<>();
+    private final Map<String, Counter> droppedFrames = new LinkedHashMap<>();
+    private final Timer latency;
+    private final Counter unchangedFrames;
+
+    public PreviewPipeline(FingerprintScannerService scannerService,
+                           QualityScorer qualityScorer,
+                           PreviewWebSocketHandler previewHandler,
+                           SimpMessagingTemplate messagingTemplate,
+                           AutoCapture autoCapture,
+                           MeterRegistry meterRegistry,
+                           @Value("${fingerprint.preview.pipeline.ring-capacity:2}") int ringCapacity,
+                           @Value("${fingerprint.preview.transport:binary}") String transport,
+                           @Value("${fingerprint.preview.rate.idle-interval-ms:500}") long idleIntervalMs,
+                           @Value("${fingerprint.preview.rate.active-interval-ms:0}") long activeIntervalMs,
+                           @Value("${fingerprint.preview.rate.max-interval-ms:1000}") long maxIntervalMs,
+                           @Value("${fingerprint.preview.rate.idle-after-frames:5}") int idleAfterFrames,
+                           @Value("${fingerprint.preview.rate.backoff-threshold:0.25}") double backoffThreshold,
+                           @Value("${fingerprint.preview.change.enabled:true}") boolean skipUnchanged,
+                           @Value("${fingerprint.preview.change.threshold:8}") double changeThreshold,
+                           @Value("${fingerprint.preview.change.sample-step:4}") int changeSampleStep,
+                           @Value("${fingerprint.preview.change.block-size:64}") int changeBlockSize,
+                           @Value("${fingerprint.preview.change.keyframe-interval:25}") int keyframeInterval,
+                           @Value("${fingerprint.device.command-timeout-ms:10000}") long deviceTimeoutMs) {
+        this.scannerService = scannerService;
+        this.qualityScorer = qualityScorer;
+        this.previewHandler = previewHandler;
+        this.messagingTemplate = messagingTemplate;
+        this.autoCapture = autoCapture;
+        this.ringCapacity = ringCapacity;
+        this.stopTimeoutMs = deviceTimeoutMs + STOP_MARGIN_MS;
+        this.sendBinary = !"stomp".equalsIgnoreCase(transport);
+        this.sendStomp = !"binary".equalsIgnoreCase(transport);
+        this.frameRate = new AdaptiveFrameRate(idleIntervalMs, activeIntervalMs, maxIntervalMs,
+                idleAfterFrames, backoffThreshold);
+        this.changeDetector = skipUnchanged
+                ? new FrameChangeDetector(changeThreshold, changeSampleStep, changeBlockSize, keyframeInterval)
+                : null;
+        for (String stage : List.of("acquire", "analyze", "encode", "publish")) {
+            stageStats.put(stage, new StageStats(stage, meterRegistry));
+        }
+        for (String ring : List.of("analyze", "encode", "publish")) {
+            droppedFrames.put(ring, Counter.builder("fingerprint.preview.dropped")
+                    .description("Preview frames dropped because the next stage fell behind")
+                    .tag("ring", ring)
+                    .register(meterRegistry));
+        }
+        this.latency = Timer.builder("fingerprint.preview.latency")
+                .description("Time from capture to publish of a preview frame")
+                .register(meterRegistry);
+        this.unchangedFrames = Counter.builder("fingerprint.preview.unchanged")
+                .description("Preview frames sent without pixels because they matched the previous one")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts the stage threads. Returns false if the pipeline is already running.
+     */
+    public boolean start(int width, int height) {
+        synchronized (lifecycleLock) {
+            if (running) {
+                return false;
+            }
+            running = true;
+            Run current = new Run();
+            run = current;
+            frameRate.reset();
+            autoCapture.reset();
+            qualityTracker = qualityScorer.tracker();
+            if (changeDetector != null) {
+                changeDetector.reset();
+            }
+            FrameRing<PreviewFrame> analyze = new FrameRing<>(ringCapacity);
+            FrameRing<PreviewFrame> encode = new FrameRing<>(ringCapacity);
+            FrameRing<PreviewFrame> publish = new FrameRing<>(ringCapacity);
+            analyzeRing = analyze;
+            encodeRing = encode;
+            publishRing = publish;
+
+            workers = List.of(
+                    worker("acquire", () -> acquire(current, width, height, analyze)),
+                    worker("analyze", () -> stage(current, "analyze", analyze, "encode", encode, this::analyze)),
+                    worker("encode", () -> stage(current, "encode", encode, "publish", publish, this::encode)),
+                    worker("publish", () -> stage(current, "publish", publish, null, null, this::publish)));
+            workers.forEach(Thread::start);
+            log.info("Preview pipeline started {}x{} (ring capacity {})", width, height, ringCapacity);
+            return true;
+        }
+    }
+
+    /**
+     * Stops the stage threads and releases every frame still in flight.
+     * The acquire stage finishes its current capture (up to the device command timeout) so the
+     * device never writes into a recycled buffer; a stage thread still running after that only
+     * closes its frame and exits, even if the pipeline has been started again.
+     */
+    @PreDestroy
+    public void stop() {
+        synchronized (lifecycleLock) {
+            stop(run);
+        }
+    }
+
+    private void stop(Run target) {
+        synchronized (lifecycleLock) {
+            if (!running || target != run) {
+                return;
+            }
+            running = false;
+            target.active = false;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stopTimeoutMs);
+            for (Thread thread : workers) {
+                if (thread == Thread.currentThread()) continue;
+                try {
+                    thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (thread.isAlive()) {
+                    log.warn("Preview {} thread still running after {}ms", thread.getName(), stopTimeoutMs);
+                }
+            }
+            workers = List.of();
+            analyzeRing.clear();
+            encodeRing.clear();
+            publishRing.clear();
+            log.info("Preview pipeline stopped");
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Per-stage frame counts and average time, plus ring occupancy and drops
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("running", running);
+        result.put("mode", frameRate.isActive() ? "active" : "idle");
+        result.put("intervalMs", frameRate.intervalMs());
+        result.put("backoffLevel", frameRate.getBackoffLevel());
+        result.put("unchangedFrames", (long) unchangedFrames.count());
+        Map<String, Object> stages = new LinkedHashMap<>();
+        stageStats.forEach((name, stats) -> {
+            long frames = stats.frames.sum();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("frames", frames);
+            entry.put("avgMs", frames > 0 ? stats.nanos.sum() / frames / 1_000_000.0 : 0.0);
+            entry.put("errors", stats.errors.sum());
+            stages.put(name, entry);
+        });
+        result.put("stages", stages);
+
+        Map<String, Object> rings = new LinkedHashMap<>();
+        synchronized (lifecycleLock) {
+            if (analyzeRing != null) {
+                rings.put("analyze", ringStats(analyzeRing));
+                rings.put("encode", ringStats(encodeRing));
+                rings.put("publish", ringStats(publishRing));
+            }
+        }
+        result.put("rings", rings);
+        return result;
+    }
+
+    // ========== Stages ==========
+
+    private void acquire(Run run, int width, int height, FrameRing<PreviewFrame> output) {
+        StageStats stats = stageStats.get("acquire");
+        while (run.active) {
+            long start = System.nanoTime();
+            FrameBuffer buffer;
+            try {
+                buffer = scannerService.captureFrame(width, height);
+            } catch (RuntimeException e) {
+                if (!run.active) {
+                    return;
+                }
+                log.error("Preview capture failed, stopping pipeline: {}", e.getMessage());
+                stats.error();
+                stopAsync(run);
+                return;
+            }
+            PreviewFrame frame = new PreviewFrame(buffer);
+            if (!run.active) {
+                // Stopped during the capture: the rings may already be cleared
+                frame.close();
+                return;
+            }
+            if (changeDetector != null) {
+                long settingsVersion = previewHandler.getSettingsVersion();
+                if (resyncPreview || settingsVersion != clientSettingsVersion) {
+                    resyncPreview = false;
+                    clientSettingsVersion = settingsVersion;
+                    changeDetector.reset();
+                }
+                frame.unchanged = changeDetector.isUnchanged(buffer);
+            }
+            stats.record(start);
+            offer(run, "analyze", output, frame);
+
+            long delay = frameRate.delayMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void analyze(PreviewFrame frame) {
+        if (frame.unchanged) {
+            frame.finger = lastFinger;
+            frame.quality = lastQuality;
+        } else {
+            // Quality is only worth computing with a finger on the glass
+            frame.finger = scannerService.isFinger(frame.buffer());
+            frame.quality = frame.finger ? qualityTracker.score(frame.buffer()) : 0;
+            lastFinger = frame.finger;
+            lastQuality = frame.quality;
+        }
+        frameRate.onFrameAnalyzed(frame.finger);
+        autoCapture.onFrame(frame.buffer(), frame.quality, frame.finger);
+    }
+
+    private void encode(PreviewFrame frame) {
+        if (frame.unchanged) {
+            encodeUnchanged(frame);
+            return;
+        }
+        if (sendBinary && previewHandler.hasSessions()) {
+            frame.encoded = previewHandler.encode(frame.buffer(), frame.quality);
+        }
+        if (sendStomp) {
+            byte[] bmpData = scannerService.rawToBmp(frame.buffer().toByteArray(), frame.width, frame.height);
+
+            Map<String, Object> frameData = new HashMap<>();
+            frameData.put("image", scannerService.bmpToBase64(bmpData));
+            frameData.put("quality", frame.quality);
+            frameData.put("width", frame.width);
+            frameData.put("height", frame.height);
+            frameData.put("timestamp", frame.timestamp);
+            frame.stompPayload = frameData;
+        }
+        // The pixels are not needed past this point
+        frame.releaseBuffer();
+    }
+
+    private void encodeUnchanged(PreviewFrame frame) {
+        if (sendBinary && previewHandler.hasSessions()) {
+            frame.encoded = previewHandler.encodeUnchanged(frame.width, frame.height, frame.quality, frame.timestamp);
+        }
+        if (sendStomp) {
+            Map<String, Object> frameData = new HashMap<>();
+            frameData.put("unchanged", true);
+            frameData.put("quality", frame.quality);
+            frameData.put("timestamp", frame.timestamp);
+            frame.stompPayload = frameData;
+        }
+        unchangedFrames.increment();
+        frame.releaseBuffer();
+    }
+
+    private void publish(PreviewFrame frame) {
+        if (frame.encoded != null) {
+            previewHandler.publish(frame.encoded);
+            frameRate.onBacklog(previewHandler.getBacklogRatio());
+        }
+        if (frame.stompPayload != null) {
+            messagingTemplate.convertAndSend("/topic/fingerprint", frame.stompPayload);
+        }
+        long latencyNanos = System.nanoTime() - frame.capturedNanos;
+        latency.record(latencyNanos, TimeUnit.NANOSECONDS);
+        log.debug("Sent frame (quality={}, latency={}ms)", frame.quality, TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+    }
+
+    /**
+     * Consumes {@code input}, applies {@code step} and forwards to {@code output} (if any)
+     */
+    private void stage(Run run, String name, FrameRing<PreviewFrame> input, String outputName,
+                       FrameRing<PreviewFrame> output, StageStep step) {
+        StageStats stats = stageStats.get(name);
+        while (run.active) {
+            PreviewFrame frame;
+            try {
+                frame = input.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (frame == null) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            try {
+                step.apply(frame);
+            } catch (RuntimeException e) {
+                log.warn("Preview {} stage failed: {}", name, e.getMessage());
+                stats.error();
+                frame.close();
+                continue;
+            }
+            stats.record(start);
+
+            if (output != null && run.active) {
+                offer(run, outputName, output, frame);
+            } else {
+                frame.close();
+            }
+        }
+    }
+
+    private void offer(Run run, String ring, FrameRing<PreviewFrame> output, PreviewFrame frame) {
+        if (output.offer(frame)) {
+            droppedFrames.get(ring).increment();
+            // The dropped frame may be the one clients were meant to keep showing
+            resyncPreview = true;
+        }
+        if (!run.active) {
+            // Stopped while offering: stop() may have cleared the ring before the frame got in
+            output.clear();
+        }
+    }
+
+    private void stopAsync(Run target) {
+        Thread.ofPlatform().daemon().name("preview-stop").start(() -> stop(target));
+    }
+
+    private static Thread worker(String stage, Runnable body) {
+        return Thread.ofPlatform().daemon().name("preview-" + stage).unstarted(body);
+    }
+
+    private static Map<String, Object> ringStats(FrameRing<?> ring) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("size", ring.size());
+        entry.put("capacity", ring.capacity());
+        entry.put("offered", ring.getOffered());
+        entry.put("dropped", ring.getDropped());
+        return entry;
+    }
+
+    /**
+     * Stop token shared by the stage threads of one run
+     */
+    private static final class Run {
+        volatile boolean active = true;
+    }
+
+    @FunctionalInterface
+    private interface StageStep {
+        void apply(PreviewFrame frame);
+    }
+
+    private static class StageStats {
+        final LongAdder frames = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final Timer timer;
+        final Counter errorCounter;
+
+        StageStats(String stage, MeterRegistry registry) {
+            timer = Timer.builder("fingerprint.preview.stage")
+                    .description("Time spent per frame in a preview pipeline stage")
+                    .tag("stage", stage)
+                    .register(registry);
+            errorCounter = Counter.builder("fingerprint.preview.errors")
+                    .tag("stage", stage)
+                    .register(registry);
+        }
+
+        void record(long start) {
+            long elapsed = System.nanoTime() - start;
+            nanos.add(elapsed);
+            frames.increment();
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        void error() {
+            errors.increment();
+            errorCounter.increment();
+        }
+    }
+}
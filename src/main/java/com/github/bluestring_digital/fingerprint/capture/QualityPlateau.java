@@ -0,0 +1,49 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+/**
+ * Sliding window over the last frame qualities. A plateau is reached when the window is full,
+ * every quality in it is at least {@code threshold} and they differ by at most {@code tolerance},
+ * i.e. the finger has settled and waiting longer will not give a better frame.
+ */
+public final class QualityPlateau {
+
+    private final int[] window;
+    private final int threshold;
+    private final int tolerance;
+    private int next;
+    private int count;
+
+    public QualityPlateau(int windowSize, int threshold, int tolerance) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("window size must be at least 1");
+        }
+        this.window = new int[windowSize];
+        this.threshold = threshold;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Adds a frame quality and reports whether the window is now on a plateau
+     */
+    public boolean offer(int quality) {
+        window[next] = quality;
+        next = (next + 1) % window.length;
+        count = Math.min(count + 1, window.length);
+        if (count < window.length) {
+            return false;
+        }
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int q : window) {
+            min = Math.min(min, q);
+            max = Math.max(max, q);
+        }
+        return min >= threshold && max - min <= tolerance;
+    }
+
+    public void reset() {
+        next = 0;
+        count = 0;
+    }
+}
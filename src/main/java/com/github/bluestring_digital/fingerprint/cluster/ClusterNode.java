@@ -0,0 +1,85 @@
+package com.github.bluestring_digital.fingerprint.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Role of this instance in a sharded gallery ({@code fingerprint.cluster.role}):
+ * <ul>
+ *   <li>{@code standalone}: holds the whole gallery (default)</li>
+ *   <li>{@code node}: holds shard {@code shard-index} of {@code shard-count} and rejects enrollments
+ *       of subjects owned by another shard</li>
+ *   <li>{@code coordinator}: routes enrollments and scatters identifications to the nodes,
+ *       see {@link GalleryCoordinator}</li>
+ * </ul>
+ * Subjects are assigned to shards by hashing their id, so all fingers of a subject live on one node.
+ */
+@Slf4j
+@Component
+public class ClusterNode {
+
+    public static final String ROLE_STANDALONE = "standalone";
+    public static final String ROLE_NODE = "node";
+    public static final String ROLE_COORDINATOR = "coordinator";
+
+    private final String role;
+    private final int shardIndex;
+    private final int shardCount;
+
+    public ClusterNode(@Value("${fingerprint.cluster.role:standalone}") String role,
+                       @Value("${fingerprint.cluster.shard-index:0}") int shardIndex,
+                       @Value("${fingerprint.cluster.shard-count:1}") int shardCount) {
+        if (!ROLE_STANDALONE.equals(role) && !ROLE_NODE.equals(role) && !ROLE_COORDINATOR.equals(role)) {
+            throw new IllegalArgumentException("Unknown cluster role: " + role);
+        }
+        if (ROLE_NODE.equals(role) && (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount)) {
+            throw new IllegalArgumentException("Invalid shard " + shardIndex + " of " + shardCount);
+        }
+        this.role = role;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        if (ROLE_NODE.equals(role)) {
+            log.info("Gallery node: shard {} of {}", shardIndex, shardCount);
+        }
+    }
+
+    /**
+     * Shard owning a subject; String.hashCode is specified, so every node and coordinator agree
+     */
+    public static int shardOf(String subjectId, int shardCount) {
+        return Math.floorMod(subjectId.hashCode(), shardCount);
+    }
+
+    /**
+     * False only on a node, for subjects of another shard
+     */
+    public boolean owns(String subjectId) {
+        return !ROLE_NODE.equals(role) || shardOf(subjectId, shardCount) == shardIndex;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("role", role);
+        if (ROLE_NODE.equals(role)) {
+            description.put("shardIndex", shardIndex);
+            description.put("shardCount", shardCount);
+        }
+        return description;
+    }
+}
@@ -0,0 +1,316 @@
+package com.github.bluestring_digital.fingerprint.cluster;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.bluestring_digital.fingerprint.gallery.Candidate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coordinator of a gallery sharded across matcher nodes ({@code fingerprint.cluster.nodes}, shard i
+ * being the i-th URL). Enrollments and removals go to the node owning the subject
+ * ({@link ClusterNode#shardOf}); identifications are sent to every node in parallel and the
+ * per-node top-k lists merged.
+ * <p>
+ * A node that does not answer within {@code fingerprint.cluster.timeout-ms}, or answers with an
+ * error, is reported in the result instead of failing the query, so one slow shard costs at most the
+ * timeout. Nodes are the regular application in the {@code node} role, reached through
+ * {@code /api/fingerprint/gallery}.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "fingerprint.cluster.role", havingValue = ClusterNode.ROLE_COORDINATOR)
+public class GalleryCoordinator {
+
+    private static final String GALLERY_PATH = "/api/fingerprint/gallery";
+    private static final Comparator<Candidate> BY_SCORE = Comparator.comparingInt(Candidate::score).reversed();
+    private static final TypeReference<Map<String, Object>> JSON_OBJECT = new TypeReference<>() { };
+
+    private final ObjectMapper objectMapper;
+    private final List<Shard> shards;
+    private final long timeoutMs;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client;
+    private final MeterRegistry meterRegistry;
+
+    public GalleryCoordinator(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              @Value("${fingerprint.cluster.nodes}") String[] nodes,
+                              @Value("${fingerprint.cluster.timeout-ms:2000}") long timeoutMs) {
+        List<String> urls = Arrays.stream(nodes).map(String::trim).filter(url -> !url.isEmpty())
+                .map(url -> url.endsWith("/") ? url.substring(0, url.length() - 1) : url)
+                .toList();
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("fingerprint.cluster.nodes is empty");
+        }
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.timeoutMs = timeoutMs;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeoutMs))
+                .executor(executor)
+                .build();
+        List<Shard> list = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            list.add(new Shard(i, urls.get(i)));
+        }
+        this.shards = List.copyOf(list);
+        log.info("Gallery coordinator: {} shards {}", shards.size(), urls);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Best {@code k} candidates over every shard that answered in time
+     */
+    public Identification identify(byte[] probe, int k, int threshold, boolean exhaustive) {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("template", Base64.getEncoder().encodeToString(probe));
+        request.put("k", k);
+        request.put("threshold", threshold);
+        request.put("exhaustive", exhaustive);
+        byte[] body = toJson(request);
+
+        List<CompletableFuture<ShardResult>> pending = shards.stream()
+                .map(shard -> shard.identify(body))
+                .toList();
+        List<ShardResult> results = pending.stream().map(CompletableFuture::join).toList();
+
+        List<Candidate> candidates = new ArrayList<>();
+        results.forEach(result -> candidates.addAll(result.candidates()));
+        candidates.sort(BY_SCORE);
+        return new Identification(candidates.size() > k ? List.copyOf(candidates.subList(0, k)) : candidates, results);
+    }
+
+    /**
+     * Forwards an enrollment request to the node owning its subject
+     */
+    public Forwarded enroll(String subjectId, Map<String, Object> request) {
+        Shard shard = owner(subjectId);
+        return shard.forward(HttpRequest.newBuilder(shard.uri("/enroll"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(toJson(request))));
+    }
+
+    public Forwarded remove(String subjectId) {
+        Shard shard = owner(subjectId);
+        String path = "/subjects/" + URLEncoder.encode(subjectId, StandardCharsets.UTF_8).replace("+", "%20");
+        return shard.forward(HttpRequest.newBuilder(shard.uri(path)).DELETE());
+    }
+
+    /**
+     * Per-shard query counts, failures, timeouts and latency, plus the gallery status each node reports
+     */
+    public Map<String, Object> getStats() {
+        List<CompletableFuture<Map<String, Object>>> statuses = shards.stream()
+                .map(shard -> shard.send(HttpRequest.newBuilder(shard.uri("/status")).GET())
+                        .thenApply(response -> response.statusCode() == 200 ? parse(response.body()) : null)
+                        .exceptionally(e -> null))
+                .toList();
+
+        List<Map<String, Object>> shardStats = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            Shard shard = shards.get(i);
+            long queries = shard.queries.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("shard", shard.index);
+            stats.put("url", shard.url);
+            stats.put("queries", queries);
+            stats.put("failures", shard.failures.sum());
+            stats.put("timeouts", shard.timeouts.sum());
+            stats.put("avgMs", queries > 0 ? shard.latencyNanos.sum() / queries / 1_000_000.0 : 0.0);
+            Map<String, Object> status = statuses.get(i).join();
+            stats.put("reachable", status != null);
+            if (status != null) {
+                stats.put("templates", status.get("templates"));
+            }
+            shardStats.add(stats);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("role", ClusterNode.ROLE_COORDINATOR);
+        result.put("timeoutMs", timeoutMs);
+        result.put("shards", shardStats);
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Shard owner(String subjectId) {
+        return shards.get(ClusterNode.shardOf(subjectId, shards.size()));
+    }
+
+    private byte[] toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, Object> parse(byte[] body) {
+        try {
+            return objectMapper.readValue(body, JSON_OBJECT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Merged candidates and the outcome of every shard
+     */
+    public record Identification(List<Candidate> candidates, List<ShardResult> shards) {
+
+        public List<ShardResult> failed() {
+            return shards.stream().filter(result -> result.error() != null).toList();
+        }
+
+        /**
+         * Templates searched, over the shards that answered
+         */
+        public long gallerySize() {
+            return shards.stream().mapToLong(ShardResult::gallerySize).sum();
+        }
+    }
+
+    /**
+     * One shard's answer to an identification; {@code error} is set when it failed or timed out
+     */
+    public record ShardResult(int shard, String url, List<Candidate> candidates, long gallerySize,
+                              long elapsedMs, String error) {
+    }
+
+    /**
+     * Status and body returned by the owning node; status 502 if it could not be reached
+     */
+    public record Forwarded(int shard, int status, Map<String, Object> body) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record NodeIdentification(boolean success, List<Candidate> candidates, long gallerySize, String message) {
+    }
+
+    private final class Shard {
+
+        private final int index;
+        private final String url;
+        private final LongAdder queries = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+
+        Shard(int index, String url) {
+            this.index = index;
+            this.url = url;
+        }
+
+        URI uri(String path) {
+            return URI.create(url + GALLERY_PATH + path);
+        }
+
+        CompletableFuture<HttpResponse<byte[]>> send(HttpRequest.Builder request) {
+            return client.sendAsync(request.timeout(Duration.ofMillis(timeoutMs)).build(),
+                            HttpResponse.BodyHandlers.ofByteArray())
+                    .orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Never completes exceptionally: failures and timeouts become a result with an error
+         */
+        CompletableFuture<ShardResult> identify(byte[] body) {
+            long start = System.nanoTime();
+            queries.increment();
+            return send(HttpRequest.newBuilder(uri("/identify"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body)))
+                    .thenApply(response -> {
+                        NodeIdentification answer = readIdentification(response.body());
+                        if (response.statusCode() != 200 || !answer.success()) {
+                            throw new IllegalStateException("HTTP " + response.statusCode() + ": " + answer.message());
+                        }
+                        return result(start, answer.candidates() != null ? answer.candidates() : List.of(),
+                                answer.gallerySize(), null, "success");
+                    })
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        boolean timedOut = cause instanceof TimeoutException || cause instanceof HttpTimeoutException;
+                        if (timedOut) {
+                            timeouts.increment();
+                        } else {
+                            failures.increment();
+                        }
+                        log.warn("Shard {} ({}) failed: {}", index, url, cause.toString());
+                        return result(start, List.of(), 0, timedOut ? "timeout" : cause.toString(),
+                                timedOut ? "timeout" : "error");
+                    });
+        }
+
+        Forwarded forward(HttpRequest.Builder request) {
+            try {
+                HttpResponse<byte[]> response = send(request).join();
+                return new Forwarded(index, response.statusCode(), parse(response.body()));
+            } catch (CompletionException | UncheckedIOException e) {
+                failures.increment();
+                Map<String, Object> body = new LinkedHashMap<>();
+                body.put("success", false);
+                body.put("message", "Shard " + index + " unavailable: " + e.getCause());
+                return new Forwarded(index, 502, body);
+            }
+        }
+
+        private NodeIdentification readIdentification(byte[] body) {
+            try {
+                return objectMapper.readValue(body, NodeIdentification.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private ShardResult result(long start, List<Candidate> candidates, long gallerySize, String error,
+                                   String outcome) {
+            long elapsed = System.nanoTime() - start;
+            latencyNanos.add(elapsed);
+            Timer.builder("fingerprint.cluster.shard")
+                    .description("Identification round trip to a gallery node")
+                    .tag("shard", String.valueOf(index))
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            return new ShardResult(index, url, candidates, gallerySize, elapsed / 1_000_000, error);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.bluestring_digital.fingerprint.config;
+
+import com.github.bluestring_digital.fingerprint.image.ImageFormat;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets endpoints take {@code ?format=bmp|wsq} in any case as an {@link ImageFormat} parameter
+ */
+@Component
+public class ImageFormatConverter implements Converter<String, ImageFormat> {
+
+    @Override
+    public ImageFormat convert(String source) {
+        return ImageFormat.parse(source);
+    }
+}
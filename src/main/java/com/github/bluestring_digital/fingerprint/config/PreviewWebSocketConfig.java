@@ -0,0 +1,25 @@
+package com.github.bluestring_digital.fingerprint.config;
+
+import com.github.bluestring_digital.fingerprint.websocket.PreviewWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * Binary preview channel, registered next to the STOMP endpoint from {@link WebSocketConfig}.
+ */
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class PreviewWebSocketConfig implements WebSocketConfigurer {
+
+    private final PreviewWebSocketHandler previewHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(previewHandler, "/ws-preview")
+                .setAllowedOriginPatterns("*");
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.bluestring_digital.fingerprint.config;
+
+import com.github.bluestring_digital.fingerprint.backend.ScannerBackend;
+import com.github.bluestring_digital.fingerprint.recording.RecordingScannerBackend;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Path;
+
+/**
+ * With {@code fingerprint.recording.enabled=true}, wraps the active backend so every device
+ * session is recorded for later replay ({@code fingerprint.backend=replay}).
+ */
+@Configuration
+@ConditionalOnProperty(name = "fingerprint.recording.enabled", havingValue = "true")
+public class SessionRecordingConfig {
+
+    @Bean
+    public static BeanPostProcessor sessionRecordingPostProcessor(Environment environment) {
+        Path directory = Path.of(environment.getProperty("fingerprint.recording.dir", "recordings"));
+        boolean compress = environment.getProperty("fingerprint.recording.compress", Boolean.class, true);
+        int queueCapacity = environment.getProperty("fingerprint.recording.queue-capacity", Integer.class, 64);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof ScannerBackend backend && !(bean instanceof RecordingScannerBackend)) {
+                    return new RecordingScannerBackend(backend, directory, compress, queueCapacity);
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.bluestring_digital.fingerprint.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.bluestring_digital.fingerprint.gallery.BatchComparison;
+import com.github.bluestring_digital.fingerprint.gallery.GalleryService;
+import com.github.bluestring_digital.fingerprint.gallery.TemplateArena;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streaming 1:1 comparison for bulk re-verification (e.g. de-duplication runs). Pairs are read
+ * as they arrive, scored in parallel on the gallery matcher pool and written back in input order
+ * while the request is still being read.
+ * <p>
+ * NDJSON ({@code application/x-ndjson}), one object per line:
+ * <pre>
+ * {"id": "p1", "template1": "&lt;base64&gt;", "template2": "&lt;base64&gt;"}   pair
+ * {"probe": "&lt;base64&gt;"}                                              sets the probe
+ * {"id": "c1", "template": "&lt;base64&gt;"}                               candidate vs. probe
+ * </pre>
+ * answered with {@code {"id": "p1", "score": 57, "match": true}} per comparison.
+ * <p>
+ * Binary ({@code application/octet-stream}), big-endian records of a kind byte followed by
+ * u16-length-prefixed templates: {@code 'P' probe}, {@code 'C' candidate} or {@code 'T' template1 template2};
+ * answered with 8 bytes per comparison: u32 sequence number and i32 score (-1 if it could not run).
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/fingerprint/template")
+@CrossOrigin(origins = "*")
+public class BatchCompareController {
+
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int FLUSH_EVERY = 256;
+    /** Annotation defaults need a constant string */
+    private static final String DEFAULT_THRESHOLD = "" + TemplateMatcher.MATCH_THRESHOLD;
+
+    private final GalleryService galleryService;
+    private final ObjectMapper objectMapper;
+    /** One result per line, whatever the application-wide indentation setting */
+    private final ObjectWriter lineWriter;
+    private final int window;
+
+    public BatchCompareController(GalleryService galleryService, ObjectMapper objectMapper,
+                                  @Value("${fingerprint.batch.window:256}") int window) {
+        this.galleryService = galleryService;
+        this.objectMapper = objectMapper;
+        this.lineWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.window = window;
+    }
+
+    @PostMapping(value = "/compare/batch", consumes = NDJSON)
+    public void compareNdjson(HttpServletRequest request, HttpServletResponse response,
+                              @RequestParam(defaultValue = DEFAULT_THRESHOLD) int threshold) throws IOException {
+        response.setContentType(NDJSON);
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+
+        BatchComparison batch = new BatchComparison(galleryService, window, threshold, (sequence, id, score) -> {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("id", id != null ? id : sequence);
+            result.put("score", score);
+            result.put("match", score >= threshold);
+            writer.write(lineWriter.writeValueAsString(result));
+            writer.write('\n');
+            if (sequence % FLUSH_EVERY == FLUSH_EVERY - 1) {
+                writer.flush();
+            }
+        });
+        run(batch, () -> {
+            byte[] probe = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                String id = null;
+                try {
+                    JsonNode node = objectMapper.readTree(line);
+                    id = node.hasNonNull("id") ? node.get("id").asText() : null;
+                    if (node.has("probe")) {
+                        probe = decode(node.get("probe"));
+                    } else if (node.has("template")) {
+                        if (probe == null) {
+                            batch.reject(id);
+                        } else {
+                            batch.submit(id, probe, decode(node.get("template")));
+                        }
+                    } else {
+                        batch.submit(id, decode(node.get("template1")), decode(node.get("template2")));
+                    }
+                } catch (IllegalArgumentException | JsonProcessingException e) {
+                    // A malformed line is answered in its place, like a malformed template
+                    batch.reject(id);
+                }
+            }
+        });
+        writer.flush();
+    }
+
+    @PostMapping(value = "/compare/batch", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public void compareBinary(HttpServletRequest request, HttpServletResponse response,
+                              @RequestParam(defaultValue = DEFAULT_THRESHOLD) int threshold) throws IOException {
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(request.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(response.getOutputStream()));
+
+        BatchComparison batch = new BatchComparison(galleryService, window, threshold, (sequence, id, score) -> {
+            out.writeInt((int) sequence);
+            out.writeInt(score);
+            if (sequence % FLUSH_EVERY == FLUSH_EVERY - 1) {
+                out.flush();
+            }
+        });
+        run(batch, () -> {
+            byte[] probe = null;
+            int kind;
+            while ((kind = in.read()) != -1) {
+                switch (kind) {
+                    case 'P' -> probe = readTemplate(in);
+                    case 'C' -> {
+                        byte[] candidate = readTemplate(in);
+                        if (probe == null) {
+                            batch.reject(null);
+                        } else {
+                            batch.submit(null, probe, candidate);
+                        }
+                    }
+                    case 'T' -> batch.submit(null, readTemplate(in), readTemplate(in));
+                    default -> throw new IOException("Unknown record kind: " + kind);
+                }
+            }
+        });
+        out.flush();
+    }
+
+    /**
+     * Feeds the batch from the request and drains it, cancelling pending comparisons on failure
+     */
+    private void run(BatchComparison batch, InputLoop loop) throws IOException {
+        long start = System.nanoTime();
+        try {
+            loop.run();
+            batch.finish();
+        } catch (IOException | RuntimeException e) {
+            batch.cancel();
+            log.warn("Batch comparison aborted after {} pairs: {}", batch.getSubmitted(), e.getMessage());
+            throw e;
+        }
+        log.info("Batch comparison: {} pairs, {} matches, {} failed in {}ms", batch.getSubmitted(),
+                batch.getMatched(), batch.getFailed(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static byte[] decode(JsonNode node) {
+        if (node == null || !node.isTextual()) {
+            throw new IllegalArgumentException("template must be a Base64 string");
+        }
+        return Base64.getDecoder().decode(node.asText());
+    }
+
+    private static byte[] readTemplate(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        if (length > TemplateArena.SLOT_SIZE) {
+            throw new IOException("Template larger than " + TemplateArena.SLOT_SIZE + " bytes");
+        }
+        byte[] template = new byte[length];
+        in.readFully(template);
+        return template;
+    }
+
+    @FunctionalInterface
+    private interface InputLoop {
+        void run() throws IOException;
+    }
+}
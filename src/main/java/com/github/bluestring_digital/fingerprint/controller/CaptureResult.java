@@ -0,0 +1,28 @@
+package com.github.bluestring_digital.fingerprint.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of a capture endpoint before its images are encoded: the HTTP status, the response body
+ * and, for each image, its raw pixels and the map of the body it belongs to. Rendered either as
+ * JSON with Base64 data URLs or streamed by {@link CaptureStreamWriter}.
+ */
+record CaptureResult(int status, Map<String, Object> body, List<Image> images) {
+
+    CaptureResult(int status, Map<String, Object> body) {
+        this(status, body, new ArrayList<>());
+    }
+
+    /**
+     * Adds an image whose encoding (or stream part reference) goes into {@code target}
+     */
+    CaptureResult image(Map<String, Object> target, byte[] pixels, int width, int height) {
+        images.add(new Image(target, pixels, width, height));
+        return this;
+    }
+
+    record Image(Map<String, Object> target, byte[] pixels, int width, int height) {
+    }
+}
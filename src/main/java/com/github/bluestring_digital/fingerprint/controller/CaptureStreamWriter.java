@@ -0,0 +1,191 @@
+package com.github.bluestring_digital.fingerprint.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.bluestring_digital.fingerprint.image.ImageFormat;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService;
+import com.github.bluestring_digital.fingerprint.service.WsqService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Streams capture results without Base64 or pretty-printed JSON, for clients that ask for it in
+ * {@code Accept}. Image bytes are written straight from the capture buffers to the response.
+ * <p>
+ * {@code multipart/mixed}: a compact {@code application/json} part with the metadata, where each
+ * image is replaced by {@code "part": "image-N"}, followed by one part per image with a matching
+ * {@code Content-ID}.
+ * <p>
+ * {@code application/x-fingerprint-capture}, big-endian:
+ * <pre>
+ * 0  magic "FPCE"   4  version (1)   5  image count (uint8)   6  HTTP status (uint16)
+ * 8  metadata length (uint32), then the metadata JSON (UTF-8)
+ * per image: format (uint8: 0 = raw gray8, 1 = BMP, 2 = WSQ, 3 = WSQ from the Java codec), reserved (uint8),
+ *            width (uint16), height (uint16), length (uint32), then the image bytes
+ * </pre>
+ */
+@Component
+public class CaptureStreamWriter {
+
+    public static final String ENVELOPE_VALUE = "application/x-fingerprint-capture";
+    public static final MediaType ENVELOPE = MediaType.parseMediaType(ENVELOPE_VALUE);
+
+    private static final int MAGIC = 0x46504345; // "FPCE"
+    private static final byte VERSION = 1;
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final FingerprintScannerService scannerService;
+    private final ObjectWriter metadataWriter;
+
+    public CaptureStreamWriter(FingerprintScannerService scannerService, ObjectMapper objectMapper) {
+        this.scannerService = scannerService;
+        this.metadataWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * The streamed type the client prefers, or null for the JSON response. Wildcards select JSON.
+     */
+    public static MediaType negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return null;
+        }
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        MimeTypeUtils.sortBySpecificity(accepted);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) continue;
+            if (type.equalsTypeAndSubtype(MediaType.MULTIPART_MIXED)) return MediaType.MULTIPART_MIXED;
+            if (type.equalsTypeAndSubtype(ENVELOPE)) return ENVELOPE;
+            if (type.isCompatibleWith(MediaType.APPLICATION_JSON)) return null;
+        }
+        return null;
+    }
+
+    public void write(HttpServletResponse response, MediaType type, CaptureResult result, ImageFormat format)
+            throws IOException {
+        response.setStatus(result.status());
+        if (type.equalsTypeAndSubtype(MediaType.MULTIPART_MIXED)) {
+            writeMultipart(response, result, format);
+        } else {
+            writeEnvelope(response, result, format);
+        }
+    }
+
+    private void writeMultipart(HttpServletResponse response, CaptureResult result, ImageFormat format)
+            throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        response.setContentType("multipart/mixed; boundary=" + boundary);
+        byte[] delimiter = ("--" + boundary).getBytes(StandardCharsets.US_ASCII);
+
+        List<Encoded> images = encode(result, format);
+        for (int i = 0; i < images.size(); i++) {
+            result.images().get(i).target().put("part", "image-" + i);
+            result.images().get(i).target().put("contentType", images.get(i).contentType());
+        }
+        OutputStream out = new BufferedOutputStream(response.getOutputStream());
+        byte[] metadata = metadataWriter.writeValueAsBytes(result.body());
+        partHeader(out, delimiter, MediaType.APPLICATION_JSON_VALUE, metadata.length, null);
+        out.write(metadata);
+        for (int i = 0; i < images.size(); i++) {
+            Encoded image = images.get(i);
+            out.write(CRLF);
+            partHeader(out, delimiter, image.contentType(), image.length(), "image-" + i);
+            image.writeTo(out);
+        }
+        out.write(CRLF);
+        out.write(delimiter);
+        out.write("--".getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.flush();
+    }
+
+    private void writeEnvelope(HttpServletResponse response, CaptureResult result, ImageFormat format)
+            throws IOException {
+        response.setContentType(ENVELOPE_VALUE);
+        List<Encoded> images = encode(result, format);
+        for (int i = 0; i < images.size(); i++) {
+            result.images().get(i).target().put("part", i);
+        }
+        byte[] metadata = metadataWriter.writeValueAsBytes(result.body());
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(response.getOutputStream()));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(images.size());
+        out.writeShort(result.status());
+        out.writeInt(metadata.length);
+        out.write(metadata);
+        for (Encoded image : images) {
+            out.writeByte(image.code());
+            out.writeByte(0);
+            out.writeShort(image.source().width());
+            out.writeShort(image.source().height());
+            out.writeInt(image.length());
+            image.writeTo(out);
+        }
+        out.flush();
+    }
+
+    private static void partHeader(OutputStream out, byte[] delimiter, String contentType, int length,
+                                   String contentId) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        headers.append("\r\nContent-Type: ").append(contentType)
+                .append("\r\nContent-Length: ").append(length);
+        if (contentId != null) {
+            headers.append("\r\nContent-ID: <").append(contentId).append('>');
+        }
+        headers.append("\r\n\r\n");
+        out.write(delimiter);
+        out.write(headers.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Compresses WSQ images up front (their length goes in the headers); BMP and raw images are
+     * written from the capture buffer when their part is reached
+     */
+    private List<Encoded> encode(CaptureResult result, ImageFormat format) {
+        return result.images().stream().map(image -> {
+            int pixels = image.width() * image.height();
+            return switch (format) {
+                case RAW -> new Encoded(image, 0, format.getMimeType(), pixels, null, null);
+                case BMP -> {
+                    byte[] header = scannerService.createBmpHeader(image.width(), image.height());
+                    yield new Encoded(image, 1, format.getMimeType(), header.length + pixels, null, header);
+                }
+                case WSQ -> {
+                    WsqService.Compressed wsq = scannerService.compressWsq(image.pixels(), image.width(), image.height());
+                    int code = WsqService.CODEC_NATIVE.equals(wsq.codec()) ? 2 : 3;
+                    yield new Encoded(image, code, wsq.mimeType(), wsq.data().length, wsq.data(), null);
+                }
+            };
+        }).toList();
+    }
+
+    private record Encoded(CaptureResult.Image source, int code, String contentType, int length,
+                           byte[] data, byte[] bmpHeader) {
+
+        void writeTo(OutputStream out) throws IOException {
+            int width = source.width();
+            if (data != null) {
+                out.write(data);
+            } else if (bmpHeader == null) {
+                out.write(source.pixels(), 0, width * source.height());
+            } else {
+                // Mesmo layout de rawToBmp: BMP é bottom-up, as linhas saem invertidas
+                out.write(bmpHeader);
+                for (int y = source.height() - 1; y >= 0; y--) {
+                    out.write(source.pixels(), y * width, width);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.bluestring_digital.fingerprint.controller;
+
+import com.github.bluestring_digital.fingerprint.cluster.ClusterNode;
+import com.github.bluestring_digital.fingerprint.cluster.GalleryCoordinator;
+import com.github.bluestring_digital.fingerprint.cluster.GalleryCoordinator.Identification;
+import com.github.bluestring_digital.fingerprint.cluster.GalleryCoordinator.ShardResult;
+import com.github.bluestring_digital.fingerprint.gallery.GalleryService;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.*;
+
+/**
+ * Gallery API of a coordinator: same requests as {@link GalleryController}, served by the matcher
+ * nodes. Identification responses list the shards that failed or timed out; with
+ * {@code fingerprint.cluster.require-all-shards} a partial result is answered with 503 instead.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/fingerprint/cluster")
+@CrossOrigin(origins = "*")
+@ConditionalOnProperty(name = "fingerprint.cluster.role", havingValue = ClusterNode.ROLE_COORDINATOR)
+public class ClusterController {
+
+    private final GalleryCoordinator coordinator;
+    private final boolean requireAllShards;
+
+    public ClusterController(GalleryCoordinator coordinator,
+                             @Value("${fingerprint.cluster.require-all-shards:false}") boolean requireAllShards) {
+        this.coordinator = coordinator;
+        this.requireAllShards = requireAllShards;
+    }
+
+    /**
+     * Enrolls on the node owning the subject: {"subjectId": "...", "finger": 1, "template": "<base64>"}
+     */
+    @PostMapping("/enroll")
+    public ResponseEntity<Map<String, Object>> enroll(@RequestBody Map<String, Object> request) {
+        Object subjectId = request.get("subjectId");
+        if (!(subjectId instanceof String id) || id.isBlank()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Invalid request: subjectId is required");
+            return ResponseEntity.badRequest().body(response);
+        }
+        GalleryCoordinator.Forwarded forwarded = coordinator.enroll(id, request);
+        Map<String, Object> response = new LinkedHashMap<>(forwarded.body());
+        response.put("shard", forwarded.shard());
+        return ResponseEntity.status(forwarded.status()).body(response);
+    }
+
+    /**
+     * 1:N identification over every shard: {"template": "<base64>", "k": 5, "threshold": 45, "exhaustive": false}
+     */
+    @PostMapping("/identify")
+    public ResponseEntity<Map<String, Object>> identify(@RequestBody Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            byte[] probe = Base64.getDecoder().decode((String) request.get("template"));
+            long k = request.get("k") instanceof Number number ? number.longValue() : 5;
+            if (k < 1 || k > GalleryService.MAX_CANDIDATES) {
+                throw new IllegalArgumentException("k must be between 1 and " + GalleryService.MAX_CANDIDATES);
+            }
+            int threshold = request.get("threshold") instanceof Number number
+                    ? number.intValue() : TemplateMatcher.MATCH_THRESHOLD;
+            boolean exhaustive = Boolean.TRUE.equals(request.get("exhaustive"));
+
+            long start = System.nanoTime();
+            Identification result = coordinator.identify(probe, (int) k, threshold, exhaustive);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            List<Map<String, Object>> failed = new ArrayList<>();
+            for (ShardResult shard : result.failed()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("shard", shard.shard());
+                entry.put("url", shard.url());
+                entry.put("error", shard.error());
+                failed.add(entry);
+            }
+            boolean partial = !failed.isEmpty();
+            boolean unavailable = failed.size() == result.shards().size() || (partial && requireAllShards);
+
+            response.put("success", !unavailable);
+            response.put("candidates", result.candidates());
+            response.put("match", !result.candidates().isEmpty());
+            response.put("gallerySize", result.gallerySize());
+            response.put("shards", result.shards().size());
+            response.put("partial", partial);
+            response.put("failedShards", failed);
+            response.put("elapsedMs", elapsedMs);
+            return unavailable ? ResponseEntity.status(503).body(response) : ResponseEntity.ok(response);
+        } catch (IllegalArgumentException | NullPointerException | ClassCastException e) {
+            response.put("success", false);
+            response.put("message", "Invalid request: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            log.error("Error identifying template across shards", e);
+            response.put("success", false);
+            response.put("message", "Error: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * Removes every template of a subject from its node
+     */
+    @DeleteMapping("/subjects/{subjectId}")
+    public ResponseEntity<Map<String, Object>> removeSubject(@PathVariable String subjectId) {
+        GalleryCoordinator.Forwarded forwarded = coordinator.remove(subjectId);
+        Map<String, Object> response = new LinkedHashMap<>(forwarded.body());
+        response.put("shard", forwarded.shard());
+        return ResponseEntity.status(forwarded.status()).body(response);
+    }
+
+    /**
+     * Shard URLs, per-shard query counts, failures, timeouts and latency, and template counts
+     */
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(coordinator.getStats());
+    }
+}
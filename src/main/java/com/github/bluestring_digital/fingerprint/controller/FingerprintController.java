@@ -1,17 +1,33 @@
 package com.github.bluestring_digital.fingerprint.controller;
 
+import com.github.bluestring_digital.fingerprint.backend.AlgorithmHandlePool;
+import com.github.bluestring_digital.fingerprint.backend.DeviceBusyException;
+import com.github.bluestring_digital.fingerprint.backend.DeviceNotOpenException;
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.backend.ScannerBackend;
+import com.github.bluestring_digital.fingerprint.capture.AutoCapture;
+import com.github.bluestring_digital.fingerprint.capture.PreviewPipeline;
+import com.github.bluestring_digital.fingerprint.image.ImageFormat;
+import com.github.bluestring_digital.fingerprint.image.WsqCodec;
+import com.github.bluestring_digital.fingerprint.recording.RecordingScannerBackend;
+import com.github.bluestring_digital.fingerprint.recording.ReplayScannerBackend;
+import com.github.bluestring_digital.fingerprint.service.DeviceCommandExecutor;
 import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService;
 import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
 
 import com.github.bluestring_digital.fingerprint.service.HandDetectionService;
+import com.github.bluestring_digital.fingerprint.service.WsqService;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -22,11 +38,15 @@ public class FingerprintController {
 
     private final FingerprintScannerService scannerService;
     private final HandDetectionService handDetectionService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final DeviceCommandExecutor deviceExecutor;
+    private final PreviewPipeline previewPipeline;
+    private final AutoCapture autoCapture;
+    private final AlgorithmHandlePool algorithmHandles;
+    private final WsqService wsqService;
+    private final CaptureStreamWriter captureStreamWriter;
+    private final ScannerBackend backend;
 
-    private CompletableFuture<Void> captureTask;
-    private volatile boolean isCapturing = false;
-    private boolean isInitialized = false;
+    private volatile boolean isInitialized = false;
 
     /**
      * Opens the device
@@ -80,10 +100,38 @@ public class FingerprintController {
     public ResponseEntity<Map<String, Object>> getDeviceStatus() {
         Map<String, Object> status = new HashMap<>();
         status.put("isOpen", scannerService.isDeviceOpen());
-        status.put("isCapturing", isCapturing);
+        status.put("isCapturing", previewPipeline.isRunning());
+        status.put("backend", scannerService.getBackendName());
+        status.put("queueDepth", deviceExecutor.getQueueDepth());
         return ResponseEntity.ok(status);
     }
 
+    /**
+     * Device command queue statistics (depth, wait and run times per command)
+     */
+    @GetMapping("/device/queue")
+    public ResponseEntity<Map<String, Object>> getDeviceQueue() {
+        return ResponseEntity.ok(deviceExecutor.getStats());
+    }
+
+    /**
+     * Session recording (fingerprint.recording.enabled) or replay (fingerprint.backend=replay) statistics
+     */
+    @GetMapping("/device/recording")
+    public ResponseEntity<Map<String, Object>> getRecording() {
+        Map<String, Object> response = new HashMap<>();
+        ScannerBackend active = backend;
+        if (active instanceof RecordingScannerBackend recording) {
+            response.put("recording", recording.getStats());
+            active = recording.getDelegate();
+        }
+        if (active instanceof ReplayScannerBackend replay) {
+            response.put("replay", replay.getStats());
+        }
+        response.put("backend", backend.getName());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Configures the type of finger (dry/normal/wet)
      */
@@ -105,30 +153,36 @@ public class FingerprintController {
     }
 
     /**
-     * Captures single finger
+     * Captures single finger ({@code format=wsq} for a compressed image). With
+     * {@code Accept: multipart/mixed} or {@code application/x-fingerprint-capture} the image is
+     * streamed as binary instead of a Base64 data URL, see {@link CaptureStreamWriter}.
      */
     @PostMapping("/capture/single")
-    public ResponseEntity<Map<String, Object>> captureSingleImage() {
+    public ResponseEntity<Map<String, Object>> captureSingleImage(
+            @RequestParam(defaultValue = "bmp") ImageFormat format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletResponse servletResponse) throws IOException {
+        return respond(captureSingle(format), format, accept, servletResponse);
+    }
+
+    private CaptureResult captureSingle(ImageFormat format) {
         Map<String, Object> response = new HashMap<>();
         try {
             byte [] rawData = scannerService.captureRawImage(300, 400);
-            int quality = scannerService.safeFingerQuality(rawData);
-
-            byte [] bmpData = scannerService.rawToBmp(rawData, 300, 400);
-            String base64Image = scannerService.bmpToBase64(bmpData);
+            int quality = scannerService.safeFingerQuality(rawData, 300, 400);
 
             response.put("success", true);
-            response.put("image", base64Image);
+            response.put("format", format.name().toLowerCase());
             response.put("quality", quality);
             response.put("width", 300);
             response.put("height", 400);
 
-            return ResponseEntity.ok(response);
+            return new CaptureResult(200, response).image(response, rawData, 300, 400);
         } catch (Exception e) {
             log.error("Error capturing image", e);
             response.put("success", false);
             response.put("message", "Error: " + e.getMessage());
-            return ResponseEntity.status(500).body(response);
+            return new CaptureResult(500, response);
         }
     }
 
@@ -139,45 +193,13 @@ public class FingerprintController {
     public ResponseEntity<Map<String, Object>> startContinuousCapture() {
         Map<String, Object> response = new HashMap<>();
 
-        if (isCapturing) {
+        if (previewPipeline.isRunning()) {
             response.put("success", false);
             response.put("message", "Capture is already underway");
             return ResponseEntity.ok(response);
         }
 
-        isCapturing = true;
-        captureTask = CompletableFuture.runAsync(() -> {
-            try {
-                int width = 1600;
-                int height = 1500;
-                log.info("Starting continuous capture {}x{}", width, height);
-
-                while (isCapturing) {
-                    byte[] rawData = scannerService.captureRawImage(width, height);
-                    int quality = scannerService.safeFingerQuality(rawData);
-
-                    byte[] bmpData = scannerService.rawToBmp(rawData, width, height);
-                    String base64Image = scannerService.bmpToBase64(bmpData);
-
-                    Map<String, Object> frameData = new HashMap<>();
-                    frameData.put("image", base64Image);
-                    frameData.put("quality", quality);
-                    frameData.put("width", width);
-                    frameData.put("height", height);
-                    frameData.put("timestamp", System.currentTimeMillis());
-
-                    // Sends frame even with low quality (for debugging)
-                    messagingTemplate.convertAndSend("/topic/fingerprint", frameData);
-
-                    log.debug("Sent frame (quality={})", quality);
-
-                    Thread.sleep(200); // 5 FPS
-                }
-            } catch (Exception e) {
-                log.error("Continuous capture error", e);
-                isCapturing = false;
-            }
-        });
+        previewPipeline.start(1600, 1500);
 
         response.put("success", true);
         response.put("message", "Continuous capture started");
@@ -190,46 +212,69 @@ public class FingerprintController {
     @PostMapping("/capture/stop")
     public ResponseEntity<Map<String, Object>> stopCapture() {
         Map<String, Object> response = new HashMap<>();
-        isCapturing = false;
-        if (captureTask != null) {
-            captureTask.cancel(true);
-        }
+        previewPipeline.stop();
         response.put("success", true);
         response.put("message", "Capture interrupted");
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Preview pipeline statistics (per-stage timings, ring occupancy and dropped frames)
+     */
+    @GetMapping("/capture/pipeline")
+    public ResponseEntity<Map<String, Object>> getPipelineStats() {
+        return ResponseEntity.ok(previewPipeline.getStats());
+    }
+
+    /**
+     * Last automatic capture taken during the preview (also pushed to /topic/fingerprint/capture)
+     */
+    @GetMapping("/capture/auto")
+    public ResponseEntity<Map<String, Object>> getLastAutoCapture() {
+        Map<String, Object> result = autoCapture.getLastResult();
+        if (result == null) {
+            Map<String, Object> response = new HashMap<>(autoCapture.getStats());
+            response.put("success", false);
+            response.put("message", "No automatic capture yet");
+            return ResponseEntity.ok(response);
+        }
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * Captures and splits multiple fingers
      */
     @PostMapping("/capture/multiple")
     public ResponseEntity<Map<String, Object>> captureMultipleFingers(
-            @RequestParam(defaultValue = "4") int expectedFingers) {
+            @RequestParam(defaultValue = "4") int expectedFingers,
+            @RequestParam(defaultValue = "bmp") ImageFormat format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletResponse servletResponse) throws IOException {
+        return respond(captureMultiple(format), format, accept, servletResponse);
+    }
 
+    private CaptureResult captureMultiple(ImageFormat format) {
         Map<String, Object> response = new HashMap<>();
         try {
-            byte[] rawData = scannerService.captureRawImage(1600, 1500);
-            int quality = scannerService.safeFingerQuality(rawData);
+            int quality;
+            List<FingerSplitResult> fingers;
+            try (FrameBuffer frame = scannerService.captureFrame(1600, 1500)) {
+                quality = scannerService.safeFingerQuality(frame);
+
+                if (quality < 30) {
+                    response.put("success", false);
+                    response.put("message", "Insufficient image quality: " + quality);
+                    return new CaptureResult(200, response);
+                }
 
-            if (quality < 30) {
-                response.put("success", false);
-                response.put("message", "Insufficient image quality: " + quality);
-                return ResponseEntity.ok(response);
+                fingers = scannerService.splitFingers(frame);
             }
 
-            List<FingerSplitResult> fingers = scannerService.splitFingers(rawData, 1600, 1500);
-
+            CaptureResult result = new CaptureResult(200, response);
             List<Map<String, Object>> fingersList = new ArrayList<>();
             for (FingerSplitResult finger : fingers) {
-                byte[] bmpData = scannerService.rawToBmp(
-                        finger.getImageData(),
-                        finger.getWidth(),
-                        finger.getHeight()
-                );
-                String base64Image = scannerService.bmpToBase64(bmpData);
-
                 Map<String, Object> fingerData = new HashMap<>();
-                fingerData.put("image", base64Image);
+                result.image(fingerData, finger.getImageData(), finger.getWidth(), finger.getHeight());
                 fingerData.put("quality", finger.getQuality());
                 fingerData.put("angle", finger.getAngle());
                 fingerData.put("x", finger.getX());
@@ -243,15 +288,16 @@ public class FingerprintController {
 
             response.put("success", true);
             response.put("fingers", fingersList);
+            response.put("format", format.name().toLowerCase());
             response.put("count", fingers.size());
             response.put("quality", quality);
 
-            return ResponseEntity.ok(response);
+            return result;
         } catch (Exception e) {
             log.error("Error capturing multiple fingers", e);
             response.put("success", false);
             response.put("message", "Error: " + e.getMessage());
-            return ResponseEntity.status(500).body(response);
+            return new CaptureResult(500, response);
         }
     }
 
@@ -262,8 +308,10 @@ public class FingerprintController {
     public ResponseEntity<Map<String, Object>> createTemplate() {
         Map<String, Object> response = new HashMap<>();
         try {
-            byte[] rawData = scannerService.captureRawImage(1600, 1500);
-            List<FingerSplitResult> fingers = scannerService.splitFingers(rawData, 1600, 1500);
+            List<FingerSplitResult> fingers;
+            try (FrameBuffer frame = scannerService.captureFrame(1600, 1500)) {
+                fingers = scannerService.splitFingers(frame);
+            }
 
             if (fingers.isEmpty()) {
                 response.put("success", false);
@@ -271,13 +319,13 @@ public class FingerprintController {
                 return ResponseEntity.ok(response);
             }
 
-            List<String> templates = new ArrayList<>();
-            for (FingerSplitResult finger : fingers) {
-                if (finger.getQuality() >= 20) {
-                    byte[] template = scannerService.createISOTemplate(finger.getImageData());
-                    templates.add(Base64.getEncoder().encodeToString(template));
-                }
-            }
+            List<byte[]> images = fingers.stream()
+                    .filter(finger -> finger.getQuality() >= 20)
+                    .map(FingerSplitResult::getImageData)
+                    .toList();
+            List<String> templates = scannerService.createISOTemplates(images).stream()
+                    .map(Base64.getEncoder()::encodeToString)
+                    .toList();
 
             response.put("success", true);
             response.put("templates", templates);
@@ -308,7 +356,7 @@ public class FingerprintController {
             byte[] template2 = Base64.getDecoder().decode(template2Base64);
 
             int score = scannerService.compareTemplates(template1, template2);
-            boolean match = score >= 45; // Threshold de 45
+            boolean match = score >= TemplateMatcher.MATCH_THRESHOLD;
 
             response.put("success", true);
             response.put("score", score);
@@ -326,6 +374,51 @@ public class FingerprintController {
         }
     }
 
+    /**
+     * Algorithm handle pool statistics (occupancy, lease waits, timeouts, run times per operation)
+     */
+    @GetMapping("/template/handles")
+    public ResponseEntity<Map<String, Object>> getTemplateHandles() {
+        return ResponseEntity.ok(algorithmHandles.getStats());
+    }
+
+    /**
+     * Converts a WSQ image returned by a capture endpoint back to BMP
+     */
+    @PostMapping("/image/decode")
+    public ResponseEntity<Map<String, Object>> decodeImage(@RequestBody Map<String, String> request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            String image = request.get("image");
+            byte[] wsq = Base64.getDecoder().decode(image.substring(image.indexOf(',') + 1));
+            WsqCodec.Image decoded = scannerService.decodeWsq(wsq);
+
+            response.put("success", true);
+            response.put("image", scannerService.encodeImage(decoded.pixels(), decoded.width(), decoded.height(),
+                    ImageFormat.BMP));
+            response.put("width", decoded.width());
+            response.put("height", decoded.height());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", "Invalid WSQ image: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            log.error("Error decoding image", e);
+            response.put("success", false);
+            response.put("message", "Error: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * WSQ compression statistics (images, vendor vs. Java codec, overall ratio)
+     */
+    @GetMapping("/image/wsq")
+    public ResponseEntity<Map<String, Object>> getWsqStats() {
+        return ResponseEntity.ok(wsqService.getStats());
+    }
+
     /**
      * Detects false fingerprint
      */
@@ -359,7 +452,14 @@ public class FingerprintController {
      * Captures two thumbs
      */
     @PostMapping("/capture/thumbs")
-    public ResponseEntity<Map<String, Object>> captureTwoThumbs() {
+    public ResponseEntity<Map<String, Object>> captureTwoThumbs(
+            @RequestParam(defaultValue = "bmp") ImageFormat format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletResponse servletResponse) throws IOException {
+        return respond(captureThumbs(format), format, accept, servletResponse);
+    }
+
+    private CaptureResult captureThumbs(ImageFormat format) {
         Map<String, Object> response = new HashMap<>();
         try {
             int width = 1600;
@@ -368,17 +468,20 @@ public class FingerprintController {
 
             log.info("Capturing two thumbs {}x{}", width, height);
 
-            byte[] rawData = scannerService.captureRawImage(width, height);
-            int quality = scannerService.safeFingerQuality(rawData);
+            int quality;
+            List<FingerSplitResult> fingers;
+            try (FrameBuffer frame = scannerService.captureFrame(width, height)) {
+                quality = scannerService.safeFingerQuality(frame);
 
-            log.info("Quality of image: {}", quality);
+                log.info("Quality of image: {}", quality);
 
-            List<FingerSplitResult> fingers = scannerService.splitFingers(rawData, width, height);
+                fingers = scannerService.splitFingers(frame);
+            }
 
             if (fingers.isEmpty()) {
                 response.put("success", false);
                 response.put("message", "No fingers detected. Place both thumbs on the scanner");
-                return ResponseEntity.ok(response);
+                return new CaptureResult(200, response);
             }
 
             if (fingers.size() != expectedFingers) {
@@ -389,7 +492,7 @@ public class FingerprintController {
                 ));
                 response.put("detected", fingers.size());
                 response.put("quality", quality);
-                return ResponseEntity.ok(response);
+                return new CaptureResult(200, response);
             }
 
             // Detects which hand
@@ -400,6 +503,7 @@ public class FingerprintController {
                     handDetection.getHandType().getDescription(),
                     Math.round(handDetection.getConfidence() * 100));
 
+            CaptureResult result = new CaptureResult(200, response);
             List<Map<String, Object>> thumbsList = new ArrayList<>();
 
             // Sorts by X position (left to right)
@@ -410,15 +514,8 @@ public class FingerprintController {
             for (int i = 0; i < sortedFingers.size(); i++) {
                 FingerSplitResult finger = sortedFingers.get(i);
 
-                byte[] bmpData = scannerService.rawToBmp(
-                        finger.getImageData(),
-                        finger.getWidth(),
-                        finger.getHeight()
-                );
-                String base64Image = scannerService.bmpToBase64(bmpData);
-
                 Map<String, Object> thumbData = new HashMap<>();
-                thumbData.put("image", base64Image);
+                result.image(thumbData, finger.getImageData(), finger.getWidth(), finger.getHeight());
                 thumbData.put("quality", finger.getQuality());
                 thumbData.put("angle", finger.getAngle());
                 thumbData.put("x", finger.getX());
@@ -436,33 +533,58 @@ public class FingerprintController {
 
             response.put("success", true);
             response.put("thumbs", thumbsList);
+            response.put("format", format.name().toLowerCase());
             response.put("count", thumbsList.size());
             response.put("quality", quality);
             response.put("handDetection", handDetectionService.toMap(handDetection));
 
             log.info("Thumb capture completed: {} thumbs detected", thumbsList.size());
 
-            return ResponseEntity.ok(response);
+            return result;
 
-        } catch (IllegalStateException e) {
+        } catch (DeviceNotOpenException e) {
             log.error("Invalid state", e);
             response.put("success", false);
             response.put("message", "Device is not connected");
-            return ResponseEntity.status(409).body(response);
+            return new CaptureResult(409, response);
+
+        } catch (DeviceBusyException e) {
+            log.warn("Device busy when capturing thumbs: {}", e.getMessage());
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return new CaptureResult(503, response);
 
         } catch (RuntimeException e) {
             log.error("Runtime error when capturing thumbs", e);
             response.put("success", false);
             response.put("message", "Capture error: " + e.getMessage());
-            return ResponseEntity.status(500).body(response);
+            return new CaptureResult(500, response);
 
         } catch (Exception e) {
             log.error("Unexpected error capturing thumbs", e);
             response.put("success", false);
             response.put("message", "Internal error: " + e.getMessage());
             response.put("type", e.getClass().getSimpleName());
-            return ResponseEntity.status(500).body(response);
+            return new CaptureResult(500, response);
+        }
+    }
+
+    /**
+     * Streams the result when the client accepts a binary capture type; otherwise encodes each
+     * image as a data URL and answers JSON. A null entity tells Spring the response was written.
+     */
+    private ResponseEntity<Map<String, Object>> respond(CaptureResult result, ImageFormat format, String accept,
+                                                        HttpServletResponse servletResponse) throws IOException {
+        MediaType streamed = CaptureStreamWriter.negotiate(accept);
+        if (streamed != null) {
+            captureStreamWriter.write(servletResponse, streamed, result, format);
+            return null;
         }
+        for (CaptureResult.Image image : result.images()) {
+            image.target().put("image",
+                    scannerService.encodeImage(image.pixels(), image.width(), image.height(), format));
+        }
+        return ResponseEntity.status(result.status()).body(result.body());
     }
 
     // =================== HAND DETECTION ===================
@@ -479,16 +601,19 @@ public class FingerprintController {
         try {
             log.info("Detecting hand {}x{}", width, height);
 
-            byte[] rawData = scannerService.captureRawImage(width, height);
-            int quality = scannerService.safeFingerQuality(rawData);
+            int quality;
+            List<FingerSplitResult> fingers;
+            try (FrameBuffer frame = scannerService.captureFrame(width, height)) {
+                quality = scannerService.safeFingerQuality(frame);
 
-            if (quality < 20) {
-                response.put("success", false);
-                response.put("message", "Insufficient quality: " + quality);
-                return ResponseEntity.ok(response);
-            }
+                if (quality < 20) {
+                    response.put("success", false);
+                    response.put("message", "Insufficient quality: " + quality);
+                    return ResponseEntity.ok(response);
+                }
 
-            List<FingerSplitResult> fingers = scannerService.splitFingers(rawData, width, height);
+                fingers = scannerService.splitFingers(frame);
+            }
 
             if (fingers.isEmpty()) {
                 response.put("success", false);
@@ -0,0 +1,161 @@
+package com.github.bluestring_digital.fingerprint.controller;
+
+import com.github.bluestring_digital.fingerprint.cluster.ClusterNode;
+import com.github.bluestring_digital.fingerprint.gallery.Candidate;
+import com.github.bluestring_digital.fingerprint.gallery.GalleryService;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.*;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/fingerprint/gallery")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class GalleryController {
+
+    private final GalleryService galleryService;
+    private final ClusterNode clusterNode;
+
+    /**
+     * Enrolls a template: {"subjectId": "...", "finger": 1, "quality": 70, "template": "<base64>"}.
+     * The quality defaults to the one recorded in the template. A cluster node answers 409 for
+     * subjects owned by another shard.
+     */
+    @PostMapping("/enroll")
+    public ResponseEntity<Map<String, Object>> enroll(@RequestBody Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            String subjectId = (String) request.get("subjectId");
+            if (subjectId == null || subjectId.isBlank()) {
+                throw new IllegalArgumentException("subjectId is required");
+            }
+            if (!clusterNode.owns(subjectId)) {
+                response.put("success", false);
+                response.put("message", "Subject belongs to shard "
+                        + ClusterNode.shardOf(subjectId, clusterNode.getShardCount()));
+                return ResponseEntity.status(409).body(response);
+            }
+            int finger = request.get("finger") instanceof Number number ? number.intValue() : 0;
+            byte[] template = Base64.getDecoder().decode((String) request.get("template"));
+
+            int index = request.get("quality") instanceof Number quality
+                    ? galleryService.enroll(subjectId, finger, quality.intValue(), template)
+                    : galleryService.enroll(subjectId, finger, template);
+
+            response.put("success", true);
+            response.put("index", index);
+            response.put("size", galleryService.size());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException | NullPointerException | ClassCastException e) {
+            response.put("success", false);
+            response.put("message", "Invalid request: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            log.error("Error enrolling template", e);
+            response.put("success", false);
+            response.put("message", "Error: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * 1:N identification: {"template": "<base64>", "k": 5, "threshold": 45, "exhaustive": false}
+     */
+    @PostMapping("/identify")
+    public ResponseEntity<Map<String, Object>> identify(@RequestBody Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            byte[] probe = Base64.getDecoder().decode((String) request.get("template"));
+            long k = request.get("k") instanceof Number number ? number.longValue() : 5;
+            if (k < 1 || k > GalleryService.MAX_CANDIDATES) {
+                throw new IllegalArgumentException("k must be between 1 and " + GalleryService.MAX_CANDIDATES);
+            }
+            int threshold = request.get("threshold") instanceof Number number
+                    ? number.intValue() : TemplateMatcher.MATCH_THRESHOLD;
+            boolean exhaustive = Boolean.TRUE.equals(request.get("exhaustive"));
+
+            long start = System.nanoTime();
+            List<Candidate> candidates = galleryService.identify(probe, (int) k, threshold, exhaustive);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            response.put("success", true);
+            response.put("candidates", candidates);
+            response.put("match", !candidates.isEmpty());
+            response.put("gallerySize", galleryService.size());
+            response.put("elapsedMs", elapsedMs);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException | NullPointerException | ClassCastException e) {
+            response.put("success", false);
+            response.put("message", "Invalid request: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            log.error("Error identifying template", e);
+            response.put("success", false);
+            response.put("message", "Error: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * Gallery size, arena footprint, search parallelism, pre-filter pruning ratio / recall and
+     * cluster role
+     */
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>(galleryService.getStats());
+        status.put("cluster", clusterNode.describe());
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * Removes every template of a subject
+     */
+    @DeleteMapping("/subjects/{subjectId}")
+    public ResponseEntity<Map<String, Object>> removeSubject(@PathVariable String subjectId) {
+        int removed = galleryService.remove(subjectId);
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", removed > 0);
+        response.put("removed", removed);
+        response.put("size", galleryService.size());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Reclaims the space of removed templates in the store and the arena
+     */
+    @PostMapping("/compact")
+    public ResponseEntity<Map<String, Object>> compact() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            long start = System.nanoTime();
+            int reclaimed = galleryService.compact();
+            response.put("success", true);
+            response.put("reclaimed", reclaimed);
+            response.put("size", galleryService.size());
+            response.put("elapsedMs", (System.nanoTime() - start) / 1_000_000);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Error compacting gallery", e);
+            response.put("success", false);
+            response.put("message", "Error: " + e.getMessage());
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+
+    /**
+     * Removes every enrolled template
+     */
+    @DeleteMapping
+    public ResponseEntity<Map<String, Object>> clear() {
+        galleryService.clear();
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("size", 0);
+        return ResponseEntity.ok(response);
+    }
+}
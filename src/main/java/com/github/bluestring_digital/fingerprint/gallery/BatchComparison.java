@@ -0,0 +1,113 @@
+package com.github.bluestring_digital.fingerprint.gallery;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Streams 1:1 comparisons through {@link GalleryService#compareAsync} with at most {@code window}
+ * of them in flight. Results reach the sink in submission order, as soon as the oldest pending
+ * comparison is done, so memory stays bounded however long the input is.
+ * Not thread-safe: one instance per request, fed by the thread reading the input.
+ */
+public final class BatchComparison {
+
+    /** Score reported for a comparison that could not run (e.g. missing or malformed template) */
+    public static final int INVALID = -1;
+
+    @FunctionalInterface
+    public interface ResultSink {
+        void accept(long sequence, String id, int score) throws IOException;
+    }
+
+    private final GalleryService matcher;
+    private final int window;
+    private final int threshold;
+    private final ResultSink sink;
+    private final ArrayDeque<Pending> inFlight = new ArrayDeque<>();
+    private long submitted;
+    private long matched;
+    private long failed;
+
+    public BatchComparison(GalleryService matcher, int window, int threshold, ResultSink sink) {
+        this.matcher = matcher;
+        this.window = Math.max(1, window);
+        this.threshold = threshold;
+        this.sink = sink;
+    }
+
+    /**
+     * Queues a comparison, first emitting the oldest one if the window is full
+     */
+    public void submit(String id, byte[] template1, byte[] template2) throws IOException {
+        enqueue(id, matcher.compareAsync(template1, template2));
+    }
+
+    /**
+     * Queues a result of {@link #INVALID}, keeping its place in the output order
+     */
+    public void reject(String id) throws IOException {
+        enqueue(id, CompletableFuture.completedFuture(INVALID));
+    }
+
+    /**
+     * Emits every pending result and returns the number of comparisons submitted
+     */
+    public long finish() throws IOException {
+        while (!inFlight.isEmpty()) {
+            emit(inFlight.poll());
+        }
+        return submitted;
+    }
+
+    /**
+     * Cancels comparisons that have not started (e.g. the client went away)
+     */
+    public void cancel() {
+        inFlight.forEach(pending -> pending.score.cancel(false));
+        inFlight.clear();
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * Comparisons emitted so far with a score of at least the threshold
+     */
+    public long getMatched() {
+        return matched;
+    }
+
+    /**
+     * Comparisons emitted so far as {@link #INVALID} because they completed exceptionally
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    private void enqueue(String id, CompletableFuture<Integer> score) throws IOException {
+        if (inFlight.size() >= window) {
+            emit(inFlight.poll());
+        }
+        inFlight.add(new Pending(submitted++, id, score));
+        while (!inFlight.isEmpty() && inFlight.peek().score.isDone()) {
+            emit(inFlight.poll());
+        }
+    }
+
+    private void emit(Pending pending) throws IOException {
+        // One failed comparison is reported in its place instead of ending the whole stream
+        int score = pending.score.exceptionally(e -> {
+            failed++;
+            return INVALID;
+        }).join();
+        if (score >= threshold) {
+            matched++;
+        }
+        sink.accept(pending.sequence, pending.id, score);
+    }
+
+    private record Pending(long sequence, String id, CompletableFuture<Integer> score) {
+    }
+}
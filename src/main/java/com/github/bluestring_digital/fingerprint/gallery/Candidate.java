@@ -0,0 +1,7 @@
+package com.github.bluestring_digital.fingerprint.gallery;
+
+/**
+ * Identification hit: an enrolled template and its matcher score against the probe
+ */
+public record Candidate(String subjectId, int finger, int score) {
+}
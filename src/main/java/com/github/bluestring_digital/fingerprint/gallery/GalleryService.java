@@ -0,0 +1,660 @@
+package com.github.bluestring_digital.fingerprint.gallery;
+
+import com.github.bluestring_digital.fingerprint.template.IsoTemplate;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory 1:N gallery. Enrolled ISO templates live in a {@link TemplateArena}; identification
+ * splits the arena into shards and scores them in parallel on a dedicated fork-join pool, each
+ * shard within one {@link TemplateMatcher} call (one leased handle with the native engine), then
+ * merges the per-shard top-k lists.
+ * <p>
+ * Large galleries are first narrowed by a {@link MinutiaeIndex}; only its candidates reach the
+ * matcher. A sample of queries also runs exhaustively, in the background and off the request
+ * path, to measure the pre-filter recall.
+ * <p>
+ * With {@code fingerprint.store.path} set, enrollments are persisted in a {@link TemplateStore}
+ * and the gallery is rebuilt from it at startup. Only the arena copy runs at startup; the index is
+ * rebuilt in the background (hashing in parallel) and queries search exhaustively until it is ready.
+ * <p>
+ * Matching only uses the template algorithm (FpStdLib or the Java matcher), not the sensor, so it
+ * runs outside the device command thread.
+ */
+@Slf4j
+@Service
+public class GalleryService {
+
+    /** Most candidates an identification may ask for; the controllers reject larger {@code k} */
+    public static final int MAX_CANDIDATES = 1000;
+
+    private static final Comparator<Hit> BY_SCORE = Comparator.comparingInt(Hit::score);
+    private static final int INDEX_CHUNK = 4096;
+    /** Recall samples waiting to run; more are skipped */
+    private static final int RECALL_QUEUE = 1;
+
+    private final TemplateMatcher matcher;
+    private final int shardSize;
+    private final ForkJoinPool pool;
+    private final boolean prefilter;
+    private final int prefilterMinSize;
+    private final double recallSampleRate;
+    private final Supplier<MinutiaeIndex> indexFactory;
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gallery-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder comparisons = new LongAdder();
+    private final LongAdder failedComparisons = new LongAdder();
+    private final LongAdder prefilteredQueries = new LongAdder();
+    private final DoubleAdder prunedFraction = new DoubleAdder();
+    private final LongAdder recallExpected = new LongAdder();
+    private final LongAdder recallFound = new LongAdder();
+    private final LongAdder recallSkipped = new LongAdder();
+    private final ThreadPoolExecutor recallSampler = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(RECALL_QUEUE),
+            runnable -> {
+                Thread thread = new Thread(runnable, "gallery-recall");
+                thread.setDaemon(true);
+                return thread;
+            },
+            (runnable, executor) -> recallSkipped.increment());
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TemplateArena arena;
+    private String[] subjectIds;
+    private int[] fingers;
+    private long[] recordIds;
+    private int live;
+    private MinutiaeIndex index;
+    private volatile boolean indexReady = true;
+    private int indexGeneration;
+    private volatile long indexBuildMs;
+
+    private final String storePath;
+    private final boolean storeSync;
+    private TemplateStore store;
+    private long storeLoadMs;
+
+    public GalleryService(TemplateMatcher matcher,
+                          @Value("${fingerprint.gallery.initial-capacity:1024}") int initialCapacity,
+                          @Value("${fingerprint.gallery.shard-size:512}") int shardSize,
+                          @Value("${fingerprint.gallery.parallelism:0}") int parallelism,
+                          @Value("${fingerprint.gallery.prefilter.enabled:true}") boolean prefilter,
+                          @Value("${fingerprint.gallery.prefilter.min-gallery-size:1000}") int prefilterMinSize,
+                          @Value("${fingerprint.gallery.prefilter.neighbors:6}") int neighbors,
+                          @Value("${fingerprint.gallery.prefilter.min-votes:4}") int minVotes,
+                          @Value("${fingerprint.gallery.prefilter.min-vote-ratio:0.15}") double minVoteRatio,
+                          @Value("${fingerprint.gallery.prefilter.max-candidate-ratio:0.1}") double maxCandidateRatio,
+                          @Value("${fingerprint.gallery.prefilter.recall-sample-rate:0.01}") double recallSampleRate,
+                          @Value("${fingerprint.store.path:}") String storePath,
+                          @Value("${fingerprint.store.sync-on-append:true}") boolean storeSync) {
+        this.matcher = matcher;
+        this.shardSize = Math.max(1, shardSize);
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.arena = new TemplateArena(initialCapacity);
+        this.subjectIds = new String[arena.capacity()];
+        this.fingers = new int[arena.capacity()];
+        this.recordIds = new long[arena.capacity()];
+        this.prefilter = prefilter;
+        this.prefilterMinSize = prefilterMinSize;
+        this.recallSampleRate = recallSampleRate;
+        this.indexFactory = () -> new MinutiaeIndex(neighbors, minVotes, minVoteRatio, maxCandidateRatio,
+                Math.max(1, prefilterMinSize / 10));
+        this.index = indexFactory.get();
+        this.storePath = storePath;
+        this.storeSync = storeSync;
+    }
+
+    @PostConstruct
+    public void openStore() throws IOException {
+        if (!storePath.isBlank()) {
+            attachStore(TemplateStore.open(Path.of(storePath), storeSync));
+        }
+    }
+
+    /**
+     * Persists future enrollments in {@code templateStore} and replaces the gallery with its contents
+     */
+    public void attachStore(TemplateStore templateStore) {
+        lock.writeLock().lock();
+        try {
+            store = templateStore;
+            reloadFromStore();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a template to the gallery (and the store, if any) and returns its slot
+     */
+    public int enroll(String subjectId, int finger, byte[] template) {
+        IsoTemplate parsed = parseOrNull(template);
+        return enroll(subjectId, finger, parsed != null ? parsed.getQuality() : 0, template);
+    }
+
+    public int enroll(String subjectId, int finger, int quality, byte[] template) {
+        lock.writeLock().lock();
+        try {
+            // Durable first: a template is only searchable once it is in the store
+            long recordId = store != null ? store.append(subjectId, finger, quality, template) : 0;
+            int slot = addSlot(recordId, subjectId, finger, arena.add(template));
+            if (indexReady) {
+                indexTemplate(index, slot, template);
+            }
+            return slot;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every template of a subject. Returns the number removed; the space is reclaimed by {@link #compact()}.
+     */
+    public int remove(String subjectId) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (int slot = 0; slot < arena.size(); slot++) {
+                if (!subjectId.equals(subjectIds[slot])) continue;
+                if (store != null) {
+                    store.delete(recordIds[slot]);
+                }
+                subjectIds[slot] = null;
+                index.remove(slot);
+                live--;
+                removed++;
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops removed templates from the store and the arena. Returns the number of templates reclaimed.
+     */
+    public int compact() {
+        lock.writeLock().lock();
+        try {
+            if (store != null) {
+                int removed = store.compact();
+                reloadFromStore();
+                return removed;
+            }
+            int before = arena.size();
+            compactArena();
+            return before - arena.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the best {@code k} enrolled templates with a score of at least {@code threshold},
+     * best first, searching only the pre-filter candidates for large galleries
+     */
+    public List<Candidate> identify(byte[] probe, int k, int threshold) {
+        return identify(probe, k, threshold, false);
+    }
+
+    /**
+     * As {@link #identify(byte[], int, int)}; {@code exhaustive} bypasses the pre-filter
+     */
+    public List<Candidate> identify(byte[] probe, int k, int threshold, boolean exhaustive) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        byte[] probeSlot = Arrays.copyOf(probe, TemplateArena.SLOT_SIZE);
+        IsoTemplate probeTemplate = exhaustive ? null : parseOrNull(probe);
+        lock.readLock().lock();
+        try {
+            int size = arena.size();
+            if (size == 0) {
+                return List.of();
+            }
+            // Nunca mais candidatos do que modelos na galeria
+            k = Math.min(k, size);
+            queries.increment();
+            int[] slots = null;
+            if (prefilter && indexReady && probeTemplate != null && size >= prefilterMinSize) {
+                slots = index.candidates(probeTemplate, size);
+                prefilteredQueries.increment();
+                prunedFraction.add(1.0 - (double) slots.length / size);
+            }
+
+            List<Hit> hits = search(probeSlot, slots, size, k, threshold);
+            if (slots != null && ThreadLocalRandom.current().nextDouble() < recallSampleRate) {
+                // probeSlot já é uma cópia; a busca exaustiva roda fora da requisição
+                int[] candidates = slots;
+                int limit = k;
+                int generation = indexGeneration;
+                recallSampler.execute(() -> measureRecall(probeSlot, candidates, size, limit, threshold, generation));
+            }
+            return hits.stream()
+                    .map(hit -> new Candidate(subjectIds[hit.slot()], fingers[hit.slot()], hit.score()))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scores one template pair on the search pool with the template matcher, so batches of
+     * 1:1 comparisons share the matcher parallelism with identification. A comparison that fails
+     * (no algorithm handle, native error) scores {@link BatchComparison#INVALID} instead of
+     * completing exceptionally.
+     */
+    public CompletableFuture<Integer> compareAsync(byte[] template1, byte[] template2) {
+        // Caught in the task rather than with exceptionally(), so cancelling the returned future
+        // still keeps a queued comparison from running
+        return CompletableFuture.supplyAsync(() -> {
+            comparisons.increment();
+            try {
+                return matcher.compare(template1, template2);
+            } catch (RuntimeException e) {
+                failedComparisons.increment();
+                log.warn("Comparação falhou: {}", e.getMessage());
+                return BatchComparison.INVALID;
+            }
+        }, pool);
+    }
+
+    /**
+     * False while the pre-filter index is being rebuilt in the background
+     */
+    public boolean isIndexReady() {
+        return indexReady;
+    }
+
+    /**
+     * Number of enrolled (not removed) templates
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            if (store != null) {
+                store.clear();
+            }
+            arena.truncate(0);
+            Arrays.fill(subjectIds, null);
+            indexGeneration++;
+            index = indexFactory.get();
+            indexReady = true;
+            live = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("templates", live);
+            stats.put("slots", arena.size());
+            stats.put("capacity", arena.capacity());
+            stats.put("arenaBytes", arena.bytes());
+            if (store != null) {
+                Map<String, Object> storeStats = new LinkedHashMap<>();
+                storeStats.put("path", store.getPath().toString());
+                storeStats.put("records", store.getRecordCount());
+                storeStats.put("live", store.getLiveCount());
+                storeStats.put("fileBytes", store.getFileSize());
+                storeStats.put("discardedOnOpen", store.getDiscarded());
+                storeStats.put("loadMs", storeLoadMs);
+                stats.put("store", storeStats);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("shardSize", shardSize);
+        stats.put("parallelism", pool.getParallelism());
+        stats.put("matcher", matcher.getEngine());
+        stats.put("matcherHandles", matcher.getOpenHandles());
+        stats.put("comparisons", comparisons.sum());
+        stats.put("failedComparisons", failedComparisons.sum());
+
+        Map<String, Object> prefilterStats = new LinkedHashMap<>();
+        long filtered = prefilteredQueries.sum();
+        long expected = recallExpected.sum();
+        prefilterStats.put("enabled", prefilter);
+        prefilterStats.put("minGallerySize", prefilterMinSize);
+        prefilterStats.put("indexReady", indexReady);
+        prefilterStats.put("indexBuildMs", indexBuildMs);
+        prefilterStats.put("queries", queries.sum());
+        prefilterStats.put("prefilteredQueries", filtered);
+        prefilterStats.put("pruningRatio", filtered > 0 ? prunedFraction.sum() / filtered : 0.0);
+        prefilterStats.put("recallSamples", expected);
+        prefilterStats.put("recall", expected > 0 ? (double) recallFound.sum() / expected : 1.0);
+        prefilterStats.put("recallSkipped", recallSkipped.sum());
+        stats.put("prefilter", prefilterStats);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexer.shutdownNow();
+        recallSampler.shutdownNow();
+        pool.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            arena.close();
+            if (store != null) {
+                store.close();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close template store: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds arena and metadata from the store's live records, then the index in the background.
+     * Caller holds the write lock.
+     */
+    private void reloadFromStore() {
+        long start = System.nanoTime();
+        arena.truncate(0);
+        Arrays.fill(subjectIds, null);
+        live = 0;
+
+        store.forEach((recordId, subjectId, finger, quality, template) ->
+                addSlot(recordId, subjectId, finger, arena.add(template)));
+        storeLoadMs = (System.nanoTime() - start) / 1_000_000;
+        log.info("Galeria carregada de {}: {} templates em {}ms", store.getPath(), live, storeLoadMs);
+        rebuildIndex();
+    }
+
+    /**
+     * Slides live slots down over removed ones, then rebuilds the index. Caller holds the write lock.
+     */
+    private void compactArena() {
+        int write = 0;
+        for (int read = 0; read < arena.size(); read++) {
+            if (subjectIds[read] == null) continue;
+            if (write != read) {
+                arena.move(read, write);
+                subjectIds[write] = subjectIds[read];
+                fingers[write] = fingers[read];
+                recordIds[write] = recordIds[read];
+                subjectIds[read] = null;
+            }
+            write++;
+        }
+        arena.truncate(write);
+        rebuildIndex();
+    }
+
+    /**
+     * Replaces the index with one built in the background; until then queries skip the pre-filter.
+     * Caller holds the write lock.
+     */
+    private void rebuildIndex() {
+        indexReady = false;
+        int generation = ++indexGeneration;
+        int upTo = arena.size();
+        indexer.execute(() -> {
+            try {
+                buildIndex(generation, upTo);
+            } catch (RuntimeException e) {
+                log.error("Falha ao reconstruir o índice da galeria", e);
+            }
+        });
+    }
+
+    /**
+     * Hashes slots [0, upTo) chunk by chunk on the search pool (holding only the read lock), fills a
+     * new index off-lock, then catches up with changes made meanwhile and swaps it in
+     */
+    private void buildIndex(int generation, int upTo) {
+        long start = System.nanoTime();
+        MinutiaeIndex built = indexFactory.get();
+        for (int from = 0; from < upTo; from += INDEX_CHUNK) {
+            int chunkStart = from;
+            int[][] hashes = new int[Math.min(INDEX_CHUNK, upTo - from)][];
+            int[] counts = new int[hashes.length];
+            lock.readLock().lock();
+            try {
+                if (generation != indexGeneration) {
+                    return;
+                }
+                pool.submit(() -> IntStream.range(0, hashes.length).parallel().forEach(i -> {
+                    if (subjectIds[chunkStart + i] == null) return;
+                    byte[] template = new byte[TemplateArena.SLOT_SIZE];
+                    arena.read(chunkStart + i, template);
+                    IsoTemplate parsed = parseOrNull(template);
+                    // Empty hashes with count -1 mark a live slot whose template does not parse
+                    hashes[i] = parsed != null ? built.pairHashes(parsed) : new int[0];
+                    counts[i] = parsed != null ? parsed.getCount() : -1;
+                })).join();
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (int i = 0; i < hashes.length; i++) {
+                if (hashes[i] == null) continue;
+                if (counts[i] < 0) {
+                    built.addUnparsed(chunkStart + i);
+                } else {
+                    built.add(chunkStart + i, counts[i], hashes[i]);
+                }
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (generation != indexGeneration) {
+                return;
+            }
+            byte[] template = new byte[TemplateArena.SLOT_SIZE];
+            for (int slot = 0; slot < arena.size(); slot++) {
+                if (subjectIds[slot] == null) {
+                    built.remove(slot);
+                } else if (slot >= upTo) {
+                    arena.read(slot, template);
+                    indexTemplate(built, slot, template);
+                }
+            }
+            index = built;
+            indexReady = true;
+            indexBuildMs = (System.nanoTime() - start) / 1_000_000;
+            log.info("Índice da galeria reconstruído: {} templates em {}ms", live, indexBuildMs);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int addSlot(long recordId, String subjectId, int finger, int slot) {
+        if (slot >= subjectIds.length) {
+            subjectIds = Arrays.copyOf(subjectIds, arena.capacity());
+            fingers = Arrays.copyOf(fingers, arena.capacity());
+            recordIds = Arrays.copyOf(recordIds, arena.capacity());
+        }
+        subjectIds[slot] = subjectId;
+        fingers[slot] = finger;
+        recordIds[slot] = recordId;
+        live++;
+        return slot;
+    }
+
+    private List<Hit> search(byte[] probe, int[] slots, int size, int k, int threshold) {
+        int count = slots != null ? slots.length : size;
+        if (count == 0) {
+            return List.of();
+        }
+        List<Hit> hits = pool.invoke(new ShardSearch(probe, slots, 0, count, k, threshold));
+        hits.sort(BY_SCORE.reversed());
+        return hits;
+    }
+
+    /**
+     * Runs the same query exhaustively on the recall thread and counts how many of its hits the
+     * pre-filter kept. The read lock is only held one chunk of shards at a time, so enrollments and
+     * compactions are not held up by the whole search; a sample whose slots were moved meanwhile
+     * (compaction or reload) is dropped.
+     */
+    private void measureRecall(byte[] probe, int[] slots, int size, int k, int threshold, int generation) {
+        int chunk = shardSize * pool.getParallelism();
+        List<Hit> hits = new ArrayList<>();
+        try {
+            for (int from = 0; from < size; from += chunk) {
+                lock.readLock().lock();
+                try {
+                    if (indexGeneration != generation) {
+                        recallSkipped.increment();
+                        return;
+                    }
+                    hits.addAll(pool.invoke(new ShardSearch(probe, null, from, Math.min(size, from + chunk), k,
+                            threshold)));
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (hits.size() > k) {
+                    hits.sort(BY_SCORE.reversed());
+                    hits.subList(k, hits.size()).clear();
+                }
+            }
+        } catch (RuntimeException e) {
+            // Galeria sendo desligada
+            log.debug("Amostra de recall descartada: {}", e.getMessage());
+            return;
+        }
+        for (Hit hit : hits) {
+            recallExpected.increment();
+            if (Arrays.binarySearch(slots, hit.slot()) >= 0) {
+                recallFound.increment();
+            }
+        }
+    }
+
+    private static void indexTemplate(MinutiaeIndex target, int slot, byte[] template) {
+        IsoTemplate parsed = parseOrNull(template);
+        if (parsed != null) {
+            target.add(slot, parsed);
+        } else {
+            target.addUnparsed(slot);
+        }
+    }
+
+    private static IsoTemplate parseOrNull(byte[] template) {
+        try {
+            return IsoTemplate.looksLikeIso(template) ? IsoTemplate.parse(template) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Splits [from, to) until a range fits in one shard, scores it and merges the children's top-k.
+     * The range indexes {@code slots} when a pre-filter candidate list is given, the arena otherwise.
+     */
+    private class ShardSearch extends RecursiveTask<List<Hit>> {
+
+        private final byte[] probe;
+        private final int[] slots;
+        private final int from;
+        private final int to;
+        private final int k;
+        private final int threshold;
+
+        ShardSearch(byte[] probe, int[] slots, int from, int to, int k, int threshold) {
+            this.probe = probe;
+            this.slots = slots;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected List<Hit> compute() {
+            if (to - from <= shardSize) {
+                return searchShard();
+            }
+            int middle = (from + to) >>> 1;
+            ShardSearch left = new ShardSearch(probe, slots, from, middle, k, threshold);
+            left.fork();
+            List<Hit> right = new ShardSearch(probe, slots, middle, to, k, threshold).compute();
+            return merge(left.join(), right);
+        }
+
+        private List<Hit> searchShard() {
+            return matcher.call("search", this::searchShard);
+        }
+
+        private List<Hit> searchShard(TemplateMatcher.Comparison comparison) {
+            PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(k, to - from) + 1, BY_SCORE);
+            byte[] candidate = new byte[TemplateArena.SLOT_SIZE];
+            for (int i = from; i < to; i++) {
+                int slot = slots != null ? slots[i] : i;
+                if (subjectIds[slot] == null) continue;
+                arena.read(slot, candidate);
+                int score = comparison.compare(probe, candidate);
+                if (score < threshold) continue;
+                if (top.size() < k) {
+                    top.add(new Hit(slot, score));
+                } else if (score > top.peek().score()) {
+                    top.poll();
+                    top.add(new Hit(slot, score));
+                }
+            }
+            return new ArrayList<>(top);
+        }
+
+        private List<Hit> merge(List<Hit> a, List<Hit> b) {
+            List<Hit> merged = new ArrayList<>(a.size() + b.size());
+            merged.addAll(a);
+            merged.addAll(b);
+            if (merged.size() > k) {
+                merged.sort(BY_SCORE.reversed());
+                return new ArrayList<>(merged.subList(0, k));
+            }
+            return merged;
+        }
+    }
+
+    private record Hit(int slot, int score) {
+    }
+}
@@ -0,0 +1,304 @@
+package com.github.bluestring_digital.fingerprint.gallery;
+
+import com.github.bluestring_digital.fingerprint.template.IsoTemplate;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Coarse inverted index over minutiae-pair geometry, used to prune the gallery before the
+ * full matcher runs.
+ * <p>
+ * Each minutia is paired with its nearest neighbours; a pair is described by its length and
+ * the directions of both minutiae relative to the segment between them (rotation and translation
+ * invariant) plus both minutia types, quantized into a hash. A probe votes for every slot sharing
+ * one of its hashes; slots whose votes reach a fraction of the probe's pairs and whose minutiae
+ * count is compatible become candidates, capped at a fraction of the gallery.
+ * Query-side quantization is boundary aware: values near a bin edge also look up the adjacent bin.
+ * Not thread-safe: the gallery guards it with its read/write lock.
+ */
+public final class MinutiaeIndex {
+
+    private static final int DISTANCE_STEP = 8;
+    private static final int MIN_DISTANCE = 12;
+    private static final int DISTANCE_BINS = 20;
+    private static final int ANGLE_BINS = 16;
+    private static final int HASH_SPACE = DISTANCE_BINS * ANGLE_BINS * ANGLE_BINS * 4;
+    private static final double EDGE = 0.25;
+
+    private final int neighbors;
+    private final int minVotes;
+    private final double minVoteRatio;
+    private final double maxCandidateRatio;
+    private final int minCandidates;
+
+    private final Postings[] postings = new Postings[HASH_SPACE];
+    private int[] counts = new int[0];
+    private final BitSet indexed = new BitSet();
+    private final BitSet unparsed = new BitSet();
+
+    public MinutiaeIndex(int neighbors, int minVotes, double minVoteRatio,
+                         double maxCandidateRatio, int minCandidates) {
+        this.neighbors = neighbors;
+        this.minVotes = minVotes;
+        this.minVoteRatio = minVoteRatio;
+        this.maxCandidateRatio = maxCandidateRatio;
+        this.minCandidates = minCandidates;
+    }
+
+    public void add(int slot, IsoTemplate template) {
+        add(slot, template.getCount(), pairHashes(template));
+    }
+
+    /**
+     * Indexes a slot from hashes computed by {@link #pairHashes}
+     */
+    public void add(int slot, int minutiaeCount, int[] hashes) {
+        if (slot >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(slot + 1, counts.length * 2));
+        }
+        counts[slot] = minutiaeCount;
+        indexed.set(slot);
+        for (int hash : hashes) {
+            Postings list = postings[hash];
+            if (list == null) {
+                list = postings[hash] = new Postings();
+            }
+            list.add(slot);
+        }
+    }
+
+    /**
+     * Pair hashes stored for a template. Does not touch the index, so bulk loads can compute
+     * them in parallel and only serialize the {@link #add(int, int, int[])} calls.
+     */
+    public int[] pairHashes(IsoTemplate template) {
+        int[] hashes = new int[template.getCount() * Math.max(0, Math.min(neighbors, template.getCount() - 1))];
+        int[] n = {0};
+        forEachPair(template, false, hash -> hashes[n[0]++] = hash);
+        return n[0] == hashes.length ? hashes : Arrays.copyOf(hashes, n[0]);
+    }
+
+    /**
+     * Registers a slot whose template could not be parsed; it is returned with every query
+     */
+    public void addUnparsed(int slot) {
+        unparsed.set(slot);
+    }
+
+    /**
+     * Excludes a slot from future queries (its postings are dropped on the next rebuild)
+     */
+    public void remove(int slot) {
+        indexed.clear(slot);
+        unparsed.clear(slot);
+    }
+
+    public void clear() {
+        Arrays.fill(postings, null);
+        indexed.clear();
+        unparsed.clear();
+    }
+
+    /**
+     * Candidate slots in [0, gallerySize) for the probe, ascending. Slots registered with
+     * {@link #addUnparsed} are always included.
+     */
+    public int[] candidates(IsoTemplate probe, int gallerySize) {
+        int[] votes = new int[gallerySize];
+        int[] lastPair = new int[gallerySize];
+        int[] pair = {0};
+        // One vote per probe pair and slot, even when several expanded hashes hit the same slot
+        forEachPair(probe, true, new PairVisitor() {
+            @Override
+            public void startPair() {
+                pair[0]++;
+            }
+
+            @Override
+            public void accept(int hash) {
+                Postings list = postings[hash];
+                if (list == null) return;
+                for (int i = 0; i < list.size; i++) {
+                    int slot = list.slots[i];
+                    if (slot < gallerySize && lastPair[slot] != pair[0]) {
+                        lastPair[slot] = pair[0];
+                        votes[slot]++;
+                    }
+                }
+            }
+        });
+
+        int probeCount = probe.getCount();
+        int maxVotes = 0;
+        for (int slot = 0; slot < gallerySize; slot++) {
+            if (!indexed.get(slot)) {
+                votes[slot] = 0;
+                continue;
+            }
+            int count = counts[slot];
+            if (count * 2 < probeCount || count > probeCount * 2) {
+                votes[slot] = 0;
+            }
+            maxVotes = Math.max(maxVotes, votes[slot]);
+        }
+
+        // Cut-off so that at most `limit` slots pass, found from the vote histogram
+        int limit = Math.max(minCandidates, (int) Math.ceil(gallerySize * maxCandidateRatio));
+        int[] histogram = new int[maxVotes + 1];
+        for (int slot = 0; slot < gallerySize; slot++) {
+            if (indexed.get(slot)) histogram[votes[slot]]++;
+        }
+        int cutoff = Math.max(1, Math.max(minVotes, (int) Math.ceil(pair[0] * minVoteRatio)));
+        int passing = 0;
+        for (int v = maxVotes; v >= cutoff; v--) {
+            if (passing + histogram[v] > limit) {
+                cutoff = v + 1;
+                break;
+            }
+            passing += histogram[v];
+        }
+
+        int[] result = new int[gallerySize];
+        int n = 0;
+        for (int slot = 0; slot < gallerySize; slot++) {
+            if (unparsed.get(slot) || (indexed.get(slot) && votes[slot] >= cutoff)) {
+                result[n++] = slot;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private void forEachPair(IsoTemplate template, boolean expand, HashConsumer consumer) {
+        forEachPair(template, expand, new PairVisitor() {
+            @Override
+            public void startPair() {
+            }
+
+            @Override
+            public void accept(int hash) {
+                consumer.accept(hash);
+            }
+        });
+    }
+
+    private void forEachPair(IsoTemplate template, boolean expand, PairVisitor visitor) {
+        int n = template.getCount();
+        int[] xs = template.getX();
+        int[] ys = template.getY();
+        int[] angles = template.getAngle();
+        int[] types = template.getType();
+        int k = Math.min(neighbors, n - 1);
+        int[] nearest = new int[Math.max(0, k)];
+        int[] nearestDistance = new int[Math.max(0, k)];
+        int[] dBins = new int[2];
+        int[] a1Bins = new int[2];
+        int[] a2Bins = new int[2];
+
+        for (int i = 0; i < n; i++) {
+            int found = 0;
+            for (int j = 0; j < n; j++) {
+                if (i == j) continue;
+                int dx = xs[j] - xs[i];
+                int dy = ys[j] - ys[i];
+                int d2 = dx * dx + dy * dy;
+                if (d2 < MIN_DISTANCE * MIN_DISTANCE) continue;
+                // Keeps the k nearest sorted by distance
+                int pos;
+                if (found < k) {
+                    pos = found++;
+                } else if (d2 < nearestDistance[k - 1]) {
+                    pos = k - 1;
+                } else {
+                    continue;
+                }
+                while (pos > 0 && nearestDistance[pos - 1] > d2) {
+                    nearest[pos] = nearest[pos - 1];
+                    nearestDistance[pos] = nearestDistance[pos - 1];
+                    pos--;
+                }
+                nearest[pos] = j;
+                nearestDistance[pos] = d2;
+            }
+
+            for (int m = 0; m < found; m++) {
+                int j = nearest[m];
+                double distance = Math.sqrt(nearestDistance[m]);
+                double d = (distance - MIN_DISTANCE) / DISTANCE_STEP;
+                if (d >= DISTANCE_BINS) continue;
+
+                double phi = Math.atan2(ys[j] - ys[i], xs[j] - xs[i]);
+                double a1 = relativeAngle(angles[i], phi);
+                double a2 = relativeAngle(angles[j], phi);
+                int typeBits = (Math.min(types[i], 2) == IsoTemplate.TYPE_BIFURCATION ? 2 : 0)
+                        | (Math.min(types[j], 2) == IsoTemplate.TYPE_BIFURCATION ? 1 : 0);
+
+                int dCount = bins(d, DISTANCE_BINS, false, expand, dBins);
+                int a1Count = bins(a1, ANGLE_BINS, true, expand, a1Bins);
+                int a2Count = bins(a2, ANGLE_BINS, true, expand, a2Bins);
+
+                visitor.startPair();
+                for (int x = 0; x < dCount; x++) {
+                    for (int y = 0; y < a1Count; y++) {
+                        for (int z = 0; z < a2Count; z++) {
+                            visitor.accept(((dBins[x] * ANGLE_BINS + a1Bins[y]) * ANGLE_BINS + a2Bins[z]) * 4 + typeBits);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Minutia direction relative to the pair segment, in angle bins [0, ANGLE_BINS)
+     */
+    private static double relativeAngle(int isoAngle, double phi) {
+        double theta = isoAngle * 2 * Math.PI / 256;
+        double relative = (theta - phi) % (2 * Math.PI);
+        if (relative < 0) relative += 2 * Math.PI;
+        return relative / (2 * Math.PI) * ANGLE_BINS;
+    }
+
+    /**
+     * Primary bin of {@code value}, plus the adjacent one when it lies near an edge and {@code expand} is set
+     */
+    private static int bins(double value, int binCount, boolean circular, boolean expand, int[] out) {
+        int bin = Math.min(binCount - 1, (int) value);
+        out[0] = bin;
+        double fraction = value - bin;
+        if (!expand || (fraction >= EDGE && fraction <= 1 - EDGE)) {
+            return 1;
+        }
+        int neighbour = fraction < EDGE ? bin - 1 : bin + 1;
+        if (circular) {
+            neighbour = (neighbour + binCount) % binCount;
+        } else if (neighbour < 0 || neighbour >= binCount) {
+            return 1;
+        }
+        out[1] = neighbour;
+        return 2;
+    }
+
+    private interface PairVisitor {
+        void startPair();
+
+        void accept(int hash);
+    }
+
+    @FunctionalInterface
+    private interface HashConsumer {
+        void accept(int hash);
+    }
+
+    private static final class Postings {
+        int[] slots = new int[4];
+        int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.bluestring_digital.fingerprint.gallery;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Contiguous off-heap block of fixed-size template slots ({@value #SLOT_SIZE} bytes, the size of
+ * the native template buffers). Templates are stored back to back so a shard of the gallery is one
+ * linear memory range; the block doubles when full. Not thread-safe: callers guard writes.
+ */
+public final class TemplateArena implements AutoCloseable {
+
+    public static final int SLOT_SIZE = 1024;
+
+    private Memory memory;
+    private int capacity;
+    private int size;
+
+    public TemplateArena(int initialCapacity) {
+        this.capacity = Math.max(1, initialCapacity);
+        this.memory = new Memory((long) capacity * SLOT_SIZE);
+    }
+
+    /**
+     * Appends a template (zero-padded to the slot size) and returns its slot index
+     */
+    public int add(byte[] template) {
+        if (template.length > SLOT_SIZE) {
+            throw new IllegalArgumentException("Template larger than " + SLOT_SIZE + " bytes");
+        }
+        if (size == capacity) {
+            grow();
+        }
+        long offset = (long) size * SLOT_SIZE;
+        memory.write(offset, template, 0, template.length);
+        if (template.length < SLOT_SIZE) {
+            memory.setMemory(offset + template.length, SLOT_SIZE - template.length, (byte) 0);
+        }
+        return size++;
+    }
+
+    /**
+     * Appends a template from a (possibly memory-mapped) buffer without a heap copy
+     */
+    public int add(ByteBuffer template) {
+        if (template.remaining() > SLOT_SIZE) {
+            throw new IllegalArgumentException("Template larger than " + SLOT_SIZE + " bytes");
+        }
+        if (size == capacity) {
+            grow();
+        }
+        long offset = (long) size * SLOT_SIZE;
+        int length = template.remaining();
+        memory.getByteBuffer(offset, SLOT_SIZE).put(template.duplicate());
+        if (length < SLOT_SIZE) {
+            memory.setMemory(offset + length, SLOT_SIZE - length, (byte) 0);
+        }
+        return size++;
+    }
+
+    /**
+     * Overwrites slot {@code index} with the template in slot {@code from}, used when compacting
+     */
+    public void move(int from, int index) {
+        memory.getByteBuffer((long) index * SLOT_SIZE, SLOT_SIZE)
+                .put(memory.getByteBuffer((long) from * SLOT_SIZE, SLOT_SIZE));
+    }
+
+    /**
+     * Copies slot {@code index} into {@code target} (at least {@value #SLOT_SIZE} bytes)
+     */
+    public void read(int index, byte[] target) {
+        memory.read((long) index * SLOT_SIZE, target, 0, SLOT_SIZE);
+    }
+
+    /**
+     * Native view of the slots starting at {@code index}
+     */
+    public Pointer slot(int index) {
+        return memory.share((long) index * SLOT_SIZE);
+    }
+
+    public void truncate(int newSize) {
+        size = Math.min(size, Math.max(0, newSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long bytes() {
+        return memory.size();
+    }
+
+    @Override
+    public void close() {
+        memory.close();
+    }
+
+    private void grow() {
+        int newCapacity = capacity * 2;
+        Memory grown = new Memory((long) newCapacity * SLOT_SIZE);
+        long used = (long) size * SLOT_SIZE;
+        grown.getByteBuffer(0, used).put(memory.getByteBuffer(0, used));
+        memory.close();
+        memory = grown;
+        capacity = newCapacity;
+    }
+}
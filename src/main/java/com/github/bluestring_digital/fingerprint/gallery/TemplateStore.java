@@ -0,0 +1,329 @@
+package com.github.bluestring_digital.fingerprint.gallery;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped file of fixed-size template records.
+ * <pre>
+ * header (64 bytes): magic "FPTS", version, record size
+ * record ({@value #RECORD_SIZE} bytes):
+ *   0  state (int: 0 = free, LIVE, DELETED)     4  CRC32C of bytes [8, RECORD_SIZE)
+ *   8  id (long, strictly increasing)           16 created (long, epoch millis)
+ *   24 finger (int)   28 quality (int)          32 template length (int)
+ *   36 subject id length (short)                38 subject id (UTF-8, max {@value #MAX_SUBJECT_BYTES} bytes)
+ *   96 template ({@value TemplateArena#SLOT_SIZE} bytes)
+ * </pre>
+ * Appends write the body and checksum before the state word, so a record torn by a crash
+ * fails its checksum and is discarded on the next open. Compaction slides live records down in
+ * place (the mapping stays valid, which matters on Windows where a mapped file cannot be
+ * replaced); if it is interrupted, half-copied slots fail their checksum and records whose id is
+ * not greater than the last one seen are leftover copies, and both are skipped on open.
+ * <p>
+ * Templates are read straight from the mapping; nothing is deserialized into heap objects except
+ * the subject ids handed to visitors. A single mapping limits the file to 2 GB (~1.9M records).
+ */
+@Slf4j
+public final class TemplateStore implements AutoCloseable {
+
+    public static final int RECORD_SIZE = 1120;
+    public static final int MAX_SUBJECT_BYTES = 58;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC = 0x46505453; // "FPTS"
+    private static final int VERSION = 1;
+    private static final int LIVE = 0x4C495645;
+    private static final int DELETED = 0x44454144;
+    private static final int TEMPLATE_OFFSET = 96;
+    private static final int GROWTH_RECORDS = 4096;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean syncOnAppend;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int count;
+    private int live;
+    private long nextId = 1;
+    private long[] ids = new long[0];
+    private int discarded;
+
+    private TemplateStore(Path path, FileChannel channel, boolean syncOnAppend) {
+        this.path = path;
+        this.channel = channel;
+        this.syncOnAppend = syncOnAppend;
+    }
+
+    /**
+     * Opens (or creates) a store, recovering from torn appends and interrupted compactions
+     */
+    public static TemplateStore open(Path path, boolean syncOnAppend) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        TemplateStore store = new TemplateStore(path, channel, syncOnAppend);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return store;
+    }
+
+    /**
+     * Appends a live record and returns its id
+     */
+    public synchronized long append(String subjectId, int finger, int quality, byte[] template) {
+        byte[] subject = subjectId.getBytes(StandardCharsets.UTF_8);
+        if (subject.length > MAX_SUBJECT_BYTES) {
+            throw new IllegalArgumentException("subjectId longer than " + MAX_SUBJECT_BYTES + " bytes");
+        }
+        if (template.length > TemplateArena.SLOT_SIZE) {
+            throw new IllegalArgumentException("Template larger than " + TemplateArena.SLOT_SIZE + " bytes");
+        }
+        ensureCapacity(count + 1);
+
+        long id = nextId++;
+        int base = offset(count);
+        ByteBuffer record = map.duplicate().position(base).limit(base + RECORD_SIZE).slice();
+        record.putInt(0, 0);
+        record.putLong(8, id);
+        record.putLong(16, System.currentTimeMillis());
+        record.putInt(24, finger);
+        record.putInt(28, quality);
+        record.putInt(32, template.length);
+        record.putShort(36, (short) subject.length);
+        record.put(38, subject);
+        record.put(38 + subject.length, new byte[MAX_SUBJECT_BYTES - subject.length]);
+        record.put(TEMPLATE_OFFSET, template);
+        record.put(TEMPLATE_OFFSET + template.length, new byte[TemplateArena.SLOT_SIZE - template.length]);
+        record.putInt(4, checksum(record));
+        if (syncOnAppend) {
+            map.force(base, RECORD_SIZE);
+        }
+        // Commit marker last
+        record.putInt(0, LIVE);
+        if (syncOnAppend) {
+            map.force(base, 4);
+        }
+
+        ids = ensureLength(ids, count + 1);
+        ids[count++] = id;
+        live++;
+        return id;
+    }
+
+    /**
+     * Tombstones a record. Returns false if the id is unknown or already deleted.
+     */
+    public synchronized boolean delete(long id) {
+        int position = Arrays.binarySearch(ids, 0, count, id);
+        if (position < 0 || map.getInt(offset(position)) != LIVE) {
+            return false;
+        }
+        map.putInt(offset(position), DELETED);
+        if (syncOnAppend) {
+            map.force(offset(position), 4);
+        }
+        live--;
+        return true;
+    }
+
+    /**
+     * Visits every live record in append order. The template buffer is a read-only view of the
+     * mapping, valid only during the call.
+     */
+    public synchronized int forEach(RecordVisitor visitor) {
+        int visited = 0;
+        for (int position = 0; position < count; position++) {
+            int base = offset(position);
+            if (map.getInt(base) != LIVE) continue;
+            int subjectLength = map.getShort(base + 36);
+            byte[] subject = new byte[subjectLength];
+            map.get(base + 38, subject);
+            ByteBuffer template = map.slice(base + TEMPLATE_OFFSET, map.getInt(base + 32)).asReadOnlyBuffer();
+            visitor.accept(map.getLong(base + 8), new String(subject, StandardCharsets.UTF_8),
+                    map.getInt(base + 24), map.getInt(base + 28), template);
+            visited++;
+        }
+        return visited;
+    }
+
+    /**
+     * Drops deleted records by sliding live ones down in place. Returns the number of records removed.
+     */
+    public synchronized int compact() {
+        int write = 0;
+        for (int read = 0; read < count; read++) {
+            int base = offset(read);
+            if (map.getInt(base) != LIVE) continue;
+            if (write != read) {
+                int target = offset(write);
+                // Body first, state last, as for appends
+                map.put(target + 4, map, base + 4, RECORD_SIZE - 4);
+                map.putInt(target, LIVE);
+            }
+            ids[write++] = ids[read];
+        }
+        map.force();
+        for (int position = write; position < count; position++) {
+            map.putInt(offset(position), 0);
+        }
+        map.force();
+        int removed = count - write;
+        count = write;
+        live = write;
+        log.info("Template store compacted: {} records removed, {} live", removed, live);
+        return removed;
+    }
+
+    /**
+     * Removes every record
+     */
+    public synchronized void clear() {
+        for (int position = 0; position < count; position++) {
+            map.putInt(offset(position), 0);
+        }
+        map.force();
+        count = 0;
+        live = 0;
+    }
+
+    public synchronized int getRecordCount() {
+        return count;
+    }
+
+    public synchronized int getLiveCount() {
+        return live;
+    }
+
+    /**
+     * Records skipped on open: torn appends and leftovers of an interrupted compaction
+     */
+    public synchronized int getDiscarded() {
+        return discarded;
+    }
+
+    public synchronized long getFileSize() {
+        return HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (map != null) {
+            map.force();
+        }
+        channel.close();
+    }
+
+    // ========== Internals ==========
+
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            capacity = 0;
+            remap(GROWTH_RECORDS);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(8, RECORD_SIZE);
+            map.force();
+            return;
+        }
+
+        capacity = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        if (map.getInt(0) != MAGIC || map.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Not a template store: " + path);
+        }
+
+        ids = new long[capacity];
+        long maxId = 0;
+        int position = 0;
+        for (int scan = 0; scan < capacity; scan++) {
+            int base = offset(scan);
+            int state = map.getInt(base);
+            if (state == 0) break;
+            ByteBuffer record = map.slice(base, RECORD_SIZE);
+            long id = record.getLong(8);
+            if ((state != LIVE && state != DELETED) || record.getInt(4) != checksum(record) || id <= maxId) {
+                // Torn append, slot overwritten by an interrupted compaction, or a copy it left behind
+                discarded++;
+                continue;
+            }
+            maxId = id;
+            if (position != scan) {
+                map.put(offset(position), map, base, RECORD_SIZE);
+            }
+            ids[position++] = id;
+            if (state == LIVE) live++;
+        }
+        // Free the slots left over after the valid records
+        for (int tail = position; tail < capacity && map.getInt(offset(tail)) != 0; tail++) {
+            map.putInt(offset(tail), 0);
+        }
+        count = position;
+        nextId = maxId + 1;
+        if (discarded > 0) {
+            map.force();
+        }
+    }
+
+    private void ensureCapacity(int records) {
+        if (records <= capacity) {
+            return;
+        }
+        long size = HEADER_SIZE + (long) (capacity + GROWTH_RECORDS) * RECORD_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Template store is full (" + capacity + " records)");
+        }
+        try {
+            remap(capacity + GROWTH_RECORDS);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to grow template store " + path, e);
+        }
+    }
+
+    private void remap(int newCapacity) throws IOException {
+        long size = HEADER_SIZE + (long) newCapacity * RECORD_SIZE;
+        // Extends the file with zeros (free records)
+        channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        capacity = newCapacity;
+    }
+
+    private static int offset(int position) {
+        return HEADER_SIZE + position * RECORD_SIZE;
+    }
+
+    private static int checksum(ByteBuffer record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record.duplicate().position(8).limit(RECORD_SIZE));
+        return (int) crc.getValue();
+    }
+
+    private static long[] ensureLength(long[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void accept(long id, String subjectId, int finger, int quality, ByteBuffer template);
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.bluestring_digital.fingerprint.image;
+
+import java.util.Locale;
+
+/**
+ * Image encoding returned by the capture endpoints. RAW is the bare 8-bit pixels, row by row,
+ * with the size given in the metadata.
+ */
+public enum ImageFormat {
+    BMP("image/bmp"),
+    WSQ("image/wsq"),
+    RAW("application/octet-stream");
+
+    private final String mimeType;
+
+    ImageFormat(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Parses a request parameter ({@code bmp}, {@code wsq} or {@code raw}, any case)
+     */
+    public static ImageFormat parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported image format: " + value);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.github.bluestring_digital.fingerprint.image;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pure-Java fingerprint quality in [0, 100], in the spirit of NFIQ's local features, for raw frames
+ * of any size. The image is cut into 32x32 tiles; a tile is foreground when its gray-level
+ * deviation shows ridges, and scores its orientation coherence (structure tensor of the gradients:
+ * 1 for parallel ridges, 0 for noise) times its ridge-valley contrast. The image score is the mean
+ * over foreground tiles, scaled down while the finger covers less than 12% of the frame.
+ * <p>
+ * Bands of tile rows are scored in parallel on the given executor. A {@link Tracker} follows a
+ * stream of frames (the live preview) and only rescores the tiles whose pixels changed.
+ * Instances are thread-safe; trackers are not.
+ */
+public final class RidgeQuality {
+
+    public static final int TILE = 32;
+
+    private static final int FOREGROUND_STD = 18;
+    /** Gray-level deviation of full-contrast ridges; tiles at or above it get the whole contrast term */
+    private static final double RIDGE_STD = 55.0;
+    private static final double MIN_COVERAGE = 0.12;
+    /** Below this many tiles a frame is scored on the calling thread */
+    private static final int MIN_PARALLEL_TILES = 256;
+
+    private final Executor executor;
+    private final int bands;
+
+    /**
+     * @param executor    scores bands of tiles in parallel; {@code null} scores on the calling thread
+     * @param parallelism number of bands a frame is cut into
+     */
+    public RidgeQuality(Executor executor, int parallelism) {
+        this.executor = executor;
+        this.bands = executor != null ? Math.max(1, parallelism) : 1;
+    }
+
+    public int score(byte[] image, int width, int height) {
+        Grid grid = new Grid(width, Math.min(height, image.length / Math.max(1, width)));
+        forEachBand(grid, (first, last) -> {
+            for (int tile = first; tile < last; tile++) {
+                grid.score(image, tile);
+            }
+        });
+        return grid.total();
+    }
+
+    /**
+     * Tracker for consecutive frames of one stream. A tile is rescored when the mean absolute
+     * difference of its pixels from the last scored frame exceeds {@code changeThreshold} gray levels
+     * (0 rescores on any change).
+     */
+    public Tracker tracker(double changeThreshold) {
+        return new Tracker(changeThreshold);
+    }
+
+    private void forEachBand(Grid grid, Band band) {
+        int tiles = grid.columns * grid.rows;
+        if (bands == 1 || tiles < MIN_PARALLEL_TILES) {
+            band.run(0, tiles);
+            return;
+        }
+        int rowsPerBand = (grid.rows + bands - 1) / bands;
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (int row = rowsPerBand; row < grid.rows; row += rowsPerBand) {
+            int first = row * grid.columns;
+            int last = Math.min(grid.rows, row + rowsPerBand) * grid.columns;
+            pending.add(CompletableFuture.runAsync(() -> band.run(first, last), executor));
+        }
+        band.run(0, Math.min(grid.rows, rowsPerBand) * grid.columns);
+        try {
+            pending.forEach(CompletableFuture::join);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Quality of a frame stream, reusing the scores of tiles that did not change
+     */
+    public final class Tracker {
+
+        private final double changeThreshold;
+        private Grid grid;
+        private byte[] reference;
+        private long computedTiles;
+        private long reusedTiles;
+
+        private Tracker(double changeThreshold) {
+            this.changeThreshold = changeThreshold;
+        }
+
+        public int score(byte[] image, int width, int height) {
+            int rows = Math.min(height, image.length / Math.max(1, width));
+            if (grid == null || grid.width != width || grid.height != rows) {
+                grid = new Grid(width, rows);
+                reference = new byte[width * rows];
+                System.arraycopy(image, 0, reference, 0, reference.length);
+                forEachBand(grid, (first, last) -> {
+                    for (int tile = first; tile < last; tile++) {
+                        grid.score(image, tile);
+                    }
+                });
+                computedTiles += (long) grid.columns * grid.rows;
+                return grid.total();
+            }
+
+            Grid current = grid;
+            LongAdder changed = new LongAdder();
+            forEachBand(current, (first, last) -> {
+                int count = 0;
+                for (int tile = first; tile < last; tile++) {
+                    if (current.changed(image, reference, tile, changeThreshold)) {
+                        current.score(image, tile);
+                        current.copyTile(image, reference, tile);
+                        count++;
+                    }
+                }
+                changed.add(count);
+            });
+            computedTiles += changed.sum();
+            reusedTiles += (long) current.columns * current.rows - changed.sum();
+            return current.total();
+        }
+
+        /**
+         * Forgets the last frame, so the next one is scored in full
+         */
+        public void reset() {
+            grid = null;
+            reference = null;
+        }
+
+        public long getComputedTiles() {
+            return computedTiles;
+        }
+
+        public long getReusedTiles() {
+            return reusedTiles;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Band {
+        void run(int firstTile, int lastTile);
+    }
+
+    /**
+     * Per-tile scores of one frame size; tiles are written by one band each
+     */
+    private static final class Grid {
+        private final int width;
+        private final int height;
+        private final int columns;
+        private final int rows;
+        private final boolean[] foreground;
+        private final float[] scores;
+
+        Grid(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.columns = width / TILE;
+            this.rows = height / TILE;
+            this.foreground = new boolean[columns * rows];
+            this.scores = new float[columns * rows];
+        }
+
+        void score(byte[] image, int tile) {
+            int left = (tile % columns) * TILE;
+            int top = (tile / columns) * TILE;
+            long sum = 0;
+            long sumSq = 0;
+            long gxx = 0;
+            long gyy = 0;
+            long gxy = 0;
+            for (int y = top; y < top + TILE; y++) {
+                int row = y * width;
+                boolean inner = y > top && y < top + TILE - 1;
+                for (int x = left; x < left + TILE; x++) {
+                    int v = image[row + x] & 0xFF;
+                    sum += v;
+                    sumSq += v * v;
+                    if (inner && x > left && x < left + TILE - 1) {
+                        int dx = (image[row + x + 1] & 0xFF) - (image[row + x - 1] & 0xFF);
+                        int dy = (image[row + width + x] & 0xFF) - (image[row - width + x] & 0xFF);
+                        gxx += dx * dx;
+                        gyy += dy * dy;
+                        gxy += dx * dy;
+                    }
+                }
+            }
+            int n = TILE * TILE;
+            double mean = (double) sum / n;
+            double std = Math.sqrt(Math.max(0, (double) sumSq / n - mean * mean));
+            foreground[tile] = std > FOREGROUND_STD;
+            if (!foreground[tile] || gxx + gyy == 0) {
+                scores[tile] = 0;
+                return;
+            }
+            double coherence = Math.sqrt((double) (gxx - gyy) * (gxx - gyy) + 4.0 * gxy * gxy) / (gxx + gyy);
+            double contrast = Math.min(1.0, std / RIDGE_STD);
+            scores[tile] = (float) (100 * coherence * contrast);
+        }
+
+        boolean changed(byte[] image, byte[] reference, int tile, double threshold) {
+            int left = (tile % columns) * TILE;
+            int top = (tile / columns) * TILE;
+            long limit = (long) (threshold * TILE * TILE);
+            long difference = 0;
+            for (int y = top; y < top + TILE; y++) {
+                int row = y * width + left;
+                for (int x = row; x < row + TILE; x++) {
+                    difference += Math.abs((image[x] & 0xFF) - (reference[x] & 0xFF));
+                }
+                if (difference > limit) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void copyTile(byte[] image, byte[] reference, int tile) {
+            int left = (tile % columns) * TILE;
+            int top = (tile / columns) * TILE;
+            for (int y = top; y < top + TILE; y++) {
+                System.arraycopy(image, y * width + left, reference, y * width + left, TILE);
+            }
+        }
+
+        int total() {
+            int count = 0;
+            double sum = 0;
+            for (int tile = 0; tile < scores.length; tile++) {
+                if (foreground[tile]) {
+                    count++;
+                    sum += scores[tile];
+                }
+            }
+            if (count == 0) {
+                return 0;
+            }
+            double coverage = Math.min(1.0, (double) count / scores.length / MIN_COVERAGE);
+            return (int) Math.round(Math.min(100.0, sum / count * coverage));
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.github.bluestring_digital.fingerprint.image;
+
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Pure-Java slap segmentation, a stand-in for FpSplit's {@code FPSPLIT_DoSplit}:
+ * <ol>
+ *   <li>foreground mask on 8x8 blocks (ridge contrast), closed to bridge gaps between ridges</li>
+ *   <li>connected components of the mask, fragments of one finger (e.g. split by a crease) merged</li>
+ *   <li>finger axis from the second moments of each component</li>
+ *   <li>crop of {@code splitWidth x splitHeight} along the axis, starting at the fingertip</li>
+ * </ol>
+ * Fingers are returned left to right with the same fields as the native splitter; {@code angle} is
+ * the finger tilt in degrees, clockwise from vertical, and {@code x}/{@code y} the crop center.
+ * The crops of a slap are resampled in parallel on the given executor. Instances are thread-safe.
+ */
+public final class SlapSegmenter {
+
+    public static final int MAX_FINGERS = 10;
+
+    private static final int BLOCK = 8;
+    private static final int FOREGROUND_STD = 18;
+    /** Smallest finger, as a fraction of the crop area */
+    private static final double MIN_AREA_RATIO = 0.1;
+    /** Tilts below this are not corrected, avoiding resampling for fingers placed upright */
+    private static final double MIN_ROTATION_DEGREES = 2.0;
+    /** Below this elongation the axis of a component is unreliable and it is treated as upright */
+    private static final double MIN_ELONGATION = 0.2;
+    private static final byte PAD = (byte) 255;
+
+    private final Executor executor;
+
+    /**
+     * @param executor runs the crops of one slap in parallel; {@code null} crops on the calling thread
+     */
+    public SlapSegmenter(Executor executor) {
+        this.executor = executor;
+    }
+
+    public List<FingerSplitResult> split(byte[] image, int width, int height, int splitWidth, int splitHeight) {
+        int rows = Math.min(height, image.length / width);
+        int bw = width / BLOCK;
+        int bh = rows / BLOCK;
+        if (bw == 0 || bh == 0) {
+            return List.of();
+        }
+        boolean[] mask = close(foreground(image, width, bw, bh), bw, bh);
+        int minBlocks = Math.max(4, (int) (MIN_AREA_RATIO * splitWidth * splitHeight / (BLOCK * BLOCK)));
+        List<Region> regions = merge(components(mask, bw, bh), splitHeight / BLOCK / 4).stream()
+                .filter(region -> region.blocks >= minBlocks)
+                .sorted(Comparator.comparingDouble(Region::centerX))
+                .limit(MAX_FINGERS)
+                .toList();
+
+        if (executor == null || regions.size() <= 1) {
+            return regions.stream().map(region -> crop(region, image, width, rows, splitWidth, splitHeight)).toList();
+        }
+        List<CompletableFuture<FingerSplitResult>> pending = regions.stream()
+                .map(region -> CompletableFuture.supplyAsync(
+                        () -> crop(region, image, width, rows, splitWidth, splitHeight), executor))
+                .toList();
+        try {
+            return pending.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Quality in [0, 100] of a finger crop from its mean ridge contrast and the share of the crop it covers
+     */
+    public static int quality(byte[] image, int width, int height) {
+        int bw = width / BLOCK;
+        int bh = height / BLOCK;
+        int foreground = 0;
+        double stdSum = 0;
+        for (int by = 0; by < bh; by++) {
+            for (int bx = 0; bx < bw; bx++) {
+                double std = blockStd(image, width, bx * BLOCK, by * BLOCK);
+                if (std > FOREGROUND_STD) {
+                    foreground++;
+                    stdSum += std;
+                }
+            }
+        }
+        if (foreground == 0) {
+            return 0;
+        }
+        double coverage = Math.min(1.0, (double) foreground / (bw * bh) / 0.4);
+        return (int) Math.round(Math.min(100.0, stdSum / foreground * 1.15 * coverage));
+    }
+
+    private static boolean[] foreground(byte[] image, int width, int bw, int bh) {
+        boolean[] mask = new boolean[bw * bh];
+        for (int by = 0; by < bh; by++) {
+            for (int bx = 0; bx < bw; bx++) {
+                mask[by * bw + bx] = blockStd(image, width, bx * BLOCK, by * BLOCK) > FOREGROUND_STD;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Morphological closing with a 3x3 block: fills single-block holes and notches along the ridges
+     */
+    private static boolean[] close(boolean[] mask, int bw, int bh) {
+        return morph(morph(mask, bw, bh, true), bw, bh, false);
+    }
+
+    private static boolean[] morph(boolean[] mask, int bw, int bh, boolean dilate) {
+        boolean[] result = new boolean[mask.length];
+        for (int by = 0; by < bh; by++) {
+            for (int bx = 0; bx < bw; bx++) {
+                boolean value = !dilate;
+                for (int y = Math.max(0, by - 1); y <= Math.min(bh - 1, by + 1) && value != dilate; y++) {
+                    for (int x = Math.max(0, bx - 1); x <= Math.min(bw - 1, bx + 1); x++) {
+                        if (mask[y * bw + x] == dilate) {
+                            value = dilate;
+                            break;
+                        }
+                    }
+                }
+                result[by * bw + bx] = value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 4-connected components, with their block moments accumulated while labelling
+     */
+    private static List<Region> components(boolean[] mask, int bw, int bh) {
+        int[] labels = new int[mask.length];
+        int[] queue = new int[mask.length];
+        List<Region> regions = new ArrayList<>();
+        for (int start = 0; start < mask.length; start++) {
+            if (!mask[start] || labels[start] != 0) continue;
+
+            Region region = new Region();
+            regions.add(region);
+            int label = regions.size();
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            labels[start] = label;
+            while (head < tail) {
+                int index = queue[head++];
+                int bx = index % bw;
+                int by = index / bw;
+                region.add(bx, by);
+                if (bx > 0 && mask[index - 1] && labels[index - 1] == 0) {
+                    labels[index - 1] = label;
+                    queue[tail++] = index - 1;
+                }
+                if (bx < bw - 1 && mask[index + 1] && labels[index + 1] == 0) {
+                    labels[index + 1] = label;
+                    queue[tail++] = index + 1;
+                }
+                if (by > 0 && mask[index - bw] && labels[index - bw] == 0) {
+                    labels[index - bw] = label;
+                    queue[tail++] = index - bw;
+                }
+                if (by < bh - 1 && mask[index + bw] && labels[index + bw] == 0) {
+                    labels[index + bw] = label;
+                    queue[tail++] = index + bw;
+                }
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Merges components lying above one another within {@code maxGap} blocks, such as the
+     * phalanges of one finger separated by a crease
+     */
+    private static List<Region> merge(List<Region> regions, int maxGap) {
+        List<Region> merged = new ArrayList<>(regions);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < merged.size() && !changed; i++) {
+                for (int j = i + 1; j < merged.size(); j++) {
+                    Region a = merged.get(i);
+                    Region b = merged.get(j);
+                    int gap = Math.max(a.minY, b.minY) - Math.min(a.maxY, b.maxY);
+                    boolean stacked = (a.centerX() >= b.minX && a.centerX() <= b.maxX)
+                            || (b.centerX() >= a.minX && b.centerX() <= a.maxX);
+                    if (stacked && gap <= maxGap) {
+                        a.addAll(b);
+                        merged.remove(j);
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static FingerSplitResult crop(Region region, byte[] image, int width, int rows,
+                                          int splitWidth, int splitHeight) {
+        double tilt = region.tilt();
+        int angle = (int) Math.round(Math.toDegrees(tilt));
+        if (Math.abs(Math.toDegrees(tilt)) < MIN_ROTATION_DEGREES) {
+            tilt = 0;
+            angle = 0;
+        }
+        // u runs down the finger axis, v across it to the right
+        double ux = -Math.sin(tilt);
+        double uy = Math.cos(tilt);
+        double vx = uy;
+        double vy = -ux;
+
+        // Fingertip: the block furthest up the axis, measured from its outer edge
+        double cx = region.centerX() * BLOCK + BLOCK / 2.0;
+        double cy = region.centerY() * BLOCK + BLOCK / 2.0;
+        double tip = region.minProjection(ux, uy) * BLOCK - BLOCK / 2.0;
+        double centerX = cx + ux * (tip + splitHeight / 2.0);
+        double centerY = cy + uy * (tip + splitHeight / 2.0);
+        if (width >= splitWidth) {
+            centerX = Math.max(splitWidth / 2.0, Math.min(width - splitWidth / 2.0, centerX));
+        }
+        if (rows >= splitHeight) {
+            centerY = Math.max(splitHeight / 2.0, Math.min(rows - splitHeight / 2.0, centerY));
+        }
+        int left = (int) Math.round(centerX - splitWidth / 2.0);
+        int top = (int) Math.round(centerY - splitHeight / 2.0);
+
+        byte[] crop = tilt == 0
+                ? copy(image, width, rows, left, top, splitWidth, splitHeight)
+                : rotate(image, width, rows, centerX, centerY, ux, uy, vx, vy, splitWidth, splitHeight);
+
+        FingerSplitResult finger = new FingerSplitResult();
+        finger.setImageData(crop);
+        finger.setWidth(splitWidth);
+        finger.setHeight(splitHeight);
+        finger.setX((int) Math.round(centerX));
+        finger.setY((int) Math.round(centerY));
+        finger.setTop(top);
+        finger.setLeft(left);
+        finger.setAngle(angle);
+        finger.setQuality(quality(crop, splitWidth, splitHeight));
+        return finger;
+    }
+
+    private static byte[] copy(byte[] image, int width, int rows, int left, int top, int cropWidth, int cropHeight) {
+        byte[] crop = new byte[cropWidth * cropHeight];
+        for (int y = 0; y < cropHeight; y++) {
+            int sy = top + y;
+            int offset = y * cropWidth;
+            if (sy < 0 || sy >= rows) {
+                Arrays.fill(crop, offset, offset + cropWidth, PAD);
+                continue;
+            }
+            int x0 = Math.min(cropWidth, Math.max(0, -left));
+            int x1 = Math.min(cropWidth, width - left);
+            Arrays.fill(crop, offset, offset + x0, PAD);
+            if (x1 > x0) {
+                System.arraycopy(image, sy * width + left + x0, crop, offset + x0, x1 - x0);
+            }
+            Arrays.fill(crop, offset + Math.max(x0, x1), offset + cropWidth, PAD);
+        }
+        return crop;
+    }
+
+    /**
+     * Bilinear resampling of the rotated crop; pixels outside the image are white
+     */
+    private static byte[] rotate(byte[] image, int width, int rows, double centerX, double centerY,
+                                 double ux, double uy, double vx, double vy, int cropWidth, int cropHeight) {
+        byte[] crop = new byte[cropWidth * cropHeight];
+        double halfWidth = cropWidth / 2.0;
+        double halfHeight = cropHeight / 2.0;
+        for (int y = 0; y < cropHeight; y++) {
+            double dy = y + 0.5 - halfHeight;
+            double rowX = centerX + dy * ux - 0.5;
+            double rowY = centerY + dy * uy - 0.5;
+            int offset = y * cropWidth;
+            for (int x = 0; x < cropWidth; x++) {
+                double dx = x + 0.5 - halfWidth;
+                double sx = rowX + dx * vx;
+                double sy = rowY + dx * vy;
+                int x0 = (int) Math.floor(sx);
+                int y0 = (int) Math.floor(sy);
+                if (x0 < 0 || y0 < 0 || x0 >= width - 1 || y0 >= rows - 1) {
+                    crop[offset + x] = PAD;
+                    continue;
+                }
+                double fx = sx - x0;
+                double fy = sy - y0;
+                int index = y0 * width + x0;
+                double topRow = (image[index] & 0xFF) * (1 - fx) + (image[index + 1] & 0xFF) * fx;
+                double bottomRow = (image[index + width] & 0xFF) * (1 - fx) + (image[index + width + 1] & 0xFF) * fx;
+                crop[offset + x] = (byte) (int) Math.round(topRow * (1 - fy) + bottomRow * fy);
+            }
+        }
+        return crop;
+    }
+
+    private static double blockStd(byte[] image, int width, int left, int top) {
+        long sum = 0;
+        long sumSq = 0;
+        for (int y = top; y < top + BLOCK; y++) {
+            int row = y * width + left;
+            for (int x = 0; x < BLOCK; x++) {
+                int v = image[row + x] & 0xFF;
+                sum += v;
+                sumSq += (long) v * v;
+            }
+        }
+        int n = BLOCK * BLOCK;
+        double mean = (double) sum / n;
+        return Math.sqrt(Math.max(0, (double) sumSq / n - mean * mean));
+    }
+
+    /**
+     * Blocks of one finger: bounding box and raw moments, in block units
+     */
+    private static final class Region {
+        private int blocks;
+        private long sumX;
+        private long sumY;
+        private long sumXX;
+        private long sumYY;
+        private long sumXY;
+        private int minX = Integer.MAX_VALUE;
+        private int minY = Integer.MAX_VALUE;
+        private int maxX = Integer.MIN_VALUE;
+        private int maxY = Integer.MIN_VALUE;
+        private final List<int[]> cells = new ArrayList<>();
+
+        void add(int x, int y) {
+            blocks++;
+            sumX += x;
+            sumY += y;
+            sumXX += (long) x * x;
+            sumYY += (long) y * y;
+            sumXY += (long) x * y;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            cells.add(new int[]{x, y});
+        }
+
+        void addAll(Region other) {
+            other.cells.forEach(cell -> add(cell[0], cell[1]));
+        }
+
+        double centerX() {
+            return (double) sumX / blocks;
+        }
+
+        double centerY() {
+            return (double) sumY / blocks;
+        }
+
+        /**
+         * Tilt of the principal axis from vertical, in radians clockwise; 0 for roundish regions
+         */
+        double tilt() {
+            double cx = centerX();
+            double cy = centerY();
+            double mu20 = (double) sumXX / blocks - cx * cx;
+            double mu02 = (double) sumYY / blocks - cy * cy;
+            double mu11 = (double) sumXY / blocks - cx * cy;
+            double spread = Math.sqrt((mu20 - mu02) * (mu20 - mu02) + 4 * mu11 * mu11);
+            if (mu20 + mu02 <= 0 || spread / (mu20 + mu02) < MIN_ELONGATION) {
+                return 0;
+            }
+            // Principal axis pointing down the image, then its angle from the y axis
+            double axis = 0.5 * Math.atan2(2 * mu11, mu20 - mu02);
+            double ax = Math.cos(axis);
+            double ay = Math.sin(axis);
+            if (ay < 0) {
+                ax = -ax;
+                ay = -ay;
+            }
+            return Math.atan2(-ax, ay);
+        }
+
+        /**
+         * Smallest offset from the centroid along {@code (ux, uy)}: the fingertip when u runs down the finger
+         */
+        double minProjection(double ux, double uy) {
+            double cx = centerX();
+            double cy = centerY();
+            double min = 0;
+            for (int[] cell : cells) {
+                min = Math.min(min, (cell[0] - cx) * ux + (cell[1] - cy) * uy);
+            }
+            return min;
+        }
+    }
+}
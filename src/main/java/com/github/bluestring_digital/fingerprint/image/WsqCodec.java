@@ -0,0 +1,1115 @@
+package com.github.bluestring_digital.fingerprint.image;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Pure-Java FBI WSQ codec (IAFIS-IC-0110, with the conventions of the NIST NBIS reference
+ * implementation) for 8-bit grayscale fingerprint images, used when the vendor codec is not
+ * available (simulated backend, image sizes FpStdLib does not handle). Its output is a standard
+ * WSQ file, and it decodes WSQ files of other encoders that use the standard 9/7 filters.
+ * <p>
+ * The image is normalized around its mean and decomposed into the 64-subband WSQ tree with the
+ * 9/7 biorthogonal wavelet (lifting scaled to the WSQ filters, symmetric extension). The 60 coded
+ * subbands get their bin widths from their variances and the target bit rate as in the reference
+ * encoder, with a dead zone of 1.2 bins and reconstruction at 0.44 of the bin. The quantized
+ * coefficients are Huffman coded in the three WSQ blocks, with tables built from their frequencies.
+ * <p>
+ * Images need at least 81 pixels a side: below that the nodes of the five-level tree get shorter
+ * than the filters, and decoders that extend them as the reference one does disagree. Sides longer
+ * than 2048 pixels are rejected.
+ */
+public final class WsqCodec {
+
+    private static final int SOI = 0xFFA0;
+    private static final int EOI = 0xFFA1;
+    private static final int SOF = 0xFFA2;
+    private static final int SOB = 0xFFA3;
+    private static final int DTT = 0xFFA4;
+    private static final int DQT = 0xFFA5;
+    private static final int DHT = 0xFFA6;
+    private static final int COM = 0xFFA8;
+
+    /** Analysis filters of the specification from the centre tap out; the other halves are symmetric */
+    private static final double[] LOW_PASS = {0.85269867900889385, 0.37740285561283066,
+            -0.11062440441843718, -0.02384946501955685, 0.03782845550726404};
+    private static final double[] HIGH_PASS = {0.78848561640558289, -0.41809227322161724,
+            -0.04068941760916406, 0.06453888262869706};
+
+    private static final float ALPHA = -1.586134342f;
+    private static final float BETA = -0.05298011854f;
+    private static final float GAMMA = 0.8829110762f;
+    private static final float DELTA = 0.4435068522f;
+    private static final float K = 1.230174105f;
+    /** Lifting outputs times these give the outputs of the specification filters */
+    private static final float LOW_SCALE = (float) (Math.sqrt(2) / K);
+    private static final float HIGH_SCALE = (float) (K / Math.sqrt(2));
+
+    private static final int WAVELET_NODES = 20;
+    /** Shortest node side the reference decoder's edge handling reconstructs like symmetric extension */
+    private static final int MIN_NODE_LENGTH = 6;
+    /** Larger than any capture window (1600x1500 slaps); bounds what a forged header can allocate */
+    private static final int MAX_SIDE = 2048;
+    private static final int[] INVERTED_ROWS = {2, 4, 7, 9, 11, 13, 16, 18};
+    private static final int[] INVERTED_COLUMNS = {3, 5, 8, 9, 12, 13, 17, 18};
+    private static final int MAX_SUBBANDS = 64;
+    private static final int NUM_SUBBANDS = 60;
+    /** First subband of each Huffman block, and the end of the last */
+    private static final int[] BLOCKS = {0, 19, 52, NUM_SUBBANDS};
+
+    private static final double BIN_CENTER = 0.44;
+    private static final double ZERO_BIN = 1.2;
+    private static final double VARIANCE_THRESHOLD = 1.01;
+    /** Below this total variance of the four coarsest subbands, variances use whole subbands */
+    private static final double CROPPED_VARIANCE = 20000;
+    /** Relative weights of the 8 finest coded subbands (52-59); the others weigh 1 */
+    private static final double[] FINE_WEIGHTS = {1.32, 1.08, 1.42, 1.08, 1.32, 1.42, 1.08, 1.08};
+
+    private static final int MAX_ZERO_RUN = 100;
+    private static final int POSITIVE_8 = 101;
+    private static final int NEGATIVE_8 = 102;
+    private static final int POSITIVE_16 = 103;
+    private static final int NEGATIVE_16 = 104;
+    private static final int ZERO_RUN_8 = 105;
+    private static final int ZERO_RUN_16 = 106;
+    /** Coefficients in [-73, 74] are coded as symbols 107-254 */
+    private static final int COEFFICIENT_OFFSET = 180;
+    private static final int MIN_COEFFICIENT = -73;
+    private static final int MAX_COEFFICIENT = 74;
+    private static final int MAX_CODE_LENGTH = 16;
+
+    private static final int ENCODER = 2;
+
+    private WsqCodec() {
+    }
+
+    /**
+     * Compresses a {@code width x height} image to about {@code bitRate} bits per pixel
+     * (0.75 is the usual WSQ setting)
+     */
+    public static byte[] encode(byte[] image, int width, int height, float bitRate) {
+        if (image.length < width * height || width < 1 || height < 1) {
+            throw new IllegalArgumentException("Image smaller than " + width + "x" + height);
+        }
+        Region[] nodes = waveletTree(width, height);
+        Region[] subbands = subbandTree(nodes);
+
+        int pixels = width * height;
+        double sum = 0;
+        int min = 255;
+        int max = 0;
+        for (int i = 0; i < pixels; i++) {
+            int value = image[i] & 0xFF;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        double mean = sum / pixels;
+        float shift = (float) rounded(mean, 0xFFFF);
+        float scale = (float) rounded(Math.max(Math.max(max - mean, mean - min), 1) / 128, 0xFFFF);
+        float[] data = new float[pixels];
+        for (int i = 0; i < pixels; i++) {
+            data[i] = ((image[i] & 0xFF) - shift) / scale;
+        }
+        decompose(data, width, height, nodes);
+
+        double[] bins = binWidths(data, width, subbands, bitRate);
+        double[] zeroBins = new double[MAX_SUBBANDS];
+        for (int s = 0; s < NUM_SUBBANDS; s++) {
+            bins[s] = rounded(bins[s], 0xFFFF);
+            zeroBins[s] = rounded(ZERO_BIN * bins[s], 0xFFFF);
+        }
+        int[] blockEnds = new int[BLOCKS.length - 1];
+        int[] coefficients = quantize(data, width, subbands, bins, zeroBins, blockEnds);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(1024, (int) (pixels * bitRate / 8)));
+        putShort(out, SOI);
+        putComment(out, String.format(Locale.ROOT, "NIST_COM 9\nPIX_WIDTH %d\nPIX_HEIGHT %d\nPIX_DEPTH 8\n"
+                + "PPI -1\nLOSSY 1\nCOLORSPACE GRAY\nCOMPRESSION WSQ\nWSQ_BITRATE %f", width, height, bitRate));
+        putTransformTable(out);
+        putQuantizationTable(out, bins, zeroBins);
+        putFrameHeader(out, width, height, shift, scale);
+
+        // Block 1 has its own table, blocks 2 and 3 share the second one
+        int[] first = frequencies(coefficients, 0, blockEnds[0]);
+        int[] rest = frequencies(coefficients, blockEnds[0], blockEnds[2]);
+        HuffmanTable[] tables = {
+                blockEnds[0] > 0 ? HuffmanTable.of(first) : null,
+                blockEnds[2] > blockEnds[0] ? HuffmanTable.of(rest) : null};
+        boolean[] written = new boolean[tables.length];
+        for (int block = 0; block < blockEnds.length; block++) {
+            int from = block == 0 ? 0 : blockEnds[block - 1];
+            if (from == blockEnds[block]) {
+                continue;
+            }
+            int table = block == 0 ? 0 : 1;
+            if (!written[table]) {
+                tables[table].write(out, table);
+                written[table] = true;
+            }
+            putShort(out, SOB);
+            putShort(out, 3);
+            out.write(table);
+            BitWriter bits = new BitWriter(out);
+            symbols(coefficients, from, blockEnds[block], (symbol, length, value) -> {
+                bits.write(tables[table].codes[symbol], tables[table].lengths[symbol]);
+                bits.write(value, length);
+            });
+            bits.flush();
+        }
+        putShort(out, EOI);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompresses a WSQ image
+     */
+    public static Image decode(byte[] data) {
+        if (!isEncoded(data)) {
+            throw new IllegalArgumentException("Not a WSQ image");
+        }
+        Reader in = new Reader(data);
+        in.u16();
+        Tables tables = new Tables();
+        int marker;
+        while ((marker = in.u16()) != SOF) {
+            tables.read(marker, in);
+        }
+        in.u16();
+        in.u8();
+        in.u8();
+        int height = in.u16();
+        int width = in.u16();
+        float shift = (float) in.scaled();
+        float scale = (float) in.scaled();
+        in.u8();
+        in.u16();
+        Region[] nodes = waveletTree(width, height);
+        Region[] subbands = subbandTree(nodes);
+
+        int[] coefficients = new int[width * height];
+        int count = 0;
+        while ((marker = in.u16()) != EOI) {
+            if (marker != SOB) {
+                tables.read(marker, in);
+                continue;
+            }
+            in.u16();
+            count = tables.huffman(in.u8()).decode(in, coefficients, count);
+        }
+        if (tables.bins == null) {
+            throw new IllegalArgumentException("WSQ image without quantization table");
+        }
+
+        float[] image = new float[width * height];
+        int index = 0;
+        for (int s = 0; s < NUM_SUBBANDS; s++) {
+            double bin = tables.bins[s];
+            if (bin == 0) {
+                continue;
+            }
+            double halfZero = tables.zeroBins[s] / 2;
+            Region band = subbands[s];
+            for (int y = band.y; y < band.y + band.height; y++) {
+                for (int x = band.x; x < band.x + band.width; x++) {
+                    if (index == count) {
+                        throw new IllegalArgumentException("Truncated WSQ image");
+                    }
+                    int value = coefficients[index++];
+                    if (value > 0) {
+                        image[y * width + x] = (float) (bin * (value - tables.binCenter) + halfZero);
+                    } else if (value < 0) {
+                        image[y * width + x] = (float) (bin * (value + tables.binCenter) - halfZero);
+                    }
+                }
+            }
+        }
+        reconstruct(image, width, height, nodes);
+
+        byte[] pixels = new byte[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            float value = image[i] * scale + shift + 0.5f;
+            pixels[i] = (byte) (value < 0 ? 0 : value > 255 ? 255 : (int) value);
+        }
+        return new Image(pixels, width, height);
+    }
+
+    /**
+     * Whether the data starts with the WSQ start-of-image marker
+     */
+    public static boolean isEncoded(byte[] data) {
+        return data.length >= 2 && (data[0] & 0xFF) == SOI >> 8 && (data[1] & 0xFF) == (SOI & 0xFF);
+    }
+
+    /**
+     * Decoded 8-bit grayscale image
+     */
+    public record Image(byte[] pixels, int width, int height) {
+    }
+
+    // ========== Decomposition trees ==========
+
+    /**
+     * Part of the image: a node of the wavelet tree (whose halves are swapped, high-pass first,
+     * along inverted axes) or a subband
+     */
+    private static final class Region {
+        int x;
+        int y;
+        int width;
+        int height;
+        boolean invertRows;
+        boolean invertColumns;
+
+        void set(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private static Region[] regions(int count) {
+        Region[] regions = new Region[count];
+        for (int i = 0; i < count; i++) {
+            regions[i] = new Region();
+        }
+        return regions;
+    }
+
+    /**
+     * The 20 nodes transformed by the encoder, in order, for an image of the given size; checked
+     * before the decoder allocates anything for the image
+     */
+    private static Region[] waveletTree(int width, int height) {
+        if (width > MAX_SIDE || height > MAX_SIDE) {
+            throw new IllegalArgumentException("Image too large for WSQ: " + width + "x" + height);
+        }
+        Region[] nodes = regions(WAVELET_NODES);
+        for (int node : INVERTED_ROWS) {
+            nodes[node].invertRows = true;
+        }
+        for (int node : INVERTED_COLUMNS) {
+            nodes[node].invertColumns = true;
+        }
+        nodes[0].set(0, 0, width, height);
+        quarter(nodes, 1, nodes[0]);
+        // Node 4 is not the last quarter of node 0 but the top right quarter of node 1
+        Region corner = nodes[1];
+        int lowWidth = half(corner.width, false);
+        int lowHeight = half(corner.height, false);
+        nodes[4].set(lowWidth, 0, corner.width - lowWidth, lowHeight);
+        nodes[5].set(0, lowHeight, lowWidth, corner.height - lowHeight);
+        nodes[14].set(0, 0, lowWidth, lowHeight);
+        quarter(nodes, 6, nodes[4]);
+        quarter(nodes, 10, nodes[5]);
+        quarter(nodes, 15, nodes[14]);
+        nodes[19].set(0, 0, half(nodes[15].width, false), half(nodes[15].height, false));
+        for (Region node : nodes) {
+            if (node.width < MIN_NODE_LENGTH || node.height < MIN_NODE_LENGTH) {
+                throw new IllegalArgumentException("Image too small for WSQ: " + width + "x" + height);
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * The 64 subbands (the last 4 are not coded) of a decomposition
+     */
+    private static Region[] subbandTree(Region[] nodes) {
+        Region[] subbands = regions(MAX_SUBBANDS);
+        // Later splits overwrite the first subbands of earlier ones, which are decomposed further
+        sixteenths(subbands, 3, nodes[14]);
+        sixteenths(subbands, 19, nodes[4]);
+        sixteenths(subbands, 48, nodes[0]);
+        sixteenths(subbands, 35, nodes[5]);
+        quarter(subbands, 0, nodes[19].x, nodes[19].y, nodes[19].width, nodes[19].height, false, false);
+        return subbands;
+    }
+
+    private static void quarter(Region[] regions, int first, Region parent) {
+        quarter(regions, first, parent.x, parent.y, parent.width, parent.height,
+                parent.invertRows, parent.invertColumns);
+    }
+
+    /**
+     * Splits a region into four (top left, top right, bottom left, bottom right)
+     */
+    private static void quarter(Region[] regions, int first, int x, int y, int width, int height,
+                                boolean invertX, boolean invertY) {
+        int left = half(width, invertX);
+        int top = half(height, invertY);
+        regions[first].set(x, y, left, top);
+        regions[first + 1].set(x + left, y, width - left, top);
+        regions[first + 2].set(x, y + top, left, height - top);
+        regions[first + 3].set(x + left, y + top, width - left, height - top);
+    }
+
+    /**
+     * Splits a node into four quarters of four subbands each
+     */
+    private static void sixteenths(Region[] subbands, int first, Region node) {
+        int left = half(node.width, node.invertRows);
+        int top = half(node.height, node.invertColumns);
+        int right = node.width - left;
+        int bottom = node.height - top;
+        quarter(subbands, first, node.x, node.y, left, top, false, false);
+        quarter(subbands, first + 4, node.x + left, node.y, right, top, true, false);
+        quarter(subbands, first + 8, node.x, node.y + top, left, bottom, false, true);
+        quarter(subbands, first + 12, node.x + left, node.y + top, right, bottom, true, true);
+    }
+
+    /**
+     * Length of the first half: the low-pass half gets the odd sample, unless the axis is inverted
+     * and the (shorter) high-pass half comes first
+     */
+    private static int half(int length, boolean inverted) {
+        return inverted ? length / 2 : (length + 1) / 2;
+    }
+
+    // ========== Wavelet transform ==========
+
+    private static void decompose(float[] data, int width, int height, Region[] nodes) {
+        float[] line = new float[Math.max(width, height)];
+        for (Region node : nodes) {
+            int origin = node.y * width + node.x;
+            for (int row = 0; row < node.height; row++) {
+                analyze(data, origin + row * width, 1, node.width, node.invertRows, line);
+            }
+            for (int column = 0; column < node.width; column++) {
+                analyze(data, origin + column, width, node.height, node.invertColumns, line);
+            }
+        }
+    }
+
+    private static void reconstruct(float[] data, int width, int height, Region[] nodes) {
+        float[] line = new float[Math.max(width, height)];
+        for (int n = nodes.length - 1; n >= 0; n--) {
+            Region node = nodes[n];
+            int origin = node.y * width + node.x;
+            for (int column = 0; column < node.width; column++) {
+                synthesize(data, origin + column, width, node.height, node.invertColumns, line);
+            }
+            for (int row = 0; row < node.height; row++) {
+                synthesize(data, origin + row * width, 1, node.width, node.invertRows, line);
+            }
+        }
+    }
+
+    /**
+     * One 9/7 analysis step of {@code n} samples {@code step} apart: low-pass half first
+     * (high-pass first if inverted)
+     */
+    private static void analyze(float[] data, int offset, int step, int n, boolean inverted, float[] x) {
+        for (int i = 0; i < n; i++) {
+            x[i] = data[offset + i * step];
+        }
+        lift(x, n, 1, ALPHA);
+        lift(x, n, 0, BETA);
+        lift(x, n, 1, GAMMA);
+        lift(x, n, 0, DELTA);
+        int lows = inverted ? offset + n / 2 * step : offset;
+        int highs = inverted ? offset : offset + (n + 1) / 2 * step;
+        for (int i = 0; i < n; i++) {
+            if ((i & 1) == 0) {
+                data[lows + i / 2 * step] = x[i] * LOW_SCALE;
+            } else {
+                data[highs + i / 2 * step] = x[i] * HIGH_SCALE;
+            }
+        }
+    }
+
+    private static void synthesize(float[] data, int offset, int step, int n, boolean inverted, float[] x) {
+        int lows = inverted ? offset + n / 2 * step : offset;
+        int highs = inverted ? offset : offset + (n + 1) / 2 * step;
+        for (int i = 0; i < n; i++) {
+            if ((i & 1) == 0) {
+                x[i] = data[lows + i / 2 * step] / LOW_SCALE;
+            } else {
+                x[i] = data[highs + i / 2 * step] / HIGH_SCALE;
+            }
+        }
+        lift(x, n, 0, -DELTA);
+        lift(x, n, 1, -GAMMA);
+        lift(x, n, 0, -BETA);
+        lift(x, n, 1, -ALPHA);
+        for (int i = 0; i < n; i++) {
+            data[offset + i * step] = x[i];
+        }
+    }
+
+    /**
+     * Adds {@code weight} times the two neighbours to every sample of the given parity,
+     * mirroring at the edges (whole-sample symmetric extension)
+     */
+    private static void lift(float[] x, int n, int parity, float weight) {
+        for (int i = parity; i < n; i += 2) {
+            float left = i > 0 ? x[i - 1] : x[1];
+            float right = i + 1 < n ? x[i + 1] : x[i - 1];
+            x[i] += weight * (left + right);
+        }
+    }
+
+    // ========== Quantization ==========
+
+    /**
+     * Bin width of each subband (0 for subbands left out), as the reference encoder sets them:
+     * relative widths from the subband variances, scaled so the entropy estimate meets the bit rate
+     */
+    private static double[] binWidths(float[] data, int width, Region[] subbands, float bitRate) {
+        double[] variances = new double[NUM_SUBBANDS];
+        double coarse = 0;
+        for (int s = 0; s < 4; s++) {
+            variances[s] = variance(data, width, subbands[s], true);
+            coarse += variances[s];
+        }
+        boolean cropped = coarse >= CROPPED_VARIANCE;
+        for (int s = cropped ? 4 : 0; s < NUM_SUBBANDS; s++) {
+            variances[s] = variance(data, width, subbands[s], cropped);
+        }
+
+        double[] relative = new double[NUM_SUBBANDS];
+        boolean[] coded = new boolean[NUM_SUBBANDS];
+        for (int s = 0; s < NUM_SUBBANDS; s++) {
+            if (variances[s] >= VARIANCE_THRESHOLD) {
+                coded[s] = true;
+                double weight = s >= BLOCKS[2] ? FINE_WEIGHTS[s - BLOCKS[2]] : 1;
+                relative[s] = s < 4 ? 1 : 10 / (weight * Math.log(variances[s]));
+            }
+        }
+        // Drop the subbands whose bins would be wider than five deviations, until none is left to drop
+        double q = 0;
+        boolean dropped = true;
+        while (dropped) {
+            double area = 0;
+            double logProduct = 0;
+            for (int s = 0; s < NUM_SUBBANDS; s++) {
+                if (coded[s]) {
+                    area += area(s);
+                    logProduct += area(s) * Math.log(Math.sqrt(variances[s]) / relative[s]);
+                }
+            }
+            if (area == 0) {
+                break;
+            }
+            q = Math.pow(2, bitRate / area - 1) / 2.5 / Math.exp(logProduct / area);
+            dropped = false;
+            for (int s = 0; s < NUM_SUBBANDS; s++) {
+                if (coded[s] && relative[s] / q >= 5 * Math.sqrt(variances[s])) {
+                    coded[s] = false;
+                    dropped = true;
+                }
+            }
+        }
+        double[] bins = new double[MAX_SUBBANDS];
+        for (int s = 0; s < NUM_SUBBANDS; s++) {
+            if (coded[s]) {
+                bins[s] = relative[s] / q;
+            }
+        }
+        return bins;
+    }
+
+    /**
+     * Sample variance of a subband, or of its central part (which leaves the background out)
+     */
+    private static double variance(float[] data, int width, Region band, boolean cropped) {
+        int left = band.x;
+        int top = band.y;
+        int columns = band.width;
+        int rows = band.height;
+        if (cropped && 3 * band.width / 4 * (7 * band.height / 16) > 1) {
+            left += band.width / 8;
+            top += 9 * band.height / 32;
+            columns = 3 * band.width / 4;
+            rows = 7 * band.height / 16;
+        }
+        int n = columns * rows;
+        if (n < 2) {
+            return 0;
+        }
+        double sum = 0;
+        double squares = 0;
+        for (int y = top; y < top + rows; y++) {
+            for (int x = left; x < left + columns; x++) {
+                double value = data[y * width + x];
+                sum += value;
+                squares += value * value;
+            }
+        }
+        return (squares - sum * sum / n) / (n - 1);
+    }
+
+    /**
+     * Share of the image covered by one subband
+     */
+    private static double area(int subband) {
+        return subband < 4 ? 1.0 / 1024 : subband < 51 ? 1.0 / 256 : 1.0 / 16;
+    }
+
+    /**
+     * Quantized coefficients of the coded subbands in order, each in raster order; the end of
+     * each Huffman block goes to {@code blockEnds}
+     */
+    private static int[] quantize(float[] data, int width, Region[] subbands, double[] bins, double[] zeroBins,
+                                  int[] blockEnds) {
+        int count = 0;
+        for (int s = 0; s < NUM_SUBBANDS; s++) {
+            if (bins[s] > 0) {
+                count += subbands[s].width * subbands[s].height;
+            }
+        }
+        int[] coefficients = new int[count];
+        int index = 0;
+        for (int block = 0; block < blockEnds.length; block++) {
+            for (int s = BLOCKS[block]; s < BLOCKS[block + 1]; s++) {
+                double bin = bins[s];
+                if (bin == 0) {
+                    continue;
+                }
+                double halfZero = zeroBins[s] / 2;
+                Region band = subbands[s];
+                for (int y = band.y; y < band.y + band.height; y++) {
+                    for (int x = band.x; x < band.x + band.width; x++) {
+                        float c = data[y * width + x];
+                        if (c > halfZero) {
+                            coefficients[index] = (int) ((c - halfZero) / bin) + 1;
+                        } else if (c < -halfZero) {
+                            coefficients[index] = (int) ((c + halfZero) / bin) - 1;
+                        }
+                        index++;
+                    }
+                }
+            }
+            blockEnds[block] = index;
+        }
+        return coefficients;
+    }
+
+    // ========== Entropy coding ==========
+
+    @FunctionalInterface
+    private interface SymbolSink {
+        /**
+         * A Huffman symbol followed by {@code length} raw bits of {@code value}
+         */
+        void put(int symbol, int length, int value);
+    }
+
+    /**
+     * Symbols of a run of coefficients: zero runs, small coefficients and escapes for larger ones
+     */
+    private static void symbols(int[] coefficients, int from, int to, SymbolSink sink) {
+        int zeros = 0;
+        for (int i = from; i < to; i++) {
+            int c = coefficients[i];
+            if (c == 0) {
+                if (++zeros == 0xFFFF) {
+                    sink.put(ZERO_RUN_16, 16, zeros);
+                    zeros = 0;
+                }
+                continue;
+            }
+            if (zeros > 0) {
+                zeroRun(zeros, sink);
+                zeros = 0;
+            }
+            if (c > MAX_COEFFICIENT) {
+                if (c > 0xFF) {
+                    sink.put(POSITIVE_16, 16, Math.min(c, 0xFFFF));
+                } else {
+                    sink.put(POSITIVE_8, 8, c);
+                }
+            } else if (c < MIN_COEFFICIENT) {
+                if (c < -0xFF) {
+                    sink.put(NEGATIVE_16, 16, Math.min(-c, 0xFFFF));
+                } else {
+                    sink.put(NEGATIVE_8, 8, -c);
+                }
+            } else {
+                sink.put(c + COEFFICIENT_OFFSET, 0, 0);
+            }
+        }
+        if (zeros > 0) {
+            zeroRun(zeros, sink);
+        }
+    }
+
+    private static void zeroRun(int zeros, SymbolSink sink) {
+        if (zeros <= MAX_ZERO_RUN) {
+            sink.put(zeros, 0, 0);
+        } else if (zeros <= 0xFF) {
+            sink.put(ZERO_RUN_8, 8, zeros);
+        } else {
+            sink.put(ZERO_RUN_16, 16, zeros);
+        }
+    }
+
+    private static int[] frequencies(int[] coefficients, int from, int to) {
+        int[] frequencies = new int[256];
+        symbols(coefficients, from, to, (symbol, length, value) -> frequencies[symbol]++);
+        return frequencies;
+    }
+
+    /**
+     * Canonical Huffman table: code lengths from the symbol frequencies as in JPEG Annex K, limited
+     * to 16 bits, with the all-ones code left unused so that the padding of a block never decodes
+     */
+    private static final class HuffmanTable {
+        /** Number of codes of each length from 1 to 16 */
+        final int[] counts = new int[MAX_CODE_LENGTH];
+        /** Symbols by increasing code length */
+        final int[] values;
+        final int[] codes = new int[256];
+        final int[] lengths = new int[256];
+        /** Largest code of each length (-1 for none), and the first code and value index per length */
+        final int[] maxCodes = new int[MAX_CODE_LENGTH + 1];
+        final int[] minCodes = new int[MAX_CODE_LENGTH + 1];
+        final int[] firstValues = new int[MAX_CODE_LENGTH + 1];
+
+        private HuffmanTable(int[] counts, int[] values) {
+            System.arraycopy(counts, 0, this.counts, 0, MAX_CODE_LENGTH);
+            this.values = values;
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+                firstValues[length] = index;
+                minCodes[length] = code;
+                for (int i = 0; i < counts[length - 1]; i++) {
+                    codes[values[index]] = code++;
+                    lengths[values[index++]] = length;
+                }
+                maxCodes[length] = counts[length - 1] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+        }
+
+        static HuffmanTable of(int[] frequencies) {
+            // One extra symbol with the lowest frequency reserves the all-ones code
+            int reserved = frequencies.length;
+            long[] weights = new long[reserved + 1];
+            for (int i = 0; i < reserved; i++) {
+                weights[i] = frequencies[i];
+            }
+            weights[reserved] = 1;
+            int[] sizes = new int[reserved + 1];
+            int[] next = new int[reserved + 1];
+            Arrays.fill(next, -1);
+            while (true) {
+                int least = -1;
+                int second = -1;
+                for (int i = 0; i <= reserved; i++) {
+                    if (weights[i] > 0 && (least < 0 || weights[i] <= weights[least])) {
+                        least = i;
+                    }
+                }
+                for (int i = 0; i <= reserved; i++) {
+                    if (weights[i] > 0 && i != least && (second < 0 || weights[i] <= weights[second])) {
+                        second = i;
+                    }
+                }
+                if (second < 0) {
+                    break;
+                }
+                weights[least] += weights[second];
+                weights[second] = 0;
+                sizes[least]++;
+                while (next[least] >= 0) {
+                    least = next[least];
+                    sizes[least]++;
+                }
+                next[least] = second;
+                sizes[second]++;
+                while (next[second] >= 0) {
+                    second = next[second];
+                    sizes[second]++;
+                }
+            }
+
+            int[] bits = new int[reserved + 2];
+            int longest = 0;
+            for (int size : sizes) {
+                if (size > 0) {
+                    bits[size]++;
+                    longest = Math.max(longest, size);
+                }
+            }
+            for (int length = longest; length > MAX_CODE_LENGTH; length--) {
+                while (bits[length] > 0) {
+                    int shorter = length - 2;
+                    while (bits[shorter] == 0) {
+                        shorter--;
+                    }
+                    bits[length] -= 2;
+                    bits[length - 1]++;
+                    bits[shorter + 1] += 2;
+                    bits[shorter]--;
+                }
+            }
+            int last = MAX_CODE_LENGTH;
+            while (bits[last] == 0) {
+                last--;
+            }
+            bits[last]--;
+
+            int[] values = new int[reserved];
+            int count = 0;
+            for (int size = 1; size <= longest; size++) {
+                for (int symbol = 0; symbol < reserved; symbol++) {
+                    if (sizes[symbol] == size) {
+                        values[count++] = symbol;
+                    }
+                }
+            }
+            return new HuffmanTable(Arrays.copyOfRange(bits, 1, MAX_CODE_LENGTH + 1), Arrays.copyOf(values, count));
+        }
+
+        static HuffmanTable read(Reader in, int[] counts) {
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            if (total > 256) {
+                throw new IllegalArgumentException("Invalid WSQ Huffman table");
+            }
+            int[] values = new int[total];
+            for (int i = 0; i < total; i++) {
+                values[i] = in.u8();
+            }
+            return new HuffmanTable(counts, values);
+        }
+
+        void write(ByteArrayOutputStream out, int id) {
+            putShort(out, DHT);
+            putShort(out, 3 + MAX_CODE_LENGTH + values.length);
+            out.write(id);
+            for (int count : counts) {
+                out.write(count);
+            }
+            for (int value : values) {
+                out.write(value);
+            }
+        }
+
+        /**
+         * Decodes the coefficients of one block into {@code coefficients} from {@code index} on,
+         * up to the next marker; returns the index after the last one
+         */
+        int decode(Reader in, int[] coefficients, int index) {
+            in.startBits();
+            int symbol;
+            while ((symbol = symbol(in)) >= 0) {
+                int zeros = -1;
+                int value = 0;
+                if (symbol > 0 && symbol <= MAX_ZERO_RUN) {
+                    zeros = symbol;
+                } else if (symbol == ZERO_RUN_8 || symbol == ZERO_RUN_16) {
+                    zeros = in.bits(symbol == ZERO_RUN_8 ? 8 : 16);
+                } else if (symbol == POSITIVE_8 || symbol == POSITIVE_16) {
+                    value = in.bits(symbol == POSITIVE_8 ? 8 : 16);
+                } else if (symbol == NEGATIVE_8 || symbol == NEGATIVE_16) {
+                    value = -in.bits(symbol == NEGATIVE_8 ? 8 : 16);
+                } else if (symbol > ZERO_RUN_16 && symbol - COEFFICIENT_OFFSET <= MAX_COEFFICIENT) {
+                    value = symbol - COEFFICIENT_OFFSET;
+                } else {
+                    throw new IllegalArgumentException("Invalid WSQ symbol " + symbol);
+                }
+                int end = index + (zeros >= 0 ? zeros : 1);
+                if (end > coefficients.length) {
+                    throw new IllegalArgumentException("WSQ data longer than the image");
+                }
+                if (zeros < 0) {
+                    coefficients[index] = value;
+                }
+                index = end;
+            }
+            return index;
+        }
+
+        /**
+         * Next symbol, or -1 at the marker ending the block
+         */
+        private int symbol(Reader in) {
+            int code = 0;
+            for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+                int bit = in.bit();
+                if (bit < 0) {
+                    return -1;
+                }
+                code = code << 1 | bit;
+                if (code <= maxCodes[length]) {
+                    return values[firstValues[length] + code - minCodes[length]];
+                }
+            }
+            throw new IllegalArgumentException("Invalid WSQ Huffman code");
+        }
+    }
+
+    /**
+     * Writes entropy-coded bits most significant first, stuffing a zero byte after each 0xFF
+     */
+    private static final class BitWriter {
+        private final ByteArrayOutputStream out;
+        private int buffer;
+        private int count;
+
+        BitWriter(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        void write(int value, int length) {
+            for (int bit = length - 1; bit >= 0; bit--) {
+                buffer = buffer << 1 | (value >>> bit & 1);
+                if (++count == 8) {
+                    emit();
+                }
+            }
+        }
+
+        /**
+         * Pads the last byte with ones
+         */
+        void flush() {
+            if (count > 0) {
+                buffer = buffer << (8 - count) | (0xFF >> count);
+                emit();
+            }
+        }
+
+        private void emit() {
+            out.write(buffer);
+            if (buffer == 0xFF) {
+                out.write(0);
+            }
+            buffer = 0;
+            count = 0;
+        }
+    }
+
+    // ========== Headers ==========
+
+    private static void putShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static void putComment(ByteArrayOutputStream out, String comment) {
+        byte[] text = comment.getBytes(StandardCharsets.US_ASCII);
+        putShort(out, COM);
+        putShort(out, 2 + text.length);
+        out.write(text, 0, text.length);
+    }
+
+    /**
+     * Half of each filter: the low-pass from its centre tap, then the high-pass
+     */
+    private static void putTransformTable(ByteArrayOutputStream out) {
+        putShort(out, DTT);
+        putShort(out, 58);
+        out.write(2 * LOW_PASS.length - 1);
+        out.write(2 * HIGH_PASS.length - 1);
+        for (double[] filter : new double[][]{LOW_PASS, HIGH_PASS}) {
+            for (double tap : filter) {
+                int digits = digits(tap, 0xFFFFFFFFL);
+                long value = Math.round(Math.abs(tap) * Math.pow(10, digits));
+                out.write(tap < 0 ? 1 : 0);
+                out.write(digits);
+                putShort(out, (int) (value >>> 16));
+                putShort(out, (int) value);
+            }
+        }
+    }
+
+    private static void putQuantizationTable(ByteArrayOutputStream out, double[] bins, double[] zeroBins) {
+        putShort(out, DQT);
+        putShort(out, 5 + 6 * MAX_SUBBANDS);
+        putScaled(out, BIN_CENTER);
+        for (int s = 0; s < MAX_SUBBANDS; s++) {
+            putScaled(out, bins[s]);
+            putScaled(out, zeroBins[s]);
+        }
+    }
+
+    private static void putFrameHeader(ByteArrayOutputStream out, int width, int height, float shift, float scale) {
+        putShort(out, SOF);
+        putShort(out, 17);
+        out.write(0);
+        out.write(255);
+        putShort(out, height);
+        putShort(out, width);
+        putScaled(out, shift);
+        putScaled(out, scale);
+        out.write(ENCODER);
+        putShort(out, 0);
+    }
+
+    /**
+     * A positive number as the headers store it: a power of ten and the unsigned short it divides
+     */
+    private static void putScaled(ByteArrayOutputStream out, double value) {
+        int digits = digits(value, 0xFFFF);
+        out.write(digits);
+        putShort(out, (int) Math.min(0xFFFF, Math.round(value * Math.pow(10, digits))));
+    }
+
+    /**
+     * The value as it reads back from the headers
+     */
+    private static double rounded(double value, long max) {
+        int digits = digits(value, max);
+        return Math.min(max, Math.round(value * Math.pow(10, digits))) / Math.pow(10, digits);
+    }
+
+    /**
+     * Most decimal digits (up to 9) the value keeps without its integer exceeding {@code max}
+     */
+    private static int digits(double value, long max) {
+        int digits = 0;
+        while (digits < 9 && Math.round(Math.abs(value) * Math.pow(10, digits + 1)) <= max) {
+            digits++;
+        }
+        return digits;
+    }
+
+    // ========== Decoding ==========
+
+    /**
+     * Tables defined so far: quantization, Huffman, and the transform (only checked, the filters
+     * being fixed)
+     */
+    private static final class Tables {
+        double binCenter;
+        double[] bins;
+        double[] zeroBins;
+        final HuffmanTable[] huffman = new HuffmanTable[8];
+
+        void read(int marker, Reader in) {
+            int start = in.position;
+            int end = start + in.u16();
+            switch (marker) {
+                case DTT -> readTransform(in);
+                case DQT -> {
+                    binCenter = in.scaled();
+                    bins = new double[MAX_SUBBANDS];
+                    zeroBins = new double[MAX_SUBBANDS];
+                    for (int s = 0; s < MAX_SUBBANDS; s++) {
+                        bins[s] = in.scaled();
+                        zeroBins[s] = in.scaled();
+                    }
+                }
+                case DHT -> {
+                    while (in.position < end) {
+                        int id = in.u8();
+                        int[] counts = new int[MAX_CODE_LENGTH];
+                        for (int i = 0; i < MAX_CODE_LENGTH; i++) {
+                            counts[i] = in.u8();
+                        }
+                        if (id >= huffman.length) {
+                            throw new IllegalArgumentException("Invalid WSQ Huffman table " + id);
+                        }
+                        huffman[id] = HuffmanTable.read(in, counts);
+                    }
+                }
+                case COM -> in.position = end;
+                default -> throw new IllegalArgumentException(
+                        "Unsupported WSQ marker " + Integer.toHexString(marker).toUpperCase(Locale.ROOT));
+            }
+            if (in.position != end) {
+                throw new IllegalArgumentException("Invalid WSQ segment " + Integer.toHexString(marker));
+            }
+        }
+
+        HuffmanTable huffman(int id) {
+            if (id >= huffman.length || huffman[id] == null) {
+                throw new IllegalArgumentException("Undefined WSQ Huffman table " + id);
+            }
+            return huffman[id];
+        }
+
+        private static void readTransform(Reader in) {
+            int lowLength = in.u8();
+            int highLength = in.u8();
+            boolean standard = lowLength == 2 * LOW_PASS.length - 1 && highLength == 2 * HIGH_PASS.length - 1;
+            for (double[] filter : new double[][]{LOW_PASS, HIGH_PASS}) {
+                for (double tap : filter) {
+                    int sign = in.u8();
+                    int digits = in.u8();
+                    double value = (in.u16() * 65536L + in.u16()) / Math.pow(10, digits) * (sign != 0 ? -1 : 1);
+                    standard &= Math.abs(value - tap) < 1e-6;
+                }
+            }
+            if (!standard) {
+                throw new IllegalArgumentException("Unsupported WSQ wavelet filters");
+            }
+        }
+    }
+
+    /**
+     * Big-endian reader of headers and entropy-coded bits
+     */
+    private static final class Reader {
+        private final byte[] data;
+        int position;
+        private int buffer;
+        private int count;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int u8() {
+            if (position >= data.length) {
+                throw new IllegalArgumentException("Truncated WSQ image");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        int u16() {
+            return u8() << 8 | u8();
+        }
+
+        /**
+         * A power of ten followed by the unsigned short it divides
+         */
+        double scaled() {
+            int digits = u8();
+            return u16() / Math.pow(10, digits);
+        }
+
+        void startBits() {
+            count = 0;
+        }
+
+        /**
+         * Next bit of entropy-coded data, or -1 at a marker (left unread)
+         */
+        int bit() {
+            if (count == 0) {
+                int next = u8();
+                if (next == 0xFF) {
+                    if (u8() != 0) {
+                        position -= 2;
+                        return -1;
+                    }
+                }
+                buffer = next;
+                count = 8;
+            }
+            return buffer >> --count & 1;
+        }
+
+        int bits(int length) {
+            int value = 0;
+            for (int i = 0; i < length; i++) {
+                int bit = bit();
+                if (bit < 0) {
+                    throw new IllegalArgumentException("Truncated WSQ block");
+                }
+                value = value << 1 | bit;
+            }
+            return value;
+        }
+    }
+}
@@ -27,6 +27,7 @@ public interface FingerprintDeviceInterface {
         int LIVESCAN_Setup();
         int LIVESCAN_BeginCapture(int nChannel);
         int LIVESCAN_GetFPRawData(int nChannel, byte[] pRawData);
+        int LIVESCAN_GetFPRawData(int nChannel, Pointer pRawData);
         int LIVESCAN_EndCapture(int nChannel);
         int LIVESCAN_IsSupportCaptWindow(int nChannel);
         int LIVESCAN_IsSupportSetup();
@@ -64,8 +65,10 @@ public interface FingerprintDeviceInterface {
         int MOSAIC_Stop();
         int MOSAIC_ImageQuality(byte[] pFingerBuf, int nWidth, int nHeight);
         int MOSAIC_FingerQuality(byte[] pFingerBuf, int nWidth, int nHeight);
+        int MOSAIC_FingerQuality(Pointer pFingerBuf, int nWidth, int nHeight);
         int MOSAIC_ImageEnhance(byte[] pFingerBuf, int nWidth, int nHeight, byte[] pTargetImg);
         int MOSAIC_IsFinger(byte[] pFingerBuf, int nWidth, int nHeight);
+        int MOSAIC_IsFinger(Pointer pFingerBuf, int nWidth, int nHeight);
         int MOSAIC_GetErrorInfo(int nErrorNo, byte[] pszErrorInfo);
         int MOSAIC_GetVersion();
         int MOSAIC_GetDesc(byte[] pszDesc);
@@ -79,6 +82,8 @@ public interface FingerprintDeviceInterface {
         void FPSPLIT_Uninit();
         int FPSPLIT_DoSplit(byte[] pImgBuf, int nImgW, int nImgH, int nPreview,
                             int nSplitW, int nSplitH, IntByReference pnFpNum, Pointer pInfo);
+        int FPSPLIT_DoSplit(Pointer pImgBuf, int nImgW, int nImgH, int nPreview,
+                            int nSplitW, int nSplitH, IntByReference pnFpNum, Pointer pInfo);
 
 
         @Structure.FieldOrder({"x", "y", "top", "left", "angle", "quality", "pOutBuf"})
@@ -144,5 +149,6 @@ public interface FingerprintDeviceInterface {
         int SetImageHary(int val);
         int SetImageArea(int val);
         int GetFingerFake(byte[] m_previewFingerPtr, int g_outWidth, int g_outHeight);
+        int GetFingerFake(Pointer m_previewFingerPtr, int g_outWidth, int g_outHeight);
     }
 }
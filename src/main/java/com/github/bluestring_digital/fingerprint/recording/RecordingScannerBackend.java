@@ -0,0 +1,391 @@
+package com.github.bluestring_digital.fingerprint.recording;
+
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.backend.ScannerBackend;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Backend decorator that records a session file per open/close of the device: every captured
+ * frame plus the quality, finger, split and fake results computed on it, for replay by
+ * {@link ReplayScannerBackend}. Calls are passed through unchanged; frames are copied on the
+ * device thread and written (compressed) by a background thread, so a slow disk drops events
+ * instead of slowing captures.
+ */
+@Slf4j
+public class RecordingScannerBackend implements ScannerBackend {
+
+    private static final Event STOP = () -> { };
+    private static final DateTimeFormatter FILE_NAME = DateTimeFormatter.ofPattern("'session-'yyyyMMdd-HHmmss-SSS");
+
+    private final ScannerBackend delegate;
+    private final Path directory;
+    private final boolean compress;
+    private final BlockingQueue<Event> queue;
+    private final Thread writerThread;
+
+    /** Frame ids of the buffers and arrays delivered in the current session */
+    private final Map<Object, Integer> frameIds = Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicInteger nextFrame = new AtomicInteger();
+    private volatile long sessionStart;
+    private volatile boolean recording;
+    private volatile Path currentFile;
+    /** Touched only by open/close, which run on the device thread */
+    private String lastFileName;
+    private int sameFileName;
+
+    private final LongAdder sessions = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder results = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /** Touched only by the writer thread */
+    private SessionWriter writer;
+
+    public RecordingScannerBackend(ScannerBackend delegate, Path directory, boolean compress, int queueCapacity) {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.compress = compress;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writerThread = Thread.ofPlatform().name("session-recorder").daemon().start(this::drain);
+        log.info("Gravação de sessões ativa em {} (backend {})", directory.toAbsolutePath(), delegate.getName());
+    }
+
+    public ScannerBackend getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public int open() {
+        int result = delegate.open();
+        if (result == 1) {
+            startSession();
+        }
+        return result;
+    }
+
+    @Override
+    public int close() {
+        int result = delegate.close();
+        endSession();
+        return result;
+    }
+
+    @Override
+    public int setFingerDryWet(int level) {
+        return delegate.setFingerDryWet(level);
+    }
+
+    @Override
+    public int captureRaw(int width, int height, byte[] rawData) {
+        int result = delegate.captureRaw(width, height, rawData);
+        if (result == 1) {
+            recordFrame(rawData, width, height, () -> Arrays.copyOf(rawData, width * height));
+        }
+        return result;
+    }
+
+    @Override
+    public int captureRaw(FrameBuffer frame) {
+        int result = delegate.captureRaw(frame);
+        if (result == 1) {
+            recordFrame(frame, frame.getWidth(), frame.getHeight(), frame::toByteArray);
+        }
+        return result;
+    }
+
+    @Override
+    public int fingerQuality(byte[] image, int width, int height) {
+        int quality = delegate.fingerQuality(image, width, height);
+        recordResult(image, (writer, frame) -> writer.quality(frame, width, height, quality));
+        return quality;
+    }
+
+    @Override
+    public int fingerQuality(FrameBuffer frame, int width, int height) {
+        int quality = delegate.fingerQuality(frame, width, height);
+        recordResult(frame, (writer, id) -> writer.quality(id, width, height, quality));
+        return quality;
+    }
+
+    @Override
+    public boolean isFinger(byte[] image, int width, int height) {
+        boolean finger = delegate.isFinger(image, width, height);
+        recordResult(image, (writer, frame) -> writer.finger(frame, finger));
+        return finger;
+    }
+
+    @Override
+    public boolean isFinger(FrameBuffer frame) {
+        boolean finger = delegate.isFinger(frame);
+        recordResult(frame, (writer, id) -> writer.finger(id, finger));
+        return finger;
+    }
+
+    @Override
+    public List<FingerSplitResult> splitFingers(byte[] image, int width, int height, int splitWidth, int splitHeight) {
+        List<FingerSplitResult> fingers = delegate.splitFingers(image, width, height, splitWidth, splitHeight);
+        recordResult(image, (writer, frame) -> writer.split(frame, splitWidth, splitHeight, fingers));
+        return fingers;
+    }
+
+    @Override
+    public List<FingerSplitResult> splitFingers(FrameBuffer frame, int splitWidth, int splitHeight) {
+        List<FingerSplitResult> fingers = delegate.splitFingers(frame, splitWidth, splitHeight);
+        recordResult(frame, (writer, id) -> writer.split(id, splitWidth, splitHeight, fingers));
+        return fingers;
+    }
+
+    @Override
+    public int fakeScore(byte[] image, int width, int height) {
+        int score = delegate.fakeScore(image, width, height);
+        recordResult(image, (writer, frame) -> writer.fake(frame, score));
+        return score;
+    }
+
+    @Override
+    public int fakeScore(FrameBuffer frame) {
+        int score = delegate.fakeScore(frame);
+        recordResult(frame, (writer, id) -> writer.fake(id, score));
+        return score;
+    }
+
+    @Override
+    public int openAlgorithm() {
+        return delegate.openAlgorithm();
+    }
+
+    @Override
+    public void closeAlgorithm(int handle) {
+        delegate.closeAlgorithm(handle);
+    }
+
+    @Override
+    public int createIsoTemplate(int handle, byte[] image, byte[] template) {
+        return delegate.createIsoTemplate(handle, image, template);
+    }
+
+    @Override
+    public int compareTemplates(int handle, byte[] template1, byte[] template2) {
+        return delegate.compareTemplates(handle, template1, template2);
+    }
+
+    @Override
+    public boolean supportsWsq(int width, int height) {
+        return delegate.supportsWsq(width, height);
+    }
+
+    @Override
+    public int compressWsq(int handle, byte[] image, int width, int height, byte[] wsq) {
+        return delegate.compressWsq(handle, image, width, height, wsq);
+    }
+
+    @Override
+    public int decompressWsq(int handle, byte[] wsq, int length, byte[] image) {
+        return delegate.decompressWsq(handle, wsq, length, image);
+    }
+
+    @Override
+    public int beep(int times) {
+        return delegate.beep(times);
+    }
+
+    /**
+     * Current file, sessions and events recorded, events dropped because the writer fell behind
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("recording", recording);
+        stats.put("directory", directory.toAbsolutePath().toString());
+        stats.put("file", currentFile != null ? currentFile.toString() : null);
+        stats.put("sessions", sessions.sum());
+        stats.put("frames", frames.sum());
+        stats.put("results", results.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("queued", queue.size());
+        stats.put("bytes", bytes.sum());
+        stats.put("writeFailures", failures.sum());
+        return stats;
+    }
+
+    /**
+     * Closes the current session and waits for the writer to drain the queue
+     */
+    @PreDestroy
+    public void shutdown() {
+        endSession();
+        enqueue(STOP, true);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void startSession() {
+        endSession();
+        // Sessões abertas no mesmo milissegundo recebem um sufixo em vez de truncar a anterior
+        String name = LocalDateTime.now().format(FILE_NAME);
+        sameFileName = name.equals(lastFileName) ? sameFileName + 1 : 0;
+        lastFileName = name;
+        Path file = directory.resolve((sameFileName == 0 ? name : name + "-" + sameFileName) + SessionReader.EXTENSION);
+        String backend = delegate.getName();
+        long startMillis = System.currentTimeMillis();
+        frameIds.clear();
+        nextFrame.set(0);
+        sessionStart = System.nanoTime();
+        // Início e fim de sessão nunca são descartados
+        enqueue(() -> {
+            writer = new SessionWriter(file, backend, startMillis, compress);
+            log.info("Gravando sessão em {}", file);
+        }, true);
+        currentFile = file;
+        recording = true;
+        sessions.increment();
+    }
+
+    private void endSession() {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        frameIds.clear();
+        enqueue(this::closeWriter, true);
+    }
+
+    private void recordFrame(Object source, int width, int height, Supplier<byte[]> copy) {
+        if (!recording) {
+            return;
+        }
+        // Checked before copying, so a backed-up writer does not cost a frame copy per capture
+        if (queue.remainingCapacity() == 0) {
+            dropped.increment();
+            frameIds.remove(source);
+            return;
+        }
+        byte[] pixels = copy.get();
+        int id = nextFrame.getAndIncrement();
+        long time = System.nanoTime() - sessionStart;
+        // The queue may have filled meanwhile; enqueue counts that drop
+        if (enqueue(() -> write(writer -> writer.frame(id, time, width, height, pixels)), false)) {
+            frameIds.put(source, id);
+            frames.increment();
+        } else {
+            // The buffer now holds an unrecorded frame: its results must not go to the previous one
+            frameIds.remove(source);
+        }
+    }
+
+    private void recordResult(Object source, ResultWriter result) {
+        if (!recording) {
+            return;
+        }
+        Integer id = frameIds.get(source);
+        if (id != null && enqueue(() -> write(writer -> result.write(writer, id)), false)) {
+            results.increment();
+        }
+    }
+
+    private boolean enqueue(Event event, boolean required) {
+        if (required) {
+            try {
+                queue.put(event);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        if (queue.offer(event)) {
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    private void drain() {
+        while (true) {
+            Event event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException e) {
+                closeWriter();
+                return;
+            }
+            if (event == STOP) {
+                closeWriter();
+                return;
+            }
+            try {
+                event.write();
+            } catch (IOException | RuntimeException e) {
+                failures.increment();
+                log.warn("Falha ao gravar sessão: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes to the open session; a session whose file could not be created records nothing
+     */
+    private void write(WriterAction action) throws IOException {
+        if (writer != null) {
+            long before = writer.getBytes();
+            action.write(writer);
+            bytes.add(writer.getBytes() - before);
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+            log.info("Sessão gravada: {} bytes", writer.getBytes());
+        } catch (IOException e) {
+            log.warn("Falha ao fechar sessão: {}", e.getMessage());
+        }
+        writer = null;
+    }
+
+    @FunctionalInterface
+    private interface Event {
+        void write() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface WriterAction {
+        void write(SessionWriter writer) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ResultWriter {
+        void write(SessionWriter writer, int frame) throws IOException;
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.bluestring_digital.fingerprint.recording;
+
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Replays sessions recorded by {@link RecordingScannerBackend} through the whole service and
+ * controller pipeline without the scanner. Each capture window plays its recorded frames in order,
+ * at the recorded pace scaled by {@code fingerprint.replay.speed} (0 = as fast as requested), and
+ * quality, finger, split and fake calls on a replayed frame return the recorded results.
+ * Anything not recorded (templates, matching, WSQ, windows or results missing from the recording)
+ * falls back to the pure-Java algorithms of the simulated backend.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "fingerprint.backend", havingValue = "replay")
+public class ReplayScannerBackend extends SimulatedScannerBackend {
+
+    private final SessionReader reader;
+    private final double speed;
+    private final boolean loop;
+
+    private final Map<Long, AtomicLong> cursors = new ConcurrentHashMap<>();
+    private final Map<Object, SessionReader.Frame> delivered = Collections.synchronizedMap(new WeakHashMap<>());
+    private volatile long replayStart;
+
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder recordedResults = new LongAdder();
+    private final LongAdder computedResults = new LongAdder();
+    private final AtomicLong lateNanos = new AtomicLong();
+
+    @Autowired
+    public ReplayScannerBackend(
+            @Value("${fingerprint.replay.path}") String path,
+            @Value("${fingerprint.replay.speed:1.0}") double speed,
+            @Value("${fingerprint.replay.loop:true}") boolean loop,
+            @Value("${fingerprint.simulated.seed:42}") long seed) throws IOException {
+        this(SessionReader.open(Path.of(path)), speed, loop, seed);
+    }
+
+    public ReplayScannerBackend(SessionReader reader, double speed, boolean loop, long seed) {
+        super(0, 0, 0, 0, 0, "", seed);
+        this.reader = reader;
+        this.speed = speed;
+        this.loop = loop;
+        log.info("Replay backend: {} frames in {} session(s), windows {}, speed {}",
+                reader.getFrameCount(), reader.getSessionCount(), reader.getWindows(),
+                speed > 0 ? speed + "x" : "max");
+    }
+
+    @Override
+    public String getName() {
+        return "replay";
+    }
+
+    @Override
+    public int open() {
+        cursors.clear();
+        delivered.clear();
+        replayStart = System.nanoTime();
+        return super.open();
+    }
+
+    @Override
+    public int captureRaw(int width, int height, byte[] rawData) {
+        if (reader.frames(width, height).isEmpty()) {
+            return super.captureRaw(width, height, rawData);
+        }
+        SessionReader.Frame frame = next(width, height);
+        if (frame == null) {
+            return 0;
+        }
+        byte[] pixels = frame.pixels();
+        System.arraycopy(pixels, 0, rawData, 0, Math.min(pixels.length, rawData.length));
+        delivered.put(rawData, frame);
+        return 1;
+    }
+
+    @Override
+    public int captureRaw(FrameBuffer buffer) {
+        if (reader.frames(buffer.getWidth(), buffer.getHeight()).isEmpty()) {
+            return super.captureRaw(buffer);
+        }
+        SessionReader.Frame frame = next(buffer.getWidth(), buffer.getHeight());
+        if (frame == null) {
+            return 0;
+        }
+        buffer.copyFrom(frame.pixels());
+        delivered.put(buffer, frame);
+        return 1;
+    }
+
+    @Override
+    public int fingerQuality(byte[] image, int width, int height) {
+        Integer quality = recorded(image, frame -> frame.quality(width, height));
+        return quality != null ? quality : super.fingerQuality(image, width, height);
+    }
+
+    @Override
+    public int fingerQuality(FrameBuffer buffer, int width, int height) {
+        Integer quality = recorded(buffer, frame -> frame.quality(width, height));
+        return quality != null ? quality : super.fingerQuality(buffer, width, height);
+    }
+
+    @Override
+    public boolean isFinger(byte[] image, int width, int height) {
+        Boolean finger = recorded(image, SessionReader.Frame::finger);
+        return finger != null ? finger : super.isFinger(image, width, height);
+    }
+
+    @Override
+    public boolean isFinger(FrameBuffer buffer) {
+        Boolean finger = recorded(buffer, SessionReader.Frame::finger);
+        return finger != null ? finger : super.isFinger(buffer);
+    }
+
+    @Override
+    public List<FingerSplitResult> splitFingers(byte[] image, int width, int height, int splitWidth, int splitHeight) {
+        List<FingerSplitResult> fingers = recorded(image, frame -> frame.split(splitWidth, splitHeight));
+        return fingers != null ? fingers : super.splitFingers(image, width, height, splitWidth, splitHeight);
+    }
+
+    @Override
+    public List<FingerSplitResult> splitFingers(FrameBuffer buffer, int splitWidth, int splitHeight) {
+        List<FingerSplitResult> fingers = recorded(buffer, frame -> frame.split(splitWidth, splitHeight));
+        return fingers != null ? fingers : super.splitFingers(buffer, splitWidth, splitHeight);
+    }
+
+    @Override
+    public int fakeScore(byte[] image, int width, int height) {
+        Integer score = recorded(image, SessionReader.Frame::fake);
+        return score != null ? score : super.fakeScore(image, width, height);
+    }
+
+    @Override
+    public int fakeScore(FrameBuffer buffer) {
+        Integer score = recorded(buffer, SessionReader.Frame::fake);
+        return score != null ? score : super.fakeScore(buffer);
+    }
+
+    /**
+     * Frames replayed, results served from the recording vs. computed, and how far behind the
+     * recorded pace the consumers ran
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", reader.getSessionCount());
+        stats.put("recordedFrames", reader.getFrameCount());
+        stats.put("windows", reader.getWindows());
+        stats.put("speed", speed);
+        stats.put("loop", loop);
+        stats.put("framesReplayed", frames.sum());
+        stats.put("recordedResults", recordedResults.sum());
+        stats.put("computedResults", computedResults.sum());
+        stats.put("behindMs", TimeUnit.NANOSECONDS.toMillis(lateNanos.get()));
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Next recorded frame of the window, waiting for its recorded time; null (a failed capture)
+     * once the recording is exhausted without looping
+     */
+    private SessionReader.Frame next(int width, int height) {
+        List<SessionReader.Frame> recorded = reader.frames(width, height);
+        long n = cursors.computeIfAbsent(((long) width << 32) | height, key -> new AtomicLong()).getAndIncrement();
+        if (!loop && n >= recorded.size()) {
+            return null;
+        }
+        SessionReader.Frame frame = recorded.get((int) (n % recorded.size()));
+        if (speed > 0) {
+            long lap = n / recorded.size() * (reader.getDuration() + 1);
+            long due = replayStart + (long) ((lap + frame.getTime()) / speed);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            } else {
+                lateNanos.set(-wait);
+            }
+        }
+        frames.increment();
+        return frame;
+    }
+
+    private <T> T recorded(Object image, Function<SessionReader.Frame, T> result) {
+        SessionReader.Frame frame = delivered.get(image);
+        T value;
+        try {
+            value = frame != null ? result.apply(frame) : null;
+        } catch (UncheckedIOException e) {
+            log.warn("Falha ao ler resultado gravado: {}", e.getMessage());
+            value = null;
+        }
+        if (value != null) {
+            recordedResults.increment();
+        } else {
+            computedResults.increment();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,333 @@
+package com.github.bluestring_digital.fingerprint.recording;
+
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Index of one or more session files written by {@link SessionWriter}. Opening scans the chunk
+ * headers and keeps small results in memory; frame pixels and split images stay in the file and
+ * are read on demand. Sessions of a directory are played one after the other on a single timeline.
+ */
+@Slf4j
+public final class SessionReader implements AutoCloseable {
+
+    public static final String EXTENSION = ".fprec";
+
+    private final List<FileChannel> channels = new ArrayList<>();
+    private final Map<Long, List<Frame>> framesBySize = new LinkedHashMap<>();
+    private int frameCount;
+    private long duration;
+
+    private SessionReader() {
+    }
+
+    /**
+     * Opens a session file, or every {@value #EXTENSION} file of a directory in name order
+     */
+    public static SessionReader open(Path path) throws IOException {
+        List<Path> files;
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> list = Files.list(path)) {
+                files = list.filter(file -> file.getFileName().toString().endsWith(EXTENSION)).sorted().toList();
+            }
+        } else {
+            files = List.of(path);
+        }
+        SessionReader reader = new SessionReader();
+        try {
+            for (Path file : files) {
+                reader.index(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     * Recorded frames of one capture window, in capture order
+     */
+    public List<Frame> frames(int width, int height) {
+        return framesBySize.getOrDefault(size(width, height), List.of());
+    }
+
+    /**
+     * Recorded capture windows as "WIDTHxHEIGHT" with their frame counts
+     */
+    public Map<String, Integer> getWindows() {
+        Map<String, Integer> windows = new LinkedHashMap<>();
+        framesBySize.forEach((size, frames) -> windows.put((size >>> 32) + "x" + (size & 0xFFFFFFFFL), frames.size()));
+        return windows;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getSessionCount() {
+        return channels.size();
+    }
+
+    /**
+     * Timeline length in nanoseconds, from the first frame of the first session to the last frame
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    private void index(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channels.add(channel);
+        long offset = duration > 0 ? duration + 1 : 0;
+        Map<Integer, Frame> frames = new HashMap<>();
+
+        CountingInput counting = new CountingInput(Channels.newInputStream(channel));
+        DataInputStream in = new DataInputStream(counting);
+        if (in.readInt() != SessionWriter.MAGIC) {
+            throw new IOException("Not a session file: " + file);
+        }
+        int version = in.readUnsignedByte();
+        if (version != SessionWriter.VERSION) {
+            throw new IOException("Unsupported session version " + version + ": " + file);
+        }
+        in.readLong();
+        String backend = in.readUTF();
+
+        boolean torn = false;
+        long size = channel.size();
+        while (true) {
+            int type = in.read();
+            if (type < 0) break;
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                torn = true;
+                break;
+            }
+            long position = counting.position;
+            if (length < 0 || position + length > size) {
+                torn = true;
+                break;
+            }
+            if (type == SessionWriter.FRAME || type == SessionWriter.SPLIT) {
+                // Only the fixed part; pixels are read on demand
+                int header = type == SessionWriter.FRAME ? 17 : 4;
+                DataInputStream chunk = new DataInputStream(new ByteArrayInputStream(in.readNBytes(header)));
+                in.skipNBytes(length - header);
+                int id = chunk.readInt();
+                if (type == SessionWriter.FRAME) {
+                    long time = offset + chunk.readLong();
+                    Frame frame = new Frame(channel, position + 17, length - 17, time,
+                            chunk.readUnsignedShort(), chunk.readUnsignedShort(), chunk.readUnsignedByte());
+                    frames.put(id, frame);
+                    framesBySize.computeIfAbsent(size(frame.width, frame.height), key -> new ArrayList<>()).add(frame);
+                    frameCount++;
+                    duration = Math.max(duration, time);
+                } else if (frames.containsKey(id)) {
+                    frames.get(id).split = new long[]{position, length};
+                }
+                continue;
+            }
+            DataInputStream chunk = new DataInputStream(new ByteArrayInputStream(in.readNBytes(length)));
+            Frame frame = frames.get(chunk.readInt());
+            if (frame == null) continue;
+            switch (type) {
+                case SessionWriter.QUALITY -> frame.qualities.put(
+                        size(chunk.readUnsignedShort(), chunk.readUnsignedShort()), chunk.readInt());
+                case SessionWriter.FINGER -> frame.finger = chunk.readBoolean();
+                case SessionWriter.FAKE -> frame.fake = chunk.readInt();
+                default -> log.debug("Ignoring chunk type {} in {}", type, file);
+            }
+        }
+        if (torn) {
+            log.warn("Session {} ends with a torn chunk, discarded", file);
+        }
+        log.info("Session {} ({}): {} frames", file.getFileName(), backend, frames.size());
+    }
+
+    private static long size(int width, int height) {
+        return ((long) width << 32) | height;
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Session file truncated");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] decode(int encoding, byte[] data, int offset, int length, int size) {
+        if (encoding == SessionWriter.RAW) {
+            byte[] pixels = new byte[size];
+            System.arraycopy(data, offset, pixels, 0, Math.min(length, size));
+            return pixels;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            byte[] pixels = new byte[size];
+            inflater.inflate(pixels);
+            return pixels;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt frame in session file", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * One recorded frame and the results the backend returned for it
+     */
+    public static final class Frame {
+
+        private final FileChannel channel;
+        private final long position;
+        private final int length;
+        private final long time;
+        private final int width;
+        private final int height;
+        private final int encoding;
+        private final Map<Long, Integer> qualities = new HashMap<>();
+        private Boolean finger;
+        private Integer fake;
+        private long[] split;
+
+        private Frame(FileChannel channel, long position, int length, long time, int width, int height, int encoding) {
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+            this.time = time;
+            this.width = width;
+            this.height = height;
+            this.encoding = encoding;
+        }
+
+        /**
+         * Capture time in nanoseconds on the reader's timeline
+         */
+        public long getTime() { return time; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+
+        public byte[] pixels() {
+            return decode(encoding, read(channel, position, length), 0, length, width * height);
+        }
+
+        /**
+         * Recorded quality for an evaluation window, or null if none was recorded
+         */
+        public Integer quality(int width, int height) {
+            return qualities.get(size(width, height));
+        }
+
+        public Boolean finger() { return finger; }
+        public Integer fake() { return fake; }
+
+        /**
+         * Recorded split for the given finger size, or null if none was recorded
+         */
+        public List<FingerSplitResult> split(int splitWidth, int splitHeight) {
+            if (split == null) {
+                return null;
+            }
+            byte[] data = read(channel, split[0], (int) split[1]);
+            ByteBuffer in = ByteBuffer.wrap(data);
+            in.getInt();
+            if (in.getShort() != (short) splitWidth || in.getShort() != (short) splitHeight) {
+                return null;
+            }
+            int count = in.get() & 0xFF;
+            List<FingerSplitResult> fingers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                FingerSplitResult finger = new FingerSplitResult();
+                finger.setX(in.getInt());
+                finger.setY(in.getInt());
+                finger.setTop(in.getInt());
+                finger.setLeft(in.getInt());
+                finger.setAngle(in.getInt());
+                finger.setQuality(in.getInt());
+                finger.setWidth(in.getShort() & 0xFFFF);
+                finger.setHeight(in.getShort() & 0xFFFF);
+                int encoding = in.get();
+                int imageLength = in.getInt();
+                finger.setImageData(decode(encoding, data, in.position(), imageLength,
+                        finger.getWidth() * finger.getHeight()));
+                in.position(in.position() + imageLength);
+                fingers.add(finger);
+            }
+            return fingers;
+        }
+    }
+
+    /**
+     * Tracks the file position while indexing through a buffered stream
+     */
+    private static final class CountingInput extends InputStream {
+
+        private final InputStream in;
+        private long position;
+
+        CountingInput(InputStream in) {
+            this.in = new BufferedInputStream(in, 1 << 16);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) position++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = in.read(buffer, offset, length);
+            if (n > 0) position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            position += skipped;
+            return skipped;
+        }
+    }
+}
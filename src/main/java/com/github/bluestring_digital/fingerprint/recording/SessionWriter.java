@@ -0,0 +1,161 @@
+package com.github.bluestring_digital.fingerprint.recording;
+
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Appends a capture session to a chunked file, read back by {@link SessionReader}.
+ * <pre>
+ * header: magic "FPRS" (int), version (byte), start (long, epoch millis), backend name (UTF)
+ * chunk:  type (byte), payload length (int), payload
+ *   FRAME     frame (int), time (long, nanos since start), width (short), height (short),
+ *             encoding (byte: 0 = raw, 1 = deflate), pixels
+ *   QUALITY   frame (int), width (short), height (short), quality (int)
+ *   FINGER    frame (int), finger present (byte)
+ *   SPLIT     frame (int), split width (short), split height (short), count (byte), per finger:
+ *             x, y, top, left, angle, quality (int), width (short), height (short),
+ *             encoding (byte), length (int), pixels
+ *   FAKE      frame (int), score (int)
+ * </pre>
+ * Results refer to the frame they were computed on, since the preview pipeline analyzes a frame
+ * while the next one is being captured. A chunk torn by a crash ends the session on read.
+ * Not thread-safe: the recorder writes from a single thread. An existing file is never overwritten.
+ */
+public final class SessionWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x46505253; // "FPRS"
+    static final int VERSION = 1;
+
+    static final byte FRAME = 1;
+    static final byte QUALITY = 2;
+    static final byte FINGER = 3;
+    static final byte SPLIT = 4;
+    static final byte FAKE = 5;
+
+    static final byte RAW = 0;
+    static final byte DEFLATE = 1;
+
+    private final DataOutputStream out;
+    private final boolean compress;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+    private final DataOutputStream payload = new DataOutputStream(chunk);
+    private byte[] deflateBuffer = new byte[0];
+    private long bytes;
+
+    public SessionWriter(Path path, String backendName, long startMillis, boolean compress) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), 1 << 16));
+        this.compress = compress;
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(startMillis);
+        out.writeUTF(backendName);
+    }
+
+    public void frame(int frame, long timeNanos, int width, int height, byte[] pixels) throws IOException {
+        payload.writeInt(frame);
+        payload.writeLong(timeNanos);
+        payload.writeShort(width);
+        payload.writeShort(height);
+        pixels(pixels, width * height, false);
+        flush(FRAME);
+    }
+
+    public void quality(int frame, int width, int height, int quality) throws IOException {
+        payload.writeInt(frame);
+        payload.writeShort(width);
+        payload.writeShort(height);
+        payload.writeInt(quality);
+        flush(QUALITY);
+    }
+
+    public void finger(int frame, boolean present) throws IOException {
+        payload.writeInt(frame);
+        payload.writeBoolean(present);
+        flush(FINGER);
+    }
+
+    public void split(int frame, int splitWidth, int splitHeight, List<FingerSplitResult> fingers) throws IOException {
+        payload.writeInt(frame);
+        payload.writeShort(splitWidth);
+        payload.writeShort(splitHeight);
+        payload.writeByte(fingers.size());
+        for (FingerSplitResult finger : fingers) {
+            payload.writeInt(finger.getX());
+            payload.writeInt(finger.getY());
+            payload.writeInt(finger.getTop());
+            payload.writeInt(finger.getLeft());
+            payload.writeInt(finger.getAngle());
+            payload.writeInt(finger.getQuality());
+            payload.writeShort(finger.getWidth());
+            payload.writeShort(finger.getHeight());
+            pixels(finger.getImageData(), finger.getWidth() * finger.getHeight(), true);
+        }
+        flush(SPLIT);
+    }
+
+    public void fake(int frame, int score) throws IOException {
+        payload.writeInt(frame);
+        payload.writeInt(score);
+        flush(FAKE);
+    }
+
+    /**
+     * Bytes written so far, headers excluded
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        out.close();
+    }
+
+    /**
+     * Writes pixels raw or deflated; split images carry their length, frame pixels run to the chunk end
+     */
+    private void pixels(byte[] pixels, int length, boolean prefixed) throws IOException {
+        length = Math.min(length, pixels.length);
+        if (compress) {
+            if (deflateBuffer.length < length + 64) {
+                deflateBuffer = new byte[length + length / 8 + 64];
+            }
+            deflater.reset();
+            deflater.setInput(pixels, 0, length);
+            deflater.finish();
+            int compressed = deflater.deflate(deflateBuffer);
+            if (deflater.finished()) {
+                payload.writeByte(DEFLATE);
+                if (prefixed) payload.writeInt(compressed);
+                payload.write(deflateBuffer, 0, compressed);
+                return;
+            }
+        }
+        payload.writeByte(RAW);
+        if (prefixed) payload.writeInt(length);
+        payload.write(pixels, 0, length);
+    }
+
+    private void flush(byte type) throws IOException {
+        out.writeByte(type);
+        out.writeInt(chunk.size());
+        chunk.writeTo(out);
+        bytes += 5 + chunk.size();
+        chunk.reset();
+    }
+}
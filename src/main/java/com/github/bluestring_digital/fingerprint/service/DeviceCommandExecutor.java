@@ -0,0 +1,227 @@
+package com.github.bluestring_digital.fingerprint.service;
+
+import com.github.bluestring_digital.fingerprint.backend.DeviceBusyException;
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single owner of the native device. Every backend call is submitted as a named command to one
+ * dedicated thread through a bounded queue; request threads wait on the returned future.
+ * This serializes access to the DLLs and records queue depth and wait/run times per command,
+ * also published as {@code fingerprint.device.*} meters.
+ * <p>
+ * A native call cannot be interrupted: when a command times out the caller gives up, but the DLL
+ * may still be using its buffers. Commands on a {@link FrameBuffer} therefore hold their own
+ * reference to it until they finish, and commands abandoned while still queued never run.
+ */
+@Slf4j
+@Component
+public class DeviceCommandExecutor implements MeterBinder {
+
+    private static final String THREAD_NAME = "fingerprint-device";
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final Map<String, CommandStats> stats = new ConcurrentHashMap<>();
+    private volatile Thread deviceThread;
+    private volatile MeterRegistry meterRegistry;
+
+    public DeviceCommandExecutor(
+            @Value("${fingerprint.device.queue-capacity:32}") int queueCapacity,
+            @Value("${fingerprint.device.command-timeout-ms:10000}") long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, THREAD_NAME);
+                    thread.setDaemon(true);
+                    deviceThread = thread;
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Runs {@code task} on the device thread and waits for its result.
+     * Calls made from the device thread itself run inline.
+     */
+    public <T> T call(String command, Callable<T> task) {
+        return call(command, null, task);
+    }
+
+    /**
+     * Runs {@code task} on the device thread with {@code frame} retained until the task finishes,
+     * so a command that outlives its timeout never writes to or reads from a recycled buffer.
+     */
+    public <T> T call(String command, FrameBuffer frame, Callable<T> task) {
+        if (Thread.currentThread() == deviceThread) {
+            return invoke(task);
+        }
+
+        CommandStats commandStats = stats.computeIfAbsent(command, this::newCommandStats);
+        FrameBuffer held = frame != null ? frame.retain() : null;
+        // Set by whichever comes first: the device thread starting the task or the caller giving up
+        AtomicBoolean claimed = new AtomicBoolean();
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                long started = System.nanoTime();
+                commandStats.waitNanos.add(started - submitted);
+                commandStats.maxWaitNanos.accumulateAndGet(started - submitted, Math::max);
+                try {
+                    return task.call();
+                } finally {
+                    commandStats.runNanos.add(System.nanoTime() - started);
+                    commandStats.count.increment();
+                    release(held);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(held);
+            commandStats.rejected.increment();
+            throw new DeviceBusyException("Device busy: command queue is full (" + command + ")");
+        }
+
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            abandon(claimed, held);
+            commandStats.timeouts.increment();
+            throw new DeviceBusyException("Device command timed out after " + timeoutMs + "ms: " + command);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            abandon(claimed, held);
+            Thread.currentThread().interrupt();
+            throw new DeviceBusyException("Interrupted while waiting for device command: " + command);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            if (cause instanceof Error error) throw error;
+            throw new IllegalStateException("Device command failed: " + command, cause);
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Per-command counters: executions, average/max queue wait and average run time in ms
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("queueDepth", getQueueDepth());
+        result.put("active", executor.getActiveCount() > 0);
+
+        Map<String, Object> commands = new LinkedHashMap<>();
+        stats.forEach((command, s) -> {
+            long count = s.count.sum();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("count", count);
+            entry.put("avgWaitMs", count > 0 ? s.waitNanos.sum() / count / 1_000_000.0 : 0.0);
+            entry.put("maxWaitMs", s.maxWaitNanos.get() / 1_000_000.0);
+            entry.put("avgRunMs", count > 0 ? s.runNanos.sum() / count / 1_000_000.0 : 0.0);
+            entry.put("rejected", s.rejected.sum());
+            entry.put("timeouts", s.timeouts.sum());
+            commands.put(command, entry);
+        });
+        result.put("commands", commands);
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+        Gauge.builder("fingerprint.device.queue", this, DeviceCommandExecutor::getQueueDepth)
+                .description("Device commands waiting for the device thread")
+                .register(registry);
+        stats.forEach((command, commandStats) -> bind(registry, command, commandStats));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private CommandStats newCommandStats(String command) {
+        CommandStats commandStats = new CommandStats();
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            bind(registry, command, commandStats);
+        }
+        return commandStats;
+    }
+
+    private static void bind(MeterRegistry registry, String command, CommandStats s) {
+        FunctionTimer.builder("fingerprint.device.command", s, c -> c.count.sum(), c -> c.runNanos.sum(),
+                        TimeUnit.NANOSECONDS)
+                .description("Device command run time on the device thread")
+                .tag("command", command)
+                .register(registry);
+        FunctionTimer.builder("fingerprint.device.wait", s, c -> c.count.sum(), c -> c.waitNanos.sum(),
+                        TimeUnit.NANOSECONDS)
+                .description("Time device commands waited in the queue")
+                .tag("command", command)
+                .register(registry);
+        FunctionCounter.builder("fingerprint.device.rejected", s, c -> c.rejected.sum())
+                .tag("command", command)
+                .register(registry);
+        FunctionCounter.builder("fingerprint.device.timeouts", s, c -> c.timeouts.sum())
+                .tag("command", command)
+                .register(registry);
+    }
+
+    /**
+     * Releases the frame of a command the caller gave up on, unless the device thread already runs it
+     */
+    private static void abandon(AtomicBoolean claimed, FrameBuffer held) {
+        if (claimed.compareAndSet(false, true)) {
+            release(held);
+        }
+    }
+
+    private static void release(FrameBuffer held) {
+        if (held != null) {
+            held.close();
+        }
+    }
+
+    private static <T> T invoke(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CommandStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+        final LongAdder runNanos = new LongAdder();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.bluestring_digital.fingerprint.service;
+
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.backend.ScannerBackend;
+import com.github.bluestring_digital.fingerprint.image.SlapSegmenter;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Slap segmentation with the engine selected by {@code fingerprint.split.engine}: {@code native}
+ * runs the backend's splitter on the device thread (FpSplit keeps global state in the DLL);
+ * {@code java} runs the {@link SlapSegmenter} on the calling thread, cropping the fingers of a slap
+ * in parallel, so slaps can be segmented on any platform without queueing behind the sensor.
+ * <p>
+ * Splits are timed as {@code fingerprint.split{engine}}. With {@code fingerprint.split.shadow} the
+ * native engine also runs the Java segmenter in the background on a copy of each slap, so both
+ * latencies and the slaps where they found a different number of fingers can be compared on the
+ * same captures. Shadow splits run on one thread behind a short queue; when it is full the slap is
+ * discarded (and counted) instead of copied, so a slower Java segmenter never piles up frames.
+ */
+@Slf4j
+@Component
+public class FingerSplitter implements MeterBinder {
+
+    public static final String ENGINE_NATIVE = "native";
+    public static final String ENGINE_JAVA = "java";
+
+    /** Slaps waiting for a shadow split; more are discarded */
+    private static final int SHADOW_QUEUE = 2;
+
+    private final ScannerBackend backend;
+    private final DeviceCommandExecutor device;
+    private final String engine;
+    private final boolean shadow;
+    private final ExecutorService workers;
+    private final ThreadPoolExecutor shadowWorker;
+    private final SlapSegmenter segmenter;
+    /** Shadow splits already run on a worker, so they crop sequentially */
+    private final SlapSegmenter shadowSegmenter = new SlapSegmenter(null);
+
+    private final LongAdder shadowSplits = new LongAdder();
+    private final LongAdder shadowMismatches = new LongAdder();
+    private final LongAdder shadowDiscarded = new LongAdder();
+    private volatile MeterRegistry registry;
+
+    public FingerSplitter(ScannerBackend backend, DeviceCommandExecutor device,
+                          @Value("${fingerprint.split.engine:native}") String engine,
+                          @Value("${fingerprint.split.parallelism:4}") int parallelism,
+                          @Value("${fingerprint.split.shadow:false}") boolean shadow) {
+        if (!ENGINE_NATIVE.equals(engine) && !ENGINE_JAVA.equals(engine)) {
+            throw new IllegalArgumentException("Unknown split engine: " + engine);
+        }
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.backend = backend;
+        this.device = device;
+        this.engine = engine;
+        this.shadow = shadow && ENGINE_NATIVE.equals(engine);
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "finger-split-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.segmenter = new SlapSegmenter(workers);
+        this.shadowWorker = this.shadow
+                ? new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(SHADOW_QUEUE),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "finger-split-shadow");
+                            thread.setDaemon(true);
+                            return thread;
+                        },
+                        (runnable, executor) -> shadowDiscarded.increment())
+                : null;
+        log.info("Separação de dedos: {}{}", engine, this.shadow ? " (com java em paralelo para comparação)" : "");
+    }
+
+    public List<FingerSplitResult> split(byte[] image, int width, int height, int splitWidth, int splitHeight) {
+        if (ENGINE_JAVA.equals(engine)) {
+            return timed(ENGINE_JAVA, () -> segmenter.split(image, width, height, splitWidth, splitHeight));
+        }
+        List<FingerSplitResult> fingers = timed(ENGINE_NATIVE, () -> device.call("split",
+                () -> backend.splitFingers(image, width, height, splitWidth, splitHeight)));
+        if (shadow) {
+            compareInBackground(image::clone, width, height, splitWidth, splitHeight, fingers.size());
+        }
+        return fingers;
+    }
+
+    /**
+     * Splits a frame in native memory; the Java engine reads it through one heap copy
+     */
+    public List<FingerSplitResult> split(FrameBuffer frame, int splitWidth, int splitHeight) {
+        if (ENGINE_JAVA.equals(engine)) {
+            return timed(ENGINE_JAVA, () -> segmenter.split(frame.toByteArray(), frame.getWidth(), frame.getHeight(),
+                    splitWidth, splitHeight));
+        }
+        List<FingerSplitResult> fingers = timed(ENGINE_NATIVE, () -> device.call("split", frame,
+                () -> backend.splitFingers(frame, splitWidth, splitHeight)));
+        if (shadow) {
+            compareInBackground(frame::toByteArray, frame.getWidth(), frame.getHeight(), splitWidth, splitHeight,
+                    fingers.size());
+        }
+        return fingers;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        FunctionCounter.builder("fingerprint.split.shadow", shadowSplits, LongAdder::sum)
+                .description("Native splits repeated with the Java segmenter for comparison")
+                .register(registry);
+        FunctionCounter.builder("fingerprint.split.shadow.mismatches", shadowMismatches, LongAdder::sum)
+                .description("Shadow splits where the Java segmenter found a different number of fingers")
+                .register(registry);
+        FunctionCounter.builder("fingerprint.split.shadow.discarded", shadowDiscarded, LongAdder::sum)
+                .description("Slaps not compared because the shadow queue was full")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+        if (shadowWorker != null) {
+            shadowWorker.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues a shadow split of a copy of the slap; with the queue full the slap is not even copied
+     */
+    private void compareInBackground(Supplier<byte[]> copy, int width, int height, int splitWidth, int splitHeight,
+                                     int nativeFingers) {
+        if (shadowWorker.isShutdown() || shadowWorker.getQueue().remainingCapacity() == 0) {
+            shadowDiscarded.increment();
+            return;
+        }
+        byte[] image = copy.get();
+        // Rejections (queue filled meanwhile, or shutdown) are counted by the discard handler
+        shadowWorker.execute(() -> {
+            int fingers = timed(ENGINE_JAVA,
+                    () -> shadowSegmenter.split(image, width, height, splitWidth, splitHeight)).size();
+            shadowSplits.increment();
+            if (fingers != nativeFingers) {
+                shadowMismatches.increment();
+                log.debug("Separação java encontrou {} dedos, nativa {}", fingers, nativeFingers);
+            }
+        });
+    }
+
+    private <T> T timed(String engineTag, Supplier<T> split) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry == null) {
+            return split.get();
+        }
+        return Timer.builder("fingerprint.split")
+                .description("Slap segmentation into single fingers")
+                .tag("engine", engineTag)
+                .register(meterRegistry)
+                .record(split);
+    }
+}
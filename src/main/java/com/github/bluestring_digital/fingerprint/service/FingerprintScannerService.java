@@ -1,28 +1,35 @@
 package com.github.bluestring_digital.fingerprint.service;
 
-import com.github.bluestring_digital.fingerprint.lib.FingerprintDeviceInterface.*;
-import com.sun.jna.Memory;
-import com.sun.jna.Pointer;
-import com.sun.jna.ptr.IntByReference;
+import com.github.bluestring_digital.fingerprint.backend.DeviceNotOpenException;
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.backend.FrameBufferPool;
+import com.github.bluestring_digital.fingerprint.backend.ScannerBackend;
+import com.github.bluestring_digital.fingerprint.image.ImageFormat;
+import com.github.bluestring_digital.fingerprint.image.WsqCodec;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
 import org.springframework.stereotype.Service;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class FingerprintScannerService {
 
-    private final LiveScan liveScan = LiveScan.INSTANCE;
-    private final Mosaic mosaic = Mosaic.INSTANCE;
-    private final FpSplit fpSplit = FpSplit.INSTANCE;
-    private final FpStdLib fpStdLib = FpStdLib.INSTANCE;
-    private final Fione fione = Fione.INSTANCE;
+    private final ScannerBackend backend;
+    private final FrameBufferPool frameBufferPool;
+    private final DeviceCommandExecutor device;
+    private final TemplateExtractor templateExtractor;
+    private final WsqService wsqService;
+    private final TemplateMatcher templateMatcher;
+    private final FingerSplitter fingerSplitter;
+    private final QualityScorer qualityScorer;
 
-    private int fpDevice = 0;
     private final AtomicBoolean isDeviceOpen = new AtomicBoolean(false);
     private final AtomicBoolean isCapturing = new AtomicBoolean(false);
 
@@ -34,30 +41,29 @@ public class FingerprintScannerService {
     private static final int SINGLE_HEIGHT = 400;
 
 
-    public int safeFingerQuality(byte[] imageData) {
-        int width = 800;
-        int height = 750;
+    /**
+     * Qualidade de uma imagem em memória, de -1 (falha) a 100
+     */
+    public int safeFingerQuality(byte[] imageData, int width, int height) {
+        return qualityScorer.score(imageData, width, height);
+    }
 
-        try {
-            int quality = mosaic.MOSAIC_FingerQuality(imageData, width, height);
-            log.info("Qualidade detectada com resolução {}x{} = {}", width, height, quality);
-            return quality;
-        } catch (Error e) {
-            log.warn("Falha ao avaliar qualidade em {}x{} -> {}", width, height, e.getMessage());
-            return -1;
-        }
+    /**
+     * Qualidade de um frame em buffer nativo
+     */
+    public int safeFingerQuality(FrameBuffer frame) {
+        return qualityScorer.score(frame);
     }
-    
+
     /**
      * Abre a conexão com o dispositivo
      */
     public boolean openDevice() {
         try {
-            int result = liveScan.LIVESCAN_Init();
+            int result = device.call("open", backend::open);
             if (result == 1) {
-                mosaic.MOSAIC_Init();
                 isDeviceOpen.set(true);
-                log.info("Dispositivo aberto com sucesso");
+                log.info("Dispositivo aberto com sucesso (backend {})", backend.getName());
                 return true;
             }
             log.error("Falha ao abrir dispositivo: código {}", result);
@@ -74,14 +80,9 @@ public class FingerprintScannerService {
     public boolean closeDevice() {
         try {
             stopCapture();
-            int result = liveScan.LIVESCAN_Close();
+            int result = device.call("close", backend::close);
             if (result == 1) {
-                mosaic.MOSAIC_Close();
                 isDeviceOpen.set(false);
-                if (fpDevice != 0) {
-                    fpStdLib.ZAZ_FpStdLib_CloseDevice(fpDevice);
-                    fpDevice = 0;
-                }
                 log.info("Dispositivo fechado com sucesso");
                 return true;
             }
@@ -104,7 +105,7 @@ public class FingerprintScannerService {
             default -> 4; // normal
         };
 
-        return liveScan.LIVESCAN_SetFingerDryWet(level) == 1;
+        return device.call("config", () -> backend.setFingerDryWet(level)) == 1;
     }
 
     /**
@@ -112,14 +113,11 @@ public class FingerprintScannerService {
      */
     public byte[] captureRawImage(int width, int height) {
         if (!isDeviceOpen.get()) {
-            throw new IllegalStateException("Dispositivo não está aberto");
+            throw new DeviceNotOpenException("Dispositivo não está aberto");
         }
 
-        // Define a janela de captura (área do sensor)
-        liveScan.LIVESCAN_SetCaptWindow(0, 0, 0, width, height);
-
         byte[] rawData = new byte[width * height];
-        int result = liveScan.LIVESCAN_GetFPRawData(0, rawData);
+        int result = device.call("capture", () -> backend.captureRaw(width, height, rawData));
 
         if (result != 1) {
             log.error("Falha ao capturar imagem. Código: {}", result);
@@ -130,85 +128,57 @@ public class FingerprintScannerService {
         return rawData;
     }
 
+    /**
+     * Captura um frame num buffer nativo do pool, sem cópia para o heap.
+     * O chamador é dono do buffer e deve fechá-lo (try-with-resources).
+     */
+    public FrameBuffer captureFrame(int width, int height) {
+        if (!isDeviceOpen.get()) {
+            throw new DeviceNotOpenException("Dispositivo não está aberto");
+        }
+
+        FrameBuffer frame = frameBufferPool.acquire(width, height);
+        int result;
+        try {
+            result = device.call("capture", frame, () -> backend.captureRaw(frame));
+        } catch (RuntimeException e) {
+            frame.close();
+            throw e;
+        }
+        if (result != 1) {
+            frame.close();
+            log.error("Falha ao capturar imagem. Código: {}", result);
+            throw new RuntimeException("Falha ao capturar imagem: código " + result);
+        }
+        frame.setTimestamp(System.currentTimeMillis());
+
+        log.debug("Frame capturado com sucesso: {}x{}", width, height);
+        return frame;
+    }
+
     /**
      * Verifica se há dedo na imagem
      */
     public boolean isFinger(byte[] imageData, int width, int height) {
-        return mosaic.MOSAIC_IsFinger(imageData, width, height) > 0;
+        return device.call("isFinger", () -> backend.isFinger(imageData, width, height));
+    }
+
+    public boolean isFinger(FrameBuffer frame) {
+        return device.call("isFinger", frame, () -> backend.isFinger(frame));
     }
 
     /**
      * Separa múltiplos dedos em uma imagem
      */
     public List<FingerSplitResult> splitFingers(byte[] imageData, int width, int height) {
-        fpSplit.FPSPLIT_Init(width, height, 1);
-
-        IntByReference fingerNum = new IntByReference(0);
-
-        // Calcula o tamanho da estrutura
-        FpSplit.FPSPLIT_INFO template = new FpSplit.FPSPLIT_INFO();
-        int structSize = template.size();
-
-        // Aloca memória para array de 10 estruturas
-        Pointer infoArrayPtr = new Memory(structSize * 10);
-
-        // Aloca buffers individuais para cada dedo e configura os ponteiros
-        Pointer[] fingerBuffers = new Pointer[10];
-        for (int i = 0; i < 10; i++) {
-            fingerBuffers[i] = new Memory(SINGLE_WIDTH * SINGLE_HEIGHT);
-            // Escreve o ponteiro do buffer no offset correto (24 bytes após o início de cada estrutura)
-            infoArrayPtr.setPointer(i * structSize + 24, fingerBuffers[i]);
-        }
-
-        // Executa a separação
-        int result = fpSplit.FPSPLIT_DoSplit(
-                imageData, width, height, 1,
-                SINGLE_WIDTH, SINGLE_HEIGHT,
-                fingerNum, infoArrayPtr
-        );
-
-        List<FingerSplitResult> fingers = new ArrayList<>();
-        int count = fingerNum.getValue();
-
-        log.debug("Separação de dedos: resultado={}, quantidade={}", result, count);
-
-        // Lê as informações de cada dedo detectado
-        for (int i = 0; i < count && i < 10; i++) {
-            // Cria estrutura apontando para o offset correto
-            FpSplit.FPSPLIT_INFO info = new FpSplit.FPSPLIT_INFO(
-                    infoArrayPtr.share(i * structSize)
-            );
-            info.read();
-
-            // Lê os dados da imagem
-            byte[] fingerData = info.getImageData(SINGLE_WIDTH, SINGLE_HEIGHT);
-
-            FingerSplitResult finger = new FingerSplitResult();
-            finger.setImageData(fingerData);
-            finger.setWidth(SINGLE_WIDTH);
-            finger.setHeight(SINGLE_HEIGHT);
-            finger.setX(info.x);
-            finger.setY(info.y);
-            finger.setTop(info.top);
-            finger.setLeft(info.left);
-            finger.setAngle(info.angle);
-            finger.setQuality(info.quality);
-
-            fingers.add(finger);
-
-            log.debug("Dedo {}: x={}, y={}, angle={}, quality={}", i, info.x, info.y, info.angle, info.quality);
-        }
-
-        // Libera memória
-        for (Pointer buffer : fingerBuffers) {
-            if (buffer instanceof Memory) {
-                // Memory é garbage collected, mas podemos liberar explicitamente
-                ((Memory) buffer).clear();
-            }
-        }
+        return fingerSplitter.split(imageData, width, height, SINGLE_WIDTH, SINGLE_HEIGHT);
+    }
 
-        fpSplit.FPSPLIT_Uninit();
-        return fingers;
+    /**
+     * Separa múltiplos dedos diretamente do buffer nativo
+     */
+    public List<FingerSplitResult> splitFingers(FrameBuffer frame) {
+        return fingerSplitter.split(frame, SINGLE_WIDTH, SINGLE_HEIGHT);
     }
 
     /**
@@ -240,45 +210,57 @@ public class FingerprintScannerService {
     }
 
     /**
-     * Cria template ISO da impressão digital
+     * Codifica uma imagem raw como data URL no formato pedido
      */
-    public byte[] createISOTemplate(byte[] imageData) {
-        if (fpDevice == 0) {
-            fpDevice = fpStdLib.ZAZ_FpStdLib_OpenDevice();
-            if (fpDevice == 0) {
-                throw new RuntimeException("Falha ao inicializar algoritmo biométrico");
+    public String encodeImage(byte[] rawData, int width, int height, ImageFormat format) {
+        return switch (format) {
+            case BMP -> bmpToBase64(rawToBmp(rawData, width, height));
+            case RAW -> "data:" + format.getMimeType() + ";base64,"
+                    + Base64.getEncoder().encodeToString(Arrays.copyOf(rawData, width * height));
+            case WSQ -> {
+                WsqService.Compressed wsq = compressWsq(rawData, width, height);
+                yield "data:" + wsq.mimeType() + ";base64," + Base64.getEncoder().encodeToString(wsq.data());
             }
-        }
+        };
+    }
 
-        // Espelha horizontalmente a imagem (para compatibilidade)
-        horizontalMirror(imageData, SINGLE_WIDTH, SINGLE_HEIGHT);
+    public WsqService.Compressed compressWsq(byte[] rawData, int width, int height) {
+        return wsqService.compress(rawData, width, height);
+    }
 
-        byte[] template = new byte[1024];
-        int result = fpStdLib.ZAZ_FpStdLib_CreateISOTemplate(fpDevice, imageData, template);
+    /**
+     * Decodifica uma imagem WSQ (do dispositivo ou do codec Java) para raw
+     */
+    public WsqCodec.Image decodeWsq(byte[] data) {
+        return wsqService.decompress(data);
+    }
 
-        if (result == 0) {
-            throw new RuntimeException("Falha ao criar template ISO");
-        }
+    /**
+     * Cria template ISO da impressão digital
+     */
+    public byte[] createISOTemplate(byte[] imageData) {
+        return templateExtractor.extract(imageData);
+    }
 
-        return template;
+    /**
+     * Cria os templates ISO de vários dedos em paralelo, na ordem das imagens
+     */
+    public List<byte[]> createISOTemplates(List<byte[]> images) {
+        return templateExtractor.extractAll(images);
     }
 
     /**
-     * Compara dois templates biométricos
+     * Compara dois templates biométricos com o matcher configurado, fora da thread do dispositivo
      */
     public int compareTemplates(byte[] template1, byte[] template2) {
-        if (fpDevice == 0) {
-            throw new IllegalStateException("Dispositivo biométrico não inicializado");
-        }
-
-        return fpStdLib.ZAZ_FpStdLib_CompareTemplates(fpDevice, template1, template2);
+        return templateMatcher.compare(template1, template2);
     }
 
     /**
      * Detecta impressão digital falsa (fake)
      */
     public int detectFake(byte[] imageData, int width, int height) {
-        return fione.GetFingerFake(imageData, width, height);
+        return device.call("liveness", () -> backend.fakeScore(imageData, width, height));
     }
 
     /**
@@ -286,7 +268,7 @@ public class FingerprintScannerService {
      */
     public void beep(int times) {
         if (isDeviceOpen.get()) {
-            liveScan.LIVESCAN_Beep(times);
+            device.call("beep", () -> backend.beep(times));
         }
     }
 
@@ -299,7 +281,7 @@ public class FingerprintScannerService {
 
     // ========== Métodos auxiliares ==========
 
-    private byte[] createBmpHeader(int width, int height) {
+    public byte[] createBmpHeader(int width, int height) {
         byte[] header = new byte[1078];
 
         // Cabeçalho BMP padrão
@@ -343,7 +325,20 @@ public class FingerprintScannerService {
         return header;
     }
 
-    private void horizontalMirror(byte[] image, int width, int height) {
+    /**
+     * Mirrored copy of a finger image, as the template extractor feeds it to the vendor SDK.
+     * The source image is left untouched so it can still be sent to the client.
+     */
+    public static byte[] mirroredCopy(byte[] image) {
+        byte[] mirrored = new byte[image.length];
+        int last = image.length - 1;
+        for (int i = 0; i < mirrored.length; i++) {
+            mirrored[i] = image[last - i];
+        }
+        return mirrored;
+    }
+
+    public void horizontalMirror(byte[] image, int width, int height) {
         for (int i = 0; i < width * height / 2; i++) {
             byte temp = image[i];
             image[i] = image[(width * height - 1) - i];
@@ -355,6 +350,10 @@ public class FingerprintScannerService {
         return isDeviceOpen.get();
     }
 
+    public String getBackendName() {
+        return backend.getName();
+    }
+
     // ========== Classes auxiliares ==========
 
     public static class FingerSplitResult {
@@ -0,0 +1,183 @@
+package com.github.bluestring_digital.fingerprint.service;
+
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.backend.ScannerBackend;
+import com.github.bluestring_digital.fingerprint.image.RidgeQuality;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Fingerprint quality with the engine selected by {@code fingerprint.quality.engine}: {@code native}
+ * runs MOSAIC_FingerQuality on the device thread; {@code java} runs {@link RidgeQuality} on the
+ * calling thread at the real size of the image, its tiles scored on {@code parallelism} workers.
+ * <p>
+ * MOSAIC scores full frames at 800x750, so the native engine keeps that nominal size for buffers
+ * holding at least as many pixels and uses the real size for smaller images.
+ * <p>
+ * A {@link Tracker} scores a stream of frames (the live preview); with the Java engine it only
+ * rescores the tiles that changed by more than {@code fingerprint.quality.change-threshold}.
+ */
+@Slf4j
+@Component
+public class QualityScorer implements MeterBinder {
+
+    public static final String ENGINE_NATIVE = "native";
+    public static final String ENGINE_JAVA = "java";
+
+    private static final int NATIVE_WIDTH = 800;
+    private static final int NATIVE_HEIGHT = 750;
+
+    private final ScannerBackend backend;
+    private final DeviceCommandExecutor device;
+    private final String engine;
+    private final double changeThreshold;
+    private final ExecutorService workers;
+    private final RidgeQuality ridgeQuality;
+
+    private final LongAdder computedTiles = new LongAdder();
+    private final LongAdder reusedTiles = new LongAdder();
+    private volatile MeterRegistry registry;
+
+    public QualityScorer(ScannerBackend backend, DeviceCommandExecutor device,
+                         @Value("${fingerprint.quality.engine:native}") String engine,
+                         @Value("${fingerprint.quality.parallelism:4}") int parallelism,
+                         @Value("${fingerprint.quality.change-threshold:6}") double changeThreshold) {
+        if (!ENGINE_NATIVE.equals(engine) && !ENGINE_JAVA.equals(engine)) {
+            throw new IllegalArgumentException("Unknown quality engine: " + engine);
+        }
+        this.backend = backend;
+        this.device = device;
+        this.engine = engine;
+        this.changeThreshold = changeThreshold;
+        if (ENGINE_JAVA.equals(engine)) {
+            int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+            AtomicInteger counter = new AtomicInteger();
+            this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "quality-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.ridgeQuality = new RidgeQuality(workers, threads);
+        } else {
+            this.workers = null;
+            this.ridgeQuality = null;
+        }
+        log.info("Qualidade: {}", engine);
+    }
+
+    /**
+     * Quality in [0, 100], or -1 if the native call failed
+     */
+    public int score(byte[] image, int width, int height) {
+        if (ridgeQuality != null) {
+            return timed(() -> ridgeQuality.score(image, width, height));
+        }
+        return scoreNative(null, () -> image.length >= NATIVE_WIDTH * NATIVE_HEIGHT
+                ? backend.fingerQuality(image, NATIVE_WIDTH, NATIVE_HEIGHT)
+                : backend.fingerQuality(image, width, height));
+    }
+
+    public int score(FrameBuffer frame) {
+        if (ridgeQuality != null) {
+            return score(frame.toByteArray(), frame.getWidth(), frame.getHeight());
+        }
+        return scoreNative(frame, () -> frame.size() >= NATIVE_WIDTH * NATIVE_HEIGHT
+                ? backend.fingerQuality(frame, NATIVE_WIDTH, NATIVE_HEIGHT)
+                : backend.fingerQuality(frame, frame.getWidth(), frame.getHeight()));
+    }
+
+    /**
+     * New tracker for one stream of frames, used by a single thread
+     */
+    public Tracker tracker() {
+        return new Tracker(ridgeQuality != null ? ridgeQuality.tracker(changeThreshold) : null);
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        FunctionCounter.builder("fingerprint.quality.tiles", computedTiles, LongAdder::sum)
+                .description("Preview tiles scored by the Java quality engine")
+                .tag("result", "computed")
+                .register(registry);
+        FunctionCounter.builder("fingerprint.quality.tiles", reusedTiles, LongAdder::sum)
+                .description("Preview tiles whose score was kept because their pixels did not change")
+                .tag("result", "reused")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private int scoreNative(FrameBuffer frame, IntSupplier quality) {
+        try {
+            int result = device.call("quality", frame, quality::getAsInt);
+            log.debug("Qualidade detectada = {}", result);
+            return result;
+        } catch (Error e) {
+            log.warn("Falha ao avaliar qualidade -> {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    private int timed(IntSupplier quality) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry == null) {
+            return quality.getAsInt();
+        }
+        return Timer.builder("fingerprint.quality")
+                .description("Quality scoring with the Java engine")
+                .tag("engine", ENGINE_JAVA)
+                .register(meterRegistry)
+                .record(quality::getAsInt);
+    }
+
+    /**
+     * Quality of consecutive frames; the Java engine reuses the scores of unchanged tiles
+     */
+    public final class Tracker {
+
+        private final RidgeQuality.Tracker tiles;
+        private byte[] scratch = new byte[0];
+
+        private Tracker(RidgeQuality.Tracker tiles) {
+            this.tiles = tiles;
+        }
+
+        public int score(FrameBuffer frame) {
+            if (tiles == null) {
+                return QualityScorer.this.score(frame);
+            }
+            if (scratch.length < frame.size()) {
+                scratch = new byte[frame.size()];
+            }
+            frame.copyTo(scratch);
+            long computed = tiles.getComputedTiles();
+            long reused = tiles.getReusedTiles();
+            int quality = timed(() -> tiles.score(scratch, frame.getWidth(), frame.getHeight()));
+            computedTiles.add(tiles.getComputedTiles() - computed);
+            reusedTiles.add(tiles.getReusedTiles() - reused);
+            return quality;
+        }
+    }
+}
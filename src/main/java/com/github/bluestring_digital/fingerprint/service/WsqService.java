@@ -0,0 +1,115 @@
+package com.github.bluestring_digital.fingerprint.service;
+
+import com.github.bluestring_digital.fingerprint.backend.AlgorithmHandlePool;
+import com.github.bluestring_digital.fingerprint.backend.ScannerBackend;
+import com.github.bluestring_digital.fingerprint.image.ImageFormat;
+import com.github.bluestring_digital.fingerprint.image.WsqCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WSQ compression of captured images. The vendor codec (FpStdLib, on a leased algorithm handle)
+ * is used when the backend supports the image; otherwise the pure-Java {@link WsqCodec} is used.
+ * Both write standard WSQ, which is decoded with the Java codec (the vendor one only as a fallback).
+ */
+@Slf4j
+@Service
+public class WsqService {
+
+    public static final String CODEC_NATIVE = "fpstdlib";
+    public static final String CODEC_JAVA = "java";
+
+    private static final int NATIVE_WIDTH = 300;
+    private static final int NATIVE_HEIGHT = 400;
+
+    private final ScannerBackend backend;
+    private final AlgorithmHandlePool handles;
+    private final float bitRate;
+
+    private final LongAdder images = new LongAdder();
+    private final LongAdder nativeImages = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+
+    public WsqService(ScannerBackend backend, AlgorithmHandlePool handles,
+                      @Value("${fingerprint.wsq.bit-rate:0.75}") float bitRate) {
+        this.backend = backend;
+        this.handles = handles;
+        this.bitRate = bitRate;
+    }
+
+    /**
+     * Compresses a raw 8-bit image with the vendor codec if it handles the image, the Java codec otherwise
+     */
+    public Compressed compress(byte[] image, int width, int height) {
+        // Só ocupa um handle do algoritmo quando o codec do fornecedor aceita o tamanho
+        byte[] vendor = backend.supportsWsq(width, height) ? compressNative(image, width, height) : null;
+        Compressed compressed = vendor != null
+                ? new Compressed(vendor, CODEC_NATIVE)
+                : new Compressed(WsqCodec.encode(image, width, height, bitRate), CODEC_JAVA);
+
+        images.increment();
+        if (vendor != null) {
+            nativeImages.increment();
+        }
+        rawBytes.add((long) width * height);
+        compressedBytes.add(compressed.data().length);
+        log.debug("WSQ {}x{} ({}): {} bytes, {}:1", width, height, compressed.codec(), compressed.data().length,
+                width * height / Math.max(1, compressed.data().length));
+        return compressed;
+    }
+
+    /**
+     * Decompresses a WSQ image, from {@link #compress} or any other WSQ encoder
+     */
+    public WsqCodec.Image decompress(byte[] data) {
+        try {
+            return WsqCodec.decode(data);
+        } catch (IllegalArgumentException e) {
+            // Variantes que o codec Java não lê (outros filtros, marcadores de reinício) ficam com o fornecedor
+            if (!backend.supportsWsq(NATIVE_WIDTH, NATIVE_HEIGHT)) {
+                throw e;
+            }
+            byte[] image = new byte[NATIVE_WIDTH * NATIVE_HEIGHT];
+            int result = handles.call("wsq", handle -> backend.decompressWsq(handle, data, data.length, image));
+            if (result == 0) {
+                throw e;
+            }
+            return new WsqCodec.Image(image, NATIVE_WIDTH, NATIVE_HEIGHT);
+        }
+    }
+
+    private byte[] compressNative(byte[] image, int width, int height) {
+        byte[] buffer = new byte[width * height];
+        int length = handles.call("wsq", handle -> backend.compressWsq(handle, image, width, height, buffer));
+        return length > 0 ? Arrays.copyOf(buffer, length) : null;
+    }
+
+    /**
+     * Images compressed, how many by the vendor codec, and the overall compression ratio
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long compressed = compressedBytes.sum();
+        stats.put("bitRate", bitRate);
+        stats.put("images", images.sum());
+        stats.put("nativeImages", nativeImages.sum());
+        stats.put("rawBytes", rawBytes.sum());
+        stats.put("compressedBytes", compressed);
+        stats.put("ratio", compressed > 0 ? (double) rawBytes.sum() / compressed : 0.0);
+        return stats;
+    }
+
+    public record Compressed(byte[] data, String codec) {
+
+        public String mimeType() {
+            return ImageFormat.WSQ.getMimeType();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.bluestring_digital.fingerprint.template;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * In-memory view of an ISO/IEC 19794-2:2005 finger minutiae record (single finger view).
+ * Minutiae are kept in a structure-of-arrays layout so that matchers and indexes
+ * can iterate over primitive arrays without allocating per-minutia objects.
+ */
+public class IsoTemplate {
+
+    public static final int HEADER_SIZE = 24;
+    public static final int VIEW_HEADER_SIZE = 4;
+    public static final int MINUTIA_SIZE = 6;
+    public static final int EXTENDED_DATA_SIZE = 2;
+    /** Native buffers are 1024 bytes, which bounds the number of minutiae per view. */
+    public static final int MAX_MINUTIAE = (1024 - HEADER_SIZE - VIEW_HEADER_SIZE - EXTENDED_DATA_SIZE) / MINUTIA_SIZE;
+
+    public static final int TYPE_OTHER = 0;
+    public static final int TYPE_ENDING = 1;
+    public static final int TYPE_BIFURCATION = 2;
+
+    private static final byte[] FORMAT_ID = {'F', 'M', 'R', 0};
+    private static final byte[] VERSION = {' ', '2', '0', 0};
+    /** 500 dpi expressed in pixels per centimetre, as required by the standard. */
+    private static final int DEFAULT_RESOLUTION = 197;
+
+    private final int width;
+    private final int height;
+    private final int fingerPosition;
+    private final int quality;
+    private final int count;
+    private final int[] x;
+    private final int[] y;
+    private final int[] angle;
+    private final int[] type;
+    private final int[] minutiaQuality;
+
+    public IsoTemplate(int width, int height, int fingerPosition, int quality,
+                       int[] x, int[] y, int[] angle, int[] type, int[] minutiaQuality) {
+        if (x.length != y.length || x.length != angle.length
+                || x.length != type.length || x.length != minutiaQuality.length) {
+            throw new IllegalArgumentException("Minutiae arrays must have the same length");
+        }
+        if (x.length > MAX_MINUTIAE) {
+            throw new IllegalArgumentException("Too many minutiae: " + x.length + " (max " + MAX_MINUTIAE + ")");
+        }
+        this.width = width;
+        this.height = height;
+        this.fingerPosition = fingerPosition;
+        this.quality = quality;
+        this.count = x.length;
+        this.x = x;
+        this.y = y;
+        this.angle = angle;
+        this.type = type;
+        this.minutiaQuality = minutiaQuality;
+    }
+
+    /**
+     * Parses an ISO record. Trailing padding (native templates are 1024-byte buffers) is ignored.
+     */
+    public static IsoTemplate parse(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE + VIEW_HEADER_SIZE) {
+            throw new IllegalArgumentException("Template too short");
+        }
+        for (int i = 0; i < FORMAT_ID.length; i++) {
+            if (data[i] != FORMAT_ID[i]) {
+                throw new IllegalArgumentException("Not an ISO 19794-2 template (missing FMR identifier)");
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long recordLength = buffer.getInt(8) & 0xFFFFFFFFL;
+        if (recordLength > data.length) {
+            throw new IllegalArgumentException(
+                    "Truncated template: header declares " + recordLength + " bytes, received " + data.length);
+        }
+        int width = buffer.getShort(14) & 0xFFFF;
+        int height = buffer.getShort(16) & 0xFFFF;
+        int views = data[22] & 0xFF;
+        if (views == 0) {
+            return new IsoTemplate(width, height, 0, 0, new int[0], new int[0], new int[0], new int[0], new int[0]);
+        }
+
+        // Only the first finger view is used; the scanner produces one view per template
+        int offset = HEADER_SIZE;
+        int fingerPosition = data[offset] & 0xFF;
+        int quality = data[offset + 2] & 0xFF;
+        int n = data[offset + 3] & 0xFF;
+        offset += VIEW_HEADER_SIZE;
+        if (offset + n * MINUTIA_SIZE > recordLength) {
+            throw new IllegalArgumentException("Truncated template: " + n + " minutiae declared");
+        }
+
+        int[] x = new int[n];
+        int[] y = new int[n];
+        int[] angle = new int[n];
+        int[] type = new int[n];
+        int[] minutiaQuality = new int[n];
+        for (int i = 0; i < n; i++, offset += MINUTIA_SIZE) {
+            int typeX = buffer.getShort(offset) & 0xFFFF;
+            type[i] = typeX >>> 14;
+            x[i] = typeX & 0x3FFF;
+            y[i] = buffer.getShort(offset + 2) & 0x3FFF;
+            angle[i] = data[offset + 4] & 0xFF;
+            minutiaQuality[i] = data[offset + 5] & 0xFF;
+        }
+        return new IsoTemplate(width, height, fingerPosition, quality, x, y, angle, type, minutiaQuality);
+    }
+
+    /**
+     * Serializes the record without padding.
+     */
+    public byte[] encode() {
+        int length = HEADER_SIZE + VIEW_HEADER_SIZE + count * MINUTIA_SIZE + EXTENDED_DATA_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(FORMAT_ID).put(VERSION);
+        buffer.putInt(length);
+        buffer.putShort((short) 0);                 // capture equipment
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        buffer.putShort((short) DEFAULT_RESOLUTION);
+        buffer.putShort((short) DEFAULT_RESOLUTION);
+        buffer.put((byte) 1);                       // finger views
+        buffer.put((byte) 0);                       // reserved
+
+        buffer.put((byte) fingerPosition);
+        buffer.put((byte) 0);                       // view number / live-scan plain impression
+        buffer.put((byte) quality);
+        buffer.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            buffer.putShort((short) ((type[i] << 14) | (x[i] & 0x3FFF)));
+            buffer.putShort((short) (y[i] & 0x3FFF));
+            buffer.put((byte) angle[i]);
+            buffer.put((byte) minutiaQuality[i]);
+        }
+        buffer.putShort((short) 0);                 // no extended data
+        return buffer.array();
+    }
+
+    /**
+     * Checks the FMR identifier without fully parsing the record.
+     */
+    public static boolean looksLikeIso(byte[] data) {
+        return data != null && data.length >= HEADER_SIZE
+                && new String(data, 0, 3, StandardCharsets.US_ASCII).equals("FMR");
+    }
+
+    /**
+     * Converts an ISO angle unit (360/256 degrees) to degrees.
+     */
+    public static int toDegrees(int isoAngle) {
+        return isoAngle * 360 / 256;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getFingerPosition() { return fingerPosition; }
+    public int getQuality() { return quality; }
+    public int getCount() { return count; }
+    public int[] getX() { return x; }
+    public int[] getY() { return y; }
+    public int[] getAngle() { return angle; }
+    public int[] getType() { return type; }
+    public int[] getMinutiaQuality() { return minutiaQuality; }
+}
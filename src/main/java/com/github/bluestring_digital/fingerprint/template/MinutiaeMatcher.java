@@ -0,0 +1,352 @@
+package com.github.bluestring_digital.fingerprint.template;
+
+import java.util.Arrays;
+
+/**
+ * Pure-Java matcher for ISO/IEC 19794-2 records, for nodes without FpStdLib.
+ * <p>
+ * Each minutia is described by its nearest neighbours (distance, direction towards the neighbour and
+ * neighbour direction, both relative to the minutia direction), so local structures can be compared
+ * regardless of rotation and translation. The best-matching pairs of structures seed alignments: for
+ * each seed the first template is rotated and translated onto the second and minutiae are paired
+ * greedily within distance and angle tolerances. The seed pairing the most minutiae gives the score.
+ * <p>
+ * Scores use the FpStdLib scale, 0 to 100 with a match from {@value #THRESHOLD}: {@value #MATCH_PAIRS}
+ * paired minutiae score {@value #THRESHOLD}, each further pair adds proportionally up to 100, and
+ * the score is scaled down when the pairs are less than a quarter of the minutiae of both templates
+ * (large templates pair more minutiae by chance).
+ * <p>
+ * Records are decoded straight into per-thread structure-of-arrays buffers, so scoring allocates
+ * nothing; alignment and distance loops are branch-free loops over float arrays that C2 compiles
+ * to SIMD instructions. Angles follow the standard (counter-clockwise, y axis pointing down).
+ * Thread-safe.
+ */
+public final class MinutiaeMatcher {
+
+    public static final int THRESHOLD = 45;
+    static final int MATCH_PAIRS = 12;
+    private static final float MIN_PAIRED_FRACTION = 0.25f;
+
+    private static final int NEIGHBORS = 6;
+    private static final int SEEDS = 12;
+    private static final int MIN_SEED_SIMILARITY = 2;
+    private static final float MIN_NEIGHBOR_DISTANCE = 6;
+    private static final float LOCAL_DISTANCE_TOLERANCE = 8;
+    private static final float LOCAL_ANGLE_TOLERANCE = (float) Math.toRadians(20);
+    private static final float PAIR_DISTANCE_TOLERANCE = 12;
+    private static final float PAIR_ANGLE_TOLERANCE = (float) Math.toRadians(25);
+
+    private static final float TWO_PI = (float) (2 * Math.PI);
+    private static final float ISO_ANGLE_UNIT = TWO_PI / 256;
+
+    private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+    /**
+     * Scores two encoded records (trailing padding is ignored)
+     *
+     * @throws IllegalArgumentException if either record is not a valid ISO template
+     */
+    public int compare(byte[] template1, byte[] template2) {
+        Workspace workspace = workspaces.get();
+        workspace.first.decode(template1);
+        workspace.second.decode(template2);
+        return workspace.score();
+    }
+
+    public int compare(IsoTemplate template1, IsoTemplate template2) {
+        Workspace workspace = workspaces.get();
+        workspace.first.load(template1);
+        workspace.second.load(template2);
+        return workspace.score();
+    }
+
+    /**
+     * Score for {@code pairs} minutiae paired between templates of {@code count1} and {@code count2}
+     */
+    static int calibrate(int pairs, int count1, int count2) {
+        if (pairs == 0) {
+            return 0;
+        }
+        float score = (float) THRESHOLD * pairs / MATCH_PAIRS;
+        float fraction = 2f * pairs / (count1 + count2);
+        if (fraction < MIN_PAIRED_FRACTION) {
+            score *= fraction / MIN_PAIRED_FRACTION;
+        }
+        return Math.min(100, Math.round(score));
+    }
+
+    /**
+     * Absolute difference of two angles in radians, folded into [0, pi]
+     */
+    private static float angleDifference(float a, float b) {
+        float d = Math.abs(a - b) % TWO_PI;
+        return Math.min(d, TWO_PI - d);
+    }
+
+    private static float wrap(float angle) {
+        float wrapped = angle % TWO_PI;
+        return wrapped < 0 ? wrapped + TWO_PI : wrapped;
+    }
+
+    /**
+     * Minutiae of one template in structure-of-arrays form, with their neighbour structures
+     */
+    private static final class Minutiae {
+
+        private final float[] x = new float[IsoTemplate.MAX_MINUTIAE];
+        private final float[] y = new float[IsoTemplate.MAX_MINUTIAE];
+        private final float[] theta = new float[IsoTemplate.MAX_MINUTIAE];
+        private int count;
+
+        /** Neighbour structures, {@code [minutia * NEIGHBORS + k]} */
+        private final int[] neighbors = new int[IsoTemplate.MAX_MINUTIAE];
+        private final float[] neighborDistance = new float[IsoTemplate.MAX_MINUTIAE * NEIGHBORS];
+        private final float[] neighborDirection = new float[IsoTemplate.MAX_MINUTIAE * NEIGHBORS];
+        private final float[] neighborTheta = new float[IsoTemplate.MAX_MINUTIAE * NEIGHBORS];
+
+        private final float[] distances = new float[IsoTemplate.MAX_MINUTIAE];
+        private final int[] nearest = new int[NEIGHBORS];
+        private final float[] nearestDistance = new float[NEIGHBORS];
+
+        /**
+         * Same validation as {@link IsoTemplate#parse}; y is negated so rotations use the usual
+         * counter-clockwise convention
+         */
+        void decode(byte[] data) {
+            if (data == null || data.length < IsoTemplate.HEADER_SIZE + IsoTemplate.VIEW_HEADER_SIZE
+                    || data[0] != 'F' || data[1] != 'M' || data[2] != 'R' || data[3] != 0) {
+                throw new IllegalArgumentException("Not an ISO 19794-2 template");
+            }
+            long recordLength = ((long) u16(data, 8) << 16) | u16(data, 10);
+            if (recordLength > data.length) {
+                throw new IllegalArgumentException(
+                        "Truncated template: header declares " + recordLength + " bytes, received " + data.length);
+            }
+            count = 0;
+            if ((data[22] & 0xFF) == 0) {
+                return;
+            }
+            int offset = IsoTemplate.HEADER_SIZE;
+            int n = data[offset + 3] & 0xFF;
+            offset += IsoTemplate.VIEW_HEADER_SIZE;
+            if (offset + n * IsoTemplate.MINUTIA_SIZE > recordLength) {
+                throw new IllegalArgumentException("Truncated template: " + n + " minutiae declared");
+            }
+            if (n > IsoTemplate.MAX_MINUTIAE) {
+                throw new IllegalArgumentException("Too many minutiae: " + n + " (max " + IsoTemplate.MAX_MINUTIAE + ")");
+            }
+            for (int i = 0; i < n; i++, offset += IsoTemplate.MINUTIA_SIZE) {
+                x[i] = u16(data, offset) & 0x3FFF;
+                y[i] = -(u16(data, offset + 2) & 0x3FFF);
+                theta[i] = (data[offset + 4] & 0xFF) * ISO_ANGLE_UNIT;
+            }
+            count = n;
+            describe();
+        }
+
+        void load(IsoTemplate template) {
+            count = template.getCount();
+            for (int i = 0; i < count; i++) {
+                x[i] = template.getX()[i];
+                y[i] = -template.getY()[i];
+                theta[i] = template.getAngle()[i] * ISO_ANGLE_UNIT;
+            }
+            describe();
+        }
+
+        private static int u16(byte[] data, int offset) {
+            return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+        }
+
+        /**
+         * Finds the nearest neighbours of every minutia and stores their relative geometry
+         */
+        private void describe() {
+            int k = Math.min(NEIGHBORS, count - 1);
+            for (int i = 0; i < count; i++) {
+                float xi = x[i];
+                float yi = y[i];
+                for (int j = 0; j < count; j++) {
+                    float dx = x[j] - xi;
+                    float dy = y[j] - yi;
+                    distances[j] = dx * dx + dy * dy;
+                }
+
+                int found = 0;
+                for (int j = 0; j < count; j++) {
+                    float d2 = distances[j];
+                    if (j == i || d2 < MIN_NEIGHBOR_DISTANCE * MIN_NEIGHBOR_DISTANCE) continue;
+                    // Keeps the k nearest sorted by distance
+                    int pos;
+                    if (found < k) {
+                        pos = found++;
+                    } else if (d2 < nearestDistance[k - 1]) {
+                        pos = k - 1;
+                    } else {
+                        continue;
+                    }
+                    while (pos > 0 && nearestDistance[pos - 1] > d2) {
+                        nearest[pos] = nearest[pos - 1];
+                        nearestDistance[pos] = nearestDistance[pos - 1];
+                        pos--;
+                    }
+                    nearest[pos] = j;
+                    nearestDistance[pos] = d2;
+                }
+
+                neighbors[i] = found;
+                for (int m = 0; m < found; m++) {
+                    int j = nearest[m];
+                    int slot = i * NEIGHBORS + m;
+                    neighborDistance[slot] = (float) Math.sqrt(nearestDistance[m]);
+                    neighborDirection[slot] = wrap((float) Math.atan2(y[j] - yi, x[j] - xi) - theta[i]);
+                    neighborTheta[slot] = wrap(theta[j] - theta[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-thread buffers for one comparison
+     */
+    private static final class Workspace {
+
+        private final Minutiae first = new Minutiae();
+        private final Minutiae second = new Minutiae();
+
+        private final int[] seedFirst = new int[SEEDS];
+        private final int[] seedSecond = new int[SEEDS];
+        private final int[] seedSimilarity = new int[SEEDS];
+
+        /** First template aligned onto the second */
+        private final float[] alignedX = new float[IsoTemplate.MAX_MINUTIAE];
+        private final float[] alignedY = new float[IsoTemplate.MAX_MINUTIAE];
+        private final float[] alignedTheta = new float[IsoTemplate.MAX_MINUTIAE];
+        private final float[] distances = new float[IsoTemplate.MAX_MINUTIAE];
+        private final boolean[] paired = new boolean[IsoTemplate.MAX_MINUTIAE];
+
+        int score() {
+            if (first.count < 2 || second.count < 2) {
+                return 0;
+            }
+            int seeds = selectSeeds();
+            int maxPairs = Math.min(first.count, second.count);
+            int best = 0;
+            for (int s = 0; s < seeds && best < maxPairs; s++) {
+                best = Math.max(best, pairs(seedFirst[s], seedSecond[s]));
+            }
+            return calibrate(best, first.count, second.count);
+        }
+
+        /**
+         * Keeps the {@value #SEEDS} pairs of minutiae whose neighbour structures agree the most
+         */
+        private int selectSeeds() {
+            int seeds = 0;
+            for (int i = 0; i < first.count; i++) {
+                for (int j = 0; j < second.count; j++) {
+                    int similarity = similarity(i, j);
+                    if (similarity < MIN_SEED_SIMILARITY) continue;
+                    int pos;
+                    if (seeds < SEEDS) {
+                        pos = seeds++;
+                    } else if (similarity > seedSimilarity[SEEDS - 1]) {
+                        pos = SEEDS - 1;
+                    } else {
+                        continue;
+                    }
+                    while (pos > 0 && seedSimilarity[pos - 1] < similarity) {
+                        seedFirst[pos] = seedFirst[pos - 1];
+                        seedSecond[pos] = seedSecond[pos - 1];
+                        seedSimilarity[pos] = seedSimilarity[pos - 1];
+                        pos--;
+                    }
+                    seedFirst[pos] = i;
+                    seedSecond[pos] = j;
+                    seedSimilarity[pos] = similarity;
+                }
+            }
+            return seeds;
+        }
+
+        /**
+         * Neighbours of {@code i} (first template) matched by distinct neighbours of {@code j} (second)
+         */
+        private int similarity(int i, int j) {
+            int matched = 0;
+            int used = 0;
+            for (int p = i * NEIGHBORS, pEnd = p + first.neighbors[i]; p < pEnd; p++) {
+                for (int q = 0; q < second.neighbors[j]; q++) {
+                    int slot = j * NEIGHBORS + q;
+                    if ((used & (1 << q)) != 0
+                            || Math.abs(first.neighborDistance[p] - second.neighborDistance[slot]) > LOCAL_DISTANCE_TOLERANCE
+                            || angleDifference(first.neighborDirection[p], second.neighborDirection[slot]) > LOCAL_ANGLE_TOLERANCE
+                            || angleDifference(first.neighborTheta[p], second.neighborTheta[slot]) > LOCAL_ANGLE_TOLERANCE) {
+                        continue;
+                    }
+                    used |= 1 << q;
+                    matched++;
+                    break;
+                }
+            }
+            return matched;
+        }
+
+        /**
+         * Aligns minutia {@code i} of the first template onto {@code j} of the second and counts the
+         * minutiae paired greedily within the tolerances
+         */
+        private int pairs(int i, int j) {
+            float rotation = second.theta[j] - first.theta[i];
+            float cos = (float) Math.cos(rotation);
+            float sin = (float) Math.sin(rotation);
+            float originX = first.x[i];
+            float originY = first.y[i];
+            float targetX = second.x[j];
+            float targetY = second.y[j];
+            int n1 = first.count;
+            int n2 = second.count;
+
+            float[] x1 = first.x;
+            float[] y1 = first.y;
+            float[] theta1 = first.theta;
+            for (int a = 0; a < n1; a++) {
+                float dx = x1[a] - originX;
+                float dy = y1[a] - originY;
+                alignedX[a] = cos * dx - sin * dy + targetX;
+                alignedY[a] = sin * dx + cos * dy + targetY;
+                alignedTheta[a] = theta1[a] + rotation;
+            }
+
+            Arrays.fill(paired, 0, n2, false);
+            float[] x2 = second.x;
+            float[] y2 = second.y;
+            float[] theta2 = second.theta;
+            float maxDistance = PAIR_DISTANCE_TOLERANCE * PAIR_DISTANCE_TOLERANCE;
+            int count = 0;
+            for (int a = 0; a < n1; a++) {
+                float ax = alignedX[a];
+                float ay = alignedY[a];
+                for (int b = 0; b < n2; b++) {
+                    float dx = x2[b] - ax;
+                    float dy = y2[b] - ay;
+                    distances[b] = dx * dx + dy * dy;
+                }
+                int closest = -1;
+                float closestDistance = maxDistance;
+                for (int b = 0; b < n2; b++) {
+                    if (!paired[b] && distances[b] <= closestDistance
+                            && angleDifference(alignedTheta[a], theta2[b]) <= PAIR_ANGLE_TOLERANCE) {
+                        closest = b;
+                        closestDistance = distances[b];
+                    }
+                }
+                if (closest >= 0) {
+                    paired[closest] = true;
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.bluestring_digital.fingerprint.template;
+
+import com.github.bluestring_digital.fingerprint.backend.AlgorithmHandlePool;
+import com.github.bluestring_digital.fingerprint.backend.ScannerBackend;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Template comparison with the engine selected by {@code fingerprint.matcher.engine}:
+ * {@code native} runs {@link ScannerBackend#compareTemplates} on a handle leased from the
+ * {@link AlgorithmHandlePool} (FpStdLib, Windows only); {@code java} runs the {@link MinutiaeMatcher}
+ * on the calling thread without a handle, so matching nodes can run on any platform.
+ * Both engines score on the same scale, a match from {@link #MATCH_THRESHOLD}.
+ */
+@Slf4j
+@Component
+public class TemplateMatcher implements MeterBinder {
+
+    public static final String ENGINE_NATIVE = "native";
+    public static final String ENGINE_JAVA = "java";
+    public static final int MATCH_THRESHOLD = MinutiaeMatcher.THRESHOLD;
+
+    private final ScannerBackend backend;
+    private final AlgorithmHandlePool handles;
+    private final String engine;
+    private final MinutiaeMatcher minutiaeMatcher;
+
+    private final LongAdder comparisons = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+
+    public TemplateMatcher(ScannerBackend backend, AlgorithmHandlePool handles,
+                           @Value("${fingerprint.matcher.engine:native}") String engine) {
+        if (!ENGINE_NATIVE.equals(engine) && !ENGINE_JAVA.equals(engine)) {
+            throw new IllegalArgumentException("Unknown matcher engine: " + engine);
+        }
+        this.backend = backend;
+        this.handles = handles;
+        this.engine = engine;
+        this.minutiaeMatcher = ENGINE_JAVA.equals(engine) ? new MinutiaeMatcher() : null;
+        log.info("Template matcher: {}", engine);
+    }
+
+    public int compare(byte[] template1, byte[] template2) {
+        return call("compare", comparison -> comparison.compare(template1, template2));
+    }
+
+    /**
+     * Runs {@code task} with one comparison context (a leased native handle, or the Java matcher),
+     * so a gallery shard scores all its candidates within a single lease
+     */
+    public <T> T call(String operation, Function<Comparison, T> task) {
+        if (minutiaeMatcher != null) {
+            return task.apply(this::compareJava);
+        }
+        return handles.call(operation, handle -> task.apply((template1, template2) -> {
+            comparisons.increment();
+            return backend.compareTemplates(handle, template1, template2);
+        }));
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * Native handles opened for matching (none with the Java engine)
+     */
+    public int getOpenHandles() {
+        return minutiaeMatcher != null ? 0 : handles.getOpenHandles();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("fingerprint.matcher.comparisons", comparisons, LongAdder::sum)
+                .description("Template pairs scored")
+                .tag("engine", engine)
+                .register(registry);
+        FunctionCounter.builder("fingerprint.matcher.invalid", invalid, LongAdder::sum)
+                .description("Comparisons scored 0 because a template could not be parsed")
+                .tag("engine", engine)
+                .register(registry);
+    }
+
+    /**
+     * Invalid templates score 0, as in the simulated backend
+     */
+    private int compareJava(byte[] template1, byte[] template2) {
+        comparisons.increment();
+        try {
+            return minutiaeMatcher.compare(template1, template2);
+        } catch (IllegalArgumentException e) {
+            invalid.increment();
+            log.debug("Invalid template in comparison: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Comparison {
+        int compare(byte[] template1, byte[] template2);
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.bluestring_digital.fingerprint.websocket;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Downscales and encodes preview frames into the binary format of {@link PreviewWebSocketHandler}.
+ */
+public final class PreviewEncoder {
+
+    public static final int HEADER_SIZE = 16;
+    public static final byte VERSION = 1;
+    /** Header-only message: the frame matches the last one sent, clients keep showing it */
+    public static final int FORMAT_UNCHANGED = 4;
+
+    private PreviewEncoder() {
+    }
+
+    /**
+     * Builds a complete binary frame (header + payload) for the given settings.
+     */
+    public static ByteBuffer encodeFrame(byte[] rawData, int width, int height, int quality,
+                                         long timestamp, PreviewSettings settings) {
+        return encodeFrame(ByteBuffer.wrap(rawData, 0, width * height), width, height, quality, timestamp, settings);
+    }
+
+    /**
+     * Builds a complete binary frame from a (possibly direct) pixel buffer positioned at the first pixel.
+     */
+    public static ByteBuffer encodeFrame(ByteBuffer pixels, int width, int height, int quality,
+                                         long timestamp, PreviewSettings settings) {
+        int[] size = settings.resolve(width, height);
+        int targetWidth = size[0];
+        int targetHeight = size[1];
+        boolean fullSize = targetWidth == width && targetHeight == height;
+
+        if (settings.encoding() == PreviewSettings.Encoding.GRAY8) {
+            // Full resolution is the common path: a single copy into the message buffer
+            ByteBuffer buffer = header(targetWidth * targetHeight, targetWidth, targetHeight, quality,
+                    timestamp, settings.encoding().getCode());
+            if (fullSize) {
+                buffer.put(pixels.duplicate().limit(pixels.position() + width * height));
+            } else {
+                buffer.put(downscale(pixels, width, height, targetWidth, targetHeight));
+            }
+            return buffer.flip();
+        }
+
+        byte[] scaled = fullSize
+                ? toArray(pixels, width * height)
+                : downscale(pixels, width, height, targetWidth, targetHeight);
+        byte[] payload = switch (settings.encoding()) {
+            case GRAY4 -> packGray4(scaled, targetWidth * targetHeight);
+            case PNG -> writeImage(scaled, targetWidth, targetHeight, "png", 0);
+            case JPEG -> writeImage(scaled, targetWidth, targetHeight, "jpeg", settings.jpegQuality());
+            default -> throw new IllegalStateException("Unexpected encoding " + settings.encoding());
+        };
+        return header(payload.length, targetWidth, targetHeight, quality, timestamp, settings.encoding().getCode())
+                .put(payload)
+                .flip();
+    }
+
+    /**
+     * Header-only message for a frame that did not change, with the size the client last received
+     */
+    public static ByteBuffer encodeUnchanged(int width, int height, int quality, long timestamp,
+                                             PreviewSettings settings) {
+        int[] size = settings.resolve(width, height);
+        return header(0, size[0], size[1], quality, timestamp, FORMAT_UNCHANGED).flip();
+    }
+
+    public static byte[] downscale(byte[] source, int width, int height, int targetWidth, int targetHeight) {
+        return downscale(ByteBuffer.wrap(source), width, height, targetWidth, targetHeight);
+    }
+
+    /**
+     * Area-averaging downscale: each target pixel is the mean of the source pixels it covers.
+     * Reads the source with absolute gets so native frame buffers are never copied whole.
+     */
+    public static byte[] downscale(ByteBuffer source, int width, int height, int targetWidth, int targetHeight) {
+        int base = source.position();
+        byte[] target = new byte[targetWidth * targetHeight];
+        int[] columnStart = new int[targetWidth + 1];
+        for (int x = 0; x <= targetWidth; x++) {
+            columnStart[x] = (int) ((long) x * width / targetWidth);
+        }
+        int[] columnSums = new int[width];
+
+        for (int ty = 0; ty < targetHeight; ty++) {
+            int y0 = (int) ((long) ty * height / targetHeight);
+            int y1 = (int) ((long) (ty + 1) * height / targetHeight);
+            Arrays.fill(columnSums, 0);
+            for (int y = y0; y < y1; y++) {
+                int row = base + y * width;
+                for (int x = 0; x < width; x++) {
+                    columnSums[x] += source.get(row + x) & 0xFF;
+                }
+            }
+
+            int rows = y1 - y0;
+            int out = ty * targetWidth;
+            for (int tx = 0; tx < targetWidth; tx++) {
+                int x0 = columnStart[tx];
+                int x1 = columnStart[tx + 1];
+                int sum = 0;
+                for (int x = x0; x < x1; x++) {
+                    sum += columnSums[x];
+                }
+                int count = rows * (x1 - x0);
+                target[out + tx] = (byte) ((sum + count / 2) / count);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Packs two pixels per byte (high nibble first).
+     */
+    public static byte[] packGray4(byte[] pixels, int count) {
+        byte[] packed = new byte[(count + 1) / 2];
+        for (int i = 0, j = 0; i < count; i += 2, j++) {
+            int high = (pixels[i] & 0xFF) >> 4;
+            int low = i + 1 < count ? (pixels[i + 1] & 0xFF) >> 4 : 0;
+            packed[j] = (byte) ((high << 4) | low);
+        }
+        return packed;
+    }
+
+    private static byte[] toArray(ByteBuffer pixels, int size) {
+        if (pixels.hasArray() && pixels.arrayOffset() == 0 && pixels.position() == 0) {
+            return pixels.array();
+        }
+        byte[] copy = new byte[size];
+        pixels.duplicate().get(copy);
+        return copy;
+    }
+
+    private static byte[] writeImage(byte[] pixels, int width, int height, String format, int jpegQuality) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(pixels, 0, data, 0, width * height);
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(width * height / 4);
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (jpegQuality > 0) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality / 100f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode preview frame as " + format, e);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer header(int payloadSize, int width, int height, int quality,
+                                     long timestamp, int format) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        buffer.put(VERSION);
+        buffer.put((byte) format);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        buffer.putShort((short) Math.max(-1, Math.min(Short.MAX_VALUE, quality)));
+        buffer.putLong(timestamp);
+        return buffer;
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.bluestring_digital.fingerprint.websocket;
+
+import java.util.Locale;
+
+/**
+ * Preview format requested by a client. A width or height of 0 means "derive from the
+ * other dimension keeping the aspect ratio"; both 0 means full resolution.
+ */
+public record PreviewSettings(int width, int height, Encoding encoding, int jpegQuality) {
+
+    public static final PreviewSettings FULL_RESOLUTION = new PreviewSettings(0, 0, Encoding.GRAY8, 0);
+
+    private static final int MIN_SIZE = 16;
+
+    /**
+     * Encodings and their format byte in the frame header
+     */
+    public enum Encoding {
+        GRAY8(0),
+        GRAY4(1),
+        PNG(2),
+        JPEG(3);
+
+        private final int code;
+        Encoding(int code) { this.code = code; }
+        public int getCode() { return code; }
+
+        public static Encoding parse(String value) {
+            if (value == null || value.isBlank()) return GRAY8;
+            return Encoding.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    public PreviewSettings {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("Invalid preview size: " + width + "x" + height);
+        }
+        if (encoding == null) {
+            encoding = Encoding.GRAY8;
+        }
+        if (jpegQuality <= 0 || jpegQuality > 100) {
+            jpegQuality = 75;
+        }
+    }
+
+    /**
+     * Target size for a source frame, never upscaling.
+     */
+    public int[] resolve(int sourceWidth, int sourceHeight) {
+        int w = width;
+        int h = height;
+        if (w == 0 && h == 0) {
+            return new int[]{sourceWidth, sourceHeight};
+        }
+        if (w == 0) {
+            w = (int) Math.round((double) h * sourceWidth / sourceHeight);
+        } else if (h == 0) {
+            h = (int) Math.round((double) w * sourceHeight / sourceWidth);
+        }
+        w = Math.max(MIN_SIZE, Math.min(sourceWidth, w));
+        h = Math.max(MIN_SIZE, Math.min(sourceHeight, h));
+        return new int[]{w, h};
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.bluestring_digital.fingerprint.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Raw (non-STOMP) WebSocket endpoint streaming preview frames as binary messages.
+ * <p>
+ * Each message is a 16-byte big-endian header followed by the payload:
+ * <pre>
+ * 0  version (1)     1  format (0 = gray8, 1 = gray4 packed, 2 = PNG, 3 = JPEG, 4 = unchanged)
+ * 2  width (uint16)  4  height (uint16)
+ * 6  quality (int16, -1 = unknown)
+ * 8  timestamp (int64, epoch millis)
+ * </pre>
+ * An {@code unchanged} message has no payload: the frame matched the last one sent and only the
+ * quality and timestamp are new.
+ * Clients choose size and encoding with query parameters on connect
+ * ({@code /ws-preview?width=400&height=375&encoding=jpeg}) or later with a JSON text message
+ * of the same fields. Each distinct setting is encoded once per frame and shared by its sessions;
+ * slow clients drop frames instead of buffering them. Send time per message is published as
+ * {@code fingerprint.preview.send}.
+ */
+@Slf4j
+@Component
+public class PreviewWebSocketHandler extends AbstractWebSocketHandler {
+
+    private static final String SETTINGS_ATTRIBUTE = "previewSettings";
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final Timer sendTimer;
+    private final Counter sendFailures;
+    private final AtomicLong settingsVersion = new AtomicLong();
+
+    @Value("${fingerprint.preview.send-time-limit-ms:1000}")
+    private int sendTimeLimitMs;
+
+    @Value("${fingerprint.preview.buffer-size-limit:8388608}")
+    private int bufferSizeLimit;
+
+    public PreviewWebSocketHandler(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.sendTimer = Timer.builder("fingerprint.preview.send")
+                .description("Time to hand a preview frame to a WebSocket client")
+                .register(meterRegistry);
+        this.sendFailures = Counter.builder("fingerprint.preview.send.failures")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        PreviewSettings settings = PreviewSettings.FULL_RESOLUTION;
+        if (session.getUri() != null) {
+            MultiValueMap<String, String> params =
+                    UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+            try {
+                settings = new PreviewSettings(
+                        parseInt(params.getFirst("width")),
+                        parseInt(params.getFirst("height")),
+                        PreviewSettings.Encoding.parse(params.getFirst("encoding")),
+                        parseInt(params.getFirst("jpegQuality")));
+            } catch (IllegalArgumentException e) {
+                session.close(CloseStatus.BAD_DATA.withReason(e.getMessage()));
+                return;
+            }
+        }
+        session.getAttributes().put(SETTINGS_ATTRIBUTE, settings);
+        sessions.put(session.getId(), new ConcurrentWebSocketSessionDecorator(
+                session, sendTimeLimitMs, bufferSizeLimit,
+                ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP));
+        settingsVersion.incrementAndGet();
+        log.info("Preview client connected: {} {} ({} active)", session.getId(), settings, sessions.size());
+    }
+
+    /**
+     * Renegotiates the preview format: {"width":400,"height":375,"encoding":"jpeg","jpegQuality":70}
+     */
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        WebSocketSession target = sessions.getOrDefault(session.getId(), session);
+        Map<String, Object> reply = new HashMap<>();
+        try {
+            JsonNode request = objectMapper.readTree(message.getPayload());
+            PreviewSettings settings = new PreviewSettings(
+                    request.path("width").asInt(0),
+                    request.path("height").asInt(0),
+                    PreviewSettings.Encoding.parse(request.path("encoding").asText(null)),
+                    request.path("jpegQuality").asInt(0));
+            session.getAttributes().put(SETTINGS_ATTRIBUTE, settings);
+            settingsVersion.incrementAndGet();
+            reply.put("success", true);
+            reply.put("width", settings.width());
+            reply.put("height", settings.height());
+            reply.put("encoding", settings.encoding().name().toLowerCase());
+        } catch (IllegalArgumentException | IOException e) {
+            reply.put("success", false);
+            reply.put("message", "Invalid preview settings: " + e.getMessage());
+        }
+        target.sendMessage(new TextMessage(objectMapper.writeValueAsString(reply)));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        sessions.remove(session.getId());
+        log.info("Preview client disconnected: {} ({} active)", session.getId(), sessions.size());
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.debug("Preview transport error on {}: {}", session.getId(), exception.getMessage());
+        sessions.remove(session.getId());
+    }
+
+    /**
+     * Incremented when a client connects or renegotiates, i.e. when some client needs a full frame
+     */
+    public long getSettingsVersion() {
+        return settingsVersion.get();
+    }
+
+    public boolean hasSessions() {
+        return !sessions.isEmpty();
+    }
+
+    /**
+     * Fill level of the fullest client outbound buffer, as a fraction of the buffer size limit
+     */
+    public double getBacklogRatio() {
+        int buffered = 0;
+        for (WebSocketSession session : sessions.values()) {
+            if (session instanceof ConcurrentWebSocketSessionDecorator decorator) {
+                buffered = Math.max(buffered, decorator.getBufferSize());
+            }
+        }
+        return bufferSizeLimit > 0 ? (double) buffered / bufferSizeLimit : 0.0;
+    }
+
+    /**
+     * Encodes a frame once for each distinct setting of the connected clients.
+     * Lets the capture pipeline encode on one thread and publish on another.
+     */
+    public Map<PreviewSettings, ByteBuffer> encode(FrameBuffer frame, int quality) {
+        return encode(frame.data(), frame.getWidth(), frame.getHeight(), quality, frame.getTimestamp());
+    }
+
+    private Map<PreviewSettings, ByteBuffer> encode(ByteBuffer pixels, int width, int height,
+                                                    int quality, long timestamp) {
+        Map<PreviewSettings, ByteBuffer> encoded = new HashMap<>();
+        for (WebSocketSession session : sessions.values()) {
+            encoded.computeIfAbsent(settingsOf(session),
+                    s -> PreviewEncoder.encodeFrame(pixels, width, height, quality, timestamp, s));
+        }
+        return encoded;
+    }
+
+    /**
+     * Header-only messages for a frame that matches the last one sent, one per distinct setting
+     */
+    public Map<PreviewSettings, ByteBuffer> encodeUnchanged(int width, int height, int quality, long timestamp) {
+        Map<PreviewSettings, ByteBuffer> encoded = new HashMap<>();
+        for (WebSocketSession session : sessions.values()) {
+            encoded.computeIfAbsent(settingsOf(session),
+                    s -> PreviewEncoder.encodeUnchanged(width, height, quality, timestamp, s));
+        }
+        return encoded;
+    }
+
+    /**
+     * Sends pre-encoded frames to every client. Clients that renegotiated after the frame was
+     * encoded skip it and pick up their new format on the next one.
+     */
+    public int publish(Map<PreviewSettings, ByteBuffer> encoded) {
+        int sent = 0;
+        for (WebSocketSession session : sessions.values()) {
+            if (!session.isOpen()) {
+                sessions.remove(session.getId());
+                continue;
+            }
+            ByteBuffer payload = encoded.get(settingsOf(session));
+            if (payload == null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                session.sendMessage(new BinaryMessage(payload.duplicate()));
+                sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                sent++;
+            } catch (IOException | IllegalStateException e) {
+                sendFailures.increment();
+                log.debug("Failed to send preview frame to {}: {}", session.getId(), e.getMessage());
+            }
+        }
+        return sent;
+    }
+
+    private static PreviewSettings settingsOf(WebSocketSession session) {
+        return (PreviewSettings) session.getAttributes()
+                .getOrDefault(SETTINGS_ATTRIBUTE, PreviewSettings.FULL_RESOLUTION);
+    }
+
+    private static int parseInt(String value) {
+        return value == null || value.isBlank() ? 0 : Integer.parseInt(value.trim());
+    }
+}
@@ -1,5 +1,8 @@
         const API_BASE = 'http://localhost:8080/api/fingerprint';
         let stompClient = null;
+        let previewSocket = null;
+        let previewCanvas = null;
+        let previewImageData = null;
         let isConnected = false;
         let lastImageData = null; 
 
@@ -64,14 +67,94 @@
                 const data = JSON.parse(message.body);
                 updateMainPreview(data);
             });
+            stompClient.subscribe('/topic/fingerprint/capture', message => {
+                const data = JSON.parse(message.body);
+                if (data.success) {
+                    showMessage(`Captura automática: ${data.count} dedos (qualidade ${data.quality})`, 'success');
+                } else {
+                    showMessage(data.message, 'error');
+                }
+            });
         }, error => {
             console.error('Error connecting to WebSocket:', error);
             showMessage('WebSocket connetion error.', 'error');
         });
     }
 
+        // Binary preview channel: 16-byte header (version, format, width, height, quality, timestamp) + payload
+        // Formats: 0 = gray8, 1 = gray4 packed, 2 = PNG, 3 = JPEG
+        const PREVIEW_SETTINGS = 'width=400&height=375&encoding=jpeg';
+
+        function connectPreviewSocket() {
+            previewSocket = new WebSocket(`ws://localhost:8080/ws-preview?${PREVIEW_SETTINGS}`);
+            previewSocket.binaryType = 'arraybuffer';
+            previewSocket.onmessage = event => {
+                if (typeof event.data === 'string') {
+                    console.log('Preview settings:', event.data);
+                    return;
+                }
+                paintPreviewFrame(event.data);
+            };
+            previewSocket.onerror = error => console.error('Preview socket error:', error);
+        }
+
+        function ensurePreviewCanvas(width, height) {
+            if (!previewCanvas || previewCanvas.width !== width || previewCanvas.height !== height) {
+                previewCanvas = document.createElement('canvas');
+                previewCanvas.width = width;
+                previewCanvas.height = height;
+                previewCanvas.style.maxWidth = '95%';
+                previewCanvas.style.height = 'auto';
+                mainPreview.classList.remove('empty');
+                mainPreview.innerHTML = '';
+                mainPreview.appendChild(previewCanvas);
+                previewImageData = previewCanvas.getContext('2d').createImageData(width, height);
+            }
+            return previewCanvas.getContext('2d');
+        }
+
+        async function paintPreviewFrame(buffer) {
+            const header = new DataView(buffer, 0, 16);
+            const format = header.getUint8(1);
+            const width = header.getUint16(2);
+            const height = header.getUint16(4);
+            const quality = header.getInt16(6);
+            if (format === 4) {
+                // Unchanged frame: keep the last image on the canvas
+                qualityDisplay.textContent = `Qualidade: ${quality}`;
+                return;
+            }
+            const payload = new Uint8Array(buffer, 16);
+            const context = ensurePreviewCanvas(width, height);
+
+            if (format === 2 || format === 3) {
+                const blob = new Blob([payload], { type: format === 2 ? 'image/png' : 'image/jpeg' });
+                const bitmap = await createImageBitmap(blob);
+                context.drawImage(bitmap, 0, 0);
+                bitmap.close();
+            } else {
+                const rgba = previewImageData.data;
+                const count = width * height;
+                for (let i = 0, j = 0; i < count; i++, j += 4) {
+                    const gray = format === 1
+                        ? ((payload[i >> 1] >> ((i & 1) ? 0 : 4)) & 0x0F) * 17
+                        : payload[i];
+                    rgba[j] = rgba[j + 1] = rgba[j + 2] = gray;
+                    rgba[j + 3] = 255;
+                }
+                context.putImageData(previewImageData, 0, 0);
+            }
+            qualityDisplay.textContent = `Qualidade: ${quality}`;
+        }
+
         // Update the main preview
         function updateMainPreview(data) {
+            if (data.unchanged) {
+                qualityDisplay.textContent = `Qualidade: ${data.quality}`;
+                return;
+            }
+            if (!data.image) return;
+            previewCanvas = null;
             mainPreview.classList.remove('empty');
             mainPreview.innerHTML = `<img src="${data.image}" alt="Preview" style="max-width:95%;height:auto;">`;
             qualityDisplay.textContent = `Qualidade: ${data.quality}`;
@@ -118,6 +201,7 @@
 
                     // Conectar WebSocket e iniciar preview
                     connectWebSocket();
+                    connectPreviewSocket();
                     showMessage(data.message, 'success');
                     handleBtnPreview();
                 } else {
@@ -153,6 +237,10 @@
                     if (stompClient) {
                         stompClient.disconnect(() => console.log('WebSocket desconectado'));
                     }
+                    if (previewSocket) {
+                        previewSocket.close();
+                        previewSocket = null;
+                    }
 
                     showMessage(data.message, 'success');
                 } else {
@@ -3,7 +3,7 @@ package com.github.bluestring_digital.fingerprint;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = {"fingerprint.backend=simulated", "fingerprint.store.path="})
 class FingerprintApplicationTests {
 
 	@Test
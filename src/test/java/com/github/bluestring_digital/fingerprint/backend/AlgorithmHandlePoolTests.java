@@ -0,0 +1,67 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlgorithmHandlePoolTests {
+
+    private final SimulatedScannerBackend backend = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+    private final AlgorithmHandlePool pool = new AlgorithmHandlePool(backend, 2, 100);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void leasesTimeOutWhenEveryHandleIsInUse() {
+        int first = pool.lease();
+        int second = pool.lease();
+        assertNotEquals(first, second);
+
+        assertThrows(DeviceBusyException.class, pool::lease);
+        pool.release(first);
+        int reused = pool.call("compare", handle -> handle);
+        assertEquals(first, reused);
+        pool.release(second);
+
+        Map<String, Object> stats = pool.getStats();
+        assertEquals(2, stats.get("open"));
+        assertEquals(0, stats.get("leased"));
+        assertEquals(1L, stats.get("timeouts"));
+        assertEquals(1L, ((Map<String, Object>) ((Map<String, Object>) stats.get("operations")).get("compare")).get("count"));
+    }
+
+    @Test
+    void failingHandlesAreReplaced() {
+        int broken = pool.call("extract", handle -> handle);
+        assertThrows(IllegalArgumentException.class,
+                () -> pool.call("extract", handle -> { throw new IllegalArgumentException("native error"); }));
+
+        assertEquals(0, pool.getOpenHandles());
+        assertEquals(1L, pool.getStats().get("invalidated"));
+        int fresh = pool.call("extract", handle -> handle);
+        assertNotEquals(broken, fresh, "a fresh handle is opened");
+    }
+
+    @Test
+    void waitingLeaseTakesTheSlotOfAnInvalidatedHandle() throws Exception {
+        int first = pool.lease();
+        int second = pool.lease();
+        Thread invalidator = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pool.invalidate(first);
+        });
+        invalidator.start();
+
+        int third = pool.lease();
+        invalidator.join();
+
+        assertNotEquals(first, third);
+        assertNotEquals(second, third);
+        assertEquals(2, pool.getOpenHandles());
+    }
+}
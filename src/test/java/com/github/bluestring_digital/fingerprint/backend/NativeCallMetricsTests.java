@@ -0,0 +1,52 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NativeCallMetricsTests {
+
+    interface Library {
+        int Lib_Quality(byte[] image, int width, int height);
+
+        int Lib_Quality(long pointer, int width, int height);
+
+        int Lib_Fail(int code);
+    }
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final Library library = NativeCallMetrics.instrument(Library.class, new Library() {
+        @Override
+        public int Lib_Quality(byte[] image, int width, int height) {
+            return image.length / (width * height);
+        }
+
+        @Override
+        public int Lib_Quality(long pointer, int width, int height) {
+            return 7;
+        }
+
+        @Override
+        public int Lib_Fail(int code) {
+            throw new IllegalStateException("native error " + code);
+        }
+    }, registry);
+
+    @Test
+    void everyCallIsTimedPerFunction() {
+        assertEquals(2, library.Lib_Quality(new byte[8], 2, 2));
+        assertEquals(7, library.Lib_Quality(0L, 2, 2));
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> library.Lib_Fail(3));
+        assertEquals("native error 3", error.getMessage());
+
+        Timer quality = registry.get(NativeCallMetrics.METER_NAME)
+                .tag("library", "Library").tag("function", "Lib_Quality").timer();
+        Timer fail = registry.get(NativeCallMetrics.METER_NAME).tag("function", "Lib_Fail").timer();
+        assertEquals(2L, quality.count(), "overloads share the function's timer");
+        assertEquals(1L, fail.count(), "failed calls are timed too");
+        assertNotNull(library.toString());
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.bluestring_digital.fingerprint.backend;
+
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulatedScannerBackendTests {
+
+    private final SimulatedScannerBackend backend =
+            new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+
+    @Test
+    void slapFramesSettleAndSplitIntoFourFingers() {
+        byte[] frame = new byte[1600 * 1500];
+        assertEquals(1, backend.open());
+
+        assertEquals(1, backend.captureRaw(1600, 1500, frame));
+        int settling = backend.fingerQuality(frame, 1600, 1500);
+        for (int i = 0; i < 4; i++) {
+            backend.captureRaw(1600, 1500, frame);
+        }
+        int plateau = backend.fingerQuality(frame, 1600, 1500);
+
+        assertTrue(plateau > settling, "quality should rise while the finger settles");
+        assertTrue(plateau >= 60, "plateau quality was " + plateau);
+        assertTrue(backend.isFinger(frame, 1600, 1500));
+
+        List<FingerSplitResult> fingers = backend.splitFingers(frame, 1600, 1500, 300, 400);
+        assertEquals(4, fingers.size());
+        assertEquals(300 * 400, fingers.get(0).getImageData().length);
+    }
+
+    @Test
+    void pooledFrameBuffersAreReusedAcrossCaptures() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        int quality = 0;
+        for (int i = 0; i < 6; i++) {
+            try (FrameBuffer frame = pool.acquire(1600, 1500)) {
+                assertEquals(1, backend.captureRaw(frame));
+                quality = backend.fingerQuality(frame, 800, 750);
+            }
+        }
+        assertTrue(quality >= 60, "plateau quality was " + quality);
+        assertEquals(1, pool.getAllocations());
+        assertEquals(1, pool.getIdleCount());
+
+        FrameBuffer frame = pool.acquire(300, 400);
+        frame.retain();
+        frame.close();
+        assertEquals(0, pool.getIdleCount(), "still referenced by the second owner");
+        frame.close();
+        assertEquals(1, pool.getIdleCount());
+        assertThrows(IllegalStateException.class, frame::close);
+    }
+
+    @Test
+    void emptyFramesHaveNoFinger() {
+        SimulatedScannerBackend idle = new SimulatedScannerBackend(0, 0, 0, 1, 1, "", 42);
+        byte[] frame = new byte[300 * 400];
+        idle.captureRaw(300, 400, frame);
+
+        assertFalse(idle.isFinger(frame, 300, 400));
+        assertEquals(0, idle.fingerQuality(frame, 300, 400));
+    }
+
+    @Test
+    void templatesOfSameFingerMatchAndDifferentFingersDoNot() {
+        byte[] frame = new byte[1600 * 1500];
+        for (int i = 0; i < 6; i++) {
+            backend.captureRaw(1600, 1500, frame);
+        }
+        List<FingerSplitResult> first = backend.splitFingers(frame, 1600, 1500, 300, 400);
+        backend.captureRaw(1600, 1500, frame);
+        List<FingerSplitResult> second = backend.splitFingers(frame, 1600, 1500, 300, 400);
+
+        int handle = backend.openAlgorithm();
+        byte[] a = new byte[1024];
+        byte[] b = new byte[1024];
+        byte[] c = new byte[1024];
+        assertEquals(1, backend.createIsoTemplate(handle, first.get(0).getImageData(), a));
+        assertEquals(1, backend.createIsoTemplate(handle, second.get(0).getImageData(), b));
+        assertEquals(1, backend.createIsoTemplate(handle, second.get(3).getImageData(), c));
+
+        assertTrue(backend.compareTemplates(handle, a, b) >= 45);
+        assertTrue(backend.compareTemplates(handle, a, c) < 45);
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveFrameRateTests {
+
+    private final AdaptiveFrameRate rate = new AdaptiveFrameRate(500, 0, 1000, 3, 0.25);
+
+    @Test
+    void rampsUpWithAFingerAndIdlesAfterConsecutiveEmptyFrames() {
+        assertEquals(500, rate.intervalMs());
+        assertEquals(380, rate.delayMs(120));
+
+        rate.onFrameAnalyzed(true);
+        assertEquals(0, rate.intervalMs());
+
+        rate.onFrameAnalyzed(false);
+        rate.onFrameAnalyzed(false);
+        assertTrue(rate.isActive(), "a short gap keeps the active rate");
+        rate.onFrameAnalyzed(false);
+        assertFalse(rate.isActive());
+        assertEquals(500, rate.intervalMs());
+    }
+
+    @Test
+    void backsOffWhileClientBuffersFillAndRecoversWhenTheyDrain() {
+        rate.onFrameAnalyzed(true);
+        rate.onBacklog(0.5);
+        assertEquals(100, rate.intervalMs());
+        rate.onBacklog(0.5);
+        rate.onBacklog(0.5);
+        assertEquals(400, rate.intervalMs());
+        for (int i = 0; i < 10; i++) {
+            rate.onBacklog(0.9);
+        }
+        assertEquals(1000, rate.intervalMs(), "capped at the max interval");
+
+        rate.onBacklog(0.2);
+        assertEquals(5, rate.getBackoffLevel(), "no recovery until below half the threshold");
+        for (int i = 0; i < 5; i++) {
+            rate.onBacklog(0.0);
+        }
+        assertEquals(0, rate.intervalMs());
+    }
+}
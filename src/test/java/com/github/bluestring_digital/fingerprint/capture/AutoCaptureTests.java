@@ -0,0 +1,25 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.backend.FrameBufferPool;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AutoCaptureTests {
+
+    @Test
+    void framesPromotedAfterShutdownAreReleased() {
+        // One-frame window: every finger frame of at least quality 60 is promoted at once
+        AutoCapture autoCapture = new AutoCapture(null, null, true, 1, 60, 8, "bmp");
+        FrameBufferPool pool = new FrameBufferPool(1);
+        autoCapture.shutdown();
+
+        try (FrameBuffer frame = pool.acquire(16, 16)) {
+            autoCapture.onFrame(frame, 80, true);
+        }
+
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(-1, autoCapture.getStats().get("bestQuality"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameChangeDetectorTests {
+
+    @Test
+    void stillFramesWithSensorNoiseAreUnchangedUntilTheKeyframe() {
+        FrameChangeDetector detector = new FrameChangeDetector(8, 4, 64, 3);
+        byte[] frame = ridges(1600, 1500);
+        Random random = new Random(1);
+
+        assertFalse(detector.isUnchanged(ByteBuffer.wrap(frame), 1600, 1500), "first frame");
+        for (int i = 0; i < 3; i++) {
+            assertTrue(detector.isUnchanged(ByteBuffer.wrap(noisy(frame, random)), 1600, 1500), "frame " + i);
+        }
+        assertFalse(detector.isUnchanged(ByteBuffer.wrap(noisy(frame, random)), 1600, 1500), "keyframe");
+        assertTrue(detector.isUnchanged(ByteBuffer.wrap(frame), 1600, 1500));
+        assertEquals(6, detector.getFrames());
+        assertEquals(4, detector.getUnchangedFrames());
+    }
+
+    @Test
+    void changeInOneBlockIsNotAveragedAwayByTheRestOfTheFrame() {
+        FrameChangeDetector detector = new FrameChangeDetector(8, 4, 64, 100);
+        byte[] frame = ridges(1600, 1500);
+        detector.isUnchanged(ByteBuffer.wrap(frame), 1600, 1500);
+
+        // A 64x64 patch lifted off the glass: 0.2% of the frame
+        byte[] moved = frame.clone();
+        for (int y = 640; y < 704; y++) {
+            for (int x = 1280; x < 1344; x++) {
+                moved[y * 1600 + x] = (byte) 232;
+            }
+        }
+        assertFalse(detector.isUnchanged(ByteBuffer.wrap(moved), 1600, 1500));
+        // The moved frame is the new reference
+        assertTrue(detector.isUnchanged(ByteBuffer.wrap(moved.clone()), 1600, 1500));
+
+        detector.reset();
+        assertFalse(detector.isUnchanged(ByteBuffer.wrap(moved), 1600, 1500), "after reset");
+        assertFalse(detector.isUnchanged(ByteBuffer.wrap(new byte[800 * 750]), 800, 750), "new window size");
+        assertThrows(IllegalArgumentException.class, () -> new FrameChangeDetector(8, 8, 4, 10));
+    }
+
+    private static byte[] ridges(int width, int height) {
+        byte[] frame = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                frame[y * width + x] = (byte) (128 - 100 * Math.cos(2 * Math.PI * (x + y) / 10));
+            }
+        }
+        return frame;
+    }
+
+    private static byte[] noisy(byte[] frame, Random random) {
+        byte[] copy = new byte[frame.length];
+        for (int i = 0; i < frame.length; i++) {
+            copy[i] = (byte) Math.max(0, Math.min(255, (frame[i] & 0xFF) + random.nextInt(13) - 6));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.backend.FrameBufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameRingTests {
+
+    @Test
+    void fullRingDropsAndReleasesTheOldestFrame() throws Exception {
+        FrameBufferPool pool = new FrameBufferPool(4);
+        FrameRing<PreviewFrame> ring = new FrameRing<>(2);
+
+        FrameBuffer first = pool.acquire(300, 400);
+        first.setTimestamp(1);
+        ring.offer(new PreviewFrame(first));
+        FrameBuffer second = pool.acquire(300, 400);
+        second.setTimestamp(2);
+        ring.offer(new PreviewFrame(second));
+        FrameBuffer third = pool.acquire(300, 400);
+        third.setTimestamp(3);
+        ring.offer(new PreviewFrame(third));
+
+        assertEquals(1, ring.getDropped());
+        assertEquals(1, pool.getIdleCount(), "the dropped frame went back to the pool");
+        try (PreviewFrame oldest = ring.poll(0, TimeUnit.MILLISECONDS)) {
+            assertEquals(2, oldest.timestamp);
+        }
+
+        ring.clear();
+        assertEquals(0, ring.size());
+        assertEquals(3, pool.getIdleCount());
+        assertNull(ring.poll(10, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.bluestring_digital.fingerprint.capture;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QualityPlateauTests {
+
+    @Test
+    void plateauNeedsAFullStableWindowAboveTheThreshold() {
+        QualityPlateau plateau = new QualityPlateau(3, 60, 5);
+
+        assertFalse(plateau.offer(30));
+        assertFalse(plateau.offer(62));
+        assertFalse(plateau.offer(70), "30 is still in the window");
+        assertFalse(plateau.offer(71), "62..71 is wider than the tolerance");
+        assertTrue(plateau.offer(73));
+
+        plateau.reset();
+        assertFalse(plateau.offer(72));
+    }
+}
@@ -0,0 +1,162 @@
+package com.github.bluestring_digital.fingerprint.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.bluestring_digital.fingerprint.FingerprintApplication;
+import com.github.bluestring_digital.fingerprint.gallery.GalleryService;
+import com.github.bluestring_digital.fingerprint.template.IsoTemplate;
+import com.github.bluestring_digital.fingerprint.template.IsoTemplates;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two matcher nodes started locally on random ports, plus a node that never answers in time
+ */
+class GalleryCoordinatorTests {
+
+    private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+    private static final List<String> urls = new ArrayList<>();
+    private static HttpServer slowNode;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeAll
+    static void startNodes() throws Exception {
+        for (int shard = 0; shard < 2; shard++) {
+            ConfigurableApplicationContext node = new SpringApplicationBuilder(FingerprintApplication.class)
+                    .run("--server.port=0", "--fingerprint.backend=simulated", "--fingerprint.store.path=",
+                            "--fingerprint.matcher.engine=java", "--fingerprint.cluster.role=node",
+                            "--fingerprint.cluster.shard-index=" + shard, "--fingerprint.cluster.shard-count=2");
+            nodes.add(node);
+            urls.add("http://localhost:" + ((WebServerApplicationContext) node).getWebServer().getPort());
+        }
+        slowNode = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        slowNode.createContext("/", exchange -> {
+            try {
+                Thread.sleep(3000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        slowNode.start();
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+        if (slowNode != null) {
+            slowNode.stop(0);
+        }
+    }
+
+    @Test
+    void enrollmentsLandOnTheirShardAndIdentificationMergesAllShards() {
+        GalleryCoordinator coordinator = new GalleryCoordinator(objectMapper, new SimpleMeterRegistry(),
+                urls.toArray(String[]::new), 5000);
+        try {
+            Random random = new Random(5);
+            IsoTemplate[] templates = new IsoTemplate[40];
+            for (int i = 0; i < templates.length; i++) {
+                templates[i] = IsoTemplates.random(random);
+                String subjectId = "subject-" + i;
+                GalleryCoordinator.Forwarded forwarded = coordinator.enroll(subjectId, enrollment(subjectId, templates[i]));
+                assertEquals(200, forwarded.status(), String.valueOf(forwarded.body()));
+                assertEquals(ClusterNode.shardOf(subjectId, 2), forwarded.shard());
+            }
+
+            int first = gallery(0).size();
+            int second = gallery(1).size();
+            assertEquals(40, first + second);
+            assertTrue(first > 0 && second > 0, first + " / " + second);
+
+            for (int i : new int[]{3, 17, 38}) {
+                GalleryCoordinator.Identification result =
+                        coordinator.identify(IsoTemplates.recapture(templates[i], 10, -8, random).encode(), 3,
+                                TemplateMatcher.MATCH_THRESHOLD, false);
+                assertTrue(result.failed().isEmpty());
+                assertEquals(40, result.gallerySize());
+                assertEquals("subject-" + i, result.candidates().get(0).subjectId());
+            }
+
+            assertEquals(200, coordinator.remove("subject-3").status());
+            assertEquals(39, gallery(0).size() + gallery(1).size());
+        } finally {
+            coordinator.shutdown();
+        }
+    }
+
+    @Test
+    void slowShardTimesOutWithoutFailingTheQuery() {
+        String[] shards = {urls.get(0), urls.get(1), "http://localhost:" + slowNode.getAddress().getPort()};
+        GalleryCoordinator coordinator = new GalleryCoordinator(objectMapper, new SimpleMeterRegistry(), shards, 500);
+        try {
+            long start = System.nanoTime();
+            GalleryCoordinator.Identification result =
+                    coordinator.identify(IsoTemplates.random(new Random(9)).encode(), 5,
+                            TemplateMatcher.MATCH_THRESHOLD, false);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            assertEquals(3, result.shards().size());
+            assertEquals(1, result.failed().size());
+            assertEquals(2, result.failed().get(0).shard());
+            assertEquals("timeout", result.failed().get(0).error());
+            assertTrue(elapsedMs < 2500, elapsedMs + " ms");
+        } finally {
+            coordinator.shutdown();
+        }
+    }
+
+    @Test
+    void nodeRejectsSubjectsOfAnotherShard() {
+        // Shards listed in the wrong order send every subject to the node that does not own it
+        GalleryCoordinator misconfigured = new GalleryCoordinator(objectMapper, new SimpleMeterRegistry(),
+                new String[]{urls.get(1), urls.get(0)}, 5000);
+        try {
+            GalleryCoordinator.Forwarded forwarded =
+                    misconfigured.enroll("stray", enrollment("stray", IsoTemplates.random(new Random(2))));
+            assertEquals(409, forwarded.status());
+        } finally {
+            misconfigured.shutdown();
+        }
+
+        ClusterNode node = new ClusterNode(ClusterNode.ROLE_NODE, 1, 2);
+        String foreign = "subject-0";
+        for (int i = 0; ClusterNode.shardOf(foreign, 2) == 1; i++) {
+            foreign = "subject-" + i;
+        }
+
+        assertFalse(node.owns(foreign));
+        assertTrue(new ClusterNode(ClusterNode.ROLE_STANDALONE, 0, 1).owns(foreign));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterNode(ClusterNode.ROLE_NODE, 2, 2));
+    }
+
+    private static GalleryService gallery(int shard) {
+        return nodes.get(shard).getBean(GalleryService.class);
+    }
+
+    private static Map<String, Object> enrollment(String subjectId, IsoTemplate template) {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("subjectId", subjectId);
+        request.put("finger", 1);
+        request.put("template", Base64.getEncoder().encodeToString(template.encode()));
+        return request;
+    }
+}
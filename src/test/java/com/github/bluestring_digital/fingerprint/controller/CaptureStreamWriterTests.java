@@ -0,0 +1,85 @@
+package com.github.bluestring_digital.fingerprint.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.bluestring_digital.fingerprint.image.ImageFormat;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureStreamWriterTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CaptureStreamWriter writer = new CaptureStreamWriter(null, objectMapper);
+
+    @Test
+    void onlyExplicitBinaryTypesAreStreamed() {
+        assertNull(CaptureStreamWriter.negotiate(null));
+        assertNull(CaptureStreamWriter.negotiate("*/*"));
+        assertNull(CaptureStreamWriter.negotiate("application/json, multipart/mixed;q=0.5"));
+        assertEquals(MediaType.MULTIPART_MIXED, CaptureStreamWriter.negotiate("multipart/mixed, */*;q=0.1"));
+        assertEquals(CaptureStreamWriter.ENVELOPE,
+                CaptureStreamWriter.negotiate("application/x-fingerprint-capture;q=0.9, application/json;q=0.2"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void envelopeCarriesMetadataAndRawImages() throws Exception {
+        Map<String, Object> body = new HashMap<>();
+        Map<String, Object> finger = new HashMap<>();
+        body.put("fingers", List.of(finger));
+        byte[] pixels = {1, 2, 3, 4, 5, 6};
+        CaptureResult result = new CaptureResult(200, body).image(finger, pixels, 3, 2);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        writer.write(response, CaptureStreamWriter.ENVELOPE, result, ImageFormat.RAW);
+
+        assertEquals(CaptureStreamWriter.ENVELOPE_VALUE, response.getContentType());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(response.getContentAsByteArray()));
+        assertEquals(0x46504345, in.readInt());
+        assertEquals(1, in.readUnsignedByte());
+        assertEquals(1, in.readUnsignedByte());
+        assertEquals(200, in.readUnsignedShort());
+        byte[] json = new byte[in.readInt()];
+        in.readFully(json);
+        Map<String, Object> metadata = objectMapper.readValue(json, Map.class);
+        Map<String, Object> part = ((List<Map<String, Object>>) metadata.get("fingers")).get(0);
+        assertEquals(0, part.get("part"));
+
+        assertEquals(0, in.readUnsignedByte());
+        in.readUnsignedByte();
+        assertEquals(3, in.readUnsignedShort());
+        assertEquals(2, in.readUnsignedShort());
+        byte[] image = new byte[in.readInt()];
+        in.readFully(image);
+        assertArrayEquals(pixels, image);
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void multipartHasJsonThenOnePartPerImage() throws Exception {
+        Map<String, Object> body = new HashMap<>();
+        CaptureResult result = new CaptureResult(200, body).image(body, new byte[]{9, 8, 7, 6}, 2, 2);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        writer.write(response, MediaType.MULTIPART_MIXED, result, ImageFormat.RAW);
+
+        String boundary = MediaType.parseMediaType(response.getContentType()).getParameter("boundary");
+        String content = response.getContentAsString(StandardCharsets.ISO_8859_1);
+        String[] parts = content.split("--" + boundary);
+        assertEquals(4, parts.length, "preamble, json, image, closing");
+        assertTrue(parts[1].contains("Content-Type: application/json"));
+        assertTrue(parts[1].contains("\"part\":\"image-0\""));
+        assertTrue(parts[2].contains("Content-ID: <image-0>"));
+        assertTrue(parts[2].endsWith("\r\n\r\n\u0009\u0008\u0007\u0006\r\n"));
+        assertTrue(parts[3].startsWith("--"));
+    }
+}
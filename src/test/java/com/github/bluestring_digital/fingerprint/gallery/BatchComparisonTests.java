@@ -0,0 +1,115 @@
+package com.github.bluestring_digital.fingerprint.gallery;
+
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import com.github.bluestring_digital.fingerprint.template.Galleries;
+import com.github.bluestring_digital.fingerprint.template.IsoTemplates;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchComparisonTests {
+
+    private final SimulatedScannerBackend backend = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+    private final GalleryService matcher = Galleries.on(backend).build();
+
+    @AfterEach
+    void shutdown() {
+        matcher.shutdown();
+    }
+
+    @Test
+    void resultsKeepInputOrderWithABoundedWindow() throws Exception {
+        Random random = new Random(3);
+        byte[] probe = IsoTemplates.random(random).encode();
+        List<Long> sequences = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        List<Integer> scores = new ArrayList<>();
+        BatchComparison batch = new BatchComparison(matcher, 8, TemplateMatcher.MATCH_THRESHOLD, (sequence, id, score) -> {
+            sequences.add(sequence);
+            ids.add(id);
+            scores.add(score);
+        });
+
+        for (int i = 0; i < 100; i++) {
+            byte[] candidate = i % 10 == 0 ? probe : IsoTemplates.random(random).encode();
+            batch.submit("pair-" + i, probe, candidate);
+            assertTrue(i + 1 - sequences.size() <= 8, "at most 8 comparisons in flight");
+        }
+        batch.reject("missing-probe");
+
+        assertEquals(101, batch.finish());
+        assertEquals(101, sequences.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, sequences.get(i));
+            assertEquals("pair-" + i, ids.get(i));
+            assertEquals(i % 10 == 0, scores.get(i) >= TemplateMatcher.MATCH_THRESHOLD, "pair " + i + " scored " + scores.get(i));
+        }
+        assertEquals(BatchComparison.INVALID, scores.get(100));
+        assertEquals(10, batch.getMatched());
+    }
+
+    @Test
+    void failedComparisonsScoreInvalidWithoutEndingTheBatch() throws Exception {
+        // Native engine that fails on one-byte templates, as a lost algorithm handle would
+        SimulatedScannerBackend failing = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42) {
+            @Override
+            public int compareTemplates(int handle, byte[] template1, byte[] template2) {
+                if (template2.length == 1) {
+                    throw new IllegalStateException("lost handle");
+                }
+                return super.compareTemplates(handle, template1, template2);
+            }
+        };
+        GalleryService gallery = Galleries.on(failing).build();
+        try {
+            byte[] probe = IsoTemplates.random(new Random(5)).encode();
+            List<Integer> scores = new ArrayList<>();
+            BatchComparison batch = new BatchComparison(gallery, 4, TemplateMatcher.MATCH_THRESHOLD, (sequence, id, score) -> scores.add(score));
+
+            for (int i = 0; i < 10; i++) {
+                batch.submit("pair-" + i, probe, i % 3 == 1 ? new byte[1] : probe);
+            }
+
+            assertEquals(10, batch.finish());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i % 3 == 1, scores.get(i) == BatchComparison.INVALID, "pair " + i);
+            }
+            assertEquals(7, batch.getMatched());
+            assertEquals(3L, gallery.getStats().get("failedComparisons"));
+        } finally {
+            gallery.shutdown();
+        }
+    }
+
+    @Test
+    void exceptionalScoresAreEmittedAsInvalidAndCounted() throws Exception {
+        GalleryService failing = Galleries.on(backend).failingOn(template -> template.length == 1).build();
+        try {
+            byte[] probe = IsoTemplates.random(new Random(7)).encode();
+            List<String> ids = new ArrayList<>();
+            List<Integer> scores = new ArrayList<>();
+            BatchComparison batch = new BatchComparison(failing, 2, TemplateMatcher.MATCH_THRESHOLD, (sequence, id, score) -> {
+                ids.add(id);
+                scores.add(score);
+            });
+
+            batch.submit("a", probe, probe);
+            batch.submit("b", probe, new byte[1]);
+            batch.submit("c", probe, probe);
+
+            assertEquals(3, batch.finish());
+            assertEquals(List.of("a", "b", "c"), ids);
+            assertEquals(BatchComparison.INVALID, scores.get(1));
+            assertEquals(2, batch.getMatched());
+            assertEquals(1, batch.getFailed());
+        } finally {
+            failing.shutdown();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.bluestring_digital.fingerprint.gallery;
+
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import com.github.bluestring_digital.fingerprint.template.Galleries;
+import com.github.bluestring_digital.fingerprint.template.IsoTemplate;
+import com.github.bluestring_digital.fingerprint.template.IsoTemplates;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GalleryServiceTests {
+
+    private final SimulatedScannerBackend backend = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+    private final GalleryService gallery = Galleries.on(backend).prefilter().recallSampleRate(1.0).build();
+
+    @AfterEach
+    void shutdown() {
+        gallery.shutdown();
+    }
+
+    @Test
+    void identifiesTheEnrolledSubjectAcrossShards() {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            gallery.enroll("subject-" + i, 1 + i % 10, encode(IsoTemplates.random(random)));
+        }
+        byte[] probe = encode(IsoTemplates.random(random));
+        gallery.enroll("target", 2, probe);
+        gallery.enroll("target", 3, probe);
+
+        List<Candidate> top = gallery.identify(probe, 2, TemplateMatcher.MATCH_THRESHOLD);
+
+        assertEquals(502, gallery.size());
+        assertEquals(2, top.size());
+        assertEquals("target", top.get(0).subjectId());
+        assertEquals(100, top.get(0).score());
+        assertTrue(gallery.identify(encode(IsoTemplates.random(random)), 5, TemplateMatcher.MATCH_THRESHOLD)
+                .isEmpty());
+        // k is capped at the gallery size instead of sizing every shard's queue from it
+        assertEquals(502, gallery.identify(probe, Integer.MAX_VALUE, 0).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void prefilterPrunesMostOfTheGalleryWithoutLosingGenuineMatches() throws Exception {
+        Random random = new Random(11);
+        IsoTemplate[] genuine = new IsoTemplate[20];
+        for (int i = 0; i < 3000; i++) {
+            IsoTemplate template = IsoTemplates.random(random);
+            if (i % 150 == 0) {
+                genuine[i / 150] = template;
+            }
+            gallery.enroll("subject-" + i, 1, encode(template));
+        }
+
+        for (int i = 0; i < genuine.length; i++) {
+            List<Candidate> top = gallery.identify(encode(IsoTemplates.recapture(genuine[i], 0, 0, random)), 1,
+                    TemplateMatcher.MATCH_THRESHOLD);
+            assertEquals(1, top.size());
+            assertEquals("subject-" + i * 150, top.get(0).subjectId());
+        }
+
+        Map<String, Object> prefilter = (Map<String, Object>) gallery.getStats().get("prefilter");
+        assertEquals(20L, prefilter.get("prefilteredQueries"));
+        assertTrue((double) prefilter.get("pruningRatio") >= 0.99, "pruning ratio " + prefilter.get("pruningRatio"));
+
+        // Every query is sampled; the exhaustive reruns finish in the background (one hit each) or are skipped
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((long) prefilter.get("recallSamples") + (long) prefilter.get("recallSkipped") < 20
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            prefilter = (Map<String, Object>) gallery.getStats().get("prefilter");
+        }
+        assertEquals(20L, (long) prefilter.get("recallSamples") + (long) prefilter.get("recallSkipped"));
+        assertTrue((long) prefilter.get("recallSamples") > 0);
+        assertEquals(1.0, (double) prefilter.get("recall"));
+    }
+
+    private static byte[] encode(IsoTemplate template) {
+        return template.encode();
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.bluestring_digital.fingerprint.gallery;
+
+import com.github.bluestring_digital.fingerprint.template.IsoTemplate;
+import com.github.bluestring_digital.fingerprint.template.IsoTemplates;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinutiaeIndexTests {
+
+    @Test
+    void rotatedAndShiftedProbeStillSelectsItsTemplate() {
+        Random random = new Random(3);
+        MinutiaeIndex index = new MinutiaeIndex(6, 4, 0.15, 0.05, 10);
+        IsoTemplate enrolled = null;
+        for (int slot = 0; slot < 2000; slot++) {
+            IsoTemplate template = IsoTemplates.random(random);
+            if (slot == 1234) {
+                enrolled = template;
+            }
+            index.add(slot, template);
+        }
+
+        int[] candidates = index.candidates(rotate(enrolled, Math.toRadians(25), 30, -20), 2000);
+
+        assertTrue(Arrays.binarySearch(candidates, 1234) >= 0);
+        assertTrue(candidates.length <= 100, candidates.length + " candidates");
+    }
+
+    private static IsoTemplate rotate(IsoTemplate template, double radians, int shiftX, int shiftY) {
+        int n = template.getCount();
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] angles = new int[n];
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        for (int i = 0; i < n; i++) {
+            int x = template.getX()[i] - 150;
+            int y = template.getY()[i] - 200;
+            xs[i] = (int) Math.round(x * cos - y * sin) + 150 + shiftX + 100;
+            ys[i] = (int) Math.round(x * sin + y * cos) + 200 + shiftY + 100;
+            angles[i] = (int) Math.round(template.getAngle()[i] + radians * 256 / (2 * Math.PI)) & 0xFF;
+        }
+        return new IsoTemplate(500, 600, 0, 80, xs, ys, angles, template.getType(), template.getMinutiaQuality());
+    }
+}
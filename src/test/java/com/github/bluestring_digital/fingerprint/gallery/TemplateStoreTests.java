@@ -0,0 +1,123 @@
+package com.github.bluestring_digital.fingerprint.gallery;
+
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import com.github.bluestring_digital.fingerprint.template.Galleries;
+import com.github.bluestring_digital.fingerprint.template.IsoTemplate;
+import com.github.bluestring_digital.fingerprint.template.IsoTemplates;
+import com.github.bluestring_digital.fingerprint.template.TemplateMatcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateStoreTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsSurviveReopenDeletesAndCompaction() throws Exception {
+        Path file = dir.resolve("templates.fpts");
+        Random random = new Random(5);
+        byte[] template = IsoTemplates.random(random).encode();
+
+        try (TemplateStore store = TemplateStore.open(file, true)) {
+            for (int i = 0; i < 5000; i++) {
+                store.append("subject-" + i, 1 + i % 10, 70, template);
+            }
+            assertTrue(store.delete(2));
+            assertFalse(store.delete(2));
+        }
+
+        try (TemplateStore store = TemplateStore.open(file, true)) {
+            assertEquals(5000, store.getRecordCount());
+            assertEquals(4999, store.getLiveCount());
+            assertEquals(1, store.compact());
+            assertEquals(6000, store.append("late", 1, 70, template) + 999);
+        }
+
+        try (TemplateStore store = TemplateStore.open(file, true)) {
+            List<String> subjects = new ArrayList<>();
+            store.forEach((id, subjectId, finger, quality, data) -> {
+                subjects.add(subjectId);
+                assertEquals(template.length, data.remaining());
+            });
+            assertEquals(5000, subjects.size());
+            assertEquals("subject-0", subjects.get(0));
+            assertEquals("subject-2", subjects.get(1));
+            assertEquals("late", subjects.get(4999));
+        }
+    }
+
+    @Test
+    void tornAppendIsDiscardedOnOpen() throws Exception {
+        Path file = dir.resolve("torn.fpts");
+        byte[] template = IsoTemplates.random(new Random(1)).encode();
+        try (TemplateStore store = TemplateStore.open(file, true)) {
+            store.append("a", 1, 70, template);
+            store.append("b", 1, 70, template);
+        }
+        // Corrupt the second record's template bytes, as if the crash hit mid-write
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(64 + TemplateStore.RECORD_SIZE + 200);
+            raf.write(new byte[]{1, 2, 3, 4});
+        }
+
+        try (TemplateStore store = TemplateStore.open(file, true)) {
+            assertEquals(1, store.getLiveCount());
+            assertEquals(1, store.getDiscarded());
+            store.append("c", 1, 70, template);
+        }
+        try (TemplateStore store = TemplateStore.open(file, true)) {
+            assertEquals(2, store.getLiveCount());
+            assertEquals(0, store.getDiscarded());
+        }
+    }
+
+    @Test
+    void galleryIsRebuiltFromTheStore() throws Exception {
+        Path file = dir.resolve("gallery.fpts");
+        Random random = new Random(9);
+        IsoTemplate known = IsoTemplates.random(random);
+
+        GalleryService gallery = newGallery();
+        gallery.attachStore(TemplateStore.open(file, false));
+        for (int i = 0; i < 1500; i++) {
+            gallery.enroll("subject-" + i, 1, IsoTemplates.random(random).encode());
+        }
+        gallery.enroll("known", 2, known.encode());
+        assertEquals(1, gallery.remove("subject-7"));
+        gallery.shutdown();
+
+        GalleryService reopened = newGallery();
+        reopened.attachStore(TemplateStore.open(file, false));
+        assertEquals(1500, reopened.size());
+        // Searchable right away (exhaustively) while the index is rebuilt in the background
+        assertEquals("known", reopened.identify(known.encode(), 1, TemplateMatcher.MATCH_THRESHOLD).get(0).subjectId());
+        assertEquals(1, reopened.compact());
+        awaitIndex(reopened);
+        assertEquals("known", reopened.identify(known.encode(), 1, TemplateMatcher.MATCH_THRESHOLD).get(0).subjectId());
+        assertEquals(1L, ((Map<?, ?>) reopened.getStats().get("prefilter")).get("prefilteredQueries"));
+        reopened.shutdown();
+    }
+
+    private static void awaitIndex(GalleryService gallery) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!gallery.isIndexReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(gallery.isIndexReady());
+    }
+
+    private static GalleryService newGallery() {
+        return Galleries.on(new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42))
+                .handles(2).parallelism(2).prefilter().build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.bluestring_digital.fingerprint.image;
+
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import com.github.bluestring_digital.fingerprint.service.DeviceCommandExecutor;
+import com.github.bluestring_digital.fingerprint.service.QualityScorer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RidgeQualityTests {
+
+    private final SimulatedScannerBackend backend = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+
+    @Test
+    void settledFingersScoreHighAndNoiseOrEmptyGlassLow() {
+        byte[] frame = new byte[1600 * 1500];
+        backend.captureRaw(1600, 1500, frame);
+        byte[] settling = frame.clone();
+        for (int i = 0; i < 4; i++) {
+            backend.captureRaw(1600, 1500, frame);
+        }
+        byte[] noise = new byte[1600 * 1500];
+        new Random(1).nextBytes(noise);
+
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            RidgeQuality parallel = new RidgeQuality(workers, 4);
+            RidgeQuality sequential = new RidgeQuality(null, 1);
+            int plateau = parallel.score(frame, 1600, 1500);
+
+            assertTrue(plateau >= 60, "plateau quality " + plateau);
+            assertTrue(parallel.score(settling, 1600, 1500) < plateau);
+            assertEquals(sequential.score(frame, 1600, 1500), plateau);
+            assertTrue(parallel.score(noise, 1600, 1500) < 20, "noise quality");
+            assertEquals(0, parallel.score(new byte[1600 * 1500], 1600, 1500));
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    @Test
+    void trackerOnlyRescoresChangedTilesAndAgreesWithAFullScore() {
+        byte[] frame = new byte[1600 * 1500];
+        for (int i = 0; i < 5; i++) {
+            backend.captureRaw(1600, 1500, frame);
+        }
+        RidgeQuality quality = new RidgeQuality(null, 1);
+        RidgeQuality.Tracker tracker = quality.tracker(0);
+        int tiles = (1600 / RidgeQuality.TILE) * (1500 / RidgeQuality.TILE);
+
+        assertEquals(quality.score(frame, 1600, 1500), tracker.score(frame, 1600, 1500));
+        assertEquals(tiles, tracker.getComputedTiles());
+        assertEquals(quality.score(frame, 1600, 1500), tracker.score(frame.clone(), 1600, 1500));
+        assertEquals(tiles, tracker.getReusedTiles());
+
+        // Wipe the second finger: only the tiles it covered are rescored
+        byte[] lifted = frame.clone();
+        for (int y = 300; y < 1000; y++) {
+            for (int x = 480; x < 800; x++) {
+                lifted[y * 1600 + x] = (byte) 232;
+            }
+        }
+        int score = tracker.score(lifted, 1600, 1500);
+        long rescored = tracker.getComputedTiles() - tiles;
+
+        assertEquals(quality.score(lifted, 1600, 1500), score);
+        assertTrue(rescored > 0 && rescored <= 11 * 23, "rescored " + rescored);
+    }
+
+    @Test
+    void javaEngineScoresImagesAtTheirOwnSize() {
+        DeviceCommandExecutor device = new DeviceCommandExecutor(1, 2000);
+        QualityScorer scorer = new QualityScorer(backend, device, QualityScorer.ENGINE_JAVA, 2, 6);
+        try {
+            byte[] finger = new byte[300 * 400];
+            for (int i = 0; i < 5; i++) {
+                backend.captureRaw(300, 400, finger);
+            }
+            assertTrue(scorer.score(finger, 300, 400) >= 60);
+            assertEquals(0, scorer.score(new byte[1600 * 1500], 1600, 1500));
+            assertThrows(IllegalArgumentException.class,
+                    () -> new QualityScorer(backend, device, "nfiq2", 2, 6));
+        } finally {
+            scorer.shutdown();
+            device.shutdown();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.bluestring_digital.fingerprint.image;
+
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import com.github.bluestring_digital.fingerprint.service.DeviceCommandExecutor;
+import com.github.bluestring_digital.fingerprint.service.FingerSplitter;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlapSegmenterTests {
+
+    private final SimulatedScannerBackend backend = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+
+    @Test
+    void uprightSlapSplitsLeftToRightFromTheFingertips() {
+        byte[] frame = settledSlap();
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            List<FingerSplitResult> fingers = new SlapSegmenter(workers).split(frame, 1600, 1500, 300, 400);
+            List<FingerSplitResult> sequential = new SlapSegmenter(null).split(frame, 1600, 1500, 300, 400);
+
+            assertEquals(4, fingers.size());
+            for (int f = 0; f < 4; f++) {
+                FingerSplitResult finger = fingers.get(f);
+                assertEquals(0, finger.getAngle());
+                assertEquals(320 * (f + 1), finger.getX(), 12);
+                assertEquals(finger.getX() - 150, finger.getLeft());
+                assertEquals(finger.getY() - 200, finger.getTop());
+                assertTrue(finger.getQuality() >= 60, "quality " + finger.getQuality());
+                assertArrayEquals(sequential.get(f).getImageData(), finger.getImageData());
+            }
+            // Synthetic fingers are staggered, so their tips are at different heights
+            assertTrue(fingers.get(2).getTop() < fingers.get(3).getTop());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    @Test
+    void tiltedFingersAreCroppedAlongTheirAxis() {
+        int[] tilts = {-25, 0, 18};
+        byte[] slap = tiltedSlap(tilts, new Random(3));
+
+        List<FingerSplitResult> fingers = new SlapSegmenter(null).split(slap, 1600, 1500, 300, 400);
+
+        assertEquals(3, fingers.size());
+        for (int f = 0; f < 3; f++) {
+            FingerSplitResult finger = fingers.get(f);
+            assertEquals(tilts[f], finger.getAngle(), 4, "finger " + f);
+            // Once straightened, the finger fills the middle column of the crop from top to bottom
+            byte[] crop = finger.getImageData();
+            assertTrue(darkShare(crop, 130, 20) > 0.3, "upper middle of finger " + f);
+            assertTrue(darkShare(crop, 130, 360) > 0.3, "lower middle of finger " + f);
+            assertTrue(darkShare(crop, 0, 20) < 0.05, "left of the tip of finger " + f);
+            assertTrue(darkShare(crop, 260, 20) < 0.05, "right of the tip of finger " + f);
+        }
+    }
+
+    @Test
+    void javaEngineSplitsOffTheDeviceThreadAndIsTimed() {
+        DeviceCommandExecutor device = new DeviceCommandExecutor(1, 2000);
+        FingerSplitter splitter = new FingerSplitter(backend, device, FingerSplitter.ENGINE_JAVA, 2, false);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        splitter.bindTo(registry);
+        try {
+            assertEquals(4, splitter.split(settledSlap(), 1600, 1500, 300, 400).size());
+            assertTrue(splitter.split(new byte[1600 * 1500], 1600, 1500, 300, 400).isEmpty());
+            assertEquals(2, registry.get("fingerprint.split").tag("engine", "java").timer().count());
+            assertThrows(IllegalArgumentException.class,
+                    () -> new FingerSplitter(backend, device, "opencv", 2, false));
+        } finally {
+            splitter.shutdown();
+            device.shutdown();
+        }
+    }
+
+    @Test
+    void shadowSplitsAreDiscardedInsteadOfQueuedWhenBehind() throws Exception {
+        // Native engine that answers at once, so slaps arrive faster than the Java segmenter runs
+        SimulatedScannerBackend instant = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42) {
+            @Override
+            public List<FingerSplitResult> splitFingers(byte[] image, int width, int height,
+                                                        int splitWidth, int splitHeight) {
+                return List.of();
+            }
+        };
+        DeviceCommandExecutor device = new DeviceCommandExecutor(1, 2000);
+        FingerSplitter splitter = new FingerSplitter(instant, device, FingerSplitter.ENGINE_NATIVE, 2, true);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        splitter.bindTo(registry);
+        byte[] slap = settledSlap();
+        try {
+            for (int i = 0; i < 20; i++) {
+                splitter.split(slap, 1600, 1500, 300, 400);
+            }
+            double discarded = registry.get("fingerprint.split.shadow.discarded").functionCounter().count();
+            assertTrue(discarded > 0, "discarded " + discarded);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            double compared = 0;
+            while (compared + discarded < 20 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+                compared = registry.get("fingerprint.split.shadow").functionCounter().count();
+            }
+            assertEquals(20, compared + discarded);
+            assertEquals(compared, registry.get("fingerprint.split.shadow.mismatches").functionCounter().count());
+        } finally {
+            splitter.shutdown();
+            device.shutdown();
+        }
+    }
+
+    private byte[] settledSlap() {
+        byte[] frame = new byte[1600 * 1500];
+        for (int i = 0; i < 5; i++) {
+            backend.captureRaw(1600, 1500, frame);
+        }
+        return frame;
+    }
+
+    /**
+     * Ridged ellipses of 240x600 tilted by the given degrees (clockwise), on a white background
+     */
+    private static byte[] tiltedSlap(int[] tilts, Random random) {
+        byte[] image = new byte[1600 * 1500];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) (232 + random.nextInt(13) - 6);
+        }
+        for (int f = 0; f < tilts.length; f++) {
+            double radians = Math.toRadians(tilts[f]);
+            double cx = 400 + 400 * f;
+            double cy = 700;
+            for (int y = 300; y < 1100; y++) {
+                for (int x = (int) cx - 300; x < cx + 300; x++) {
+                    // Coordinates across and along the finger
+                    double across = (x - cx) * Math.cos(radians) + (y - cy) * Math.sin(radians);
+                    double along = -(x - cx) * Math.sin(radians) + (y - cy) * Math.cos(radians);
+                    if (across * across / (120.0 * 120) + along * along / (300.0 * 300) > 1) continue;
+                    int value = (int) (128 - 85 * Math.cos(2 * Math.PI * across / 10)) + random.nextInt(13) - 6;
+                    image[y * 1600 + x] = (byte) Math.max(0, Math.min(255, value));
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Share of ridge-dark pixels in a 40x20 window of a 300x400 crop
+     */
+    private static double darkShare(byte[] crop, int left, int top) {
+        int dark = 0;
+        for (int y = top; y < top + 20; y++) {
+            for (int x = left; x < left + 40; x++) {
+                if ((crop[y * 300 + x] & 0xFF) < 128) dark++;
+            }
+        }
+        return dark / 800.0;
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.bluestring_digital.fingerprint.image;
+
+import com.github.bluestring_digital.fingerprint.backend.AlgorithmHandlePool;
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import com.github.bluestring_digital.fingerprint.service.WsqService;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WsqCodecTests {
+
+    @Test
+    void fingerImagesShrinkAboutTenfoldAndStayClose() {
+        SimulatedScannerBackend backend = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+        byte[] frame = new byte[1600 * 1500];
+        for (int i = 0; i < 5; i++) {
+            backend.captureRaw(1600, 1500, frame);
+        }
+        byte[] finger = backend.splitFingers(frame, 1600, 1500, 300, 400).get(0).getImageData();
+
+        byte[] encoded = WsqCodec.encode(finger, 300, 400, 0.75f);
+        WsqCodec.Image decoded = WsqCodec.decode(encoded);
+
+        assertTrue(WsqCodec.isEncoded(encoded));
+        assertEquals(300, decoded.width());
+        assertEquals(400, decoded.height());
+        assertTrue(encoded.length * 8.0 / (300 * 400) <= 0.8, "coded at " + encoded.length + " bytes");
+        double psnr = psnr(finger, decoded.pixels());
+        assertTrue(psnr > 28, "PSNR " + psnr);
+    }
+
+    @Test
+    void oddSizesRoundTripCloselyAtHighBitRates() {
+        Random random = new Random(5);
+        int width = 97;
+        int height = 83;
+        byte[] image = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image[y * width + x] = (byte) (128 + 100 * Math.sin(x / 3.0) * Math.cos(y / 5.0) + random.nextInt(5));
+            }
+        }
+
+        WsqCodec.Image decoded = WsqCodec.decode(WsqCodec.encode(image, width, height, 2.25f));
+
+        assertEquals(width, decoded.width());
+        assertTrue(psnr(image, decoded.pixels()) > 40);
+        assertThrows(IllegalArgumentException.class, () -> WsqCodec.encode(new byte[64 * 400], 64, 400, 0.75f));
+        assertThrows(IllegalArgumentException.class, () -> WsqCodec.decode(new byte[]{(byte) 0xFF, (byte) 0xA0}));
+    }
+
+    @Test
+    void outputFollowsTheWsqSegmentLayout() {
+        byte[] image = new byte[120 * 100];
+        new Random(9).nextBytes(image);
+
+        byte[] encoded = WsqCodec.encode(image, 120, 100, 0.75f);
+
+        // SOI, then comment, transform, quantization, frame header, Huffman table and first block
+        int[] expected = {0xFFA8, 0xFFA4, 0xFFA5, 0xFFA2, 0xFFA6, 0xFFA3};
+        assertEquals(0xFFA0, marker(encoded, 0));
+        int offset = 2;
+        for (int segment : expected) {
+            assertEquals(segment, marker(encoded, offset), "segment at " + offset);
+            if (segment == 0xFFA2) {
+                assertEquals(100, marker(encoded, offset + 6));
+                assertEquals(120, marker(encoded, offset + 8));
+            }
+            offset += 2 + marker(encoded, offset + 2);
+        }
+        assertEquals(0xFFA1, marker(encoded, encoded.length - 2));
+    }
+
+    @Test
+    void serviceOnlyLeasesAHandleForSizesTheVendorCodecSupports() {
+        SimulatedScannerBackend backend = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+        AlgorithmHandlePool handles = new AlgorithmHandlePool(backend, 1, 5000);
+        WsqService service = new WsqService(backend, handles, 0.75f);
+        // Every handle is busy: a lease would wait for the whole timeout
+        int busy = handles.lease();
+        try {
+            long start = System.nanoTime();
+            WsqService.Compressed compressed = service.compress(new byte[300 * 400], 300, 400);
+
+            assertEquals(WsqService.CODEC_JAVA, compressed.codec());
+            assertTrue(System.nanoTime() - start < 1_000_000_000L, "waited for a handle");
+            assertEquals(300, service.decompress(compressed.data()).width());
+            assertThrows(IllegalArgumentException.class,
+                    () -> service.decompress(new byte[]{(byte) 0xFF, (byte) 0xA0}));
+        } finally {
+            handles.release(busy);
+            handles.close();
+        }
+    }
+
+    @Test
+    void forgedFrameSizesAreRejectedBeforeDecoding() {
+        byte[] encoded = WsqCodec.encode(new byte[120 * 100], 120, 100, 0.75f);
+        int frame = 2;
+        while (marker(encoded, frame) != 0xFFA2) {
+            frame += 2 + marker(encoded, frame + 2);
+        }
+        for (int side : new int[]{30000, 65535}) {
+            byte[] forged = encoded.clone();
+            for (int offset : new int[]{frame + 6, frame + 8}) {
+                forged[offset] = (byte) (side >> 8);
+                forged[offset + 1] = (byte) side;
+            }
+            assertThrows(IllegalArgumentException.class, () -> WsqCodec.decode(forged), "side " + side);
+        }
+        // Header only, as sent to the decode endpoint
+        byte[] header = Arrays.copyOf(encoded, frame + 17);
+        header[frame + 6] = header[frame + 8] = (byte) 0xFF;
+        header[frame + 7] = header[frame + 9] = (byte) 0xFF;
+        assertThrows(IllegalArgumentException.class, () -> WsqCodec.decode(header));
+    }
+
+    private static int marker(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+
+    private static double psnr(byte[] expected, byte[] actual) {
+        double mse = 0;
+        for (int i = 0; i < expected.length; i++) {
+            double d = (expected[i] & 0xFF) - (actual[i] & 0xFF);
+            mse += d * d;
+        }
+        mse /= expected.length;
+        return 10 * Math.log10(255 * 255 / Math.max(mse, 1e-9));
+    }
+}
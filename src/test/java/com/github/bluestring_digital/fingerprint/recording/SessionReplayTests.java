@@ -0,0 +1,179 @@
+package com.github.bluestring_digital.fingerprint.recording;
+
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionReplayTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayReturnsRecordedFramesAndResults() throws Exception {
+        RecordingScannerBackend recorder = new RecordingScannerBackend(
+                new SimulatedScannerBackend(0, 0, 0, 4, 2, "", 42), dir, true, 64);
+        List<byte[]> frames = new ArrayList<>();
+        List<Integer> qualities = new ArrayList<>();
+        List<List<FingerSplitResult>> splits = new ArrayList<>();
+        assertEquals(1, recorder.open());
+        for (int i = 0; i < 6; i++) {
+            byte[] frame = new byte[320 * 300];
+            assertEquals(1, recorder.captureRaw(320, 300, frame));
+            frames.add(frame.clone());
+            qualities.add(recorder.fingerQuality(frame, 320, 300));
+            splits.add(recorder.splitFingers(frame, 320, 300, 80, 100));
+        }
+        recorder.close();
+        recorder.shutdown();
+        assertTrue(splits.stream().anyMatch(split -> !split.isEmpty()), "some frames have fingers");
+        assertEquals(6L, recorder.getStats().get("frames"));
+        assertEquals(0L, recorder.getStats().get("dropped"));
+
+        Path file;
+        try (var files = Files.list(dir)) {
+            file = files.findFirst().orElseThrow();
+        }
+        ReplayScannerBackend replay = new ReplayScannerBackend(SessionReader.open(file), 0, false, 7);
+        replay.open();
+        for (int i = 0; i < 6; i++) {
+            byte[] frame = new byte[320 * 300];
+            assertEquals(1, replay.captureRaw(320, 300, frame));
+            assertArrayEquals(frames.get(i), frame);
+            int quality = replay.fingerQuality(frame, 320, 300);
+            assertEquals(qualities.get(i).intValue(), quality);
+            List<FingerSplitResult> split = replay.splitFingers(frame, 320, 300, 80, 100);
+            assertEquals(splits.get(i).size(), split.size());
+            for (int f = 0; f < split.size(); f++) {
+                assertEquals(splits.get(i).get(f).getX(), split.get(f).getX());
+                assertArrayEquals(splits.get(i).get(f).getImageData(), split.get(f).getImageData());
+            }
+        }
+        assertEquals(0, replay.captureRaw(320, 300, new byte[320 * 300]), "exhausted without looping");
+        assertEquals(0L, replay.getStats().get("computedResults"));
+        replay.shutdown();
+    }
+
+    @Test
+    void reopeningWithinTheSameSecondStartsANewFile() throws Exception {
+        RecordingScannerBackend recorder = new RecordingScannerBackend(
+                new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42), dir, false, 64);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, recorder.open());
+            assertEquals(1, recorder.captureRaw(320, 300, new byte[320 * 300]));
+            recorder.close();
+        }
+        recorder.shutdown();
+        assertEquals(0L, recorder.getStats().get("writeFailures"));
+
+        try (var files = Files.list(dir)) {
+            List<Path> sessions = files.toList();
+            assertEquals(3, sessions.size());
+            for (Path file : sessions) {
+                ReplayScannerBackend replay = new ReplayScannerBackend(SessionReader.open(file), 0, false, 7);
+                replay.open();
+                assertEquals(1, replay.captureRaw(320, 300, new byte[320 * 300]), "each session kept its frame");
+                replay.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void resultsOfADroppedFrameAreNotRecordedAgainstTheBuffersPreviousFrame() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Holds the writer thread while it serializes the split, so the queue of one fills up
+        List<FingerSplitResult> slowSplit = new AbstractList<>() {
+            @Override
+            public FingerSplitResult get(int index) {
+                throw new IndexOutOfBoundsException(index);
+            }
+
+            @Override
+            public int size() {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 0;
+            }
+        };
+        SimulatedScannerBackend simulated = new SimulatedScannerBackend(0, 0, 0, 4, 2, "", 42) {
+            @Override
+            public List<FingerSplitResult> splitFingers(byte[] image, int width, int height,
+                                                        int splitWidth, int splitHeight) {
+                return slowSplit;
+            }
+        };
+        RecordingScannerBackend recorder = new RecordingScannerBackend(simulated, dir, false, 1);
+        byte[] pooled = new byte[320 * 300];
+        assertEquals(1, recorder.open());
+        recorder.captureRaw(320, 300, pooled);
+        awaitDrained(recorder);
+        recorder.splitFingers(pooled, 320, 300, 80, 100);
+        assertTrue(writing.await(2, TimeUnit.SECONDS));
+
+        recorder.captureRaw(320, 300, new byte[320 * 300]);
+        // Queue full: this frame is dropped, then the buffer's next result has no frame to go to
+        recorder.captureRaw(320, 300, pooled);
+        release.countDown();
+        awaitDrained(recorder);
+        recorder.fingerQuality(pooled, 320, 300);
+        recorder.close();
+        recorder.shutdown();
+
+        assertEquals(2L, recorder.getStats().get("frames"));
+        assertEquals(1L, recorder.getStats().get("dropped"));
+        Path file;
+        try (var files = Files.list(dir)) {
+            file = files.findFirst().orElseThrow();
+        }
+        try (SessionReader reader = SessionReader.open(file)) {
+            List<SessionReader.Frame> frames = reader.frames(320, 300);
+            assertEquals(2, frames.size());
+            assertNull(frames.get(0).quality(320, 300));
+            assertNull(frames.get(1).quality(320, 300));
+        }
+    }
+
+    @Test
+    void tornChunkIsDiscarded() throws Exception {
+        Path file = dir.resolve("torn.fprec");
+        try (SessionWriter writer = new SessionWriter(file, "test", 0, false)) {
+            writer.frame(0, 0, 4, 2, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+            writer.quality(0, 4, 2, 55);
+            writer.frame(1, 1000, 4, 2, new byte[8]);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        try (SessionReader reader = SessionReader.open(file)) {
+            assertEquals(1, reader.getFrameCount());
+            SessionReader.Frame frame = reader.frames(4, 2).get(0);
+            assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, frame.pixels());
+            assertEquals(55, frame.quality(4, 2).intValue());
+            assertNull(frame.finger());
+        }
+    }
+
+    private static void awaitDrained(RecordingScannerBackend recorder) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while ((int) recorder.getStats().get("queued") > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.bluestring_digital.fingerprint.service;
+
+import com.github.bluestring_digital.fingerprint.backend.DeviceBusyException;
+import com.github.bluestring_digital.fingerprint.backend.FrameBuffer;
+import com.github.bluestring_digital.fingerprint.backend.FrameBufferPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceCommandExecutorTests {
+
+    private final DeviceCommandExecutor executor = new DeviceCommandExecutor(1, 2000);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void commandsRunOnOneThreadAndNestedCallsRunInline() {
+        String outer = executor.call("capture", () -> Thread.currentThread().getName());
+        String nested = executor.call("template",
+                () -> executor.call("compare", () -> Thread.currentThread().getName()));
+
+        assertEquals("fingerprint-device", outer);
+        assertEquals("fingerprint-device", nested);
+        assertThrows(IllegalArgumentException.class,
+                () -> executor.call("split", () -> { throw new IllegalArgumentException("bad image"); }));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rejectsCommandsWhenTheQueueIsFull() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> busy = CompletableFuture.supplyAsync(() -> executor.call("capture", () -> {
+            running.countDown();
+            release.await();
+            return 1;
+        }));
+        assertTrue(running.await(2, TimeUnit.SECONDS));
+        CompletableFuture<Integer> queued = CompletableFuture.supplyAsync(() -> executor.call("beep", () -> 2));
+        while (executor.getQueueDepth() == 0) {
+            Thread.onSpinWait();
+        }
+
+        assertThrows(DeviceBusyException.class, () -> executor.call("beep", () -> 3));
+        release.countDown();
+        assertEquals(1, busy.get(2, TimeUnit.SECONDS));
+        assertEquals(2, queued.get(2, TimeUnit.SECONDS));
+
+        Map<String, Object> beep = (Map<String, Object>) ((Map<String, Object>) executor.getStats().get("commands")).get("beep");
+        assertEquals(1L, beep.get("count"));
+        assertEquals(1L, beep.get("rejected"));
+    }
+
+    @Test
+    void timedOutCommandsKeepTheirFrameUntilTheyFinish() throws Exception {
+        DeviceCommandExecutor slow = new DeviceCommandExecutor(1, 100);
+        FrameBufferPool pool = new FrameBufferPool(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean abandonedRan = new AtomicBoolean();
+        try {
+            FrameBuffer capturing = pool.acquire(16, 16);
+            try (capturing) {
+                assertThrows(DeviceBusyException.class,
+                        () -> slow.call("capture", capturing, () -> {
+                            // Like a JNA call, ignores the interrupt sent on timeout
+                            while (release.getCount() > 0) {
+                                LockSupport.parkNanos(1_000_000);
+                            }
+                            return 1;
+                        }));
+            }
+            // The native call is still writing into the frame: it must not go back to the pool
+            assertEquals(0, pool.getIdleCount());
+
+            // A command that times out while still queued never runs and frees its frame at once
+            FrameBuffer queued = pool.acquire(16, 16);
+            try (queued) {
+                assertThrows(DeviceBusyException.class,
+                        () -> slow.call("isFinger", queued, () -> abandonedRan.getAndSet(true)));
+            }
+            assertEquals(1, pool.getIdleCount());
+
+            release.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (pool.getIdleCount() < 2 && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            assertEquals(2, pool.getIdleCount());
+            assertEquals(1, slow.call("beep", () -> 1));
+            assertFalse(abandonedRan.get());
+            assertEquals(2, pool.getAllocations());
+        } finally {
+            release.countDown();
+            slow.shutdown();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.bluestring_digital.fingerprint.service;
+
+import com.github.bluestring_digital.fingerprint.backend.AlgorithmHandlePool;
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import com.github.bluestring_digital.fingerprint.service.FingerprintScannerService.FingerSplitResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateExtractorTests {
+
+    private final SimulatedScannerBackend backend = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+    private final AlgorithmHandlePool handles = new AlgorithmHandlePool(backend, 2, 5000);
+    private final TemplateExtractor extractor = new TemplateExtractor(backend, handles, 2);
+
+    @AfterEach
+    void shutdown() {
+        extractor.shutdown();
+    }
+
+    @Test
+    void parallelExtractionMatchesSerialExtractionInOrder() {
+        byte[] frame = new byte[1600 * 1500];
+        for (int i = 0; i < 5; i++) {
+            backend.captureRaw(1600, 1500, frame);
+        }
+        List<byte[]> images = backend.splitFingers(frame, 1600, 1500, 300, 400).stream()
+                .map(FingerSplitResult::getImageData)
+                .toList();
+        assertEquals(4, images.size());
+        byte[] firstImage = images.get(0).clone();
+
+        List<byte[]> templates = extractor.extractAll(images);
+
+        assertEquals(4, templates.size());
+        for (int i = 0; i < images.size(); i++) {
+            assertArrayEquals(extractor.extract(images.get(i)), templates.get(i), "finger " + i);
+        }
+        assertArrayEquals(firstImage, images.get(0), "images are not modified");
+        assertTrue(handles.getOpenHandles() <= 2, "opened " + handles.getOpenHandles() + " handles");
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.bluestring_digital.fingerprint.template;
+
+import com.github.bluestring_digital.fingerprint.backend.AlgorithmHandlePool;
+import com.github.bluestring_digital.fingerprint.backend.ScannerBackend;
+import com.github.bluestring_digital.fingerprint.gallery.GalleryService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Galleries for the gallery and batch tests, so constructor changes are fixed here once.
+ * The defaults are small shards over the native matcher, no pre-filter, no recall sampling
+ * and no store.
+ */
+public final class Galleries {
+
+    public static final int HANDLES = 4;
+    public static final int INITIAL_CAPACITY = 16;
+    public static final int SHARD_SIZE = 64;
+    public static final int PARALLELISM = 4;
+    public static final int PREFILTER_MIN_SIZE = 1000;
+    public static final int NEIGHBORS = 6;
+    public static final int MIN_VOTES = 4;
+    public static final double MIN_VOTE_RATIO = 0.15;
+    public static final double MAX_CANDIDATE_RATIO = 0.1;
+    /** Tests that need a store attach one explicitly */
+    public static final String STORE_PATH = "";
+    public static final boolean STORE_SYNC = true;
+
+    private final ScannerBackend backend;
+    private int handles = HANDLES;
+    private int parallelism = PARALLELISM;
+    private boolean prefilter;
+    private double recallSampleRate;
+    private Predicate<byte[]> failing;
+
+    private Galleries(ScannerBackend backend) {
+        this.backend = backend;
+    }
+
+    public static Galleries on(ScannerBackend backend) {
+        return new Galleries(backend);
+    }
+
+    public Galleries handles(int handles) {
+        this.handles = handles;
+        return this;
+    }
+
+    public Galleries parallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public Galleries prefilter() {
+        this.prefilter = true;
+        return this;
+    }
+
+    public Galleries recallSampleRate(double recallSampleRate) {
+        this.recallSampleRate = recallSampleRate;
+        return this;
+    }
+
+    /**
+     * {@code compareAsync} returns a failed future for the candidates {@code failing} accepts,
+     * as it does when the pool is closed under a running batch
+     */
+    public Galleries failingOn(Predicate<byte[]> failing) {
+        this.failing = failing;
+        return this;
+    }
+
+    public GalleryService build() {
+        TemplateMatcher matcher = new TemplateMatcher(backend, new AlgorithmHandlePool(backend, handles, 5000),
+                TemplateMatcher.ENGINE_NATIVE);
+        if (failing == null) {
+            return new GalleryService(matcher, INITIAL_CAPACITY, SHARD_SIZE, parallelism, prefilter,
+                    PREFILTER_MIN_SIZE, NEIGHBORS, MIN_VOTES, MIN_VOTE_RATIO, MAX_CANDIDATE_RATIO, recallSampleRate,
+                    STORE_PATH, STORE_SYNC);
+        }
+        Predicate<byte[]> fails = failing;
+        return new GalleryService(matcher, INITIAL_CAPACITY, SHARD_SIZE, parallelism, prefilter,
+                PREFILTER_MIN_SIZE, NEIGHBORS, MIN_VOTES, MIN_VOTE_RATIO, MAX_CANDIDATE_RATIO, recallSampleRate,
+                STORE_PATH, STORE_SYNC) {
+            @Override
+            public CompletableFuture<Integer> compareAsync(byte[] template1, byte[] template2) {
+                return fails.test(template2)
+                        ? CompletableFuture.failedFuture(new IllegalStateException("pool closed"))
+                        : super.compareAsync(template1, template2);
+            }
+        };
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.bluestring_digital.fingerprint.template;
+
+import java.util.Random;
+
+/**
+ * Synthetic ISO templates for the matcher, gallery and cluster tests
+ */
+public final class IsoTemplates {
+
+    private IsoTemplates() {
+    }
+
+    /**
+     * 40 random minutiae on a 300x400 image, kept 20 pixels away from the borders
+     */
+    public static IsoTemplate random(Random random) {
+        return random(random, 40);
+    }
+
+    public static IsoTemplate random(Random random, int n) {
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] angles = new int[n];
+        int[] types = new int[n];
+        int[] qualities = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = 20 + random.nextInt(260);
+            ys[i] = 20 + random.nextInt(360);
+            angles[i] = random.nextInt(256);
+            types[i] = random.nextBoolean() ? IsoTemplate.TYPE_ENDING : IsoTemplate.TYPE_BIFURCATION;
+            qualities[i] = 60;
+        }
+        return new IsoTemplate(300, 400, 0, 80, xs, ys, angles, types, qualities);
+    }
+
+    /**
+     * Same finger captured again: shifted by the given pixels, with position and angle noise and
+     * a few minutiae missed
+     */
+    public static IsoTemplate recapture(IsoTemplate template, int shiftX, int shiftY, Random random) {
+        int n = template.getCount() - 6;
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] angles = new int[n];
+        int[] types = new int[n];
+        int[] qualities = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = template.getX()[i] + shiftX + random.nextInt(5) - 2;
+            ys[i] = template.getY()[i] + shiftY + random.nextInt(5) - 2;
+            angles[i] = (template.getAngle()[i] + random.nextInt(5) - 2) & 0xFF;
+            types[i] = template.getType()[i];
+            qualities[i] = 60;
+        }
+        return new IsoTemplate(300, 400, 0, 80, xs, ys, angles, types, qualities);
+    }
+
+    /**
+     * Same finger placed again: rotated up to 30 degrees and shifted, position and angle noise,
+     * a fifth of the minutiae missed and a few spurious ones
+     */
+    public static IsoTemplate rotatedRecapture(IsoTemplate template, Random random) {
+        double radians = Math.toRadians(random.nextInt(61) - 30);
+        int shiftX = random.nextInt(41) - 20;
+        int shiftY = random.nextInt(41) - 20;
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        int kept = template.getCount() - template.getCount() / 5;
+        int n = kept + 3;
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] angles = new int[n];
+        int[] types = new int[n];
+        int[] qualities = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (i < kept) {
+                // ISO angles are counter-clockwise with y pointing down
+                double x = template.getX()[i] - 150;
+                double y = template.getY()[i] - 200;
+                xs[i] = (int) Math.round(x * cos + y * sin) + 200 + shiftX + random.nextInt(5) - 2;
+                ys[i] = (int) Math.round(-x * sin + y * cos) + 250 + shiftY + random.nextInt(5) - 2;
+                angles[i] = (int) Math.round(template.getAngle()[i] + radians * 256 / (2 * Math.PI)
+                        + random.nextInt(7) - 3) & 0xFF;
+                types[i] = template.getType()[i];
+            } else {
+                xs[i] = 20 + random.nextInt(360);
+                ys[i] = 20 + random.nextInt(460);
+                angles[i] = random.nextInt(256);
+                types[i] = IsoTemplate.TYPE_ENDING;
+            }
+            qualities[i] = 60;
+        }
+        return new IsoTemplate(400, 500, 0, 80, xs, ys, angles, types, qualities);
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.bluestring_digital.fingerprint.template;
+
+import com.github.bluestring_digital.fingerprint.backend.AlgorithmHandlePool;
+import com.github.bluestring_digital.fingerprint.backend.SimulatedScannerBackend;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinutiaeMatcherTests {
+
+    private final MinutiaeMatcher matcher = new MinutiaeMatcher();
+
+    @Test
+    void sameTemplateScoresTheMaximumFromBytesOrParsed() {
+        IsoTemplate template = IsoTemplates.random(new Random(1), 40);
+
+        assertEquals(100, matcher.compare(template, template));
+        assertEquals(100, matcher.compare(template.encode(), Arrays.copyOf(template.encode(), 1024)));
+    }
+
+    @Test
+    void rotatedShiftedAndPartialCapturesMatchWhileImpostorsStayBelowTheThreshold() {
+        Random random = new Random(7);
+        int genuineMin = 100;
+        int impostorMax = 0;
+        for (int i = 0; i < 200; i++) {
+            IsoTemplate enrolled = IsoTemplates.random(random, 30 + random.nextInt(30));
+            IsoTemplate probe = IsoTemplates.rotatedRecapture(enrolled, random);
+            int genuine = matcher.compare(probe.encode(), enrolled.encode());
+            IsoTemplate other = IsoTemplates.random(random, 30 + random.nextInt(30));
+            int impostor = matcher.compare(probe.encode(), other.encode());
+            genuineMin = Math.min(genuineMin, genuine);
+            impostorMax = Math.max(impostorMax, impostor);
+        }
+
+        assertTrue(genuineMin >= MinutiaeMatcher.THRESHOLD, "genuine min " + genuineMin);
+        assertTrue(impostorMax < MinutiaeMatcher.THRESHOLD, "impostor max " + impostorMax);
+    }
+
+    @Test
+    void calibrationPlacesTheThresholdAtTwelvePairedMinutiae() {
+        assertEquals(MinutiaeMatcher.THRESHOLD, MinutiaeMatcher.calibrate(MinutiaeMatcher.MATCH_PAIRS, 30, 30));
+        assertTrue(MinutiaeMatcher.calibrate(MinutiaeMatcher.MATCH_PAIRS - 1, 30, 30) < MinutiaeMatcher.THRESHOLD);
+        // The same pairs out of two large templates are weaker evidence
+        assertTrue(MinutiaeMatcher.calibrate(MinutiaeMatcher.MATCH_PAIRS, 120, 120) < MinutiaeMatcher.THRESHOLD);
+        assertEquals(100, MinutiaeMatcher.calibrate(27, 40, 40));
+    }
+
+    @Test
+    void javaEngineScoresWithoutLeasingHandlesAndRejectsInvalidTemplates() {
+        SimulatedScannerBackend backend = new SimulatedScannerBackend(0, 0, 0, 0, 0, "", 42);
+        AlgorithmHandlePool handles = new AlgorithmHandlePool(backend, 2, 5000);
+        TemplateMatcher templateMatcher = new TemplateMatcher(backend, handles, TemplateMatcher.ENGINE_JAVA);
+        byte[] template = IsoTemplates.random(new Random(3), 40).encode();
+
+        assertEquals(100, templateMatcher.compare(template, template));
+        assertEquals(0, templateMatcher.compare(template, new byte[]{1, 2, 3}));
+        assertEquals(0, handles.getOpenHandles());
+        assertThrows(IllegalArgumentException.class, () -> matcher.compare(template, new byte[64]));
+        assertThrows(IllegalArgumentException.class,
+                () -> new TemplateMatcher(backend, handles, "bozorth"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.bluestring_digital.fingerprint.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreviewEncoderTests {
+
+    @Test
+    void downscaleAveragesCoveredArea() {
+        // 4x2 image, 2x2 blocks of 0/100 and 200/255 -> 2x1
+        byte[] source = {0, 100, (byte) 200, (byte) 255, 100, 0, (byte) 255, (byte) 200};
+        byte[] target = PreviewEncoder.downscale(source, 4, 2, 2, 1);
+
+        assertEquals(50, target[0] & 0xFF);
+        assertEquals(228, target[1] & 0xFF);
+    }
+
+    @Test
+    void settingsKeepAspectRatioAndNeverUpscale() {
+        assertArrayEquals(new int[]{400, 375}, new PreviewSettings(400, 0, null, 0).resolve(1600, 1500));
+        assertArrayEquals(new int[]{300, 400}, new PreviewSettings(600, 800, null, 0).resolve(300, 400));
+        assertArrayEquals(new int[]{1600, 1500}, PreviewSettings.FULL_RESOLUTION.resolve(1600, 1500));
+    }
+
+    @Test
+    void encodedFrameCarriesHeaderAndFormat() {
+        byte[] raw = new byte[1600 * 1500];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) (i % 251);
+        }
+
+        ByteBuffer gray4 = PreviewEncoder.encodeFrame(raw, 1600, 1500, 55, 123L,
+                new PreviewSettings(400, 375, PreviewSettings.Encoding.GRAY4, 0));
+        assertEquals(1, gray4.get(0));
+        assertEquals(1, gray4.get(1));
+        assertEquals(400, gray4.getShort(2));
+        assertEquals(375, gray4.getShort(4));
+        assertEquals(55, gray4.getShort(6));
+        assertEquals(123L, gray4.getLong(8));
+        assertEquals(16 + 400 * 375 / 2, gray4.remaining());
+
+        ByteBuffer jpeg = PreviewEncoder.encodeFrame(raw, 1600, 1500, 55, 123L,
+                new PreviewSettings(400, 375, PreviewSettings.Encoding.JPEG, 70));
+        assertEquals(3, jpeg.get(1));
+        assertEquals((byte) 0xFF, jpeg.get(16));
+        assertEquals((byte) 0xD8, jpeg.get(17));
+    }
+
+    @Test
+    void unchangedFrameIsHeaderOnlyWithTheClientSize() {
+        ByteBuffer unchanged = PreviewEncoder.encodeUnchanged(1600, 1500, 70, 456L,
+                new PreviewSettings(400, 0, PreviewSettings.Encoding.JPEG, 70));
+
+        assertEquals(PreviewEncoder.HEADER_SIZE, unchanged.remaining());
+        assertEquals(PreviewEncoder.FORMAT_UNCHANGED, unchanged.get(1));
+        assertEquals(400, unchanged.getShort(2));
+        assertEquals(375, unchanged.getShort(4));
+        assertEquals(70, unchanged.getShort(6));
+        assertEquals(456L, unchanged.getLong(8));
+    }
+}